@@ -0,0 +1,89 @@
+/*
+ * AsyncBitbucket.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of {@link Bitbucket}.
+ * Each method returns immediately with a {@link CompletableFuture} object
+ * which will be completed with the same value as the corresponding method
+ * of {@link Bitbucket} would return.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public interface AsyncBitbucket
+{
+    /**
+     * Looks up an account resource for a user asynchronously.
+     *
+     * @param name the name of a user
+     * @return a future of the account resource, or of {@code null} if not
+     * found
+     * @see Bitbucket#getUserAccount
+     */
+    CompletableFuture<BitbucketUserAccount> getUserAccountAsync(String name);
+
+    /**
+     * Looks up an account resource for a team asynchronously.
+     *
+     * @param name the name of a team
+     * @return a future of the account resource, or of {@code null} if not
+     * found
+     * @see Bitbucket#getTeamAccount
+     */
+    CompletableFuture<BitbucketAccount> getTeamAccountAsync(String name);
+
+    /**
+     * Finds a repository asynchronously.
+     *
+     * @param fullName the full name of a repository
+     * @return a future of the repository, or of {@code null} if not found
+     * @see Bitbucket#getRepository
+     */
+    CompletableFuture<BitbucketRepository> getRepositoryAsync(
+        String fullName);
+
+    /**
+     * Retrieves an issue asynchronously.
+     *
+     * @param fullName a full name of a repository
+     * @param id an issue identifier
+     * @return a future of the issue, or of {@code null} if not found
+     * @see Bitbucket#getIssue
+     */
+    CompletableFuture<BitbucketIssue> getIssueAsync(String fullName, int id);
+
+    /**
+     * Retrieves a list of issues that match a filter asynchronously.
+     * The future will be completed when the first page of the list has been
+     * received.
+     *
+     * @param fullName a full name of a repository
+     * @param filter a filter expression, or {@code null}
+     * @return a future of the list of issues that match the given filter
+     * @see Bitbucket#getIssues
+     */
+    CompletableFuture<List<BitbucketIssue>> getIssuesAsync(String fullName,
+        String filter);
+}
@@ -0,0 +1,68 @@
+/*
+ * BenchmarkRunner.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler so that the allocation rate is
+ * reported together with the throughput.
+ * Command line arguments are the same as those of the JMH runner.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public final class BenchmarkRunner
+{
+    /**
+     * Does nothing.
+     */
+    private BenchmarkRunner()
+    {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args command line arguments
+     * @throws CommandLineOptionException if the arguments are not valid
+     * @throws RunnerException if the benchmarks failed
+     */
+    public static void main(final String[] args)
+        throws CommandLineOptionException, RunnerException
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(JsonBindingBenchmark.class.getSimpleName());
+        }
+        Options options = builder.parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
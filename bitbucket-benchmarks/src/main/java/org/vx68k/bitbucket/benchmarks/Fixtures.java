@@ -0,0 +1,158 @@
+/*
+ * Fixtures.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+/**
+ * Payload fixtures of the benchmarks.
+ * Each fixture is validated against the API schema when it is loaded so
+ * that the benchmarks never measure payloads the API would not return.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public final class Fixtures
+{
+    /**
+     * Name of the repository fixture.
+     */
+    public static final String REPOSITORY = "repository.json";
+
+    /**
+     * Name of the issue fixture.
+     */
+    public static final String ISSUE = "issue.json";
+
+    /**
+     * Name of the commit fixture.
+     */
+    public static final String COMMIT = "commit.json";
+
+    /**
+     * Name of the fixture of a page of issues.
+     */
+    public static final String ISSUES_PAGE = "issues-page.json";
+
+    /**
+     * Does nothing.
+     */
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Loads a fixture without validation.
+     *
+     * @param name the name of a fixture
+     * @return the bytes of the fixture
+     * @throws IOException if the fixture could not be read
+     */
+    public static byte[] load(final String name) throws IOException
+    {
+        try (InputStream stream =
+            Fixtures.class.getResourceAsStream("fixtures/" + name)) {
+            if (stream == null) {
+                throw new IOException(name + " not found");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Loads a fixture of an entity and validates it.
+     *
+     * @param name the name of a fixture
+     * @param definition the name of a definition in the API schema
+     * @return the bytes of the fixture
+     * @throws IOException if the fixture could not be read
+     * @throws IllegalStateException if the fixture is not valid
+     */
+    public static byte[] loadEntity(final String name,
+        final String definition) throws IOException
+    {
+        byte[] bytes = load(name);
+        check(name, SchemaValidator.forApiSchema()
+            .validate(parse(bytes), definition));
+        return bytes;
+    }
+
+    /**
+     * Loads a fixture of a page and validates it.
+     *
+     * @param name the name of a fixture
+     * @param definition the name of a definition in the API schema for the
+     * values
+     * @return the bytes of the fixture
+     * @throws IOException if the fixture could not be read
+     * @throws IllegalStateException if the fixture is not valid
+     */
+    public static byte[] loadPage(final String name, final String definition)
+        throws IOException
+    {
+        byte[] bytes = load(name);
+        check(name, SchemaValidator.forApiSchema()
+            .validatePage(parse(bytes), definition));
+        return bytes;
+    }
+
+    /**
+     * Parses the bytes of a fixture.
+     *
+     * @param bytes the bytes of a fixture
+     * @return a JSON value
+     */
+    private static JsonValue parse(final byte[] bytes)
+    {
+        try (JsonReader reader =
+            Json.createReader(new ByteArrayInputStream(bytes))) {
+            return reader.readValue();
+        }
+    }
+
+    /**
+     * Throws an exception if there are any violations.
+     *
+     * @param name the name of a fixture
+     * @param violations a list of violations
+     */
+    private static void check(final String name,
+        final List<String> violations)
+    {
+        if (!violations.isEmpty()) {
+            throw new IllegalStateException(
+                name + " is not valid: " + violations);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * JsonBindingBenchmark.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.ws.rs.core.MediaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vx68k.bitbucket.client.PageDecoder;
+import org.vx68k.bitbucket.client.internal.ClientCommit;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+import org.vx68k.bitbucket.client.internal.ClientRepository;
+import org.vx68k.bitbucket.client.util.JsonbMessageBodyReader;
+
+/**
+ * Benchmarks of the JSON binding of the client model.
+ * <p>The {@code *Jsonb} benchmarks measure JSON-B alone with a shared
+ * {@link Jsonb} object, while the {@code *Reader} benchmarks measure the
+ * path a response entity takes through {@link JsonbMessageBodyReader}.
+ * {@link #issuePage} measures the way {@code PaginatedList} used to bind
+ * the values of a page through a JSON object model, and
+ * {@link #issuePageDecoder} measures {@link PageDecoder} that binds them
+ * from a streaming parser, in a single pass if the JSON-B implementation is
+ * Yasson.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBindingBenchmark
+{
+    private byte[] repository;
+
+    private byte[] issue;
+
+    private byte[] commit;
+
+    private byte[] issuesPage;
+
+    private Jsonb jsonb;
+
+    private JsonbMessageBodyReader<ClientRepository> repositoryReader;
+
+    private JsonbMessageBodyReader<ClientIssue> issueReader;
+
+    private PageDecoder<ClientIssue> issueDecoder;
+
+    /**
+     * Loads and validates the fixtures.
+     *
+     * @throws IOException if a fixture could not be read
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        repository = Fixtures.loadEntity(Fixtures.REPOSITORY, "repository");
+        issue = Fixtures.loadEntity(Fixtures.ISSUE, "issue");
+        commit = Fixtures.loadEntity(Fixtures.COMMIT, "commit");
+        issuesPage = Fixtures.loadPage(Fixtures.ISSUES_PAGE, "issue");
+
+        jsonb = JsonbBuilder.create();
+        repositoryReader = new JsonbMessageBodyReader<>(
+            JsonbBuilder.newBuilder());
+        issueReader = new JsonbMessageBodyReader<>(JsonbBuilder.newBuilder());
+        issueDecoder = new PageDecoder<>(ClientIssue.class, null);
+    }
+
+    /**
+     * Closes the shared {@link Jsonb} object.
+     *
+     * @throws Exception if it could not be closed
+     */
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        jsonb.close();
+    }
+
+    @Benchmark
+    public ClientRepository repositoryJsonb()
+    {
+        return jsonb.fromJson(new ByteArrayInputStream(repository),
+            ClientRepository.class);
+    }
+
+    @Benchmark
+    public ClientIssue issueJsonb()
+    {
+        return jsonb.fromJson(new ByteArrayInputStream(issue),
+            ClientIssue.class);
+    }
+
+    @Benchmark
+    public ClientCommit commitJsonb()
+    {
+        return jsonb.fromJson(new ByteArrayInputStream(commit),
+            ClientCommit.class);
+    }
+
+    @Benchmark
+    public ClientRepository repositoryReader() throws IOException
+    {
+        return repositoryReader.readFrom(ClientRepository.class,
+            ClientRepository.class, null, MediaType.APPLICATION_JSON_TYPE,
+            null, new ByteArrayInputStream(repository));
+    }
+
+    @Benchmark
+    public ClientIssue issueReader() throws IOException
+    {
+        return issueReader.readFrom(ClientIssue.class, ClientIssue.class,
+            null, MediaType.APPLICATION_JSON_TYPE, null,
+            new ByteArrayInputStream(issue));
+    }
+
+    @Benchmark
+    public List<ClientIssue> issuePage() throws Exception
+    {
+        JsonObject page;
+        try (JsonReader reader =
+            Json.createReader(new ByteArrayInputStream(issuesPage))) {
+            page = reader.readObject();
+        }
+        List<ClientIssue> values = new ArrayList<>();
+        try (Jsonb pageJsonb = JsonbBuilder.create()) {
+            for (JsonValue value : page.getJsonArray("values")) {
+                values.add(pageJsonb.fromJson(pageJsonb.toJson(value),
+                    ClientIssue.class));
+            }
+        }
+        return values;
+    }
+
+    @Benchmark
+    public List<ClientIssue> issuePageDecoder()
+    {
+        return issueDecoder.decode(
+            new String(issuesPage, StandardCharsets.UTF_8)).getValues();
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * SchemaValidator.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Validator of JSON values against the definitions in the unofficial API
+ * schema {@code api-schema.json}.
+ * <p>Only the subset of JSON Schema used by the API schema is supported:
+ * {@code $ref}, {@code type}, {@code const}, {@code enum}, {@code oneOf},
+ * {@code properties}, {@code patternProperties},
+ * {@code additionalProperties}, {@code required}, {@code items} and the
+ * {@code date-time} format.  Unknown keywords and unresolvable references
+ * are ignored.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class SchemaValidator
+{
+    /**
+     * Name of the resource of the API schema.
+     */
+    public static final String API_SCHEMA = "api-schema.json";
+
+    /**
+     * Root object of the schema.
+     */
+    private final JsonObject schema;
+
+    /**
+     * Constructs a validator.
+     *
+     * @param schema the root object of a schema
+     */
+    public SchemaValidator(final JsonObject schema)
+    {
+        if (schema == null) {
+            throw new IllegalArgumentException("Schema is null");
+        }
+        this.schema = schema;
+    }
+
+    /**
+     * Returns a validator for the API schema.
+     *
+     * @return a validator
+     * @throws IOException if the schema could not be read
+     */
+    public static SchemaValidator forApiSchema() throws IOException
+    {
+        try (InputStream stream =
+            SchemaValidator.class.getResourceAsStream(API_SCHEMA)) {
+            if (stream == null) {
+                throw new IOException(API_SCHEMA + " not found");
+            }
+            try (JsonReader reader = Json.createReader(stream)) {
+                return new SchemaValidator(reader.readObject());
+            }
+        }
+    }
+
+    /**
+     * Validates a value against a definition.
+     *
+     * @param value a JSON value
+     * @param definition the name of a definition in {@code $defs}
+     * @return a list of the violations, which is empty if the value is valid
+     */
+    public final List<String> validate(final JsonValue value,
+        final String definition)
+    {
+        List<String> violations = new ArrayList<>();
+        check(value, definition(definition), "$", violations);
+        return Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * Validates a page of a paginated response against a definition for its
+     * values.
+     *
+     * @param page a JSON value of a page
+     * @param definition the name of a definition in {@code $defs}
+     * @return a list of the violations, which is empty if the page is valid
+     */
+    public final List<String> validatePage(final JsonValue page,
+        final String definition)
+    {
+        List<String> violations = new ArrayList<>();
+        if (page.getValueType() != JsonValue.ValueType.OBJECT) {
+            violations.add("$: not a page object");
+        }
+        else {
+            JsonObject object = page.asJsonObject();
+            for (String name : new String[] {"pagelen", "size", "page"}) {
+                if (object.containsKey(name)
+                    && !(object.get(name) instanceof JsonNumber)) {
+                    violations.add("$." + name + ": not a number");
+                }
+            }
+            JsonValue values = object.get("values");
+            if (values == null
+                || values.getValueType() != JsonValue.ValueType.ARRAY) {
+                violations.add("$.values: not an array");
+            }
+            else {
+                JsonObject schema = definition(definition);
+                JsonArray array = values.asJsonArray();
+                for (int i = 0; i < array.size(); i++) {
+                    check(array.get(i), schema, "$.values[" + i + "]",
+                        violations);
+                }
+            }
+        }
+        return Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * Returns a definition in the schema.
+     *
+     * @param name the name of a definition
+     * @return the schema object of the definition
+     */
+    private JsonObject definition(final String name)
+    {
+        JsonObject defs = schema.getJsonObject("$defs");
+        if (defs == null || !(defs.get(name) instanceof JsonObject)) {
+            throw new IllegalArgumentException(
+                "No such definition: " + name);
+        }
+        return defs.getJsonObject(name);
+    }
+
+    /**
+     * Resolves a local reference in the schema.
+     *
+     * @param ref a reference such as {@code "#/$defs/user"}
+     * @return the schema object, or {@code null} if not resolvable
+     */
+    private JsonObject resolve(final String ref)
+    {
+        if (!ref.startsWith("#/")) {
+            return null;
+        }
+        JsonValue current = schema;
+        for (String token : ref.substring(2).split("/")) {
+            if (!(current instanceof JsonObject)) {
+                return null;
+            }
+            current = ((JsonObject) current).get(token);
+        }
+        if (current instanceof JsonObject) {
+            return (JsonObject) current;
+        }
+        return null;
+    }
+
+    /**
+     * Checks a value against a schema object.
+     *
+     * @param value a JSON value
+     * @param s a schema object
+     * @param path the path of the value for messages
+     * @param violations a list to which violations are added
+     */
+    private void check(final JsonValue value, final JsonObject s,
+        final String path, final List<String> violations)
+    {
+        if (s.containsKey("$ref")) {
+            JsonObject target = resolve(s.getString("$ref"));
+            if (target != null) {
+                check(value, target, path, violations);
+            }
+        }
+        if (s.get("type") instanceof JsonString
+            && !isOfType(value, s.getString("type"))) {
+            violations.add(path + ": not of type " + s.getString("type"));
+            return;
+        }
+        if (s.containsKey("const") && !s.get("const").equals(value)) {
+            violations.add(path + ": not " + s.get("const"));
+        }
+        if (s.get("enum") instanceof JsonArray
+            && !s.getJsonArray("enum").contains(value)) {
+            violations.add(path + ": not one of " + s.get("enum"));
+        }
+        if (s.get("oneOf") instanceof JsonArray) {
+            int matches = 0;
+            for (JsonValue alternative : s.getJsonArray("oneOf")) {
+                List<String> ignored = new ArrayList<>();
+                check(value, alternative.asJsonObject(), path, ignored);
+                if (ignored.isEmpty()) {
+                    matches += 1;
+                }
+            }
+            if (matches != 1) {
+                violations.add(path + ": " + matches
+                    + " alternatives matched");
+            }
+        }
+        if ("date-time".equals(s.getString("format", null))
+            && value instanceof JsonString) {
+            try {
+                OffsetDateTime.parse(((JsonString) value).getString());
+            }
+            catch (final DateTimeParseException e) {
+                violations.add(path + ": not a date-time");
+            }
+        }
+        if (value.getValueType() == JsonValue.ValueType.OBJECT) {
+            checkObject(value.asJsonObject(), s, path, violations);
+        }
+        else if (value.getValueType() == JsonValue.ValueType.ARRAY
+            && s.get("items") instanceof JsonObject) {
+            JsonArray array = value.asJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                check(array.get(i), s.getJsonObject("items"),
+                    path + "[" + i + "]", violations);
+            }
+        }
+    }
+
+    /**
+     * Checks the members of an object against a schema object.
+     *
+     * @param object a JSON object
+     * @param s a schema object
+     * @param path the path of the object for messages
+     * @param violations a list to which violations are added
+     */
+    private void checkObject(final JsonObject object, final JsonObject s,
+        final String path, final List<String> violations)
+    {
+        if (s.get("required") instanceof JsonArray) {
+            for (JsonValue name : s.getJsonArray("required")) {
+                if (name instanceof JsonString
+                    && !object.containsKey(((JsonString) name).getString())) {
+                    violations.add(path + ": missing " + name);
+                }
+            }
+        }
+
+        JsonObject properties = s.getJsonObject("properties");
+        JsonObject patterns = s.getJsonObject("patternProperties");
+        boolean closed = s.get("additionalProperties") == JsonValue.FALSE;
+        for (Map.Entry<String, JsonValue> member : object.entrySet()) {
+            String name = member.getKey();
+            String memberPath = path + "." + name;
+            boolean known = false;
+            if (properties != null
+                && properties.get(name) instanceof JsonObject) {
+                check(member.getValue(), properties.getJsonObject(name),
+                    memberPath, violations);
+                known = true;
+            }
+            if (patterns != null) {
+                for (Map.Entry<String, JsonValue> pattern
+                    : patterns.entrySet()) {
+                    if (Pattern.compile(pattern.getKey()).matcher(name)
+                        .find()) {
+                        check(member.getValue(),
+                            pattern.getValue().asJsonObject(), memberPath,
+                            violations);
+                        known = true;
+                    }
+                }
+            }
+            if (closed && !known) {
+                violations.add(memberPath + ": not allowed");
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if a value is of a JSON Schema type.
+     * Unknown types match any value.
+     *
+     * @param value a JSON value
+     * @param type the name of a type
+     * @return {@code true} if the value is of the type; {@code false}
+     * otherwise
+     */
+    private static boolean isOfType(final JsonValue value, final String type)
+    {
+        switch (type) {
+        case "object":
+            return value.getValueType() == JsonValue.ValueType.OBJECT;
+        case "array":
+            return value.getValueType() == JsonValue.ValueType.ARRAY;
+        case "string":
+            return value.getValueType() == JsonValue.ValueType.STRING;
+        case "number":
+            return value.getValueType() == JsonValue.ValueType.NUMBER;
+        case "integer":
+            return value instanceof JsonNumber
+                && ((JsonNumber) value).isIntegral();
+        case "boolean":
+            return value == JsonValue.TRUE || value == JsonValue.FALSE;
+        case "null":
+            return value == JsonValue.NULL;
+        default:
+            return true;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * TransportBenchmark.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vx68k.bitbucket.client.BitbucketClient;
+import org.vx68k.bitbucket.client.internal.ClientRepository;
+import org.vx68k.bitbucket.stub.FakeBitbucketServer;
+
+/**
+ * Benchmarks of {@link BitbucketClient#get} against a local
+ * {@link FakeBitbucketServer}.
+ * {@link #sharedTransport} issues every call through the transport shared by
+ * a single runtime object, while {@link #perCallClient} creates and closes a
+ * runtime object for each call as every call used to build its own client.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TransportBenchmark
+{
+    private static final String FULL_NAME = "bench/repository";
+
+    private FakeBitbucketServer server;
+
+    private URI base;
+
+    private BitbucketClient client;
+
+    /**
+     * Starts the fake server and creates the shared runtime object.
+     *
+     * @throws IOException if the server could not be started
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        server = new FakeBitbucketServer();
+        server.addRepository(FULL_NAME, 0);
+        server.start();
+        base = server.getBaseUri();
+        client = new BitbucketClient();
+    }
+
+    /**
+     * Closes the shared runtime object and stops the fake server.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public ClientRepository sharedTransport()
+    {
+        return getRepository(client);
+    }
+
+    @Benchmark
+    public ClientRepository perCallClient()
+    {
+        try (BitbucketClient perCall = new BitbucketClient()) {
+            return getRepository(perCall);
+        }
+    }
+
+    private ClientRepository getRepository(final BitbucketClient runtime)
+    {
+        ClientRepository repository = runtime.get(base,
+            (target) -> target.path("repositories").path(FULL_NAME),
+            ClientRepository.class);
+        if (repository == null) {
+            throw new IllegalStateException("Repository not found");
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * FixturesTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import javax.json.Json;
+import javax.json.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link Fixtures} and {@link SchemaValidator}.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class FixturesTest
+{
+    private SchemaValidator validator;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        validator = SchemaValidator.forApiSchema();
+    }
+
+    /**
+     * Tests the fixtures are valid against the API schema.
+     */
+    @Test
+    void testFixtures() throws IOException
+    {
+        assertNotNull(Fixtures.loadEntity(Fixtures.REPOSITORY, "repository"));
+        assertNotNull(Fixtures.loadEntity(Fixtures.ISSUE, "issue"));
+        assertNotNull(Fixtures.loadEntity(Fixtures.COMMIT, "commit"));
+        assertNotNull(Fixtures.loadPage(Fixtures.ISSUES_PAGE, "issue"));
+    }
+
+    /**
+     * Tests the benchmarks bind the fixtures.
+     */
+    @Test
+    void testBenchmarks() throws Exception
+    {
+        JsonBindingBenchmark benchmark = new JsonBindingBenchmark();
+        benchmark.setUp();
+        try {
+            assertEquals("vx68k/bitbucket-api-client.java",
+                benchmark.repositoryJsonb().getFullName());
+            assertEquals("vx68k/bitbucket-api-client.java",
+                benchmark.repositoryReader().getFullName());
+            assertEquals(1, benchmark.issueJsonb().getId());
+            assertEquals(1, benchmark.issueReader().getId());
+            assertEquals("6799fb47ceaa832d85dadb23f7ec87d62603ce27",
+                benchmark.commitJsonb().getHash());
+            assertEquals(10, benchmark.issuePage().size());
+        }
+        finally {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * Tests violations are reported.
+     */
+    @Test
+    void testViolations()
+    {
+        JsonObject repository = Json.createObjectBuilder()
+            .add("type", "repository")
+            .add("size", "large")
+            .add("created_on", "yesterday")
+            .add("workspace", Json.createObjectBuilder())
+            .build();
+        assertEquals(3,
+            validator.validate(repository, "repository").size());
+
+        JsonObject user = Json.createObjectBuilder()
+            .add("type", "user")
+            .addNull("website")
+            .build();
+        assertTrue(validator.validate(user, "user").isEmpty());
+
+        JsonObject page = Json.createObjectBuilder()
+            .add("size", 1)
+            .build();
+        assertFalse(validator.validatePage(page, "issue").isEmpty());
+    }
+}
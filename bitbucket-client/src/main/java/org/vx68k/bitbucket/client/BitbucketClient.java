@@ -20,44 +20,74 @@
 
 package org.vx68k.bitbucket.client;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 import javax.json.JsonObject;
 import javax.json.bind.JsonbBuilder;
 import javax.ws.rs.NotFoundException;
-import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Form;
 import javax.ws.rs.core.MediaType;
+import org.vx68k.bitbucket.AsyncBitbucket;
 import org.vx68k.bitbucket.Bitbucket;
 import org.vx68k.bitbucket.BitbucketAccount;
 import org.vx68k.bitbucket.BitbucketIssue;
 import org.vx68k.bitbucket.BitbucketPullRequest;
 import org.vx68k.bitbucket.BitbucketRepository;
 import org.vx68k.bitbucket.BitbucketUserAccount;
+import org.vx68k.bitbucket.client.internal.ClientAccount;
 import org.vx68k.bitbucket.client.internal.ClientIssue;
 import org.vx68k.bitbucket.client.internal.ClientRepository;
 import org.vx68k.bitbucket.client.internal.ClientTeamAccount;
 import org.vx68k.bitbucket.client.internal.ClientUserAccount;
+import org.vx68k.bitbucket.client.util.Bulkhead;
+import org.vx68k.bitbucket.client.util.CircuitBreaker;
+import org.vx68k.bitbucket.client.util.ClientMetricsListener;
+import org.vx68k.bitbucket.client.util.ClientTransport;
 import org.vx68k.bitbucket.client.util.JsonStructureMessageBodyReader;
 import org.vx68k.bitbucket.client.util.JsonbMessageBodyReader;
 import org.vx68k.bitbucket.client.util.OAuth2Authenticator;
+import org.vx68k.bitbucket.client.util.RateLimiter;
+import org.vx68k.bitbucket.client.util.ResponseCompression;
+import org.vx68k.bitbucket.client.util.TransportBackend;
 
 /**
  * Bitbucket API client.
+ * <p>Requests can be isolated in named {@link Bulkhead} objects added by
+ * {@link #addBulkhead}, either per call by
+ * {@link RequestOptions#setBulkhead} or for every call of a client view
+ * returned by {@link #withBulkhead}.  A view shares the transport, the
+ * authenticator, the caches and the settings of the client it was made
+ * from.</p>
  *
  * @author Kaz Nishimura
  * @since 6.0
  */
-public class BitbucketClient implements Bitbucket, Serializable
+public class BitbucketClient
+    implements Bitbucket, AsyncBitbucket, Closeable, Serializable
 {
     private static final long serialVersionUID = 2L;
 
@@ -85,24 +115,123 @@ public class BitbucketClient implements Bitbucket, Serializable
     public static final Pattern REPOSITORY_FULL_NAME_REGEXP =
         Pattern.compile("^[^/]+/[^/]+$");
 
+    /**
+     * Default maximum number of concurrent lookups of a bulk lookup.
+     */
+    public static final int DEFAULT_BULK_CONCURRENCY = 16;
+
     /**
      * OAuth 2.0 authenticator.
      */
     private final OAuth2Authenticator oAuth2Authenticator;
 
+    /**
+     * Backend of the shared transport.
+     */
+    private final TransportBackend backend;
+
+    /**
+     * Client that this object is a view of, or {@code null} if this object
+     * is not a view.
+     */
+    private final BitbucketClient parent;
+
+    /**
+     * Name of the bulkhead of this view, or {@code null}.
+     */
+    private final String bulkhead;
+
     /**
      * {@link ClientBuilder} object created in the constructor.
-     * This object is used to build JAX-RS {@link Client} objects.
+     * This object is used to build the JAX-RS client of the transport.
+     */
+    private transient volatile ClientBuilder clientBuilder;
+
+    /**
+     * Shared transport, or {@code null} if not created yet.
+     */
+    private transient volatile ClientTransport transport;
+
+    /**
+     * Maximum number of concurrent lookups of a bulk lookup.
+     */
+    private volatile int bulkConcurrency = DEFAULT_BULK_CONCURRENCY;
+
+    /**
+     * Entity cache, or {@code null} if disabled.
+     */
+    private transient volatile EntityCache entityCache = null;
+
+    /**
+     * Map from the keys of in-flight GET exchanges to their shared results,
+     * or {@code null} if not created yet.
+     */
+    private transient volatile
+        ConcurrentMap<String, CompletableFuture<Object>> pendingGets = null;
+
+    /**
+     * Map from names to bulkheads, or {@code null} if not created yet.
+     */
+    private transient volatile ConcurrentMap<String, Bulkhead> bulkheads =
+        null;
+
+    /**
+     * Page length tuner, or {@code null} if not created yet.
+     */
+    private transient volatile PageLengthTuner pageLengthTuner = null;
+
+    /**
+     * Lock for the lazily created objects.
+     * It is not a monitor so that virtual threads do not pin their carrier
+     * threads while waiting for it.
      */
-    private transient ClientBuilder clientBuilder;
+    private transient Lock lock = new ReentrantLock();
 
     /**
      * Constructs a runtime object with a new {@link ClientBuilder} object.
      */
     public BitbucketClient()
     {
+        this(TransportBackend.JAX_RS);
+    }
+
+    /**
+     * Constructs a runtime object with a transport backend.
+     * {@link TransportBackend#HTTP_CLIENT} multiplexes requests over HTTP/2
+     * connections but requires Java SE 11 or later.
+     *
+     * @param backend a backend of the shared transport
+     * @throws IllegalArgumentException if the backend is not available
+     */
+    public BitbucketClient(final TransportBackend backend)
+    {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend is null");
+        }
+        if (!backend.isAvailable()) {
+            throw new IllegalArgumentException(
+                "Backend is not available: " + backend);
+        }
         this.oAuth2Authenticator =
             new OAuth2Authenticator(API_BASE, TOKEN_ENDPOINT_URI);
+        this.backend = backend;
+        this.parent = null;
+        this.bulkhead = null;
+    }
+
+    /**
+     * Constructs a view of a client with a bulkhead.
+     *
+     * @param parent a client that is not a view
+     * @param bulkhead the name of a bulkhead
+     */
+    private BitbucketClient(final BitbucketClient parent,
+        final String bulkhead)
+    {
+        this.oAuth2Authenticator = parent.oAuth2Authenticator;
+        this.backend = parent.getBackend();
+        this.parent = parent;
+        this.bulkhead = bulkhead;
     }
 
     /**
@@ -115,20 +244,344 @@ public class BitbucketClient implements Bitbucket, Serializable
         return oAuth2Authenticator;
     }
 
+    /**
+     * Returns the backend of the shared transport.
+     *
+     * @return the backend
+     */
+    public final TransportBackend getBackend()
+    {
+        if (backend == null) {
+            // Deserialized from an older version.
+            return TransportBackend.JAX_RS;
+        }
+        return backend;
+    }
+
     protected final ClientBuilder getClientBuilder()
     {
-        synchronized (this) {
-            if (clientBuilder == null) {
-                JsonbBuilder jsonbBuilder = JsonbBuilder.newBuilder();
-                clientBuilder = ClientBuilder.newBuilder()
-                    .register(JsonStructureMessageBodyReader.class)
-                    .register(new JsonbMessageBodyReader<ClientUserAccount>(jsonbBuilder))
-                    .register(new JsonbMessageBodyReader<ClientTeamAccount>(jsonbBuilder))
-                    .register(new JsonbMessageBodyReader<ClientRepository>(jsonbBuilder))
-                    .register(oAuth2Authenticator);
+        if (parent != null) {
+            return parent.getClientBuilder();
+        }
+        ClientBuilder builder = clientBuilder;
+        if (builder == null) {
+            lock.lock();
+            try {
+                builder = clientBuilder;
+                if (builder == null) {
+                    builder = newClientBuilder();
+                    clientBuilder = builder;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Creates a {@link ClientBuilder} object for the shared transport.
+     *
+     * @return a new {@link ClientBuilder} object
+     */
+    private ClientBuilder newClientBuilder()
+    {
+        JsonbBuilder jsonbBuilder = JsonbBuilder.newBuilder();
+        return ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class)
+            .register(new JsonbMessageBodyReader<ClientUserAccount>(jsonbBuilder))
+            .register(new JsonbMessageBodyReader<ClientTeamAccount>(jsonbBuilder))
+            .register(new JsonbMessageBodyReader<ClientRepository>(jsonbBuilder))
+            .register(oAuth2Authenticator);
+    }
+
+    /**
+     * Returns the shared transport.
+     * It will be created on the first call and also be used for token
+     * requests.
+     * <p>The settings of the transport are not serialized.</p>
+     *
+     * @return the shared transport
+     */
+    public final ClientTransport getTransport()
+    {
+        if (parent != null) {
+            return parent.getTransport();
+        }
+        ClientTransport current = transport;
+        if (current == null) {
+            lock.lock();
+            try {
+                current = transport;
+                if (current == null) {
+                    current = new ClientTransport(getClientBuilder(),
+                        getBackend());
+                    oAuth2Authenticator.setTransport(current);
+                    transport = current;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the rate limiter of the shared transport.
+     * Requests are queued rather than failed while the rate limit is reached
+     * or the server throttles them.
+     *
+     * @return the rate limiter
+     * @see ClientTransport#getRateLimiter
+     */
+    public final RateLimiter getRateLimiter()
+    {
+        return getTransport().getRateLimiter();
+    }
+
+    /**
+     * Returns the compressed content negotiation of the shared transport.
+     * It can be disabled for this client by
+     * {@link ResponseCompression#setEnabled}.
+     *
+     * @return the compressed content negotiation
+     * @see ClientTransport#getResponseCompression
+     */
+    public final ResponseCompression getResponseCompression()
+    {
+        return getTransport().getResponseCompression();
+    }
+
+    /**
+     * Returns the circuit breaker of the shared transport.
+     * Requests to an endpoint whose circuit is open fail immediately with a
+     * {@link org.vx68k.bitbucket.client.util.CircuitOpenException}.
+     *
+     * @return the circuit breaker
+     * @see ClientTransport#getCircuitBreaker
+     */
+    public final CircuitBreaker getCircuitBreaker()
+    {
+        return getTransport().getCircuitBreaker();
+    }
+
+    /**
+     * Adds a metrics listener for the exchanges of this client, including
+     * those of paginated lists and token requests.
+     *
+     * @param listener a metrics listener
+     * @see org.vx68k.bitbucket.client.util.LatencyHistogramListener
+     */
+    public final void addClientMetricsListener(
+        final ClientMetricsListener listener)
+    {
+        getTransport().addClientMetricsListener(listener);
+    }
+
+    /**
+     * Removes a metrics listener.
+     *
+     * @param listener a metrics listener
+     */
+    public final void removeClientMetricsListener(
+        final ClientMetricsListener listener)
+    {
+        getTransport().removeClientMetricsListener(listener);
+    }
+
+    /**
+     * Returns the maximum number of concurrent lookups of a bulk lookup.
+     *
+     * @return the maximum number of concurrent lookups
+     */
+    public final int getBulkConcurrency()
+    {
+        if (parent != null) {
+            return parent.getBulkConcurrency();
+        }
+        return bulkConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of concurrent lookups of a bulk lookup.
+     * Lookups are also limited by the connection limits of the transport.
+     *
+     * @param newValue a new value of the maximum number
+     */
+    public final void setBulkConcurrency(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Maximum is not positive");
+        }
+        if (parent != null) {
+            parent.setBulkConcurrency(newValue);
+            return;
+        }
+        bulkConcurrency = newValue;
+    }
+
+    /**
+     * Returns the page length tuner.
+     * It chooses the page length of paginated requests made with
+     * {@link RequestOptions#TUNED_PAGE_LENGTH}.
+     * <p>The page length tuner is not serialized.</p>
+     *
+     * @return the page length tuner
+     */
+    public final PageLengthTuner getPageLengthTuner()
+    {
+        if (parent != null) {
+            return parent.getPageLengthTuner();
+        }
+        PageLengthTuner tuner = pageLengthTuner;
+        if (tuner == null) {
+            lock.lock();
+            try {
+                tuner = pageLengthTuner;
+                if (tuner == null) {
+                    tuner = new PageLengthTuner();
+                    pageLengthTuner = tuner;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return tuner;
+    }
+
+    /**
+     * Returns the entity cache.
+     *
+     * @return the entity cache, or {@code null} if disabled
+     */
+    public final EntityCache getEntityCache()
+    {
+        if (parent != null) {
+            return parent.getEntityCache();
+        }
+        return entityCache;
+    }
+
+    /**
+     * Sets the entity cache.
+     * If an entity cache is set, lookups of accounts, repositories and
+     * issues are served from it without requests while the entities have
+     * not expired.  Entities are cached under their UUIDs and also under
+     * their usernames or full names.
+     * <p>The entity cache is not serialized.</p>
+     *
+     * @param newValue a new value of the entity cache, or {@code null} to
+     * disable it
+     */
+    public final void setEntityCache(final EntityCache newValue)
+    {
+        if (parent != null) {
+            parent.setEntityCache(newValue);
+            return;
+        }
+        entityCache = newValue;
+    }
+
+    /**
+     * Adds a bulkhead replacing any bulkhead with the same name.
+     * Requests already made within the replaced bulkhead are not affected.
+     *
+     * @param newBulkhead a bulkhead
+     */
+    public final void addBulkhead(final Bulkhead newBulkhead)
+    {
+        if (newBulkhead == null) {
+            throw new IllegalArgumentException("Bulkhead is null");
+        }
+        getBulkheads().put(newBulkhead.getName(), newBulkhead);
+    }
+
+    /**
+     * Removes a bulkhead.
+     * Views and options that name the removed bulkhead fail afterwards.
+     *
+     * @param name the name of a bulkhead
+     */
+    public final void removeBulkhead(final String name)
+    {
+        getBulkheads().remove(name);
+    }
+
+    /**
+     * Returns a bulkhead.
+     *
+     * @param name the name of a bulkhead
+     * @return the bulkhead, or {@code null} if not added
+     */
+    public final Bulkhead getBulkhead(final String name)
+    {
+        return getBulkheads().get(name);
+    }
+
+    /**
+     * Returns a view of this client that makes every request within a
+     * bulkhead unless another one is named by the per-call options.
+     *
+     * @param name the name of a bulkhead added by {@link #addBulkhead}, or
+     * {@code null} for no bulkhead
+     * @return a view of this client
+     * @throws IllegalArgumentException if the bulkhead has not been added
+     */
+    public final BitbucketClient withBulkhead(final String name)
+    {
+        BitbucketClient root = this;
+        if (parent != null) {
+            root = parent;
+        }
+        if (name == null) {
+            return root;
+        }
+        if (getBulkhead(name) == null) {
+            throw new IllegalArgumentException("Unknown bulkhead: " + name);
+        }
+        return new BitbucketClient(root, name);
+    }
+
+    /**
+     * Closes the shared transport.
+     * A new transport will be created if this object is used again, but the
+     * lists and cursors created with the closed transport can no longer
+     * fetch pages.  A view does not own the transport, so closing it has no
+     * effect.
+     */
+    @Override
+    public final void close()
+    {
+        if (parent != null) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (transport != null) {
+                transport.close();
+                transport = null;
             }
         }
-        return clientBuilder;
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads this object from a stream creating a new lock.
+     *
+     * @param in an object input stream
+     * @throws IOException if an I/O error occurred
+     * @throws ClassNotFoundException if a class was not found
+     */
+    private void readObject(final ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        lock = new ReentrantLock();
     }
 
     /**
@@ -146,6 +599,8 @@ public class BitbucketClient implements Bitbucket, Serializable
             form.param("redirect_uri", redirectionUri.toString());
         }
 
+        // The token request is made by the shared transport.
+        getTransport();
         oAuth2Authenticator.requestAccessToken(Entity.form(form));
     }
 
@@ -161,6 +616,8 @@ public class BitbucketClient implements Bitbucket, Serializable
         form.param("username", username);
         form.param("password", password);
 
+        // The token request is made by the shared transport.
+        getTransport();
         oAuth2Authenticator.requestAccessToken(Entity.form(form));
     }
 
@@ -211,21 +668,12 @@ public class BitbucketClient implements Bitbucket, Serializable
             templateValues = Collections.emptyMap();
         }
 
-        Client client = getClientBuilder().build();
-        try {
-            WebTarget target = client.target(base);
-            if (path != null) {
-                target = target.path(path);
-                target = target.resolveTemplates(templateValues);
-            }
-            return target.request(mediaTypes).get(runtimeType);
-        }
-        catch (NotFoundException exception) {
-            return null;
-        }
-        finally {
-            client.close();
+        WebTarget target = getTransport().target(base);
+        if (path != null) {
+            target = target.path(path);
+            target = target.resolveTemplates(templateValues);
         }
+        return getTarget(target, runtimeType, null, mediaTypes);
     }
 
     /**
@@ -238,8 +686,27 @@ public class BitbucketClient implements Bitbucket, Serializable
      * @param mediaTypes acceptable MIME media types
      * @return a received resource, or {@code null} not found
      */
+    public final <T> T get(final URI base,
+        final UnaryOperator<WebTarget> modifier, final Class<T> runtimeType,
+        final MediaType... mediaTypes)
+    {
+        return get(base, modifier, runtimeType, null, mediaTypes);
+    }
+
+    /**
+     * Gets a resource from a REST API with per-call options.
+     *
+     * @param <T> the return type
+     * @param base a base URI, or {@code null} for the Bitbucket Cloud REST API
+     * @param modifier a function modifies the {@link WebTarget} instance
+     * @param runtimeType the type of the resource to be returned
+     * @param options per-call options, or {@code null} for the defaults
+     * @param mediaTypes acceptable MIME media types
+     * @return a received resource, or {@code null} not found
+     */
     public final <T> T get(URI base, final UnaryOperator<WebTarget> modifier,
-        final Class<T> runtimeType, MediaType... mediaTypes)
+        final Class<T> runtimeType, final RequestOptions options,
+        MediaType... mediaTypes)
     {
         if (base == null) {
             base = API_BASE;
@@ -248,76 +715,300 @@ public class BitbucketClient implements Bitbucket, Serializable
             mediaTypes = new MediaType[] {MediaType.APPLICATION_JSON_TYPE};
         }
 
-        Client client = getClientBuilder().build();
-        try {
-            WebTarget target = client.target(base);
-            if (modifier != null) {
-                target = modifier.apply(target);
-            }
-            return target.request(mediaTypes).get(runtimeType);
-        }
-        catch (NotFoundException exception) {
-            return null;
-        }
-        finally {
-            client.close();
+        WebTarget target = getTransport().target(base);
+        if (modifier != null) {
+            target = modifier.apply(target);
         }
+        target = project(target, options);
+        return getTarget(target, runtimeType, options, mediaTypes);
     }
 
-    public final <T> List<T> getList(URI base,
-        final UnaryOperator<WebTarget> modifier, final Class<? extends T> type)
+    /**
+     * Gets a resource from a target.
+     * Unless coalescing is disabled by the options, identical concurrent
+     * requests share one exchange and each caller receives its own copy of
+     * the resource.
+     *
+     * @param <T> the return type
+     * @param target a target obtained from the transport
+     * @param runtimeType the type of the resource to be returned
+     * @param options per-call options, or {@code null} for the defaults
+     * @param accepted acceptable MIME media types
+     * @return a received resource, or {@code null} not found
+     */
+    private <T> T getTarget(final WebTarget target,
+        final Class<T> runtimeType, final RequestOptions options,
+        final MediaType[] accepted)
     {
-        if (base == null) {
-            base = API_BASE;
+        Bulkhead selected = bulkheadOf(options);
+        Supplier<T> exchange = () -> {
+            try {
+                return markLoaded(getTransport().invoke(target,
+                    (t) -> t.request(accepted).get(runtimeType), selected),
+                    options);
+            }
+            catch (NotFoundException exception) {
+                return null;
+            }
+        };
+        if (options != null && !options.isCoalescing()) {
+            return exchange.get();
         }
 
-        URI uri;
-        Client client = getClientBuilder().build();
-        try {
-            WebTarget target = client.target(base);
-            if (modifier != null) {
-                target = modifier.apply(target);
+        String key = exchangeKey(target, runtimeType, accepted, selected);
+        CompletableFuture<Object> shared = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight =
+            getPendingGets().putIfAbsent(key, shared);
+        if (inFlight == null) {
+            try {
+                shared.complete(exchange.get());
             }
-            uri = target.getUri();
-        }
-        finally {
-            client.close();
+            catch (final Throwable e) {
+                // Errors must also reach the callers waiting for this one.
+                shared.completeExceptionally(e);
+            }
+            finally {
+                getPendingGets().remove(key, shared);
+            }
+            inFlight = shared;
         }
 
-        return new PaginatedList<>(getClientBuilder(), uri, type);
-    }
-
-    /**
-     * Makes a (@code POST} request to a URI.
-     *
-     * @param uri a URI
-     * @param entity an entity to post
-     * @return a JSON object
-     */
-    public final JsonObject post(final URI uri, final Entity<?> entity)
-    {
-        Client client = getClientBuilder().build();
         try {
-            return client.target(uri).request()
-                .accept(MediaType.APPLICATION_JSON)
-                .post(entity, JsonObject.class);
+            return copyOf(runtimeType.cast(inFlight.join()));
         }
-        finally {
-            client.close();
+        catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
         }
     }
 
     /**
-     * {@inheritDoc}
-     * <p>This implementation gets the user resource remotely from Bitbucket
-     * Cloud.</p>
+     * Gets a resource from a REST API asynchronously.
+     *
+     * @param <T> the type of the resource
+     * @param base a base URI, or {@code null} for the Bitbucket Cloud REST API
+     * @param modifier a function modifies the {@link WebTarget} instance
+     * @param runtimeType the type of the resource to be returned
+     * @param mediaTypes acceptable MIME media types
+     * @return a future of the received resource, or of {@code null} if not
+     * found
      */
-    @Override
-    public final BitbucketUserAccount getUserAccount(final String name)
+    public final <T> CompletableFuture<T> getAsync(final URI base,
+        final UnaryOperator<WebTarget> modifier, final Class<T> runtimeType,
+        final MediaType... mediaTypes)
     {
-        Map<String, Object> values = Collections.singletonMap("name", name);
-
-        return get(null, "/2.0/users/{name}", values, ClientUserAccount.class);
+        return getAsync(base, modifier, runtimeType, null, mediaTypes);
+    }
+
+    /**
+     * Gets a resource from a REST API asynchronously with per-call options.
+     * Unless coalescing is disabled by the options, identical concurrent
+     * requests share one exchange and each caller receives its own copy of
+     * the resource.
+     *
+     * @param <T> the type of the resource
+     * @param base a base URI, or {@code null} for the Bitbucket Cloud REST API
+     * @param modifier a function modifies the {@link WebTarget} instance
+     * @param runtimeType the type of the resource to be returned
+     * @param options per-call options, or {@code null} for the defaults
+     * @param mediaTypes acceptable MIME media types
+     * @return a future of the received resource, or of {@code null} if not
+     * found
+     */
+    public final <T> CompletableFuture<T> getAsync(URI base,
+        final UnaryOperator<WebTarget> modifier, final Class<T> runtimeType,
+        final RequestOptions options, MediaType... mediaTypes)
+    {
+        if (base == null) {
+            base = API_BASE;
+        }
+        if (mediaTypes != null && mediaTypes.length == 0) {
+            mediaTypes = new MediaType[] {MediaType.APPLICATION_JSON_TYPE};
+        }
+
+        WebTarget baseTarget = getTransport().target(base);
+        if (modifier != null) {
+            baseTarget = modifier.apply(baseTarget);
+        }
+        WebTarget target = project(baseTarget, options);
+
+        MediaType[] accepted = mediaTypes;
+        Bulkhead selected = bulkheadOf(options);
+        Supplier<CompletableFuture<T>> exchange = () -> getTransport()
+            .<T>invokeAsync(target,
+                (t) -> t.request(accepted).rx().get(runtimeType), selected)
+            .handle((value, exception) -> {
+                if (exception != null) {
+                    Throwable cause = exception;
+                    if (cause instanceof CompletionException
+                        && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    if (!(cause instanceof NotFoundException)) {
+                        throw new CompletionException(cause);
+                    }
+                }
+                return markLoaded(value, options);
+            });
+        if (options != null && !options.isCoalescing()) {
+            return exchange.get();
+        }
+
+        String key = exchangeKey(target, runtimeType, accepted, selected);
+        CompletableFuture<Object> shared = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight =
+            getPendingGets().putIfAbsent(key, shared);
+        if (inFlight == null) {
+            CompletableFuture<T> future;
+            try {
+                future = exchange.get();
+            }
+            catch (final RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((value, exception) -> {
+                getPendingGets().remove(key, shared);
+                if (exception != null) {
+                    shared.completeExceptionally(exception);
+                }
+                else {
+                    shared.complete(value);
+                }
+            });
+            inFlight = shared;
+        }
+        return inFlight.thenApply((value) -> copyOf(runtimeType.cast(value)));
+    }
+
+    public final <T> List<T> getList(final URI base,
+        final UnaryOperator<WebTarget> modifier, final Class<? extends T> type)
+    {
+        return getList(base, modifier, type, null);
+    }
+
+    /**
+     * Gets a paginated list from a REST API with per-call options.
+     *
+     * @param <T> the type of the elements
+     * @param base a base URI, or {@code null} for the Bitbucket Cloud REST API
+     * @param modifier a function modifies the {@link WebTarget} instance
+     * @param type the runtime type of the elements
+     * @param options per-call options, or {@code null} for the defaults
+     * @return a paginated list
+     */
+    public final <T> List<T> getList(final URI base,
+        final UnaryOperator<WebTarget> modifier, final Class<? extends T> type,
+        final RequestOptions options)
+    {
+        return newList(base, modifier, type, options);
+    }
+
+    /**
+     * Constructs a paginated list with per-call options.
+     *
+     * @param <T> the type of the elements
+     * @param base a base URI, or {@code null} for the Bitbucket Cloud REST API
+     * @param modifier a function modifies the {@link WebTarget} instance
+     * @param type the runtime type of the elements
+     * @param options per-call options, or {@code null} for the defaults
+     * @return a paginated list
+     */
+    private <T> PaginatedList<T> newList(URI base,
+        final UnaryOperator<WebTarget> modifier, final Class<? extends T> type,
+        final RequestOptions options)
+    {
+        if (base == null) {
+            base = API_BASE;
+        }
+
+        WebTarget target = getTransport().target(base);
+        if (modifier != null) {
+            target = modifier.apply(target);
+        }
+
+        Projection projection = null;
+        if (options != null) {
+            projection = options.getProjection();
+        }
+        PageLengthTuner tuner = tunerOf(options);
+        target = withPageLength(target, options, tuner, projection);
+
+        PaginatedList<T> list = new PaginatedList<>(getTransport(),
+            target.getUri(), type, projection, bulkheadOf(options));
+        list.setPageLengthTuner(tuner);
+        return list;
+    }
+
+    /**
+     * Returns a cursor over the pages of a REST API with per-call options.
+     * Unlike {@link #getList}, the values are not kept by the cursor.
+     *
+     * @param <T> the type of the values
+     * @param base a base URI, or {@code null} for the Bitbucket Cloud REST API
+     * @param modifier a function modifies the {@link WebTarget} instance
+     * @param type the runtime type of the values
+     * @param options per-call options, or {@code null} for the defaults
+     * @return a cursor at the first page
+     */
+    public final <T> PageCursor<T> getPages(URI base,
+        final UnaryOperator<WebTarget> modifier, final Class<? extends T> type,
+        final RequestOptions options)
+    {
+        if (base == null) {
+            base = API_BASE;
+        }
+
+        WebTarget target = getTransport().target(base);
+        if (modifier != null) {
+            target = modifier.apply(target);
+        }
+
+        Projection projection = null;
+        if (options != null) {
+            projection = options.getProjection();
+        }
+        PageLengthTuner tuner = tunerOf(options);
+        target = withPageLength(target, options, tuner, projection);
+
+        PageCursor<T> cursor = new PageCursor<>(getTransport(),
+            target.getUri(), type, projection, bulkheadOf(options));
+        cursor.setPageLengthTuner(tuner);
+        return cursor;
+    }
+
+    /**
+     * Makes a (@code POST} request to a URI.
+     *
+     * @param uri a URI
+     * @param entity an entity to post
+     * @return a JSON object
+     */
+    public final JsonObject post(final URI uri, final Entity<?> entity)
+    {
+        return getTransport().invokeOnce(uri, (target) ->
+            target.request()
+                .accept(MediaType.APPLICATION_JSON)
+                .post(entity, JsonObject.class));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation gets the user resource remotely from Bitbucket
+     * Cloud.</p>
+     */
+    @Override
+    public final BitbucketUserAccount getUserAccount(final String name)
+    {
+        Map<String, Object> values = Collections.singletonMap("name", name);
+
+        return getCached(ClientUserAccount.class, name, () ->
+            get(null, "/2.0/users/{name}", values, ClientUserAccount.class));
     }
 
     /**
@@ -330,21 +1021,20 @@ public class BitbucketClient implements Bitbucket, Serializable
     {
         Map<String, Object> values = Collections.singletonMap("name", name);
 
-        return get(null, "/2.0/teams/{name}", values, ClientTeamAccount.class);
+        return getCached(ClientTeamAccount.class, name, () ->
+            get(null, "/2.0/teams/{name}", values, ClientTeamAccount.class));
     }
 
     @Override
     public final BitbucketRepository getRepository(final String fullName)
     {
-        if (fullName != null
-            && !(REPOSITORY_FULL_NAME_REGEXP.matcher(fullName).matches())) {
-            throw new IllegalArgumentException("Full name is invalid");
-        }
+        checkFullName(fullName);
 
-        return get(API_BASE, (target) ->
-            target.path("/2.0/repositories/{fullName}")
-                .resolveTemplate("fullName", fullName),
-            ClientRepository.class);
+        return getCached(ClientRepository.class, fullName, () ->
+            get(API_BASE, (target) ->
+                target.path("/2.0/repositories/{fullName}")
+                    .resolveTemplate("fullName", fullName),
+                ClientRepository.class));
     }
 
     @Override
@@ -357,16 +1047,14 @@ public class BitbucketClient implements Bitbucket, Serializable
     @Override
     public final BitbucketIssue getIssue(final String fullName, final int id)
     {
-        if (fullName != null
-            && !(REPOSITORY_FULL_NAME_REGEXP.matcher(fullName).matches())) {
-            throw new IllegalArgumentException("Full name is invalid");
-        }
+        checkFullName(fullName);
 
-        return get(API_BASE, (target) ->
-            target.path("/2.0/repositories/{fullName}/issues/{id}")
-                .resolveTemplate("fullName", fullName)
-                .resolveTemplate("id", id),
-            ClientIssue.class);
+        return getCached(ClientIssue.class, issueKey(fullName, id), () ->
+            get(API_BASE, (target) ->
+                target.path("/2.0/repositories/{fullName}/issues/{id}")
+                    .resolveTemplate("fullName", fullName)
+                    .resolveTemplate("id", id),
+                ClientIssue.class));
     }
 
     @Override
@@ -380,11 +1068,47 @@ public class BitbucketClient implements Bitbucket, Serializable
     public final List<BitbucketIssue> getIssues(final String fullName,
         final String filter)
     {
-        if (fullName != null
-            && !(REPOSITORY_FULL_NAME_REGEXP.matcher(fullName).matches())) {
-            throw new IllegalArgumentException("Full name invalid");
-        }
+        return getIssues(fullName, filter, null);
+    }
 
+    /**
+     * Returns a list of issues loading only the properties named by a
+     * projection.
+     *
+     * @param fullName the full name of a repository
+     * @param filter a filter query, or {@code null}
+     * @param projection a projection, or {@code null} for all the properties
+     * @return a list of issues
+     * @see #getIssues(String, String)
+     */
+    public final List<BitbucketIssue> getIssues(final String fullName,
+        final String filter, final Projection projection)
+    {
+        return getIssues(fullName, filter, projection,
+            RequestOptions.DEFAULT_PAGE_LENGTH);
+    }
+
+    /**
+     * Returns a list of issues loading only the properties named by a
+     * projection with a page length.
+     *
+     * @param fullName the full name of a repository
+     * @param filter a filter query, or {@code null}
+     * @param projection a projection, or {@code null} for all the properties
+     * @param pageLength a page length as of
+     * {@link RequestOptions#setPageLength}
+     * @return a list of issues
+     * @see #getIssues(String, String, Projection)
+     */
+    public final List<BitbucketIssue> getIssues(final String fullName,
+        final String filter, final Projection projection,
+        final int pageLength)
+    {
+        checkFullName(fullName);
+
+        RequestOptions options = new RequestOptions();
+        options.setProjection(projection);
+        options.setPageLength(pageLength);
         return getList(API_BASE, (target) -> {
             target = target.path("/2.0/repositories/{fullName}/issues");
             target = target.resolveTemplate("fullName", fullName);
@@ -392,6 +1116,575 @@ public class BitbucketClient implements Bitbucket, Serializable
                 target = target.queryParam("q", filter);
             }
             return target;
-        }, ClientIssue.class);
+        }, ClientIssue.class, options);
+    }
+
+    /**
+     * Returns a cursor over the pages of issues loading only the properties
+     * named by a projection.
+     *
+     * @param fullName the full name of a repository
+     * @param filter a filter query, or {@code null}
+     * @param projection a projection, or {@code null} for all the properties
+     * @return a cursor at the first page
+     * @see #getIssues(String, String, Projection)
+     */
+    public final PageCursor<BitbucketIssue> getIssuePages(
+        final String fullName, final String filter,
+        final Projection projection)
+    {
+        checkFullName(fullName);
+
+        RequestOptions options = new RequestOptions();
+        options.setProjection(projection);
+        return getPages(API_BASE, (target) -> {
+            target = target.path("/2.0/repositories/{fullName}/issues");
+            target = target.resolveTemplate("fullName", fullName);
+            if (filter != null) {
+                target = target.queryParam("q", filter);
+            }
+            return target;
+        }, ClientIssue.class, options);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation gets the user resource remotely from Bitbucket
+     * Cloud.</p>
+     */
+    @Override
+    public final CompletableFuture<BitbucketUserAccount> getUserAccountAsync(
+        final String name)
+    {
+        return getCachedAsync(ClientUserAccount.class, name, () ->
+            getAsync(API_BASE, (target) ->
+                target.path("/2.0/users/{name}").resolveTemplate("name", name),
+                ClientUserAccount.class))
+            .thenApply((account) -> account);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation gets the team resource remotely from Bitbucket
+     * Cloud.</p>
+     */
+    @Override
+    public final CompletableFuture<BitbucketAccount> getTeamAccountAsync(
+        final String name)
+    {
+        return getCachedAsync(ClientTeamAccount.class, name, () ->
+            getAsync(API_BASE, (target) ->
+                target.path("/2.0/teams/{name}").resolveTemplate("name", name),
+                ClientTeamAccount.class))
+            .thenApply((account) -> account);
+    }
+
+    @Override
+    public final CompletableFuture<BitbucketRepository> getRepositoryAsync(
+        final String fullName)
+    {
+        checkFullName(fullName);
+
+        return getCachedAsync(ClientRepository.class, fullName, () ->
+            getAsync(API_BASE, (target) ->
+                target.path("/2.0/repositories/{fullName}")
+                    .resolveTemplate("fullName", fullName),
+                ClientRepository.class))
+            .thenApply((repository) -> repository);
+    }
+
+    @Override
+    public final CompletableFuture<BitbucketIssue> getIssueAsync(
+        final String fullName, final int id)
+    {
+        checkFullName(fullName);
+
+        return getCachedAsync(ClientIssue.class, issueKey(fullName, id), () ->
+            getAsync(API_BASE, (target) ->
+                target.path("/2.0/repositories/{fullName}/issues/{id}")
+                    .resolveTemplate("fullName", fullName)
+                    .resolveTemplate("id", id),
+                ClientIssue.class))
+            .thenApply((issue) -> issue);
+    }
+
+    @Override
+    public final CompletableFuture<List<BitbucketIssue>> getIssuesAsync(
+        final String fullName, final String filter)
+    {
+        return getIssuesAsync(fullName, filter, null,
+            RequestOptions.DEFAULT_PAGE_LENGTH);
+    }
+
+    /**
+     * Gets a list of issues asynchronously loading only the properties named
+     * by a projection with a page length.
+     * The first page is fetched before the list is completed.
+     *
+     * @param fullName the full name of a repository
+     * @param filter a filter query, or {@code null}
+     * @param projection a projection, or {@code null} for all the properties
+     * @param pageLength a page length as of
+     * {@link RequestOptions#setPageLength}
+     * @return a future list of issues
+     * @see #getIssues(String, String, Projection, int)
+     */
+    public final CompletableFuture<List<BitbucketIssue>> getIssuesAsync(
+        final String fullName, final String filter,
+        final Projection projection, final int pageLength)
+    {
+        checkFullName(fullName);
+
+        RequestOptions options = new RequestOptions();
+        options.setProjection(projection);
+        options.setPageLength(pageLength);
+        PaginatedList<BitbucketIssue> list = newList(API_BASE, (target) -> {
+            target = target.path("/2.0/repositories/{fullName}/issues");
+            target = target.resolveTemplate("fullName", fullName);
+            if (filter != null) {
+                target = target.queryParam("q", filter);
+            }
+            return target;
+        }, ClientIssue.class, options);
+        return list.fetchNextAsync().thenApply((v) -> list);
+    }
+
+    /**
+     * Looks up user accounts in bulk.
+     *
+     * @param names the names of users
+     * @return a map of the user accounts that were found
+     * @see #getUserAccount
+     */
+    public final BulkResult<BitbucketUserAccount> getUserAccounts(
+        final Collection<String> names)
+    {
+        return getAll(names, this::getUserAccountAsync);
+    }
+
+    /**
+     * Looks up team accounts in bulk.
+     *
+     * @param names the names of teams
+     * @return a map of the team accounts that were found
+     * @see #getTeamAccount
+     */
+    public final BulkResult<BitbucketAccount> getTeamAccounts(
+        final Collection<String> names)
+    {
+        return getAll(names, this::getTeamAccountAsync);
+    }
+
+    /**
+     * Looks up repositories in bulk.
+     *
+     * @param fullNames the full names of repositories
+     * @return a map of the repositories that were found
+     * @see #getRepository
+     */
+    public final BulkResult<BitbucketRepository> getRepositories(
+        final Collection<String> fullNames)
+    {
+        return getAll(fullNames, this::getRepositoryAsync);
+    }
+
+    /**
+     * Looks up resources in bulk keeping at most {@link #getBulkConcurrency}
+     * lookups in progress.
+     *
+     * @param <V> the type of the resources
+     * @param names the names of resources
+     * @param lookup an asynchronous lookup function
+     * @return a map of the resources that were found
+     * @throws IllegalArgumentException if {@code names} is {@code null} or
+     * contains {@code null}
+     */
+    private <V> BulkResult<V> getAll(final Collection<String> names,
+        final Function<String, CompletableFuture<V>> lookup)
+    {
+        if (names == null) {
+            throw new IllegalArgumentException("Names are null");
+        }
+        for (String name : names) {
+            if (name == null) {
+                throw new IllegalArgumentException("Name is null");
+            }
+        }
+
+        BulkResult<V> result = new BulkResult<>();
+        int concurrency = getBulkConcurrency();
+        Semaphore window = new Semaphore(concurrency);
+        for (String name : new LinkedHashSet<>(names)) {
+            try {
+                window.acquire();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+
+            CompletableFuture<V> future;
+            try {
+                future = lookup.apply(name);
+            }
+            catch (final RuntimeException e) {
+                window.release();
+                result.addFailure(name, e);
+                continue;
+            }
+            future.whenComplete((value, exception) -> {
+                if (exception != null) {
+                    Throwable cause = exception;
+                    if (cause instanceof CompletionException
+                        && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    result.addFailure(name, cause);
+                }
+                else if (value != null) {
+                    result.addValue(name, value);
+                }
+                window.release();
+            });
+        }
+
+        // Waits for the remaining lookups.
+        window.acquireUninterruptibly(concurrency);
+        return result;
+    }
+
+    /**
+     * Looks up an entity in the entity cache, or gets it and stores it into
+     * the entity cache.
+     *
+     * @param <T> the type of the entity
+     * @param type the type of the entity
+     * @param key the key to look up
+     * @param getter a function to get the entity
+     * @return the entity, or {@code null} if not found
+     */
+    private <T> T getCached(final Class<T> type, final String key,
+        final Supplier<T> getter)
+    {
+        EntityCache cache = getEntityCache();
+        if (cache != null) {
+            T value = cache.get(type, key);
+            if (value != null) {
+                return copyOf(value);
+            }
+        }
+
+        T value = getter.get();
+        if (cache != null && value != null) {
+            putCached(cache, type, key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Looks up an entity in the entity cache, or gets it asynchronously and
+     * stores it into the entity cache.
+     *
+     * @param <T> the type of the entity
+     * @param type the type of the entity
+     * @param key the key to look up
+     * @param getter a function to get the entity asynchronously
+     * @return a future of the entity, or of {@code null} if not found
+     */
+    private <T> CompletableFuture<T> getCachedAsync(final Class<T> type,
+        final String key, final Supplier<CompletableFuture<T>> getter)
+    {
+        EntityCache cache = getEntityCache();
+        if (cache != null) {
+            T value = cache.get(type, key);
+            if (value != null) {
+                return CompletableFuture.completedFuture(copyOf(value));
+            }
+        }
+
+        CompletableFuture<T> future = getter.get();
+        if (cache != null) {
+            future = future.thenApply((value) -> {
+                if (value != null) {
+                    putCached(cache, type, key, value);
+                }
+                return value;
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Adds the {@code fields} query parameter for the projection of options
+     * to a target.
+     *
+     * @param target a target
+     * @param options per-call options, or {@code null}
+     * @return the target with the query parameter if the options have a
+     * projection; the target itself otherwise
+     */
+    private static WebTarget project(final WebTarget target,
+        final RequestOptions options)
+    {
+        if (options == null || options.getProjection() == null) {
+            return target;
+        }
+        return target.queryParam("fields",
+            options.getProjection().toQueryValue());
+    }
+
+    /**
+     * Records the loaded properties of an entity received for the projection
+     * of options.
+     *
+     * @param <T> the type of the entity
+     * @param value an entity, or {@code null}
+     * @param options per-call options, or {@code null}
+     * @return the entity
+     */
+    private static <T> T markLoaded(final T value,
+        final RequestOptions options)
+    {
+        if (options != null && options.getProjection() != null) {
+            PaginatedList.markLoaded(value, options.getProjection());
+        }
+        return value;
+    }
+
+    /**
+     * Returns the map of in-flight GET exchanges.
+     *
+     * @return the map of in-flight GET exchanges
+     */
+    private ConcurrentMap<String, CompletableFuture<Object>> getPendingGets()
+    {
+        if (parent != null) {
+            return parent.getPendingGets();
+        }
+        ConcurrentMap<String, CompletableFuture<Object>> map = pendingGets;
+        if (map == null) {
+            lock.lock();
+            try {
+                map = pendingGets;
+                if (map == null) {
+                    map = new ConcurrentHashMap<>();
+                    pendingGets = map;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns the page length tuner for per-call options.
+     *
+     * @param options per-call options, or {@code null} for the defaults
+     * @return the page length tuner if the page length is tuned, or
+     * {@code null}
+     */
+    private PageLengthTuner tunerOf(final RequestOptions options)
+    {
+        if (options != null
+            && options.getPageLength() == RequestOptions.TUNED_PAGE_LENGTH) {
+            return getPageLengthTuner();
+        }
+        return null;
+    }
+
+    /**
+     * Adds the {@code pagelen} query parameter for per-call options.
+     *
+     * @param target the target of the first page
+     * @param options per-call options, or {@code null} for the defaults
+     * @param tuner the page length tuner if the page length is tuned, or
+     * {@code null}
+     * @param projection a projection of the values, or {@code null}
+     * @return the target with the page length
+     */
+    private static WebTarget withPageLength(final WebTarget target,
+        final RequestOptions options, final PageLengthTuner tuner,
+        final Projection projection)
+    {
+        int pageLength = RequestOptions.DEFAULT_PAGE_LENGTH;
+        if (tuner != null) {
+            pageLength = tuner.getPageLength(target.getUri(), projection);
+        }
+        else if (options != null) {
+            pageLength = options.getPageLength();
+        }
+        if (pageLength > 0) {
+            return target.queryParam("pagelen", pageLength);
+        }
+        return target;
+    }
+
+    /**
+     * Returns the map of bulkheads.
+     *
+     * @return the map of bulkheads
+     */
+    private ConcurrentMap<String, Bulkhead> getBulkheads()
+    {
+        if (parent != null) {
+            return parent.getBulkheads();
+        }
+        ConcurrentMap<String, Bulkhead> map = bulkheads;
+        if (map == null) {
+            lock.lock();
+            try {
+                map = bulkheads;
+                if (map == null) {
+                    map = new ConcurrentHashMap<>();
+                    bulkheads = map;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns the bulkhead for requests made with per-call options.
+     *
+     * @param options per-call options, or {@code null}
+     * @return the bulkhead named by the options or by this view, or
+     * {@code null} if none is named
+     * @throws IllegalArgumentException if the named bulkhead has not been
+     * added
+     */
+    private Bulkhead bulkheadOf(final RequestOptions options)
+    {
+        String name = bulkhead;
+        if (options != null && options.getBulkhead() != null) {
+            name = options.getBulkhead();
+        }
+        if (name == null) {
+            return null;
+        }
+        Bulkhead value = getBulkheads().get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown bulkhead: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the key of a GET exchange, which identifies the URI, the result
+     * type, the acceptable media types and the bulkhead.
+     *
+     * @param target a target
+     * @param runtimeType the type of the resource
+     * @param accepted acceptable MIME media types
+     * @param bulkhead the bulkhead of the exchange, or {@code null}
+     * @return the key of the exchange
+     */
+    private static String exchangeKey(final WebTarget target,
+        final Class<?> runtimeType, final MediaType[] accepted,
+        final Bulkhead bulkhead)
+    {
+        String key = target.getUri() + " " + runtimeType.getName() + " "
+            + Arrays.toString(accepted);
+        if (bulkhead != null) {
+            key += " " + bulkhead.getName();
+        }
+        return key;
+    }
+
+    /**
+     * Stores a copy of an entity into an entity cache.
+     *
+     * @param <T> the type of the entity
+     * @param cache an entity cache
+     * @param type the type of the entity
+     * @param key the key the entity was looked up with
+     * @param value the entity
+     */
+    private static <T> void putCached(final EntityCache cache,
+        final Class<T> type, final String key, final T value)
+    {
+        if (value instanceof ClientAccount) {
+            ClientAccount account = (ClientAccount) value;
+            if (account.getUuid() != null) {
+                cache.put(type, copyOf(value), uuidKey(account.getUuid()),
+                    account.getUsername(), key);
+                return;
+            }
+        }
+        else if (value instanceof ClientRepository) {
+            ClientRepository repository = (ClientRepository) value;
+            if (repository.getUuid() != null) {
+                cache.put(type, copyOf(value),
+                    uuidKey(repository.getUuid()), repository.getFullName(),
+                    key);
+                return;
+            }
+        }
+        cache.put(type, copyOf(value), key);
+    }
+
+    /**
+     * Returns the cache key of a UUID, which is the form Bitbucket Cloud
+     * accepts in place of a name.
+     *
+     * @param uuid a UUID
+     * @return the UUID enclosed in braces
+     */
+    private static String uuidKey(final UUID uuid)
+    {
+        return "{" + uuid + "}";
+    }
+
+    /**
+     * Returns a defensive copy of an entity.
+     *
+     * @param <T> the type of the entity
+     * @param value an entity
+     * @return a copy of the entity if it is mutable; the entity itself
+     * otherwise
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copyOf(final T value)
+    {
+        if (value instanceof ClientAccount) {
+            return (T) ((ClientAccount) value).copy();
+        }
+        if (value instanceof ClientRepository) {
+            return (T) new ClientRepository((ClientRepository) value);
+        }
+        if (value instanceof ClientIssue) {
+            return (T) new ClientIssue((ClientIssue) value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the entity cache key of an issue.
+     *
+     * @param fullName the full name of a repository
+     * @param id an issue identifier
+     * @return the key of the issue
+     */
+    private static String issueKey(final String fullName, final int id)
+    {
+        return fullName + "/issues/" + id;
+    }
+
+    /**
+     * Checks the full name of a repository.
+     *
+     * @param fullName the full name of a repository, or {@code null}
+     * @throws IllegalArgumentException if the full name is invalid
+     */
+    private static void checkFullName(final String fullName)
+    {
+        if (fullName != null
+            && !(REPOSITORY_FULL_NAME_REGEXP.matcher(fullName).matches())) {
+            throw new IllegalArgumentException("Full name is invalid");
+        }
     }
 }
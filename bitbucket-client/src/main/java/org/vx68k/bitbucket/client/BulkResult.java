@@ -0,0 +1,139 @@
+/*
+ * BulkResult.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Result of a bulk lookup.
+ * This map contains the resources that were found, keyed by the names they
+ * were looked up with.  Names of resources that were not found are missing
+ * from this map, and names whose lookups failed are reported by
+ * {@link #getFailures}.
+ * <p>This map is not modifiable.</p>
+ *
+ * @author Kaz Nishimura
+ * @param <V> the type of the resources
+ * @since 6.0
+ */
+public class BulkResult<V> extends AbstractMap<String, V>
+{
+    /**
+     * Resources that were found.
+     */
+    private final Map<String, V> values = new ConcurrentHashMap<>();
+
+    /**
+     * Exceptions of the lookups that failed.
+     */
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty result.
+     */
+    protected BulkResult()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Adds a resource that was found.
+     *
+     * @param name the name of the resource
+     * @param value the resource
+     */
+    protected final void addValue(final String name, final V value)
+    {
+        values.put(name, value);
+    }
+
+    /**
+     * Adds a failure of a lookup.
+     *
+     * @param name the name of the resource
+     * @param exception the exception of the lookup
+     */
+    protected final void addFailure(final String name,
+        final Throwable exception)
+    {
+        failures.put(name, exception);
+    }
+
+    /**
+     * Returns the exceptions of the lookups that failed.
+     *
+     * @return an unmodifiable map of the exceptions keyed by the names
+     */
+    public final Map<String, Throwable> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Returns {@code true} if any lookup failed.
+     *
+     * @return {@code true} if any lookup failed; {@code false} otherwise
+     */
+    public final boolean hasFailures()
+    {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final V get(final Object key)
+    {
+        return values.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean containsKey(final Object key)
+    {
+        return values.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int size()
+    {
+        return values.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Set<Map.Entry<String, V>> entrySet()
+    {
+        return Collections.unmodifiableMap(values).entrySet();
+    }
+}
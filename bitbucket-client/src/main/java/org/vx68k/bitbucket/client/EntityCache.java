@@ -0,0 +1,415 @@
+/*
+ * EntityCache.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.lang.ref.SoftReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of entities received from Bitbucket Cloud.
+ * <p>Each entity is stored under a primary key, typically the string form
+ * of its UUID, and may also be found by secondary keys such as a username or
+ * the full name of a repository.  Keys are scoped by the type of the
+ * entities so that, for example, a team account never satisfies a lookup
+ * for a user account.</p>
+ * <p>Entities expire after the time to live of their types, and the least
+ * recently used ones are evicted when the number of entities exceeds its
+ * bound.  If soft values are enabled, entities are held by soft references
+ * so that they can be reclaimed under memory pressure.</p>
+ * <p>The cache stores the given objects as they are; callers should store
+ * and return copies if the objects are mutable.  Instances of this class are
+ * thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class EntityCache
+{
+    /**
+     * Default maximum number of entities.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * Default time to live of entities.
+     */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    /**
+     * Maximum number of entities.
+     */
+    private final int maxEntries;
+
+    /**
+     * Time to live of entities for each type.
+     */
+    private final Map<Class<?>, Duration> timesToLive =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Default time to live of entities.
+     */
+    private volatile Duration defaultTimeToLive = DEFAULT_TIME_TO_LIVE;
+
+    /**
+     * Indicates whether entities are held by soft references.
+     */
+    private volatile boolean softValues = false;
+
+    /**
+     * Entries in access order keyed by their primary keys.
+     */
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<>(16, 0.75F, true);
+
+    /**
+     * Primary keys keyed by secondary keys.
+     */
+    private final Map<String, String> aliases = new HashMap<>();
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    private long evictionCount = 0;
+
+    private long expirationCount = 0;
+
+    /**
+     * Constructs a cache with the default maximum number of entities.
+     */
+    public EntityCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructs a cache.
+     *
+     * @param maxEntries the maximum number of entities
+     */
+    public EntityCache(final int maxEntries)
+    {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum is not positive");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the maximum number of entities.
+     *
+     * @return the maximum number of entities
+     */
+    public final int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the time to live of entities of a type.
+     *
+     * @param type a type of entities
+     * @return the time to live
+     */
+    public final Duration getTimeToLive(final Class<?> type)
+    {
+        return timesToLive.getOrDefault(type, defaultTimeToLive);
+    }
+
+    /**
+     * Sets the time to live of entities of a type.
+     * The new value takes effect on entities stored after this call.
+     *
+     * @param type a type of entities, or {@code null} for the default
+     * @param newValue a new value of the time to live
+     */
+    public final void setTimeToLive(final Class<?> type,
+        final Duration newValue)
+    {
+        if (newValue == null || newValue.isNegative()) {
+            throw new IllegalArgumentException("Time to live is invalid");
+        }
+        if (type == null) {
+            defaultTimeToLive = newValue;
+        }
+        else {
+            timesToLive.put(type, newValue);
+        }
+    }
+
+    /**
+     * Returns {@code true} if entities are held by soft references.
+     *
+     * @return {@code true} if soft values are enabled; {@code false}
+     * otherwise
+     */
+    public final boolean isSoftValues()
+    {
+        return softValues;
+    }
+
+    /**
+     * Sets whether entities are held by soft references.
+     * The new value takes effect on entities stored after this call.
+     *
+     * @param newValue {@code true} to enable soft values; {@code false}
+     * otherwise
+     */
+    public final void setSoftValues(final boolean newValue)
+    {
+        softValues = newValue;
+    }
+
+    /**
+     * Returns an entity.
+     *
+     * @param <T> the type of the entity
+     * @param type the type of the entity
+     * @param key a primary or secondary key
+     * @return the entity, or {@code null} if not cached
+     */
+    public final synchronized <T> T get(final Class<T> type,
+        final String key)
+    {
+        String scopedKey = scope(type, key);
+        String primaryKey = aliases.getOrDefault(scopedKey, scopedKey);
+        Entry entry = entries.get(primaryKey);
+        if (entry != null) {
+            Object value = entry.getValue();
+            if (value == null) {
+                removeEntry(primaryKey);
+                evictionCount++;
+            }
+            else if (System.nanoTime() - entry.expiration > 0) {
+                removeEntry(primaryKey);
+                expirationCount++;
+            }
+            else {
+                hitCount++;
+                return type.cast(value);
+            }
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Stores an entity.
+     * Any entities previously stored under the same keys are replaced.
+     *
+     * @param <T> the type of the entity
+     * @param type the type of the entity
+     * @param value the entity
+     * @param primaryKey the primary key
+     * @param secondaryKeys secondary keys, which may contain {@code null}
+     */
+    public final synchronized <T> void put(final Class<T> type,
+        final T value, final String primaryKey,
+        final String... secondaryKeys)
+    {
+        if (value == null) {
+            throw new IllegalArgumentException("Value is null");
+        }
+
+        String scopedKey = scope(type, primaryKey);
+        removeEntry(aliases.getOrDefault(scopedKey, scopedKey));
+        removeEntry(scopedKey);
+
+        List<String> keys = new ArrayList<>();
+        for (String key : secondaryKeys) {
+            if (key != null) {
+                String alias = scope(type, key);
+                String other = aliases.get(alias);
+                if (other != null && !other.equals(scopedKey)) {
+                    removeEntry(other);
+                }
+                aliases.put(alias, scopedKey);
+                keys.add(alias);
+            }
+        }
+
+        long expiration = System.nanoTime() + getTimeToLive(type).toNanos();
+        entries.put(scopedKey, new Entry(value, softValues, expiration, keys));
+
+        Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && i.hasNext()) {
+            Entry eldest = i.next().getValue();
+            i.remove();
+            eldest.aliases.forEach(aliases::remove);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes an entity.
+     *
+     * @param type the type of the entity
+     * @param key a primary or secondary key
+     */
+    public final synchronized void invalidate(final Class<?> type,
+        final String key)
+    {
+        String scopedKey = scope(type, key);
+        removeEntry(aliases.getOrDefault(scopedKey, scopedKey));
+    }
+
+    /**
+     * Removes all the entities.
+     */
+    public final synchronized void clear()
+    {
+        entries.clear();
+        aliases.clear();
+    }
+
+    /**
+     * Returns the number of entities.
+     *
+     * @return the number of entities including expired ones
+     */
+    public final synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found entities.
+     *
+     * @return the number of hits
+     */
+    public final synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that found no entities.
+     *
+     * @return the number of misses
+     */
+    public final synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entities evicted by the size bound or reclaimed
+     * by the garbage collector.
+     *
+     * @return the number of evictions
+     */
+    public final synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of entities that expired.
+     *
+     * @return the number of expirations
+     */
+    public final synchronized long getExpirationCount()
+    {
+        return expirationCount;
+    }
+
+    /**
+     * Removes an entry and its secondary keys.
+     *
+     * @param primaryKey the scoped primary key of the entry
+     */
+    private void removeEntry(final String primaryKey)
+    {
+        Entry entry = entries.remove(primaryKey);
+        if (entry != null) {
+            entry.aliases.forEach(aliases::remove);
+        }
+    }
+
+    /**
+     * Returns a key scoped by a type.
+     *
+     * @param type a type
+     * @param key a key
+     * @return the scoped key
+     */
+    private static String scope(final Class<?> type, final String key)
+    {
+        return type.getName() + ":" + key;
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Entry
+    {
+        /**
+         * Strongly held value, or {@code null} if held softly.
+         */
+        private final Object value;
+
+        /**
+         * Softly held value, or {@code null} if held strongly.
+         */
+        private final SoftReference<Object> softValue;
+
+        /**
+         * Value of {@link System#nanoTime} when this entry expires.
+         */
+        private final long expiration;
+
+        /**
+         * Scoped secondary keys.
+         */
+        private final List<String> aliases;
+
+        Entry(final Object value, final boolean soft, final long expiration,
+            final List<String> aliases)
+        {
+            if (soft) {
+                this.value = null;
+                this.softValue = new SoftReference<>(value);
+            }
+            else {
+                this.value = value;
+                this.softValue = null;
+            }
+            this.expiration = expiration;
+            this.aliases = aliases;
+        }
+
+        Object getValue()
+        {
+            if (softValue != null) {
+                return softValue.get();
+            }
+            return value;
+        }
+    }
+}
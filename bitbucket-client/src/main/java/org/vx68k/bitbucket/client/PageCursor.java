@@ -0,0 +1,275 @@
+/*
+ * PageCursor.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.net.URI;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import javax.ws.rs.core.MediaType;
+import org.vx68k.bitbucket.client.util.Bulkhead;
+import org.vx68k.bitbucket.client.util.ClientTransport;
+
+/**
+ * Cursor over the pages of a paginated endpoint on Bitbucket Cloud.
+ * <p>Unlike {@link PaginatedList}, a cursor does not keep the values of the
+ * pages it has fetched, so it can traverse large result sets with bounded
+ * memory.  Pages are fetched one at a time in order; a failed fetch can be
+ * retried by fetching the same page again.</p>
+ * <p>Instances of this class are not thread-safe, and at most one page
+ * fetch may be in progress at a time.</p>
+ *
+ * @author Kaz Nishimura
+ * @param <T> the type of the values
+ * @since 6.0
+ */
+public class PageCursor<T>
+{
+    /**
+     * Transport to fetch pages.
+     */
+    private final ClientTransport transport;
+
+    /**
+     * URI of the first page.
+     */
+    private final URI first;
+
+    /**
+     * Runtime type of the values.
+     */
+    private final Class<? extends T> type;
+
+    /**
+     * Projection of the values, or {@code null} for all the properties.
+     */
+    private final Projection projection;
+
+    /**
+     * Bulkhead for the page fetches, or {@code null}.
+     */
+    private final Bulkhead bulkhead;
+
+    /**
+     * Decoder of the pages.
+     */
+    private final PageDecoder<T> decoder;
+
+    /**
+     * URI of the next page, or {@code null} if all the pages were fetched.
+     */
+    private URI next;
+
+    /**
+     * Total number of the values reported by the server, or {@code -1} if
+     * unknown.
+     */
+    private int size = -1;
+
+    /**
+     * Page length reported by the first page, or {@code 0} if unknown.
+     */
+    private int pageLength = 0;
+
+    /**
+     * Number of the page requests.
+     */
+    private int requestCount = 0;
+
+    /**
+     * Page length tuner that observes the page fetches, or {@code null}.
+     */
+    private PageLengthTuner tuner = null;
+
+    /**
+     * Constructs a cursor.
+     *
+     * @param transport a transport to fetch pages
+     * @param first the URI of the first page
+     * @param type the runtime type of the values
+     * @param projection a projection of the values, or {@code null} for all
+     * the properties
+     * @param bulkhead a bulkhead for the page fetches, or {@code null}
+     */
+    public PageCursor(final ClientTransport transport, final URI first,
+        final Class<? extends T> type, final Projection projection,
+        final Bulkhead bulkhead)
+    {
+        if (transport == null) {
+            throw new IllegalArgumentException("Transport is null");
+        }
+        if (first == null) {
+            throw new IllegalArgumentException("URI is null");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("Type is null");
+        }
+        this.transport = transport;
+        this.first = first;
+        this.type = type;
+        this.projection = projection;
+        this.bulkhead = bulkhead;
+        this.decoder = new PageDecoder<>(type, projection);
+        this.next = first;
+    }
+
+    /**
+     * Returns a new cursor at the first page with the same settings.
+     *
+     * @return a new cursor
+     */
+    public final PageCursor<T> restart()
+    {
+        PageCursor<T> cursor = new PageCursor<>(transport, first, type,
+            projection, bulkhead);
+        cursor.setPageLengthTuner(tuner);
+        return cursor;
+    }
+
+    /**
+     * Returns {@code true} if there are pages that have not been fetched.
+     *
+     * @return {@code true} if there are more pages; {@code false} otherwise
+     */
+    public final boolean hasNext()
+    {
+        return next != null;
+    }
+
+    /**
+     * Returns the total number of the values reported by the server.
+     *
+     * @return the total number of the values, or {@code -1} if unknown
+     */
+    public final int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the page length reported by the server.
+     *
+     * @return the page length, or {@code 0} if unknown
+     */
+    public final int getPageLength()
+    {
+        return pageLength;
+    }
+
+    /**
+     * Returns the number of the page requests made by this cursor.
+     * A cursor makes a single traversal, and {@link #restart} returns a new
+     * cursor with its own count.  Requests that failed, including those
+     * whose responses could not be decoded, are not counted.
+     *
+     * @return the number of the page requests
+     */
+    public final int getRequestCount()
+    {
+        return requestCount;
+    }
+
+    /**
+     * Sets the page length tuner that observes the page fetches.
+     *
+     * @param newValue a page length tuner, or {@code null}
+     */
+    final void setPageLengthTuner(final PageLengthTuner newValue)
+    {
+        tuner = newValue;
+    }
+
+    /**
+     * Fetches the next page.
+     *
+     * @return a list of the values of the page
+     * @throws NoSuchElementException if all the pages were fetched
+     */
+    public final List<T> next()
+    {
+        checkNext();
+        PageTimer timer = new PageTimer();
+        return advance(transport.invoke(
+            PaginatedList.pageTarget(transport, next, projection),
+            timer.timed((target) ->
+                target.request(MediaType.APPLICATION_JSON_TYPE)
+                    .get(String.class)), bulkhead), timer);
+    }
+
+    /**
+     * Fetches the next page asynchronously.
+     * This cursor must not be used until the returned future is completed.
+     *
+     * @return a future of a list of the values of the page
+     * @throws NoSuchElementException if all the pages were fetched
+     */
+    public final CompletableFuture<List<T>> nextAsync()
+    {
+        checkNext();
+        PageTimer timer = new PageTimer();
+        return transport.<String>invokeAsync(
+            PaginatedList.pageTarget(transport, next, projection),
+            timer.<String>timedAsync((target) ->
+                target.request(MediaType.APPLICATION_JSON_TYPE).rx()
+                    .get(String.class)), bulkhead)
+            .thenApply((body) -> advance(body, timer));
+    }
+
+    /**
+     * Checks if there are pages that have not been fetched.
+     *
+     * @throws NoSuchElementException if all the pages were fetched
+     */
+    private void checkNext()
+    {
+        if (next == null) {
+            throw new NoSuchElementException("No more pages");
+        }
+    }
+
+    /**
+     * Moves this cursor past a fetched page.
+     * The page is recorded on the page length tuner only if its exchange
+     * was made once, without being retried or requeued.
+     *
+     * @param body the JSON text of the page
+     * @param timer the timer of the exchange of the page
+     * @return a list of the values of the page
+     */
+    private List<T> advance(final String body, final PageTimer timer)
+    {
+        PageDecoder.Page<T> page = decoder.decode(body);
+        requestCount += 1;
+        long nanos = timer.getNanos();
+        if (tuner != null && nanos >= 0) {
+            tuner.record(first, projection, page.getValues().size(),
+                body.length(), nanos);
+        }
+        if (size < 0) {
+            size = page.getSize();
+        }
+        if (pageLength == 0) {
+            pageLength = page.getPageLength();
+        }
+        next = page.getNext();
+        return page.getValues();
+    }
+}
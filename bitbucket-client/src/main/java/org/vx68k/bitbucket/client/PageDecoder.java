@@ -0,0 +1,632 @@
+/*
+ * PageDecoder.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbException;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * Decoder of the pages of paginated endpoints on Bitbucket Cloud.
+ * <p>A page is decoded by a {@link JsonParser} object that picks up the
+ * {@code size}, {@code page}, {@code pagelen} and {@code next} properties
+ * without building a JSON object model of the page.  How each element of
+ * {@code values} is bound depends on the JSON-B implementation:</p>
+ * <ul>
+ * <li>If it is Yasson, which can bind a value from a {@link JsonParser}
+ * object, each element is bound directly from the parser of the page, so
+ * the page is parsed only once.</li>
+ * <li>Otherwise, each element is skipped by the parser and then bound from
+ * its own slice of the characters of the page, so the characters of the
+ * elements are parsed twice.  If the parser does not report the stream
+ * offsets of the elements, they are bound through their object models
+ * instead.</li>
+ * </ul>
+ * <p>Instances of this class are thread-safe.  All of them share one
+ * {@link Jsonb} object, which lives as long as this class.</p>
+ *
+ * @author Kaz Nishimura
+ * @param <T> the type of the values
+ * @since 6.0
+ */
+public final class PageDecoder<T>
+{
+    /**
+     * Factory of JSON parsers shared by all the decoders.
+     */
+    private static final JsonParserFactory PARSER_FACTORY =
+        Json.createParserFactory(null);
+
+    /**
+     * Name of the Yasson interface that binds values from JSON parsers.
+     */
+    private static final String YASSON_JSONB = "org.eclipse.yasson.YassonJsonb";
+
+    /**
+     * Runtime type of the values.
+     */
+    private final Class<? extends T> type;
+
+    /**
+     * Projection of the values, or {@code null} for all the properties.
+     */
+    private final Projection projection;
+
+    /**
+     * Indicates whether the values are bound directly from the parser of
+     * the page.
+     */
+    private final boolean parserBinding;
+
+    /**
+     * Constructs a decoder.
+     *
+     * @param type the runtime type of the values
+     * @param projection a projection of the values, or {@code null} for all
+     * the properties
+     */
+    public PageDecoder(final Class<? extends T> type,
+        final Projection projection)
+    {
+        this(type, projection, Binding.FROM_PARSER != null);
+    }
+
+    /**
+     * Constructs a decoder choosing how the values are bound.
+     *
+     * @param type the runtime type of the values
+     * @param projection a projection of the values, or {@code null} for all
+     * the properties
+     * @param parserBinding {@code true} to bind the values directly from the
+     * parser of the page, which requires Yasson
+     */
+    PageDecoder(final Class<? extends T> type, final Projection projection,
+        final boolean parserBinding)
+    {
+        if (type == null) {
+            throw new IllegalArgumentException("Type is null");
+        }
+        if (parserBinding && Binding.FROM_PARSER == null) {
+            throw new IllegalArgumentException(
+                "JSON-B implementation cannot bind from parsers");
+        }
+        this.type = type;
+        this.projection = projection;
+        this.parserBinding = parserBinding;
+    }
+
+    /**
+     * Returns {@code true} if the values are bound directly from the parser
+     * of the page.
+     *
+     * @return {@code true} if bound from the parser; {@code false} if bound
+     * from the slices of the page
+     */
+    boolean isParserBinding()
+    {
+        return parserBinding;
+    }
+
+    /**
+     * Decodes a page.
+     *
+     * @param body the JSON text of a page
+     * @return the decoded page
+     * @throws JsonException if the page could not be decoded
+     */
+    public Page<T> decode(final String body)
+    {
+        char[] chars = null;
+        Reader in;
+        if (parserBinding) {
+            in = new StringReader(body);
+        }
+        else {
+            chars = body.toCharArray();
+            in = new CharArrayReader(chars);
+        }
+
+        List<T> values = Collections.emptyList();
+        int size = -1;
+        int page = 0;
+        int pageLength = 0;
+        URI next = null;
+        try (JsonParser parser = PARSER_FACTORY.createParser(in)) {
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+                throw new JsonException("Page is not a JSON object");
+            }
+
+            Event event = parser.next();
+            while (event == Event.KEY_NAME) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "size":
+                    size = intValue(parser, event, -1);
+                    break;
+                case "page":
+                    page = intValue(parser, event, 0);
+                    break;
+                case "pagelen":
+                    pageLength = intValue(parser, event, 0);
+                    break;
+                case "next":
+                    if (event == Event.VALUE_STRING) {
+                        next = URI.create(parser.getString());
+                    }
+                    break;
+                case "values":
+                    if (event != Event.START_ARRAY) {
+                        skip(parser, event);
+                    }
+                    else if (parserBinding) {
+                        values = bindValues(parser);
+                    }
+                    else {
+                        values = readValues(parser, chars);
+                    }
+                    break;
+                default:
+                    skip(parser, event);
+                    break;
+                }
+                event = parser.next();
+            }
+        }
+        return new Page<>(values, size, page, pageLength, next);
+    }
+
+    /**
+     * Binds the elements of the {@code values} array directly from a
+     * parser.
+     * The parser must be just after the start of the array.
+     *
+     * @param parser a JSON parser
+     * @return a list of the values
+     */
+    private List<T> bindValues(final JsonParser parser)
+    {
+        PushbackParser pushback = new PushbackParser(parser);
+        List<T> values = new ArrayList<>();
+        Event event = parser.next();
+        while (event != Event.END_ARRAY) {
+            // The binding starts from the event just read.
+            pushback.pushBack(event);
+            values.add(PaginatedList.markLoaded(
+                type.cast(Binding.fromParser(pushback, type)), projection));
+            event = parser.next();
+        }
+        return values;
+    }
+
+    /**
+     * Reads the elements of the {@code values} array from the slices of the
+     * characters of a page.
+     * The parser must be just after the start of the array.
+     *
+     * @param parser a JSON parser
+     * @param chars the characters of the page
+     * @return a list of the values
+     */
+    private List<T> readValues(final JsonParser parser, final char[] chars)
+    {
+        List<T> values = new ArrayList<>();
+        Event event = parser.next();
+        while (event != Event.END_ARRAY) {
+            Reader reader = null;
+            if (event == Event.START_OBJECT) {
+                long start = parser.getLocation().getStreamOffset() - 1;
+                if (start >= 0 && start < chars.length
+                    && chars[(int) start] == '{') {
+                    parser.skipObject();
+                    long end = parser.getLocation().getStreamOffset();
+                    reader = new CharArrayReader(chars, (int) start,
+                        (int) (end - start));
+                }
+            }
+            if (reader == null) {
+                JsonValue value = parser.getValue();
+                reader = new StringReader(value.toString());
+            }
+            values.add(PaginatedList.markLoaded(
+                Binding.JSONB.fromJson(reader, type), projection));
+            event = parser.next();
+        }
+        return values;
+    }
+
+    /**
+     * Returns the integer value of a property.
+     *
+     * @param parser a JSON parser
+     * @param event the event of the property value
+     * @param defaultValue the value if the property is not a number
+     * @return the integer value
+     */
+    private static int intValue(final JsonParser parser, final Event event,
+        final int defaultValue)
+    {
+        if (event == Event.VALUE_NUMBER) {
+            return parser.getInt();
+        }
+        skip(parser, event);
+        return defaultValue;
+    }
+
+    /**
+     * Skips a property value.
+     *
+     * @param parser a JSON parser
+     * @param event the event of the property value
+     */
+    private static void skip(final JsonParser parser, final Event event)
+    {
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        }
+        else if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    /**
+     * Holder of the JSON-B object shared by all the decoders.
+     * It is initialized on first use.
+     */
+    private static final class Binding
+    {
+        /**
+         * JSON-B object to bind the values.
+         */
+        static final Jsonb JSONB = JsonbBuilder.create();
+
+        /**
+         * Method of {@link #JSONB} that binds a value from a JSON parser,
+         * or {@code null} if not available.
+         */
+        static final Method FROM_PARSER = parserMethod(JSONB.getClass());
+
+        /**
+         * Does nothing.
+         */
+        private Binding()
+        {
+        }
+
+        /**
+         * Finds the method that binds a value from a JSON parser.
+         * It is only provided by Yasson, which is not a compile-time
+         * dependency.
+         *
+         * @param jsonbClass the class of a JSON-B object
+         * @return the method, or {@code null} if not found
+         */
+        private static Method parserMethod(final Class<?> jsonbClass)
+        {
+            for (Class<?> c = jsonbClass; c != null; c = c.getSuperclass()) {
+                for (Class<?> i : c.getInterfaces()) {
+                    if (i.getName().equals(YASSON_JSONB)) {
+                        try {
+                            return i.getMethod("fromJson", JsonParser.class,
+                                Type.class);
+                        }
+                        catch (final NoSuchMethodException e) {
+                            return null;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Binds a value from a JSON parser.
+         * The next event of the parser must be the start of the value.
+         *
+         * @param parser a JSON parser
+         * @param type the runtime type of the value
+         * @return the bound value
+         * @throws JsonbException if the value could not be bound
+         */
+        static Object fromParser(final JsonParser parser, final Type type)
+        {
+            try {
+                return FROM_PARSER.invoke(JSONB, parser, type);
+            }
+            catch (final InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new JsonbException(cause.getMessage(), cause);
+            }
+            catch (final IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * JSON parser that can push back one event to another parser.
+     * Closing it does not close the other parser.
+     */
+    private static final class PushbackParser implements JsonParser
+    {
+        /**
+         * Parser to delegate to.
+         */
+        private final JsonParser parser;
+
+        /**
+         * Event pushed back, or {@code null} if none.
+         */
+        private Event pushed = null;
+
+        /**
+         * Constructs a parser.
+         *
+         * @param parser a parser to delegate to
+         */
+        PushbackParser(final JsonParser parser)
+        {
+            this.parser = parser;
+        }
+
+        /**
+         * Pushes back an event that has already been read from the other
+         * parser, so that it will be the next event of this parser.
+         *
+         * @param event an event
+         */
+        void pushBack(final Event event)
+        {
+            pushed = event;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return pushed != null || parser.hasNext();
+        }
+
+        @Override
+        public Event next()
+        {
+            if (pushed != null) {
+                Event event = pushed;
+                pushed = null;
+                return event;
+            }
+            return parser.next();
+        }
+
+        @Override
+        public String getString()
+        {
+            return parser.getString();
+        }
+
+        @Override
+        public boolean isIntegralNumber()
+        {
+            return parser.isIntegralNumber();
+        }
+
+        @Override
+        public int getInt()
+        {
+            return parser.getInt();
+        }
+
+        @Override
+        public long getLong()
+        {
+            return parser.getLong();
+        }
+
+        @Override
+        public BigDecimal getBigDecimal()
+        {
+            return parser.getBigDecimal();
+        }
+
+        @Override
+        public JsonLocation getLocation()
+        {
+            return parser.getLocation();
+        }
+
+        @Override
+        public JsonObject getObject()
+        {
+            return parser.getObject();
+        }
+
+        @Override
+        public JsonValue getValue()
+        {
+            return parser.getValue();
+        }
+
+        @Override
+        public JsonArray getArray()
+        {
+            return parser.getArray();
+        }
+
+        @Override
+        public Stream<JsonValue> getArrayStream()
+        {
+            return parser.getArrayStream();
+        }
+
+        @Override
+        public Stream<Map.Entry<String, JsonValue>> getObjectStream()
+        {
+            return parser.getObjectStream();
+        }
+
+        @Override
+        public Stream<JsonValue> getValueStream()
+        {
+            return parser.getValueStream();
+        }
+
+        @Override
+        public void skipArray()
+        {
+            parser.skipArray();
+        }
+
+        @Override
+        public void skipObject()
+        {
+            parser.skipObject();
+        }
+
+        @Override
+        public void close()
+        {
+            // The other parser is closed by its owner.
+        }
+    }
+
+    /**
+     * Decoded page.
+     *
+     * @param <V> the type of the values
+     */
+    public static final class Page<V>
+    {
+        /**
+         * Values of the page.
+         */
+        private final List<V> values;
+
+        /**
+         * Total number of the values reported by the server, or {@code -1}
+         * if unknown.
+         */
+        private final int size;
+
+        /**
+         * Page number, or {@code 0} if unknown.
+         */
+        private final int page;
+
+        /**
+         * Number of the values per page, or {@code 0} if unknown.
+         */
+        private final int pageLength;
+
+        /**
+         * URI of the next page, or {@code null} if this page is the last
+         * one.
+         */
+        private final URI next;
+
+        Page(final List<V> values, final int size, final int page,
+            final int pageLength, final URI next)
+        {
+            this.values = values;
+            this.size = size;
+            this.page = page;
+            this.pageLength = pageLength;
+            this.next = next;
+        }
+
+        /**
+         * Returns the values of the page.
+         *
+         * @return a list of the values
+         */
+        public List<V> getValues()
+        {
+            return values;
+        }
+
+        /**
+         * Returns the total number of the values reported by the server.
+         *
+         * @return the total number of the values, or {@code -1} if unknown
+         */
+        public int getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Returns the page number.
+         *
+         * @return the page number, or {@code 0} if unknown
+         */
+        public int getPage()
+        {
+            return page;
+        }
+
+        /**
+         * Returns the number of the values per page.
+         *
+         * @return the number of the values per page, or {@code 0} if unknown
+         */
+        public int getPageLength()
+        {
+            return pageLength;
+        }
+
+        /**
+         * Returns the URI of the next page.
+         *
+         * @return the URI of the next page, or {@code null} if this page is
+         * the last one
+         */
+        public URI getNext()
+        {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * PageLengthTuner.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tuner of the page length of paginated endpoints.
+ * <p>A tuner keeps estimates of the latency and the payload size of a page
+ * for each endpoint path and projection, updated from the pages fetched with
+ * a tuned page length.  The latency is modeled as a fixed cost per request
+ * plus a cost per value, fitted by exponentially weighted least squares over
+ * the observed pages, so that a short last page, which costs little more
+ * than the fixed cost, does not make the values look slower.  Until pages
+ * of different lengths are observed, the fixed cost is taken as zero.</p>
+ * <p>The page length for the next traversal is the largest one that is
+ * expected to keep a page within {@link #getTargetLatency} and
+ * {@link #getMaxPageChars}, between {@link #MIN_PAGE_LENGTH} and
+ * {@link RequestOptions#MAX_PAGE_LENGTH}.  If the fixed cost alone exceeds
+ * the target latency, no page length can meet it and the page length is
+ * limited by the payload size only, to need the fewest requests.
+ * Projections are tuned separately as they change the payload size per
+ * value.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @see RequestOptions#TUNED_PAGE_LENGTH
+ * @since 6.0
+ */
+public class PageLengthTuner
+{
+    /**
+     * Minimum page length chosen by tuners, which is the default page
+     * length of Bitbucket Cloud.
+     */
+    public static final int MIN_PAGE_LENGTH = 10;
+
+    /**
+     * Default page length used before any pages are observed.
+     */
+    public static final int DEFAULT_INITIAL_PAGE_LENGTH = 50;
+
+    /**
+     * Default target latency of a page.
+     */
+    public static final Duration DEFAULT_TARGET_LATENCY =
+        Duration.ofSeconds(1);
+
+    /**
+     * Default maximum payload size of a page in characters.
+     */
+    public static final int DEFAULT_MAX_PAGE_CHARS = 1 << 20;
+
+    /**
+     * Weight of a new observation in the estimates.
+     */
+    private static final double WEIGHT = 0.25;
+
+    /**
+     * Minimum weighted variance of the observed page lengths to separate the
+     * fixed cost from the cost per value.
+     */
+    private static final double MIN_VARIANCE = 1.0;
+
+    /**
+     * Estimates by the keys of endpoint paths and projections.
+     */
+    private final ConcurrentMap<String, Estimate> estimates =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Page length used before any pages are observed.
+     */
+    private volatile int initialPageLength = DEFAULT_INITIAL_PAGE_LENGTH;
+
+    /**
+     * Target latency of a page.
+     */
+    private volatile Duration targetLatency = DEFAULT_TARGET_LATENCY;
+
+    /**
+     * Maximum payload size of a page.
+     */
+    private volatile int maxPageChars = DEFAULT_MAX_PAGE_CHARS;
+
+    /**
+     * Constructs a tuner with the default settings.
+     */
+    public PageLengthTuner()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Returns the page length used before any pages are observed.
+     *
+     * @return the initial page length
+     */
+    public final int getInitialPageLength()
+    {
+        return initialPageLength;
+    }
+
+    /**
+     * Sets the page length used before any pages are observed.
+     *
+     * @param newValue a new value of the initial page length
+     * @throws IllegalArgumentException if {@code newValue} is out of range
+     */
+    public final void setInitialPageLength(final int newValue)
+    {
+        if (newValue < MIN_PAGE_LENGTH
+            || newValue > RequestOptions.MAX_PAGE_LENGTH) {
+            throw new IllegalArgumentException("Invalid page length");
+        }
+        initialPageLength = newValue;
+    }
+
+    /**
+     * Returns the target latency of a page.
+     *
+     * @return the target latency
+     */
+    public final Duration getTargetLatency()
+    {
+        return targetLatency;
+    }
+
+    /**
+     * Sets the target latency of a page.
+     *
+     * @param newValue a new value of the target latency
+     * @throws IllegalArgumentException if {@code newValue} is {@code null}
+     * or not positive
+     */
+    public final void setTargetLatency(final Duration newValue)
+    {
+        if (newValue == null || newValue.isNegative() || newValue.isZero()) {
+            throw new IllegalArgumentException("Invalid duration");
+        }
+        targetLatency = newValue;
+    }
+
+    /**
+     * Returns the maximum payload size of a page in characters.
+     *
+     * @return the maximum payload size
+     */
+    public final int getMaxPageChars()
+    {
+        return maxPageChars;
+    }
+
+    /**
+     * Sets the maximum payload size of a page in characters.
+     *
+     * @param newValue a new value of the maximum payload size
+     * @throws IllegalArgumentException if {@code newValue} is not positive
+     */
+    public final void setMaxPageChars(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Invalid size");
+        }
+        maxPageChars = newValue;
+    }
+
+    /**
+     * Returns the page length for a traversal of a paginated endpoint.
+     *
+     * @param uri the URI of the first page
+     * @param projection a projection of the values, or {@code null} for all
+     * the properties
+     * @return the page length
+     */
+    public final int getPageLength(final URI uri,
+        final Projection projection)
+    {
+        Estimate estimate = estimates.get(keyOf(uri, projection));
+        if (estimate == null) {
+            return initialPageLength;
+        }
+
+        double pageLength = RequestOptions.MAX_PAGE_LENGTH;
+        double meanValues = estimate.sumValues / estimate.weight;
+        double meanNanos = estimate.sumNanos / estimate.weight;
+        double variance = estimate.sumSquares / estimate.weight
+            - meanValues * meanValues;
+        double fixedNanos = 0.0;
+        double nanosPerValue = meanNanos / meanValues;
+        if (variance >= MIN_VARIANCE) {
+            double covariance = estimate.sumProducts / estimate.weight
+                - meanValues * meanNanos;
+            nanosPerValue = covariance / variance;
+            fixedNanos = Math.max(0.0,
+                meanNanos - nanosPerValue * meanValues);
+        }
+        double target = targetLatency.toNanos();
+        if (nanosPerValue > 0.0 && fixedNanos < target) {
+            pageLength = Math.min(pageLength,
+                (target - fixedNanos) / nanosPerValue);
+        }
+        if (estimate.charsPerValue > 0.0) {
+            pageLength = Math.min(pageLength,
+                maxPageChars / estimate.charsPerValue);
+        }
+        return Math.max(MIN_PAGE_LENGTH, (int) pageLength);
+    }
+
+    /**
+     * Records a fetched page.
+     *
+     * @param uri the URI of the first page
+     * @param projection a projection of the values, or {@code null} for all
+     * the properties
+     * @param values the number of the values in the page
+     * @param chars the payload size of the page in characters
+     * @param nanos the latency of the exchange of the page in nanoseconds,
+     * excluding the time spent waiting for the limits of the transport
+     */
+    final void record(final URI uri, final Projection projection,
+        final int values, final long chars, final long nanos)
+    {
+        if (values <= 0) {
+            return;
+        }
+        Estimate observed = new Estimate(values, nanos,
+            (double) chars / values);
+        estimates.merge(keyOf(uri, projection), observed,
+            (estimate, value) -> estimate.update(value));
+    }
+
+    /**
+     * Discards all the estimates.
+     */
+    public final void reset()
+    {
+        estimates.clear();
+    }
+
+    /**
+     * Returns the key of an endpoint path and a projection.
+     *
+     * @param uri a URI
+     * @param projection a projection, or {@code null}
+     * @return the key
+     */
+    private static String keyOf(final URI uri, final Projection projection)
+    {
+        String key = uri.getRawPath();
+        if (projection != null) {
+            key += "?fields=" + projection.toPageQueryValue();
+        }
+        return key;
+    }
+
+    /**
+     * Estimates of the latency and the payload size of a page.
+     * The latency is kept as exponentially weighted sums of the observed
+     * page lengths and latencies.
+     */
+    private static final class Estimate
+    {
+        /**
+         * Sum of the weights of the observations.
+         */
+        private final double weight;
+
+        /**
+         * Weighted sum of the page lengths.
+         */
+        private final double sumValues;
+
+        /**
+         * Weighted sum of the latencies in nanoseconds.
+         */
+        private final double sumNanos;
+
+        /**
+         * Weighted sum of the squares of the page lengths.
+         */
+        private final double sumSquares;
+
+        /**
+         * Weighted sum of the products of the page lengths and the
+         * latencies.
+         */
+        private final double sumProducts;
+
+        /**
+         * Payload size per value in characters.
+         */
+        private final double charsPerValue;
+
+        /**
+         * Constructs an estimate from a single page.
+         *
+         * @param values the number of the values in the page
+         * @param nanos the latency of the exchange of the page in nanoseconds,
+     * excluding the time spent waiting for the limits of the transport
+         * @param charsPerValue the payload size per value
+         */
+        Estimate(final int values, final long nanos,
+            final double charsPerValue)
+        {
+            this(1.0, values, nanos, (double) values * values,
+                (double) values * nanos, charsPerValue);
+        }
+
+        /**
+         * Constructs an estimate from sums.
+         *
+         * @param weight the sum of the weights
+         * @param sumValues the weighted sum of the page lengths
+         * @param sumNanos the weighted sum of the latencies
+         * @param sumSquares the weighted sum of the squared page lengths
+         * @param sumProducts the weighted sum of the products
+         * @param charsPerValue the payload size per value
+         */
+        private Estimate(final double weight, final double sumValues,
+            final double sumNanos, final double sumSquares,
+            final double sumProducts, final double charsPerValue)
+        {
+            this.weight = weight;
+            this.sumValues = sumValues;
+            this.sumNanos = sumNanos;
+            this.sumSquares = sumSquares;
+            this.sumProducts = sumProducts;
+            this.charsPerValue = charsPerValue;
+        }
+
+        /**
+         * Returns this estimate updated with an observation.
+         *
+         * @param observed an estimate from a single page
+         * @return the updated estimate
+         */
+        Estimate update(final Estimate observed)
+        {
+            // Older observations decay so that the estimate follows changes.
+            double decay = 1.0 - WEIGHT;
+            return new Estimate(decay * weight + observed.weight,
+                decay * sumValues + observed.sumValues,
+                decay * sumNanos + observed.sumNanos,
+                decay * sumSquares + observed.sumSquares,
+                decay * sumProducts + observed.sumProducts,
+                charsPerValue
+                    + WEIGHT * (observed.charsPerValue - charsPerValue));
+        }
+    }
+}
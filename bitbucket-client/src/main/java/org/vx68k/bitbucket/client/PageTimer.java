@@ -0,0 +1,107 @@
+/*
+ * PageTimer.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.ws.rs.client.WebTarget;
+
+/**
+ * Timer of the exchanges of a page fetch.
+ * <p>A timer wraps the call given to a {@link
+ * org.vx68k.bitbucket.client.util.ClientTransport} object, so it measures
+ * only the time the transport spends in the call, excluding the time spent
+ * waiting for the bulkhead, the rate limiter and the connection limits, and
+ * between retries.  It also counts the calls so that a fetch that was
+ * retried or requeued after being throttled can be told apart.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class PageTimer
+{
+    /**
+     * Number of the calls.
+     */
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /**
+     * Duration of the last call in nanoseconds, or {@code -1} if no call
+     * has completed.
+     */
+    private volatile long nanos = -1;
+
+    /**
+     * Returns a call that is timed by this object.
+     *
+     * @param <R> the return type
+     * @param call a function that performs a request on a target
+     * @return the timed function
+     */
+    <R> Function<WebTarget, R> timed(
+        final Function<? super WebTarget, ? extends R> call)
+    {
+        return (target) -> {
+            calls.incrementAndGet();
+            long start = System.nanoTime();
+            R value = call.apply(target);
+            nanos = System.nanoTime() - start;
+            return value;
+        };
+    }
+
+    /**
+     * Returns an asynchronous call that is timed by this object.
+     *
+     * @param <R> the type of the result
+     * @param call a function that starts an asynchronous request on a
+     * target
+     * @return the timed function
+     */
+    <R> Function<WebTarget, CompletionStage<R>> timedAsync(
+        final Function<? super WebTarget,
+            ? extends CompletionStage<R>> call)
+    {
+        return (target) -> {
+            calls.incrementAndGet();
+            long start = System.nanoTime();
+            return call.apply(target).whenComplete((value, exception) -> {
+                nanos = System.nanoTime() - start;
+            });
+        };
+    }
+
+    /**
+     * Returns the latency of the exchange if it was made only once.
+     *
+     * @return the latency in nanoseconds, or {@code -1} if the exchange was
+     * retried or requeued, or has not completed
+     */
+    long getNanos()
+    {
+        if (calls.get() != 1) {
+            return -1;
+        }
+        return nanos;
+    }
+}
@@ -22,19 +22,61 @@ package org.vx68k.bitbucket.client;
 
 import java.net.URI;
 import java.util.AbstractList;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
-import javax.ws.rs.client.Client;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriBuilder;
+import org.vx68k.bitbucket.client.internal.ClientAccount;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+import org.vx68k.bitbucket.client.internal.ClientRepository;
+import org.vx68k.bitbucket.client.util.Bulkhead;
+import org.vx68k.bitbucket.client.util.ClientTransport;
 
 /**
  * Paginated list on Bitbucket Cloud.
+ * <p>Pages are fetched on demand.  A failed page fetch is retried by the
+ * retry policy of the transport, and if it still fails, the exception is
+ * thrown to the caller leaving the pages fetched so far intact, so that the
+ * next access resumes from the failing page.</p>
+ * <p>If the first page tells the page length, the page number and the size
+ * of the list, the other pages are addressed directly by the {@code page}
+ * query parameter, so that accessing any element takes at most one page
+ * fetch after the first page.  Otherwise, pages are fetched sequentially by
+ * following the {@code next} links.  A directly addressed page that comes
+ * back with another page number, or shorter than the size of the list
+ * implies, causes a {@link ProcessingException}.</p>
+ * <p>{@link #prefetchingIterator} and {@link #prefetchingStream} fetch the
+ * following pages in the background while the current page is consumed.
+ * The number of pages fetched ahead starts at one and grows up to the
+ * {@linkplain #getPrefetchDepth prefetch depth} while the consumer has to
+ * wait for pages, and shrinks back while fetched pages are left waiting.</p>
+ * <p>{@link #getPageLength} and {@link #getRequestCount} report the
+ * effective page length and the number of page requests of all the
+ * traversals of this list.</p>
+ * <p>The {@linkplain #spliterator spliterator} of this list fetches pages
+ * lazily and splits along page boundaries, so that a parallel stream can
+ * process pages while others are still being fetched.</p>
  *
  * @author Kaz Nishimura
  * @param <T> the type of the elements
@@ -44,24 +86,91 @@ import javax.ws.rs.core.MediaType;
  */
 public class PaginatedList<T> extends AbstractList<T>
 {
+    /**
+     * Default maximum number of pages fetched ahead.
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 4;
+
+    /**
+     * Transport to fetch pages, or {@code null} if the pages are fetched
+     * with a transport owned by this list.
+     */
+    private final ClientTransport transport;
+
+    /**
+     * JAX-RS client builder for the transport owned by this list, or
+     * {@code null} if the pages are fetched with {@link #transport}.
+     */
     private final ClientBuilder clientBuilder;
 
+    /**
+     * Transport owned by this list, or {@code null} if not created yet or
+     * closed.
+     */
+    private ClientTransport ownedTransport = null;
+
+    /**
+     * Number of the page fetches using {@link #ownedTransport}.
+     */
+    private int ownedUsers = 0;
+
+    /**
+     * Lock for {@link #ownedTransport}.
+     */
+    private final Lock ownedLock = new ReentrantLock();
+
+    /**
+     * URI of the first page.
+     */
+    private final URI first;
+
     /**
      * URI of the next page.
      */
     private URI next;
 
     /**
-     * Runtime type.
+     * Decoder of the pages.
+     */
+    private final PageDecoder<T> decoder;
+
+    /**
+     * Projection of the values, or {@code null} for all the properties.
      */
-    private final Class<? extends T> type;
+    private final Projection projection;
 
-    private final JsonbBuilder jsonbBuilder;
+    /**
+     * Bulkhead for the page fetches, or {@code null}.
+     */
+    private final Bulkhead bulkhead;
+
+    /**
+     * Indicates whether the first page has been added.
+     */
+    private boolean started = false;
+
+    /**
+     * Number of the values per page, or zero if pages are not directly
+     * addressable.
+     */
+    private int pageLength = 0;
+
+    /**
+     * Page number of the first page.
+     */
+    private int firstPage = 1;
 
     /**
-     * List of the known values.
+     * Sparse table of the fetched pages indexed from the first page, used
+     * when pages are directly addressable.
+     * Spliterators of this list may fetch pages on multiple threads.
      */
-    private final List<T> knownValues = new LinkedList<>();
+    private final Map<Integer, List<T>> pages = new ConcurrentHashMap<>();
+
+    /**
+     * List of the known values, used when pages are fetched sequentially.
+     */
+    private final List<T> knownValues = new ArrayList<>();
 
     /**
      * Known size of the list.
@@ -69,8 +178,30 @@ public class PaginatedList<T> extends AbstractList<T>
      */
     private int knownSize = -1;
 
+    /**
+     * Maximum number of pages fetched ahead by prefetching iterators.
+     */
+    private int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+
+    /**
+     * Page length reported by the first page, or {@code 0} if unknown.
+     */
+    private int reportedPageLength = 0;
+
+    /**
+     * Number of the page requests.
+     */
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /**
+     * Page length tuner that observes the page fetches, or {@code null}.
+     */
+    private volatile PageLengthTuner tuner = null;
+
     /**
      * Initializes this object.
+     * The pages are fetched with a transport owned by this list, which is
+     * closed when all the pages have been fetched.
      *
      * @param clientBuilder a JAX-RS client builder object
      * @param next the URI of the first page
@@ -79,52 +210,588 @@ public class PaginatedList<T> extends AbstractList<T>
     public PaginatedList(final ClientBuilder clientBuilder, final URI next,
         final Class<? extends T> type)
     {
+        this(null, clientBuilder, next, type, null, null);
+    }
+
+    /**
+     * Initializes this object with a shared transport.
+     *
+     * @param transport a transport to fetch pages
+     * @param next the URI of the first page
+     * @param type the runtime type of the values
+     */
+    public PaginatedList(final ClientTransport transport, final URI next,
+        final Class<? extends T> type)
+    {
+        this(transport, next, type, null);
+    }
+
+    /**
+     * Initializes this object with a shared transport and a projection of
+     * the values.
+     *
+     * @param transport a transport to fetch pages
+     * @param next the URI of the first page
+     * @param type the runtime type of the values
+     * @param projection a projection of the values, or {@code null} for all
+     * the properties
+     */
+    public PaginatedList(final ClientTransport transport, final URI next,
+        final Class<? extends T> type, final Projection projection)
+    {
+        this(transport, next, type, projection, null);
+    }
+
+    /**
+     * Initializes this object with a shared transport, a projection of the
+     * values and a bulkhead for the page fetches.
+     *
+     * @param transport a transport to fetch pages
+     * @param next the URI of the first page
+     * @param type the runtime type of the values
+     * @param projection a projection of the values, or {@code null} for all
+     * the properties
+     * @param bulkhead a bulkhead for the page fetches, or {@code null}
+     */
+    public PaginatedList(final ClientTransport transport, final URI next,
+        final Class<? extends T> type, final Projection projection,
+        final Bulkhead bulkhead)
+    {
+        this(transport, null, next, type, projection, bulkhead);
+        if (transport == null) {
+            throw new IllegalArgumentException("Transport is null");
+        }
+    }
+
+    private PaginatedList(final ClientTransport transport,
+        final ClientBuilder clientBuilder, final URI next,
+        final Class<? extends T> type, final Projection projection,
+        final Bulkhead bulkhead)
+    {
+        this.transport = transport;
         this.clientBuilder = clientBuilder;
+        this.first = next;
         this.next = next;
-        this.type = type;
-        this.jsonbBuilder = JsonbBuilder.newBuilder();
+        this.projection = projection;
+        this.decoder = new PageDecoder<>(type, projection);
+        this.bulkhead = bulkhead;
     }
 
     /**
-     * Fetches the next page.
+     * Returns the maximum number of pages fetched ahead by prefetching
+     * iterators.
+     *
+     * @return the maximum number of pages fetched ahead
      */
-    protected final void fetchNext()
+    public final int getPrefetchDepth()
+    {
+        return prefetchDepth;
+    }
+
+    /**
+     * Sets the maximum number of pages fetched ahead by prefetching
+     * iterators.
+     * This setting affects iterators created after the call.
+     *
+     * @param prefetchDepth the maximum number of pages fetched ahead
+     * @throws IllegalArgumentException if {@code prefetchDepth} is less than
+     * one
+     */
+    public final void setPrefetchDepth(final int prefetchDepth)
+    {
+        if (prefetchDepth < 1) {
+            throw new IllegalArgumentException(
+                "Prefetch depth must be positive");
+        }
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Returns the page length reported by the first page.
+     * The first page is not fetched by this method.
+     *
+     * @return the page length, or {@code 0} if unknown
+     */
+    public final int getPageLength()
+    {
+        return reportedPageLength;
+    }
+
+    /**
+     * Returns the number of the page requests made by this list.
+     * The count is cumulative over all the traversals of this list, which
+     * share the pages it has fetched.  Requests that failed, including those
+     * whose responses could not be decoded, are not counted.
+     *
+     * @return the number of the page requests
+     */
+    public final int getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    /**
+     * Sets the page length tuner that observes the page fetches.
+     *
+     * @param newValue a page length tuner, or {@code null}
+     */
+    final void setPageLengthTuner(final PageLengthTuner newValue)
+    {
+        tuner = newValue;
+    }
+
+    /**
+     * Returns the transport for a page fetch.
+     * If the transport is owned by this list, it is created if necessary
+     * and must be released by {@link #releaseTransport} after the fetch.
+     *
+     * @return the transport
+     */
+    private ClientTransport acquireTransport()
+    {
+        if (transport != null) {
+            return transport;
+        }
+        ownedLock.lock();
+        try {
+            if (ownedTransport == null) {
+                ownedTransport = new ClientTransport(clientBuilder);
+            }
+            ownedUsers += 1;
+            return ownedTransport;
+        }
+        finally {
+            ownedLock.unlock();
+        }
+    }
+
+    /**
+     * Releases the transport of a page fetch.
+     */
+    private void releaseTransport()
+    {
+        if (transport == null) {
+            ownedLock.lock();
+            try {
+                ownedUsers -= 1;
+            }
+            finally {
+                ownedLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Closes the transport owned by this list if all the pages have been
+     * fetched and no fetches are in progress.
+     * If a page must be fetched again, a new transport will be created.
+     */
+    private void closeIfComplete()
+    {
+        if (transport != null) {
+            return;
+        }
+        ownedLock.lock();
+        try {
+            if (ownedTransport != null && ownedUsers == 0 && isComplete()) {
+                ownedTransport.close();
+                ownedTransport = null;
+            }
+        }
+        finally {
+            ownedLock.unlock();
+        }
+    }
+
+    /**
+     * Returns {@code true} if all the pages have been fetched.
+     *
+     * @return {@code true} if complete; {@code false} otherwise
+     */
+    private boolean isComplete()
+    {
+        if (!started) {
+            return false;
+        }
+        if (pageLength == 0) {
+            return next == null;
+        }
+        return pages.size() >= (knownSize + pageLength - 1) / pageLength;
+    }
+
+    /**
+     * Returns the transport owned by this list.
+     *
+     * @return the transport owned by this list, or {@code null} if not
+     * created yet or closed
+     */
+    final ClientTransport getOwnedTransport()
     {
-        JsonObject json;
-        Client client = clientBuilder.build();
+        ownedLock.lock();
         try {
-            WebTarget target = client.target(next);
-            json = target.request(MediaType.APPLICATION_JSON_TYPE)
-                .get(JsonObject.class);
+            return ownedTransport;
         }
         finally {
-            client.close();
+            ownedLock.unlock();
         }
+    }
 
-        if (knownSize < 0) {
-            knownSize = json.getInt("size", -1);
+    /**
+     * Requests a page.
+     *
+     * @param uri the URI of the page
+     * @return the decoded page
+     */
+    private PageDecoder.Page<T> request(final URI uri)
+    {
+        ClientTransport current = acquireTransport();
+        try {
+            return request(current, uri);
         }
-        try (Jsonb jsonb = jsonbBuilder.build()) {
-            JsonArray values = json.getJsonArray("values");
-            values.stream()
-                .map((t) -> jsonb.fromJson(jsonb.toJson(t), type))
-                .forEachOrdered(knownValues::add);
+        finally {
+            releaseTransport();
+        }
+    }
+
+    /**
+     * Requests a page with a transport.
+     *
+     * @param transport a transport to fetch the page
+     * @param uri the URI of the page
+     * @return the decoded page
+     */
+    private PageDecoder.Page<T> request(final ClientTransport transport,
+        final URI uri)
+    {
+        PageTimer timer = new PageTimer();
+        return decode(transport.invoke(pageTarget(transport, uri, projection),
+            timer.timed((target) ->
+                target.request(MediaType.APPLICATION_JSON_TYPE)
+                    .get(String.class)), bulkhead), timer);
+    }
+
+    /**
+     * Requests a page asynchronously.
+     *
+     * @param uri the URI of the page
+     * @return a future of the decoded page
+     */
+    private CompletableFuture<PageDecoder.Page<T>> requestAsync(
+        final URI uri)
+    {
+        ClientTransport current = acquireTransport();
+        CompletableFuture<PageDecoder.Page<T>> future;
+        try {
+            future = requestAsync(current, uri);
         }
         catch (final RuntimeException e) {
+            releaseTransport();
             throw e;
         }
-        catch (final Exception e) {
-            throw new IllegalStateException(e);
+        return future.whenComplete((page, exception) -> releaseTransport());
+    }
+
+    /**
+     * Requests a page asynchronously with a transport.
+     *
+     * @param transport a transport to fetch the page
+     * @param uri the URI of the page
+     * @return a future of the decoded page
+     */
+    private CompletableFuture<PageDecoder.Page<T>> requestAsync(
+        final ClientTransport transport, final URI uri)
+    {
+        PageTimer timer = new PageTimer();
+        return transport.<String>invokeAsync(
+            pageTarget(transport, uri, projection),
+            timer.<String>timedAsync((target) ->
+                target.request(MediaType.APPLICATION_JSON_TYPE).rx()
+                    .get(String.class)), bulkhead)
+            .thenApply((body) -> decode(body, timer));
+    }
+
+    /**
+     * Decodes a page and records it.
+     * The page is recorded on the page length tuner only if its exchange
+     * was made once, without being retried or requeued.
+     *
+     * @param body the JSON text of a page
+     * @param timer the timer of the exchange of the page
+     * @return the decoded page
+     */
+    private PageDecoder.Page<T> decode(final String body,
+        final PageTimer timer)
+    {
+        PageDecoder.Page<T> page = decoder.decode(body);
+        requestCount.incrementAndGet();
+        PageLengthTuner value = tuner;
+        long nanos = timer.getNanos();
+        if (value != null && nanos >= 0) {
+            value.record(first, projection, page.getValues().size(),
+                body.length(), nanos);
         }
+        return page;
+    }
 
-        String nextPageUri = json.getString("next", null);
-        if (nextPageUri != null) {
-            next = URI.create(nextPageUri);
+    /**
+     * Returns the target of a page.
+     * If a projection is given, the {@code fields} query parameter is added
+     * unless the URI already has one.
+     *
+     * @param transport a transport to fetch the page
+     * @param uri the URI of the page
+     * @param projection a projection of the values, or {@code null}
+     * @return the target of the page
+     */
+    static WebTarget pageTarget(final ClientTransport transport,
+        final URI uri, final Projection projection)
+    {
+        WebTarget target = transport.target(uri);
+        String query = uri.getRawQuery();
+        if (projection != null && (query == null
+            || !("&" + query).contains("&fields="))) {
+            target = target.queryParam("fields",
+                projection.toPageQueryValue());
+        }
+        return target;
+    }
+
+    /**
+     * Fetches the next page.
+     */
+    protected final void fetchNext()
+    {
+        addPage(request(next));
+    }
+
+    /**
+     * Returns the URI of a page by its index from the first page.
+     * Pages must be directly addressable.
+     *
+     * @param pageIndex the index of a page from the first page
+     * @return the URI of the page
+     */
+    private URI pageUri(final int pageIndex)
+    {
+        assert pageLength > 0;
+        return UriBuilder.fromUri(first)
+            .replaceQueryParam("page", firstPage + pageIndex).build();
+    }
+
+    /**
+     * Fetches a page by its index from the first page.
+     * Pages must be directly addressable.
+     *
+     * @param pageIndex the index of a page from the first page
+     * @return the values of the page
+     */
+    private List<T> fetchPage(final int pageIndex)
+    {
+        List<T> values = valuesOf(request(pageUri(pageIndex)), pageIndex);
+        pages.put(pageIndex, values);
+        closeIfComplete();
+        return values;
+    }
+
+    /**
+     * Returns the values of a page fetched by its index from the first page.
+     *
+     * @param page a decoded page
+     * @param pageIndex the index of the requested page from the first page
+     * @return the values of the page
+     * @throws ProcessingException if the server did not return the
+     * requested page
+     */
+    private List<T> valuesOf(final PageDecoder.Page<T> page,
+        final int pageIndex)
+    {
+        if (page.getPage() != firstPage + pageIndex) {
+            throw new ProcessingException("Requested page "
+                + (firstPage + pageIndex) + " but received "
+                + (page.getPage() > 0 ? "page " + page.getPage()
+                    : "no page number"));
+        }
+        return page.getValues();
+    }
+
+    /**
+     * Returns the values of a page by its index from the first page,
+     * fetching it if necessary.
+     * Pages must be directly addressable.  A page shorter than expected is
+     * fetched again since the list may have changed after it was fetched.
+     *
+     * @param pageIndex the index of a page from the first page
+     * @return the values of the page
+     * @throws ProcessingException if the page is still shorter than
+     * expected
+     */
+    private List<T> pageValues(final int pageIndex)
+    {
+        int expected =
+            Math.min(pageLength, knownSize - pageIndex * pageLength);
+        List<T> values = pages.get(pageIndex);
+        if (values == null || values.size() < expected) {
+            values = fetchPage(pageIndex);
+        }
+        if (values.size() < expected) {
+            throw new ProcessingException("Page " + (firstPage + pageIndex)
+                + " has " + values.size() + " values instead of " + expected
+                + "; the list may have changed");
+        }
+        return values;
+    }
+
+    /**
+     * Fetches the next page asynchronously.
+     * This list must not be accessed until the returned future is completed.
+     *
+     * @return a future that will be completed when the page is added
+     */
+    protected final CompletableFuture<Void> fetchNextAsync()
+    {
+        return requestAsync(next).thenAccept(this::addPage);
+    }
+
+    /**
+     * Fetches all the pages that have not been fetched yet.
+     * If pages are directly addressable, the remaining pages are fetched
+     * concurrently within the limits of the transport.
+     *
+     * @see #fetchAllAsync
+     */
+    public final void fetchAll()
+    {
+        try {
+            fetchAllAsync().join();
+        }
+        catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches all the pages that have not been fetched yet asynchronously.
+     * If pages are directly addressable, the remaining pages are fetched
+     * concurrently within the limits of the transport and added in order
+     * when all of them are completed.  Otherwise, they are fetched one by
+     * one by following the {@code next} links.
+     * <p>If any page fetch fails, the returned future is completed with its
+     * exception, leaving the other fetched pages added to this list.</p>
+     * <p>This list must not be accessed until the returned future is
+     * completed.</p>
+     *
+     * @return a future that will be completed when all the pages are added
+     */
+    public final CompletableFuture<Void> fetchAllAsync()
+    {
+        if (!started) {
+            return fetchNextAsync().thenCompose((v) -> fetchAllAsync());
+        }
+        if (pageLength == 0) {
+            if (next == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return fetchNextAsync().thenCompose((v) -> fetchAllAsync());
+        }
+
+        int pageCount = (knownSize + pageLength - 1) / pageLength;
+        Map<Integer, CompletableFuture<List<T>>> fetches = new HashMap<>();
+        for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+            if (!pages.containsKey(pageIndex)) {
+                int requested = pageIndex;
+                fetches.put(pageIndex, requestAsync(pageUri(pageIndex))
+                    .thenApply((page) -> valuesOf(page, requested)));
+            }
+        }
+
+        CompletableFuture<Void> all = new CompletableFuture<>();
+        CompletableFuture.allOf(fetches.values()
+            .toArray(new CompletableFuture<?>[0]))
+            .whenComplete((v, exception) -> {
+                fetches.forEach((pageIndex, fetch) -> {
+                    if (!fetch.isCompletedExceptionally()) {
+                        pages.put(pageIndex, fetch.join());
+                    }
+                });
+                closeIfComplete();
+                if (exception != null) {
+                    all.completeExceptionally(exception);
+                }
+                else {
+                    all.complete(null);
+                }
+            });
+        return all;
+    }
+
+    /**
+     * Adds the values of a page to the known values.
+     *
+     * @param page a decoded page
+     */
+    private void addPage(final PageDecoder.Page<T> page)
+    {
+        if (!started) {
+            started = true;
+            knownSize = page.getSize();
+            reportedPageLength = page.getPageLength();
+            if (knownSize >= 0 && page.getPage() > 0
+                && page.getPageLength() > 0) {
+                firstPage = page.getPage();
+                pageLength = page.getPageLength();
+            }
+        }
+
+        if (pageLength > 0) {
+            int pageIndex = page.getPage() - firstPage;
+            if (page.getPage() <= 0 || pageIndex < 0) {
+                throw new ProcessingException(
+                    "Page has no valid page number: " + page.getPage());
+            }
+            if (pages.putIfAbsent(pageIndex, page.getValues()) != null) {
+                throw new ProcessingException(
+                    "Page received twice: " + page.getPage());
+            }
         }
         else {
-            next = null;
+            knownValues.addAll(page.getValues());
+        }
+
+        next = page.getNext();
+        if (next == null && pageLength == 0) {
             knownSize = knownValues.size();
         }
+        closeIfComplete();
+    }
+
+    /**
+     * Records the loaded properties of an entity received for a projection.
+     *
+     * @param <V> the type of the entity
+     * @param value an entity, or {@code null}
+     * @param projection a projection, or {@code null} for all the properties
+     * @return the entity
+     */
+    static <V> V markLoaded(final V value, final Projection projection)
+    {
+        if (projection != null) {
+            if (value instanceof ClientIssue) {
+                ((ClientIssue) value).setLoadedProperties(
+                    projection.getFields());
+            }
+            else if (value instanceof ClientRepository) {
+                ((ClientRepository) value).setLoadedProperties(
+                    projection.getFields());
+            }
+            else if (value instanceof ClientAccount) {
+                ((ClientAccount) value).setLoadedProperties(
+                    projection.getFields());
+            }
+        }
+        return value;
     }
 
     /**
@@ -133,6 +800,16 @@ public class PaginatedList<T> extends AbstractList<T>
     @Override
     public final T get(final int index)
     {
+        if (!started) {
+            fetchNext();
+        }
+        if (pageLength > 0) {
+            if (index < 0 || index >= knownSize) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return pageValues(index / pageLength).get(index % pageLength);
+        }
+
         while (next != null && index >= knownValues.size()) {
             fetchNext();
         }
@@ -145,10 +822,471 @@ public class PaginatedList<T> extends AbstractList<T>
     @Override
     public final int size()
     {
+        if (!started) {
+            fetchNext();
+        }
         while (next != null && knownSize < 0) {
             fetchNext();
         }
         assert knownSize >= 0;
         return knownSize;
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation fetches the first page if it has not been
+     * fetched yet, and the other pages when they are traversed.  If pages
+     * are directly addressable, the returned spliterator is {@link
+     * Spliterator#SIZED} and {@link Spliterator#SUBSIZED} and splits along
+     * page boundaries.  Otherwise, each split takes the values fetched so far
+     * and leaves the following pages to the remainder.</p>
+     */
+    @Override
+    public final Spliterator<T> spliterator()
+    {
+        if (!started) {
+            fetchNext();
+        }
+        if (pageLength > 0) {
+            return new PageSpliterator(0, knownSize);
+        }
+        return new LinkSpliterator();
+    }
+
+    /**
+     * Returns an iterator that fetches the following pages in the
+     * background.
+     * The first page is fetched before this method returns if it has not
+     * been fetched yet.
+     *
+     * @return a prefetching iterator over the elements of this list
+     */
+    public final Iterator<T> prefetchingIterator()
+    {
+        if (!started) {
+            fetchNext();
+        }
+        return new PrefetchingIterator();
+    }
+
+    /**
+     * Returns a sequential stream that fetches the following pages in the
+     * background.
+     *
+     * @return a prefetching stream of the elements of this list
+     * @see #prefetchingIterator
+     */
+    public final Stream<T> prefetchingStream()
+    {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(prefetchingIterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Spliterator over a range of the elements of directly addressable
+     * pages.
+     */
+    private final class PageSpliterator implements Spliterator<T>
+    {
+        /**
+         * Index of the next element.
+         */
+        private int index;
+
+        /**
+         * Index after the last element.
+         */
+        private final int fence;
+
+        PageSpliterator(final int index, final int fence)
+        {
+            this.index = index;
+            this.fence = fence;
+        }
+
+        /**
+         * Returns the values of the page of an element, fetching it if
+         * necessary.
+         *
+         * @param elementIndex the index of an element
+         * @return the values of the page
+         */
+        private List<T> pageOf(final int elementIndex)
+        {
+            return pageValues(elementIndex / pageLength);
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action)
+        {
+            if (index >= fence) {
+                return false;
+            }
+            T value = pageOf(index).get(index % pageLength);
+            index += 1;
+            action.accept(value);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super T> action)
+        {
+            while (index < fence) {
+                List<T> values = pageOf(index);
+                int end =
+                    Math.min(fence, (index / pageLength + 1) * pageLength);
+                int offset = index % pageLength;
+                int count = end - index;
+                index = end;
+                values.subList(offset, offset + count).forEach(action);
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit()
+        {
+            int low = index / pageLength;
+            int high = (fence + pageLength - 1) / pageLength;
+            if (high - low < 2) {
+                return null;
+            }
+            int split = ((low + high) >>> 1) * pageLength;
+            Spliterator<T> prefix = new PageSpliterator(index, split);
+            index = split;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    /**
+     * Spliterator over the elements of pages fetched by following the
+     * {@code next} links.
+     * It is not sized because the values are counted only when the last page
+     * is fetched.
+     */
+    private final class LinkSpliterator implements Spliterator<T>
+    {
+        /**
+         * Index of the next element in the known values.
+         */
+        private int index = 0;
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action)
+        {
+            while (index >= knownValues.size()) {
+                if (next == null) {
+                    return false;
+                }
+                fetchNext();
+            }
+            action.accept(knownValues.get(index++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit()
+        {
+            if (index >= knownValues.size()) {
+                if (next == null) {
+                    return null;
+                }
+                fetchNext();
+            }
+            Object[] values = knownValues.subList(index, knownValues.size())
+                .toArray();
+            if (values.length == 0) {
+                return null;
+            }
+            index = knownValues.size();
+            return Spliterators.spliterator(values,
+                ORDERED | NONNULL | IMMUTABLE);
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            if (knownSize >= 0) {
+                return knownSize - index;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Values of a page fetched by a prefetching iterator.
+     *
+     * @param <V> the type of the values
+     */
+    private static final class Chunk<V>
+    {
+        /**
+         * Index of the page from the first page, or {@code -1} if unknown.
+         */
+        private final int pageIndex;
+
+        /**
+         * Values of the page.
+         */
+        private final List<V> values;
+
+        /**
+         * URI of the next page, or {@code null}.
+         */
+        private final URI next;
+
+        Chunk(final int pageIndex, final List<V> values, final URI next)
+        {
+            this.pageIndex = pageIndex;
+            this.values = values;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Iterator that fetches the following pages in the background.
+     * Fetched pages are added to this list only on the consuming thread as
+     * they are consumed, so that a later traversal does not fetch them
+     * again.
+     * If a page fetch fails, the exception is thrown to the consumer and the
+     * next call resumes from the failed page.
+     */
+    private final class PrefetchingIterator implements Iterator<T>
+    {
+        /**
+         * Maximum number of pages fetched ahead.
+         */
+        private final int maxDepth = prefetchDepth;
+
+        /**
+         * Current number of pages fetched ahead.
+         */
+        private int depth = 1;
+
+        /**
+         * Pages being fetched ahead, in order.
+         */
+        private final Deque<CompletableFuture<Chunk<T>>> ahead =
+            new ArrayDeque<>();
+
+        /**
+         * Index of the next page to fetch if pages are directly addressable.
+         */
+        private int nextPageIndex;
+
+        /**
+         * Number of the pages if pages are directly addressable.
+         */
+        private final int pageCount;
+
+        /**
+         * Future of the last page if pages are fetched sequentially, or
+         * {@code null} if no more pages follow.
+         */
+        private CompletableFuture<Chunk<T>> last;
+
+        /**
+         * URI of the page after the last consumed one if pages are fetched
+         * sequentially.
+         */
+        private URI resume = next;
+
+        /**
+         * Values of the current page.
+         */
+        private Iterator<T> current;
+
+        PrefetchingIterator()
+        {
+            if (pageLength > 0) {
+                pageCount = (knownSize + pageLength - 1) / pageLength;
+                current = Collections.emptyIterator();
+            }
+            else {
+                pageCount = 0;
+                current = new ArrayList<>(knownValues).iterator();
+                if (next != null) {
+                    last = CompletableFuture.completedFuture(
+                        new Chunk<>(-1, Collections.emptyList(), next));
+                }
+            }
+            fill();
+        }
+
+        /**
+         * Starts fetching pages until the current depth is reached.
+         */
+        private void fill()
+        {
+            while (ahead.size() < depth) {
+                CompletableFuture<Chunk<T>> page = fetchAhead();
+                if (page == null) {
+                    break;
+                }
+                ahead.addLast(page);
+            }
+        }
+
+        /**
+         * Starts fetching the page after the ones being fetched ahead.
+         *
+         * @return a future of the page, or {@code null} if no more pages
+         * follow
+         */
+        private CompletableFuture<Chunk<T>> fetchAhead()
+        {
+            if (pageLength > 0) {
+                if (nextPageIndex >= pageCount) {
+                    return null;
+                }
+                int pageIndex = nextPageIndex++;
+                List<T> values = pages.get(pageIndex);
+                if (values != null) {
+                    return CompletableFuture.completedFuture(
+                        new Chunk<>(pageIndex, values, null));
+                }
+                return fetchChunk(pageIndex, pageUri(pageIndex));
+            }
+
+            if (last == null || last.isDone()
+                && !last.isCompletedExceptionally() && last.join() == null) {
+                return null;
+            }
+            last = last.thenCompose((chunk) -> {
+                if (chunk == null || chunk.next == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return fetchChunk(-1, chunk.next);
+            });
+            return last;
+        }
+
+        /**
+         * Fetches a page asynchronously.
+         *
+         * @param pageIndex the index of the page, or {@code -1} if unknown
+         * @param uri the URI of the page
+         * @return a future of the page
+         */
+        private CompletableFuture<Chunk<T>> fetchChunk(final int pageIndex,
+            final URI uri)
+        {
+            return requestAsync(uri).thenApply((page) -> new Chunk<>(
+                pageIndex, pageIndex >= 0 ? valuesOf(page, pageIndex)
+                    : page.getValues(), page.getNext()));
+        }
+
+        /**
+         * Cancels the pages fetched ahead so that the next call resumes
+         * from a failed page.
+         *
+         * @param pageIndex the index of the failed page if pages are
+         * directly addressable
+         */
+        private void restart(final int pageIndex)
+        {
+            ahead.forEach((page) -> page.cancel(false));
+            ahead.clear();
+            depth = 1;
+            if (pageLength > 0) {
+                nextPageIndex = pageIndex;
+            }
+            else if (resume != null) {
+                last = CompletableFuture.completedFuture(
+                    new Chunk<>(-1, Collections.emptyList(), resume));
+            }
+            else {
+                last = null;
+            }
+        }
+
+        /**
+         * Takes the next page fetched ahead and adjusts the depth.
+         *
+         * @return the next page, or {@code null} if no more pages follow
+         */
+        private Chunk<T> take()
+        {
+            CompletableFuture<Chunk<T>> head = ahead.pollFirst();
+            if (head == null) {
+                return null;
+            }
+            if (!head.isDone()) {
+                depth = Math.min(depth + 1, maxDepth);
+            }
+            else if (ahead.peekFirst() != null
+                && ahead.peekFirst().isDone()) {
+                depth = Math.max(depth - 1, 1);
+            }
+
+            Chunk<T> chunk;
+            try {
+                chunk = head.join();
+            }
+            catch (final CompletionException e) {
+                restart(nextPageIndex - ahead.size() - 1);
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+            if (chunk != null) {
+                if (chunk.pageIndex >= 0) {
+                    pages.putIfAbsent(chunk.pageIndex, chunk.values);
+                }
+                else if (next != null && next.equals(resume)) {
+                    // The chunk is the page after the known values.
+                    knownValues.addAll(chunk.values);
+                    next = chunk.next;
+                    if (next == null) {
+                        knownSize = knownValues.size();
+                    }
+                }
+                resume = chunk.next;
+                closeIfComplete();
+            }
+            fill();
+            return chunk;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!current.hasNext()) {
+                Chunk<T> chunk = take();
+                if (chunk == null) {
+                    return false;
+                }
+                current = chunk.values.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
 }
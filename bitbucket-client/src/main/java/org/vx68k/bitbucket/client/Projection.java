@@ -0,0 +1,239 @@
+/*
+ * Projection.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Projection of resources by the {@code fields} query parameter of the
+ * Bitbucket Cloud REST API.
+ * <p>A projection names the properties to be returned by the server, such
+ * as {@code "id"}, {@code "state"} and {@code "updated_on"}.  A property of
+ * a nested object may be named with a dotted path like
+ * {@code "repository.full_name"}, which loads the top-level property
+ * {@code "repository"} partially.  The name {@code "*"} selects all the
+ * properties.  Getters of entities returned for a projection, and of the
+ * objects nested in them, throw {@link PropertyNotLoadedException} for the
+ * properties that were not requested.</p>
+ * <p>Instances of this class are immutable.</p>
+ *
+ * @author Kaz Nishimura
+ * @see <a href="https://developer.atlassian.com/bitbucket/api/2/reference/meta/partial-response"
+ * >Partial response</a>
+ * @since 6.0
+ */
+public final class Projection
+{
+    /**
+     * Name that selects all the properties.
+     */
+    public static final String ALL = "*";
+
+    /**
+     * Prefix of the fields of the values in a page.
+     */
+    private static final String VALUES_PREFIX = "values.";
+
+    /**
+     * Fields of a page that are required for pagination.
+     */
+    private static final String PAGE_FIELDS = "next,size,page,pagelen";
+
+    /**
+     * Field names.
+     */
+    private final Set<String> fields;
+
+    /**
+     * Names of the top-level properties.
+     */
+    private final Set<String> properties;
+
+    /**
+     * Constructs a projection.
+     *
+     * @param fields a collection of field names
+     */
+    private Projection(final Collection<String> fields)
+    {
+        Set<String> fieldSet = new LinkedHashSet<>();
+        for (String field : fields) {
+            if (field == null || field.isEmpty()
+                || !field.matches("[^\\s,.]+(\\.[^\\s,.]+)*")) {
+                throw new IllegalArgumentException(
+                    "Invalid field name: " + field);
+            }
+            fieldSet.add(field);
+        }
+        if (fieldSet.isEmpty()) {
+            throw new IllegalArgumentException("No fields");
+        }
+        this.fields = Collections.unmodifiableSet(fieldSet);
+        this.properties =
+            Collections.unmodifiableSet(topLevelProperties(fieldSet));
+    }
+
+    /**
+     * Returns the names of the top-level properties of property names that
+     * may be dotted paths.
+     *
+     * @param names a collection of property names
+     * @return a new set of the top-level property names
+     */
+    public static Set<String> topLevelProperties(
+        final Collection<String> names)
+    {
+        Set<String> propertySet = new LinkedHashSet<>();
+        for (String name : names) {
+            int dot = name.indexOf('.');
+            if (dot >= 0) {
+                propertySet.add(name.substring(0, dot));
+            }
+            else {
+                propertySet.add(name);
+            }
+        }
+        return propertySet;
+    }
+
+    /**
+     * Returns the names of the properties of a nested object loaded by
+     * property names that may be dotted paths.
+     * For example, the names {@code "id"} and {@code "repository.full_name"}
+     * load the property {@code "full_name"} of the nested object of the
+     * property {@code "repository"}.
+     *
+     * @param names a collection of property names, or {@code null} if all
+     * the properties were loaded
+     * @param property the name of the property of the nested object
+     * @return a new set of the property names of the nested object, or
+     * {@code null} if the nested object was loaded entirely
+     */
+    public static Set<String> nestedProperties(
+        final Collection<String> names, final String property)
+    {
+        if (names == null || names.contains(ALL) || names.contains(property)) {
+            return null;
+        }
+        String prefix = property + ".";
+        Set<String> propertySet = new LinkedHashSet<>();
+        for (String name : names) {
+            if (name.startsWith(prefix)) {
+                propertySet.add(name.substring(prefix.length()));
+            }
+        }
+        return propertySet;
+    }
+
+    /**
+     * Returns a projection of fields.
+     *
+     * @param fields field names
+     * @return a projection of the fields
+     */
+    public static Projection of(final String... fields)
+    {
+        return new Projection(Arrays.asList(fields));
+    }
+
+    /**
+     * Returns a projection of fields.
+     *
+     * @param fields a collection of field names
+     * @return a projection of the fields
+     */
+    public static Projection of(final Collection<String> fields)
+    {
+        return new Projection(fields);
+    }
+
+    /**
+     * Returns the field names of this projection.
+     *
+     * @return an unmodifiable set of the field names
+     */
+    public Set<String> getFields()
+    {
+        return fields;
+    }
+
+    /**
+     * Returns the names of the top-level properties loaded by this
+     * projection.
+     *
+     * @return an unmodifiable set of the property names
+     */
+    public Set<String> getProperties()
+    {
+        return properties;
+    }
+
+    /**
+     * Returns the value of the {@code fields} query parameter for a single
+     * resource.
+     *
+     * @return the parameter value
+     */
+    public String toQueryValue()
+    {
+        return String.join(",", fields);
+    }
+
+    /**
+     * Returns the value of the {@code fields} query parameter for a page of
+     * resources.
+     * The fields required for pagination are always included.
+     *
+     * @return the parameter value
+     */
+    public String toPageQueryValue()
+    {
+        return fields.stream()
+            .map((field) -> VALUES_PREFIX + field)
+            .collect(Collectors.joining(",", "", "," + PAGE_FIELDS));
+    }
+
+    @Override
+    public boolean equals(final Object object)
+    {
+        if (object instanceof Projection) {
+            return fields.equals(((Projection) object).fields);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return fields.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return toQueryValue();
+    }
+}
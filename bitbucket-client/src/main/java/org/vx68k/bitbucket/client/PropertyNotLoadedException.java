@@ -0,0 +1,59 @@
+/*
+ * PropertyNotLoadedException.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+/**
+ * Thrown when a property of an entity was not loaded because it was not
+ * requested by a {@link Projection} object.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class PropertyNotLoadedException extends IllegalStateException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Name of the property.
+     */
+    private final String property;
+
+    /**
+     * Constructs an exception.
+     *
+     * @param property the name of the property that was not loaded
+     */
+    public PropertyNotLoadedException(final String property)
+    {
+        super("Property not loaded: " + property);
+        this.property = property;
+    }
+
+    /**
+     * Returns the name of the property that was not loaded.
+     *
+     * @return the name of the property
+     */
+    public final String getProperty()
+    {
+        return property;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * RequestOptions.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+/**
+ * Per-call options of requests made by {@link BitbucketClient}.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class RequestOptions
+{
+    /**
+     * Page length that leaves it to the server.
+     */
+    public static final int DEFAULT_PAGE_LENGTH = 0;
+
+    /**
+     * Page length that is chosen by the {@link PageLengthTuner} object of
+     * the client.
+     */
+    public static final int TUNED_PAGE_LENGTH = -1;
+
+    /**
+     * Maximum page length accepted by Bitbucket Cloud.
+     */
+    public static final int MAX_PAGE_LENGTH = 100;
+
+    /**
+     * Indicates whether identical concurrent requests may share one
+     * exchange.
+     */
+    private boolean coalescing = true;
+
+    /**
+     * Projection of the requested resources, or {@code null} for all the
+     * properties.
+     */
+    private Projection projection = null;
+
+    /**
+     * Name of the bulkhead for the requests, or {@code null} for the
+     * bulkhead of the client view.
+     */
+    private String bulkhead = null;
+
+    /**
+     * Page length of paginated requests.
+     */
+    private int pageLength = DEFAULT_PAGE_LENGTH;
+
+    /**
+     * Constructs options with the default values.
+     */
+    public RequestOptions()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Returns {@code true} if identical concurrent requests may share one
+     * exchange.
+     *
+     * @return {@code true} if coalescing is enabled; {@code false}
+     * otherwise
+     */
+    public final boolean isCoalescing()
+    {
+        return coalescing;
+    }
+
+    /**
+     * Sets whether identical concurrent requests may share one exchange.
+     * The default value is {@code true}.
+     *
+     * @param newValue {@code true} to enable coalescing; {@code false}
+     * otherwise
+     */
+    public final void setCoalescing(final boolean newValue)
+    {
+        coalescing = newValue;
+    }
+
+    /**
+     * Returns the projection of the requested resources.
+     *
+     * @return the projection, or {@code null} for all the properties
+     */
+    public final Projection getProjection()
+    {
+        return projection;
+    }
+
+    /**
+     * Sets the projection of the requested resources.
+     * The default value is {@code null}.
+     *
+     * @param newValue a projection, or {@code null} for all the properties
+     */
+    public final void setProjection(final Projection newValue)
+    {
+        projection = newValue;
+    }
+
+    /**
+     * Returns the name of the bulkhead for the requests.
+     *
+     * @return the name of the bulkhead, or {@code null} for the bulkhead of
+     * the client view
+     */
+    public final String getBulkhead()
+    {
+        return bulkhead;
+    }
+
+    /**
+     * Sets the name of the bulkhead for the requests.
+     * The bulkhead must have been added to the client by
+     * {@link BitbucketClient#addBulkhead}.  The default value is
+     * {@code null}.
+     *
+     * @param newValue the name of a bulkhead, or {@code null} for the
+     * bulkhead of the client view
+     * @see BitbucketClient#withBulkhead
+     */
+    public final void setBulkhead(final String newValue)
+    {
+        bulkhead = newValue;
+    }
+
+    /**
+     * Returns the page length of paginated requests.
+     *
+     * @return the page length, {@link #DEFAULT_PAGE_LENGTH} or
+     * {@link #TUNED_PAGE_LENGTH}
+     */
+    public final int getPageLength()
+    {
+        return pageLength;
+    }
+
+    /**
+     * Sets the page length of paginated requests.
+     * A positive value is sent as the {@code pagelen} query parameter.
+     * The default value is {@link #DEFAULT_PAGE_LENGTH}.
+     *
+     * @param newValue a page length up to {@link #MAX_PAGE_LENGTH},
+     * {@link #DEFAULT_PAGE_LENGTH} or {@link #TUNED_PAGE_LENGTH}
+     * @throws IllegalArgumentException if {@code newValue} is out of range
+     * @see BitbucketClient#getPageLengthTuner
+     */
+    public final void setPageLength(final int newValue)
+    {
+        if (newValue < TUNED_PAGE_LENGTH || newValue > MAX_PAGE_LENGTH) {
+            throw new IllegalArgumentException("Invalid page length");
+        }
+        pageLength = newValue;
+    }
+}
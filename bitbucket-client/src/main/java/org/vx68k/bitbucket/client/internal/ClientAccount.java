@@ -22,13 +22,18 @@ package org.vx68k.bitbucket.client.internal;
 
 import java.net.URI;
 import java.time.OffsetDateTime;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import javax.json.bind.annotation.JsonbDateFormat;
 import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
 import javax.json.bind.annotation.JsonbTypeAdapter;
 import org.vx68k.bitbucket.BitbucketAccount;
+import org.vx68k.bitbucket.client.Projection;
+import org.vx68k.bitbucket.client.PropertyNotLoadedException;
 import org.vx68k.bitbucket.client.adapter.LinkMapAdapter;
 import org.vx68k.bitbucket.client.adapter.UUIDAdapter;
 
@@ -55,6 +60,12 @@ public abstract class ClientAccount implements BitbucketAccount
 
     private Map<String, URI> links;
 
+    /**
+     * Names of the loaded properties, or {@code null} if all the properties
+     * were loaded.
+     */
+    private Set<String> loadedProperties = null;
+
     /**
      * Constructs an account object.
      */
@@ -76,6 +87,7 @@ public abstract class ClientAccount implements BitbucketAccount
         this.website = other.website;
         this.location = other.location;
         this.created = other.created;
+        this.loadedProperties = other.loadedProperties;
 
         setLinks(other.links);
     }
@@ -95,6 +107,7 @@ public abstract class ClientAccount implements BitbucketAccount
     @Override
     public final UUID getUuid()
     {
+        checkLoaded("uuid");
         return uuid;
     }
 
@@ -114,6 +127,7 @@ public abstract class ClientAccount implements BitbucketAccount
     @Override
     public final String getUsername()
     {
+        checkLoaded("username");
         return username;
     }
 
@@ -134,6 +148,7 @@ public abstract class ClientAccount implements BitbucketAccount
     @Override
     public final String getDisplayName()
     {
+        checkLoaded("display_name");
         return displayName;
     }
 
@@ -154,6 +169,7 @@ public abstract class ClientAccount implements BitbucketAccount
     @Override
     public final String getWebsite()
     {
+        checkLoaded("website");
         return website;
     }
 
@@ -173,6 +189,7 @@ public abstract class ClientAccount implements BitbucketAccount
     @Override
     public final String getLocation()
     {
+        checkLoaded("location");
         return location;
     }
 
@@ -194,6 +211,7 @@ public abstract class ClientAccount implements BitbucketAccount
     @Override
     public final OffsetDateTime getCreated()
     {
+        checkLoaded("created_on");
         return created;
     }
 
@@ -212,6 +230,7 @@ public abstract class ClientAccount implements BitbucketAccount
     @Override
     public final Map<String, URI> getLinks()
     {
+        checkLoaded("links");
         return links;
     }
 
@@ -223,6 +242,64 @@ public abstract class ClientAccount implements BitbucketAccount
         this.links = links;
     }
 
+    /**
+     * Returns the names of the loaded properties.
+     *
+     * @return an unmodifiable set of the property names, or {@code null} if
+     * all the properties were loaded
+     */
+    @JsonbTransient
+    public final Set<String> getLoadedProperties()
+    {
+        return loadedProperties;
+    }
+
+    /**
+     * Sets the names of the loaded properties.
+     * This method is called for accounts returned for a projection, either
+     * directly or nested in another object.
+     *
+     * @param loadedProperties a set of the property names, or {@code null}
+     * if all the properties were loaded
+     */
+    @JsonbTransient
+    public final void setLoadedProperties(final Set<String> loadedProperties)
+    {
+        if (loadedProperties != null
+            && !loadedProperties.contains(Projection.ALL)) {
+            this.loadedProperties = Collections.unmodifiableSet(
+                Projection.topLevelProperties(loadedProperties));
+        }
+        else {
+            this.loadedProperties = null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if a property was loaded.
+     *
+     * @param property the name of a property
+     * @return {@code true} if loaded; {@code false} otherwise
+     */
+    public final boolean isLoaded(final String property)
+    {
+        return loadedProperties == null
+            || loadedProperties.contains(property);
+    }
+
+    /**
+     * Checks if a property was loaded.
+     *
+     * @param property the name of a property
+     * @throws PropertyNotLoadedException if the property was not loaded
+     */
+    protected final void checkLoaded(final String property)
+    {
+        if (!isLoaded(property)) {
+            throw new PropertyNotLoadedException(property);
+        }
+    }
+
     @Override
     public final String toString()
     {
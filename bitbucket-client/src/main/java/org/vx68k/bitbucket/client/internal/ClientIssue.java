@@ -21,12 +21,17 @@
 package org.vx68k.bitbucket.client.internal;
 
 import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Set;
 import javax.json.bind.annotation.JsonbDateFormat;
 import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
 import org.vx68k.bitbucket.BitbucketIssue;
 import org.vx68k.bitbucket.BitbucketRendered;
 import org.vx68k.bitbucket.BitbucketRepository;
 import org.vx68k.bitbucket.BitbucketUserAccount;
+import org.vx68k.bitbucket.client.Projection;
+import org.vx68k.bitbucket.client.PropertyNotLoadedException;
 
 /**
  * Client implementation class of {@link BitbucketIssue} for the
@@ -69,6 +74,12 @@ public class ClientIssue implements BitbucketIssue
 
     private ClientUserAccount assignee;
 
+    /**
+     * Names of the loaded properties, or {@code null} if all the properties
+     * were loaded.
+     */
+    private Set<String> loadedProperties = null;
+
     /**
      * Constructs an issue.
      */
@@ -95,6 +106,7 @@ public class ClientIssue implements BitbucketIssue
         this.edited = other.edited;
         this.votes = other.votes;
         this.watches = other.watches;
+        this.loadedProperties = other.loadedProperties;
 
         setRepository(other.repository);
         setContent(other.content);
@@ -104,6 +116,7 @@ public class ClientIssue implements BitbucketIssue
 
     public final String getType()
     {
+        checkLoaded("type");
         return type;
     }
 
@@ -118,6 +131,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final int getId()
     {
+        checkLoaded("id");
         return id;
     }
 
@@ -129,6 +143,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final String getTitle()
     {
+        checkLoaded("title");
         return title;
     }
 
@@ -140,6 +155,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final String getKind()
     {
+        checkLoaded("kind");
         return kind;
     }
 
@@ -151,6 +167,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final String getPriority()
     {
+        checkLoaded("priority");
         return priority;
     }
 
@@ -162,6 +179,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final String getState()
     {
+        checkLoaded("state");
         return state;
     }
 
@@ -175,6 +193,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final OffsetDateTime getCreated()
     {
+        checkLoaded("created_on");
         return created;
     }
 
@@ -189,6 +208,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final OffsetDateTime getUpdated()
     {
+        checkLoaded("updated_on");
         return updated;
     }
 
@@ -203,6 +223,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final OffsetDateTime getEdited()
     {
+        checkLoaded("edited_on");
         return edited;
     }
 
@@ -215,6 +236,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final int getVotes()
     {
+        checkLoaded("votes");
         return votes;
     }
 
@@ -226,6 +248,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final int getWatches()
     {
+        checkLoaded("watches");
         return watches;
     }
 
@@ -236,6 +259,7 @@ public class ClientIssue implements BitbucketIssue
 
     public final BitbucketRepository getRepository()
     {
+        checkLoaded("repository");
         return repository;
     }
 
@@ -250,6 +274,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final BitbucketRendered getContent()
     {
+        checkLoaded("content");
         return content;
     }
 
@@ -264,6 +289,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final BitbucketUserAccount getReporter()
     {
+        checkLoaded("reporter");
         return reporter;
     }
 
@@ -278,6 +304,7 @@ public class ClientIssue implements BitbucketIssue
     @Override
     public final BitbucketUserAccount getAssignee()
     {
+        checkLoaded("assignee");
         return assignee;
     }
 
@@ -306,4 +333,75 @@ public class ClientIssue implements BitbucketIssue
     {
         throw new UnsupportedOperationException("getVersion is not supported yet.");
     }
+
+    /**
+     * Returns the names of the loaded properties.
+     *
+     * @return an unmodifiable set of the property names, or {@code null} if
+     * all the properties were loaded
+     */
+    @JsonbTransient
+    public final Set<String> getLoadedProperties()
+    {
+        return loadedProperties;
+    }
+
+    /**
+     * Sets the names of the loaded properties.
+     * This method is called for issues returned for a projection.  The rest
+     * of a dotted name like {@code "repository.full_name"} is passed to the
+     * nested object.
+     *
+     * @param loadedProperties a set of the property names, or {@code null}
+     * if all the properties were loaded
+     */
+    @JsonbTransient
+    public final void setLoadedProperties(final Set<String> loadedProperties)
+    {
+        if (loadedProperties != null
+            && !loadedProperties.contains(Projection.ALL)) {
+            this.loadedProperties = Collections.unmodifiableSet(
+                Projection.topLevelProperties(loadedProperties));
+        }
+        else {
+            this.loadedProperties = null;
+        }
+        if (repository != null) {
+            repository.setLoadedProperties(Projection.nestedProperties(
+                loadedProperties, "repository"));
+        }
+        if (reporter != null) {
+            reporter.setLoadedProperties(Projection.nestedProperties(
+                loadedProperties, "reporter"));
+        }
+        if (assignee != null) {
+            assignee.setLoadedProperties(Projection.nestedProperties(
+                loadedProperties, "assignee"));
+        }
+    }
+
+    /**
+     * Returns {@code true} if a property was loaded.
+     *
+     * @param property the name of a property
+     * @return {@code true} if loaded; {@code false} otherwise
+     */
+    public final boolean isLoaded(final String property)
+    {
+        return loadedProperties == null
+            || loadedProperties.contains(property);
+    }
+
+    /**
+     * Checks if a property was loaded.
+     *
+     * @param property the name of a property
+     * @throws PropertyNotLoadedException if the property was not loaded
+     */
+    private void checkLoaded(final String property)
+    {
+        if (!isLoaded(property)) {
+            throw new PropertyNotLoadedException(property);
+        }
+    }
 }
@@ -21,13 +21,18 @@
 package org.vx68k.bitbucket.client.internal;
 
 import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Set;
 import java.util.UUID;
 import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
 import javax.json.bind.annotation.JsonbTypeAdapter;
 import org.vx68k.bitbucket.BitbucketAccount;
 import org.vx68k.bitbucket.BitbucketBranch;
 import org.vx68k.bitbucket.BitbucketProject;
 import org.vx68k.bitbucket.BitbucketRepository;
+import org.vx68k.bitbucket.client.Projection;
+import org.vx68k.bitbucket.client.PropertyNotLoadedException;
 import org.vx68k.bitbucket.client.adapter.BitbucketAccountAdapter;
 import org.vx68k.bitbucket.client.adapter.UUIDAdapter;
 
@@ -80,6 +85,12 @@ public class ClientRepository implements BitbucketRepository
 
     private ClientBranch mainBranch;
 
+    /**
+     * Names of the loaded properties, or {@code null} if all the properties
+     * were loaded.
+     */
+    private Set<String> loadedProperties = null;
+
     /**
      * Constructs a repository.
      */
@@ -105,6 +116,7 @@ public class ClientRepository implements BitbucketRepository
         this.size = other.size;
         this.issuesEnabled = other.issuesEnabled;
         this.wikiEnabled = other.wikiEnabled;
+        this.loadedProperties = other.loadedProperties;
 
         setOwner(other.owner);
         setProject(other.project);
@@ -118,6 +130,7 @@ public class ClientRepository implements BitbucketRepository
      */
     public final String getType()
     {
+        checkLoaded("type");
         return type;
     }
 
@@ -136,6 +149,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final UUID getUuid()
     {
+        checkLoaded("uuid");
         return uuid;
     }
 
@@ -155,6 +169,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final String getName()
     {
+        checkLoaded("name");
         return name;
     }
 
@@ -175,6 +190,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final String getFullName()
     {
+        checkLoaded("full_name");
         return fullName;
     }
 
@@ -197,6 +213,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final String getDescription()
     {
+        checkLoaded("description");
         return description;
     }
 
@@ -217,6 +234,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final boolean isPrivateAccess()
     {
+        checkLoaded("is_private");
         return privateAccess;
     }
 
@@ -234,6 +252,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final String getForkPolicy()
     {
+        checkLoaded("fork_policy");
         return forkPolicy;
     }
 
@@ -246,6 +265,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final String getWebsite()
     {
+        checkLoaded("website");
         return website;
     }
 
@@ -257,6 +277,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final String getLanguage()
     {
+        checkLoaded("language");
         return language;
     }
 
@@ -271,6 +292,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final String getScm()
     {
+        checkLoaded("scm");
         return scm;
     }
 
@@ -293,6 +315,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final OffsetDateTime getCreated()
     {
+        checkLoaded("created_on");
         return created;
     }
 
@@ -316,6 +339,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final OffsetDateTime getUpdated()
     {
+        checkLoaded("updated_on");
         return updated;
     }
 
@@ -333,6 +357,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final long getSize()
     {
+        checkLoaded("size");
         return size;
     }
 
@@ -345,6 +370,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final boolean isIssuesEnabled()
     {
+        checkLoaded("has_issues");
         return issuesEnabled;
     }
 
@@ -358,6 +384,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final boolean isWikiEnabled()
     {
+        checkLoaded("has_wiki");
         return wikiEnabled;
     }
 
@@ -374,6 +401,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final BitbucketAccount getOwner()
     {
+        checkLoaded("owner");
         return owner;
     }
 
@@ -393,6 +421,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final BitbucketProject getProject()
     {
+        checkLoaded("project");
         return project;
     }
 
@@ -420,6 +449,7 @@ public class ClientRepository implements BitbucketRepository
     @Override
     public final BitbucketBranch getMainBranch()
     {
+        checkLoaded("mainbranch");
         return mainBranch;
     }
 
@@ -447,4 +477,67 @@ public class ClientRepository implements BitbucketRepository
 
         return super.toString();
     }
+
+    /**
+     * Returns the names of the loaded properties.
+     *
+     * @return an unmodifiable set of the property names, or {@code null} if
+     * all the properties were loaded
+     */
+    @JsonbTransient
+    public final Set<String> getLoadedProperties()
+    {
+        return loadedProperties;
+    }
+
+    /**
+     * Sets the names of the loaded properties.
+     * This method is called for repositories returned for a projection.  The
+     * rest of a dotted name like {@code "owner.username"} is passed to the
+     * nested object.
+     *
+     * @param loadedProperties a set of the property names, or {@code null}
+     * if all the properties were loaded
+     */
+    @JsonbTransient
+    public final void setLoadedProperties(final Set<String> loadedProperties)
+    {
+        if (loadedProperties != null
+            && !loadedProperties.contains(Projection.ALL)) {
+            this.loadedProperties = Collections.unmodifiableSet(
+                Projection.topLevelProperties(loadedProperties));
+        }
+        else {
+            this.loadedProperties = null;
+        }
+        if (owner != null) {
+            owner.setLoadedProperties(Projection.nestedProperties(
+                loadedProperties, "owner"));
+        }
+    }
+
+    /**
+     * Returns {@code true} if a property was loaded.
+     *
+     * @param property the name of a property
+     * @return {@code true} if loaded; {@code false} otherwise
+     */
+    public final boolean isLoaded(final String property)
+    {
+        return loadedProperties == null
+            || loadedProperties.contains(property);
+    }
+
+    /**
+     * Checks if a property was loaded.
+     *
+     * @param property the name of a property
+     * @throws PropertyNotLoadedException if the property was not loaded
+     */
+    private void checkLoaded(final String property)
+    {
+        if (!isLoaded(property)) {
+            throw new PropertyNotLoadedException(property);
+        }
+    }
 }
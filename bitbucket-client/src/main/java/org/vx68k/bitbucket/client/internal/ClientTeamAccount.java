@@ -61,6 +61,7 @@ public class ClientTeamAccount extends ClientAccount
 
     public final String getType()
     {
+        checkLoaded("type");
         return type;
     }
 
@@ -69,6 +69,7 @@ public class ClientUserAccount extends ClientAccount
 
     public final String getType()
     {
+        checkLoaded("type");
         return type;
     }
 
@@ -87,6 +88,7 @@ public class ClientUserAccount extends ClientAccount
     @Override
     public final boolean isStaff()
     {
+        checkLoaded("is_staff");
         return staff;
     }
 
@@ -108,6 +110,7 @@ public class ClientUserAccount extends ClientAccount
     @Override
     public final String getAccountId()
     {
+        checkLoaded("account_id");
         return accountId;
     }
 
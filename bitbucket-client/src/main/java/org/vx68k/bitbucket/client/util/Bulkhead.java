@@ -0,0 +1,256 @@
+/*
+ * Bulkhead.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named pool of concurrent exchanges.
+ * <p>A bulkhead lets at most {@link #getMaxConcurrent} exchanges in
+ * progress and at most {@link #getMaxQueued} more wait for a permit in
+ * arrival order; exchanges arriving beyond the queue depth are rejected
+ * immediately with a {@link BulkheadFullException}.  Exchanges acquire a
+ * permit of their bulkhead before they take a token from the rate limiter
+ * or wait for the connection limits, so traffic of one bulkhead can only
+ * use as many connections and as much of the rate limit as its own
+ * concurrency allows.</p>
+ * <p>Permits can be acquired either by blocking the current thread or by
+ * waiting for a {@link CompletableFuture} object.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class Bulkhead
+{
+    /**
+     * Completed future for permits acquired immediately.
+     */
+    private static final CompletableFuture<Void> ACQUIRED =
+        CompletableFuture.completedFuture(null);
+
+    /**
+     * Name of this bulkhead.
+     */
+    private final String name;
+
+    /**
+     * Maximum number of concurrent exchanges.
+     */
+    private final int maxConcurrent;
+
+    /**
+     * Maximum number of waiting exchanges.
+     */
+    private final int maxQueued;
+
+    /**
+     * Waiters for permits in arrival order.
+     */
+    private final Queue<CompletableFuture<Void>> waiters =
+        new ArrayDeque<>();
+
+    /**
+     * Number of the permits in use.
+     */
+    private int activeCount = 0;
+
+    /**
+     * Number of rejected exchanges.
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Constructs a bulkhead.
+     *
+     * @param name the name of the bulkhead
+     * @param maxConcurrent the maximum number of concurrent exchanges
+     * @param maxQueued the maximum number of waiting exchanges, which may be
+     * zero to reject exchanges instead of queuing them
+     */
+    public Bulkhead(final String name, final int maxConcurrent,
+        final int maxQueued)
+    {
+        if (name == null) {
+            throw new IllegalArgumentException("Name is null");
+        }
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Maximum is not positive");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("Queue depth is negative");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Returns the name of this bulkhead.
+     *
+     * @return the name
+     */
+    public final String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the maximum number of concurrent exchanges.
+     *
+     * @return the maximum number of concurrent exchanges
+     */
+    public final int getMaxConcurrent()
+    {
+        return maxConcurrent;
+    }
+
+    /**
+     * Returns the maximum number of waiting exchanges.
+     *
+     * @return the queue depth
+     */
+    public final int getMaxQueued()
+    {
+        return maxQueued;
+    }
+
+    /**
+     * Returns the number of exchanges in progress.
+     *
+     * @return the number of exchanges in progress
+     */
+    public final synchronized int getActiveCount()
+    {
+        return activeCount;
+    }
+
+    /**
+     * Returns the number of waiting exchanges.
+     *
+     * @return the number of waiting exchanges
+     */
+    public final synchronized int getQueuedCount()
+    {
+        return waiters.size();
+    }
+
+    /**
+     * Returns the number of exchanges rejected because the queue was full.
+     *
+     * @return the number of rejected exchanges
+     */
+    public final long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Acquires a permit blocking the current thread.
+     *
+     * @throws BulkheadFullException if the queue is full
+     * @throws InterruptedException if interrupted
+     */
+    public final void acquire() throws InterruptedException
+    {
+        CompletableFuture<Void> waiter = enqueue();
+        try {
+            waiter.get();
+        }
+        catch (final InterruptedException e) {
+            boolean removed;
+            synchronized (this) {
+                removed = waiters.remove(waiter);
+            }
+            if (!removed) {
+                // The permit was handed over meanwhile.
+                release();
+            }
+            throw e;
+        }
+        catch (final ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Acquires a permit asynchronously.
+     *
+     * @return a future that will be completed when a permit is acquired, or
+     * that is completed exceptionally with a {@link BulkheadFullException}
+     * if the queue is full
+     */
+    public final CompletableFuture<Void> acquireAsync()
+    {
+        try {
+            return enqueue();
+        }
+        catch (final BulkheadFullException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Releases a permit handing it over to the first waiter if any.
+     */
+    public final void release()
+    {
+        CompletableFuture<Void> waiter;
+        synchronized (this) {
+            waiter = waiters.poll();
+            if (waiter == null) {
+                if (activeCount > 0) {
+                    activeCount -= 1;
+                }
+                return;
+            }
+        }
+        waiter.complete(null);
+    }
+
+    /**
+     * Takes a permit or a place in the queue.
+     *
+     * @return a future that will be completed when a permit is acquired
+     * @throws BulkheadFullException if the queue is full
+     */
+    private synchronized CompletableFuture<Void> enqueue()
+    {
+        if (waiters.isEmpty() && activeCount < maxConcurrent) {
+            activeCount += 1;
+            return ACQUIRED;
+        }
+        if (waiters.size() >= maxQueued) {
+            rejectedCount.incrementAndGet();
+            throw new BulkheadFullException(name);
+        }
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+}
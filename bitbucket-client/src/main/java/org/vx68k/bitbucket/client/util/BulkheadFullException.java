@@ -0,0 +1,62 @@
+/*
+ * BulkheadFullException.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Thrown when an exchange is rejected without being sent because both the
+ * permits and the queue of its {@link Bulkhead} object are exhausted.
+ * <p>This exception is never retried by a {@link RetryPolicy} object.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class BulkheadFullException extends ProcessingException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Name of the bulkhead.
+     */
+    private final String bulkhead;
+
+    /**
+     * Constructs an exception.
+     *
+     * @param bulkhead the name of the bulkhead
+     */
+    public BulkheadFullException(final String bulkhead)
+    {
+        super("Bulkhead full: " + bulkhead);
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * Returns the name of the bulkhead.
+     *
+     * @return the name of the bulkhead
+     */
+    public final String getBulkhead()
+    {
+        return bulkhead;
+    }
+}
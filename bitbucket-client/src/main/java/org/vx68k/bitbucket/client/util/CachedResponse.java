@@ -0,0 +1,146 @@
+/*
+ * CachedResponse.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.Serializable;
+
+/**
+ * Response stored in a response cache.
+ * A cached response keeps the validators and the entity of a successful
+ * response together with the headers that describe the entity.
+ *
+ * @author Kaz Nishimura
+ * @see ResponseCache
+ * @since 6.0
+ */
+public final class CachedResponse implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Entity tag, or {@code null}.
+     */
+    private final String entityTag;
+
+    /**
+     * Last modified time as an HTTP-date string, or {@code null}.
+     */
+    private final String lastModified;
+
+    /**
+     * Media type of the entity, or {@code null}.
+     */
+    private final String contentType;
+
+    /**
+     * Content coding of the entity, or {@code null}.
+     */
+    private final String contentEncoding;
+
+    /**
+     * Entity bytes.
+     */
+    private final byte[] entity;
+
+    /**
+     * Constructs a cached response.
+     *
+     * @param entityTag an entity tag, or {@code null}
+     * @param lastModified a last modified time as an HTTP-date string, or
+     * {@code null}
+     * @param contentType a media type of the entity, or {@code null}
+     * @param contentEncoding a content coding of the entity, or {@code null}
+     * @param entity entity bytes
+     */
+    public CachedResponse(final String entityTag, final String lastModified,
+        final String contentType, final String contentEncoding,
+        final byte[] entity)
+    {
+        if (entity == null) {
+            throw new IllegalArgumentException("Entity is null");
+        }
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.entity = entity.clone();
+    }
+
+    /**
+     * Returns the entity tag.
+     *
+     * @return the entity tag, or {@code null}
+     */
+    public String getEntityTag()
+    {
+        return entityTag;
+    }
+
+    /**
+     * Returns the last modified time.
+     *
+     * @return the last modified time as an HTTP-date string, or {@code null}
+     */
+    public String getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Returns the media type of the entity.
+     *
+     * @return the media type, or {@code null}
+     */
+    public String getContentType()
+    {
+        return contentType;
+    }
+
+    /**
+     * Returns the content coding of the entity.
+     *
+     * @return the content coding, or {@code null}
+     */
+    public String getContentEncoding()
+    {
+        return contentEncoding;
+    }
+
+    /**
+     * Returns a copy of the entity bytes.
+     *
+     * @return a copy of the entity bytes
+     */
+    public byte[] getEntity()
+    {
+        return entity.clone();
+    }
+
+    /**
+     * Returns the length of the entity.
+     *
+     * @return the length of the entity in bytes
+     */
+    public int getLength()
+    {
+        return entity.length;
+    }
+}
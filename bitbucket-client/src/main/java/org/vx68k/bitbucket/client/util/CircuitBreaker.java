@@ -0,0 +1,820 @@
+/*
+ * CircuitBreaker.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+
+/**
+ * Circuit breaker for the exchanges of a {@link ClientTransport} object.
+ * <p>A circuit is kept for each endpoint template, such as
+ * {@code /2.0/repositories/{workspace}/{repo_slug}/issues}, and records the
+ * outcomes of the last {@link #getWindowSize} attempts made to it.  An
+ * attempt fails if it is answered with a server error or if it fails with
+ * any other {@link ProcessingException}; it is slow if it takes longer than
+ * {@link #getSlowCallDuration}.  Throttled attempts are not recorded, as
+ * they are handled by the {@link RateLimiter} object of the transport.</p>
+ * <p>When at least {@link #getMinimumCalls} outcomes are recorded and
+ * either the failure rate or the slow call rate reaches its threshold, the
+ * circuit is opened and the following attempts to the endpoint are rejected
+ * immediately with a {@link CircuitOpenException} so that callers can shed
+ * load instead of waiting.  After {@link #getOpenDuration}, the circuit is
+ * half-open and lets {@link #getHalfOpenCalls} probes through; it is closed
+ * again if their rates are below the thresholds and opened again
+ * otherwise.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class CircuitBreaker
+{
+    /**
+     * Default failure rate threshold.
+     */
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+
+    /**
+     * Default slow call rate threshold.
+     */
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+
+    /**
+     * Default duration over which an attempt is slow.
+     */
+    public static final Duration DEFAULT_SLOW_CALL_DURATION =
+        Duration.ofSeconds(10);
+
+    /**
+     * Default number of the recorded outcomes per circuit.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+
+    /**
+     * Default minimum number of the recorded outcomes to evaluate the rates.
+     */
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+
+    /**
+     * Default duration for which a circuit is kept open.
+     */
+    public static final Duration DEFAULT_OPEN_DURATION =
+        Duration.ofSeconds(30);
+
+    /**
+     * Default number of probes in the half-open state.
+     */
+    public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+    /**
+     * Circuit that records nothing, used while this object is disabled.
+     */
+    private final Circuit noCircuit = new Circuit(null);
+
+    /**
+     * Indicates whether this object is enabled.
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Failure rate threshold.
+     */
+    private volatile double failureRateThreshold =
+        DEFAULT_FAILURE_RATE_THRESHOLD;
+
+    /**
+     * Slow call rate threshold.
+     */
+    private volatile double slowCallRateThreshold =
+        DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+
+    /**
+     * Duration over which an attempt is slow.
+     */
+    private volatile Duration slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+
+    /**
+     * Number of the recorded outcomes per circuit.
+     */
+    private volatile int windowSize = DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Minimum number of the recorded outcomes to evaluate the rates.
+     */
+    private volatile int minimumCalls = DEFAULT_MINIMUM_CALLS;
+
+    /**
+     * Duration for which a circuit is kept open.
+     */
+    private volatile Duration openDuration = DEFAULT_OPEN_DURATION;
+
+    /**
+     * Number of probes in the half-open state.
+     */
+    private volatile int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+    /**
+     * Circuits keyed by endpoint template.
+     */
+    private final ConcurrentMap<String, Circuit> circuits =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Listeners for state transitions.
+     */
+    private final List<CircuitBreakerListener> listeners =
+        new CopyOnWriteArrayList<>();
+
+    /**
+     * Number of rejected attempts.
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Number of transitions to the open state.
+     */
+    private final AtomicLong openedCount = new AtomicLong();
+
+    /**
+     * Constructs a circuit breaker with the default values.
+     */
+    public CircuitBreaker()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Returns {@code true} if this object is enabled.
+     *
+     * @return {@code true} if enabled; {@code false} otherwise
+     */
+    public final boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables this object.
+     * Every attempt is let through while this object is disabled.
+     *
+     * @param newValue {@code true} to enable; {@code false} to disable
+     */
+    public final void setEnabled(final boolean newValue)
+    {
+        enabled = newValue;
+    }
+
+    /**
+     * Returns the failure rate threshold.
+     *
+     * @return the failure rate threshold
+     */
+    public final double getFailureRateThreshold()
+    {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Sets the failure rate threshold.
+     *
+     * @param newValue a new value of the failure rate threshold, which must
+     * be greater than zero and not greater than one
+     */
+    public final void setFailureRateThreshold(final double newValue)
+    {
+        checkRate(newValue);
+        failureRateThreshold = newValue;
+    }
+
+    /**
+     * Returns the slow call rate threshold.
+     *
+     * @return the slow call rate threshold
+     */
+    public final double getSlowCallRateThreshold()
+    {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * Sets the slow call rate threshold.
+     *
+     * @param newValue a new value of the slow call rate threshold, which
+     * must be greater than zero and not greater than one
+     */
+    public final void setSlowCallRateThreshold(final double newValue)
+    {
+        checkRate(newValue);
+        slowCallRateThreshold = newValue;
+    }
+
+    /**
+     * Returns the duration over which an attempt is slow.
+     *
+     * @return the slow call duration
+     */
+    public final Duration getSlowCallDuration()
+    {
+        return slowCallDuration;
+    }
+
+    /**
+     * Sets the duration over which an attempt is slow.
+     *
+     * @param newValue a new value of the slow call duration
+     */
+    public final void setSlowCallDuration(final Duration newValue)
+    {
+        checkDuration(newValue);
+        slowCallDuration = newValue;
+    }
+
+    /**
+     * Returns the number of the recorded outcomes per circuit.
+     *
+     * @return the window size
+     */
+    public final int getWindowSize()
+    {
+        return windowSize;
+    }
+
+    /**
+     * Sets the number of the recorded outcomes per circuit.
+     * The recorded outcomes of a circuit are discarded when the next
+     * outcome is recorded after a change.
+     *
+     * @param newValue a new value of the window size
+     */
+    public final void setWindowSize(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Window size is not positive");
+        }
+        windowSize = newValue;
+    }
+
+    /**
+     * Returns the minimum number of the recorded outcomes to evaluate the
+     * rates.
+     *
+     * @return the minimum number of calls
+     */
+    public final int getMinimumCalls()
+    {
+        return minimumCalls;
+    }
+
+    /**
+     * Sets the minimum number of the recorded outcomes to evaluate the
+     * rates.
+     * It is effectively limited by the window size.
+     *
+     * @param newValue a new value of the minimum number of calls
+     */
+    public final void setMinimumCalls(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Minimum is not positive");
+        }
+        minimumCalls = newValue;
+    }
+
+    /**
+     * Returns the duration for which a circuit is kept open.
+     *
+     * @return the open duration
+     */
+    public final Duration getOpenDuration()
+    {
+        return openDuration;
+    }
+
+    /**
+     * Sets the duration for which a circuit is kept open.
+     *
+     * @param newValue a new value of the open duration
+     */
+    public final void setOpenDuration(final Duration newValue)
+    {
+        checkDuration(newValue);
+        openDuration = newValue;
+    }
+
+    /**
+     * Returns the number of probes in the half-open state.
+     *
+     * @return the number of half-open calls
+     */
+    public final int getHalfOpenCalls()
+    {
+        return halfOpenCalls;
+    }
+
+    /**
+     * Sets the number of probes in the half-open state.
+     *
+     * @param newValue a new value of the number of half-open calls
+     */
+    public final void setHalfOpenCalls(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Number is not positive");
+        }
+        halfOpenCalls = newValue;
+    }
+
+    /**
+     * Returns the state of the circuit of an endpoint.
+     *
+     * @param endpoint an endpoint template
+     * @return the state of the circuit, which is {@link CircuitState#CLOSED}
+     * if no attempt has been made to the endpoint
+     */
+    public final CircuitState getState(final String endpoint)
+    {
+        Circuit circuit = circuits.get(endpoint);
+        if (circuit == null) {
+            return CircuitState.CLOSED;
+        }
+        return circuit.getState();
+    }
+
+    /**
+     * Returns the states of all the known circuits.
+     *
+     * @return an unmodifiable map from endpoint templates to states
+     */
+    public final Map<String, CircuitState> getStates()
+    {
+        Map<String, CircuitState> states = new TreeMap<>();
+        circuits.forEach((key, value) -> states.put(key, value.getState()));
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Returns the failure rate of the recorded outcomes of an endpoint.
+     *
+     * @param endpoint an endpoint template
+     * @return the failure rate between zero and one, or zero if nothing is
+     * recorded
+     */
+    public final double getFailureRate(final String endpoint)
+    {
+        Circuit circuit = circuits.get(endpoint);
+        if (circuit == null) {
+            return 0.0;
+        }
+        return circuit.getFailureRate();
+    }
+
+    /**
+     * Returns the slow call rate of the recorded outcomes of an endpoint.
+     *
+     * @param endpoint an endpoint template
+     * @return the slow call rate between zero and one, or zero if nothing is
+     * recorded
+     */
+    public final double getSlowCallRate(final String endpoint)
+    {
+        Circuit circuit = circuits.get(endpoint);
+        if (circuit == null) {
+            return 0.0;
+        }
+        return circuit.getSlowCallRate();
+    }
+
+    /**
+     * Returns the number of attempts rejected by open circuits.
+     *
+     * @return the number of rejected attempts
+     */
+    public final long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of transitions to the open state.
+     *
+     * @return the number of opened circuits
+     */
+    public final long getOpenedCount()
+    {
+        return openedCount.get();
+    }
+
+    /**
+     * Resets the counters to zero.
+     */
+    public final void resetCounters()
+    {
+        rejectedCount.set(0);
+        openedCount.set(0);
+    }
+
+    /**
+     * Closes all the circuits discarding their recorded outcomes.
+     * No events are fired.
+     */
+    public final void reset()
+    {
+        circuits.clear();
+    }
+
+    /**
+     * Adds a listener for state transitions.
+     *
+     * @param listener a listener
+     */
+    public final void addCircuitBreakerListener(
+        final CircuitBreakerListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener for state transitions.
+     *
+     * @param listener a listener
+     */
+    public final void removeCircuitBreakerListener(
+        final CircuitBreakerListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Acquires a permission for an attempt to a URI.
+     * The returned circuit must be given the outcome of the attempt by
+     * {@link Circuit#complete} or released by {@link Circuit#cancel}.
+     *
+     * @param uri the request URI
+     * @return the circuit of the endpoint
+     * @throws CircuitOpenException if the circuit is open
+     */
+    final Circuit acquire(final URI uri)
+    {
+        if (!enabled) {
+            return noCircuit;
+        }
+        Circuit circuit = circuits.computeIfAbsent(
+            ClientTransport.endpointOf(uri), Circuit::new);
+        circuit.acquire();
+        return circuit;
+    }
+
+    /**
+     * Returns {@code true} if an outcome shall be recorded as a failure.
+     *
+     * @param exception an exception, possibly wrapped in a
+     * {@link CompletionException} object
+     * @return {@code true} if a failure; {@code false} otherwise
+     */
+    static boolean isFailure(final Throwable exception)
+    {
+        Throwable cause = exception;
+        while (cause instanceof CompletionException
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof WebApplicationException) {
+            return ((WebApplicationException) cause).getResponse()
+                .getStatus() >= 500;
+        }
+        return cause instanceof ProcessingException
+            && !(cause instanceof CircuitOpenException);
+    }
+
+    /**
+     * Fires an event to the listeners.
+     *
+     * @param event an event, or {@code null}
+     */
+    private void fire(final CircuitBreakerEvent event)
+    {
+        if (event != null) {
+            if (event.getNewState() == CircuitState.OPEN) {
+                openedCount.incrementAndGet();
+            }
+            listeners.forEach((l) -> l.stateChanged(event));
+        }
+    }
+
+    /**
+     * Checks a rate threshold.
+     *
+     * @param rate a rate threshold
+     * @throws IllegalArgumentException if the rate is not greater than zero
+     * or greater than one
+     */
+    private static void checkRate(final double rate)
+    {
+        if (!(rate > 0.0 && rate <= 1.0)) {
+            throw new IllegalArgumentException("Invalid rate");
+        }
+    }
+
+    /**
+     * Checks a duration.
+     *
+     * @param duration a duration
+     * @throws IllegalArgumentException if the duration is {@code null} or
+     * negative
+     */
+    private static void checkDuration(final Duration duration)
+    {
+        if (duration == null || duration.isNegative()) {
+            throw new IllegalArgumentException("Invalid duration");
+        }
+    }
+
+    /**
+     * Circuit of an endpoint.
+     * The endpoint is {@code null} for the circuit used while the circuit
+     * breaker is disabled, which records nothing.
+     */
+    final class Circuit
+    {
+        /**
+         * Endpoint template, or {@code null}.
+         */
+        private final String endpoint;
+
+        /**
+         * Current state.
+         */
+        private CircuitState state = CircuitState.CLOSED;
+
+        /**
+         * Failure flags of the recorded outcomes as a ring buffer.
+         */
+        private boolean[] failures = new boolean[0];
+
+        /**
+         * Slow flags of the recorded outcomes as a ring buffer.
+         */
+        private boolean[] slows = new boolean[0];
+
+        /**
+         * Number of the recorded outcomes.
+         */
+        private int recorded = 0;
+
+        /**
+         * Index of the next outcome in the ring buffers.
+         */
+        private int next = 0;
+
+        /**
+         * Number of the probes in progress in the half-open state.
+         */
+        private int probes = 0;
+
+        /**
+         * Value of {@link System#nanoTime} when the circuit was opened.
+         */
+        private long openedAt = 0;
+
+        /**
+         * Constructs a circuit.
+         *
+         * @param endpoint an endpoint template, or {@code null}
+         */
+        Circuit(final String endpoint)
+        {
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * Returns the current state.
+         *
+         * @return the current state
+         */
+        synchronized CircuitState getState()
+        {
+            return state;
+        }
+
+        /**
+         * Returns the failure rate of the recorded outcomes.
+         *
+         * @return the failure rate
+         */
+        synchronized double getFailureRate()
+        {
+            return rate(failures);
+        }
+
+        /**
+         * Returns the slow call rate of the recorded outcomes.
+         *
+         * @return the slow call rate
+         */
+        synchronized double getSlowCallRate()
+        {
+            return rate(slows);
+        }
+
+        /**
+         * Acquires a permission for an attempt.
+         *
+         * @throws CircuitOpenException if the circuit is open
+         */
+        void acquire()
+        {
+            CircuitBreakerEvent event = null;
+            synchronized (this) {
+                if (state == CircuitState.OPEN) {
+                    long remaining = openDuration.toNanos()
+                        - (System.nanoTime() - openedAt);
+                    if (remaining > 0) {
+                        rejectedCount.incrementAndGet();
+                        throw new CircuitOpenException(endpoint,
+                            Duration.ofNanos(remaining));
+                    }
+                    event = transit(CircuitState.HALF_OPEN);
+                }
+                if (state == CircuitState.HALF_OPEN) {
+                    if (probes + recorded >= failures.length) {
+                        rejectedCount.incrementAndGet();
+                        throw new CircuitOpenException(endpoint,
+                            Duration.ZERO);
+                    }
+                    probes += 1;
+                }
+            }
+            fire(event);
+        }
+
+        /**
+         * Releases a permission without recording an outcome.
+         */
+        void cancel()
+        {
+            if (endpoint != null) {
+                synchronized (this) {
+                    if (state == CircuitState.HALF_OPEN && probes > 0) {
+                        probes -= 1;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Records the outcome of an attempt.
+         * Throttled attempts are not recorded.
+         *
+         * @param exception the failure of the attempt, possibly wrapped in
+         * a {@link CompletionException} object, or {@code null}
+         * @param nanos the duration of the attempt in nanoseconds
+         */
+        void complete(final Throwable exception, final long nanos)
+        {
+            if (endpoint == null) {
+                return;
+            }
+            if (exception != null
+                && ClientTransport.isThrottled(exception)) {
+                cancel();
+                return;
+            }
+
+            boolean failure = exception != null && isFailure(exception);
+            boolean slow = nanos > slowCallDuration.toNanos();
+            CircuitBreakerEvent event = null;
+            synchronized (this) {
+                if (state == CircuitState.OPEN) {
+                    // The attempt was started before the circuit opened.
+                    return;
+                }
+                if (state == CircuitState.HALF_OPEN) {
+                    if (probes > 0) {
+                        probes -= 1;
+                    }
+                }
+                else if (failures.length != windowSize) {
+                    clear(windowSize);
+                }
+                failures[next] = failure;
+                slows[next] = slow;
+                next = (next + 1) % failures.length;
+                recorded = Math.min(recorded + 1, failures.length);
+
+                if (state == CircuitState.HALF_OPEN) {
+                    if (recorded >= failures.length) {
+                        if (isTripped()) {
+                            event = transit(CircuitState.OPEN);
+                        }
+                        else {
+                            event = transit(CircuitState.CLOSED);
+                        }
+                    }
+                }
+                else if (recorded >= Math.min(minimumCalls, failures.length)
+                    && isTripped()) {
+                    event = transit(CircuitState.OPEN);
+                }
+            }
+            fire(event);
+        }
+
+        /**
+         * Returns {@code true} if either rate reaches its threshold.
+         *
+         * @return {@code true} if tripped; {@code false} otherwise
+         */
+        private boolean isTripped()
+        {
+            return rate(failures) >= failureRateThreshold
+                || rate(slows) >= slowCallRateThreshold;
+        }
+
+        /**
+         * Changes the state discarding the recorded outcomes.
+         *
+         * @param newState a new state
+         * @return an event for the transition
+         */
+        private CircuitBreakerEvent transit(final CircuitState newState)
+        {
+            CircuitBreakerEvent event = new CircuitBreakerEvent(
+                CircuitBreaker.this, endpoint, state, newState,
+                rate(failures), rate(slows));
+            state = newState;
+            probes = 0;
+            if (newState == CircuitState.OPEN) {
+                openedAt = System.nanoTime();
+            }
+            if (newState == CircuitState.HALF_OPEN) {
+                clear(halfOpenCalls);
+            }
+            else {
+                clear(windowSize);
+            }
+            return event;
+        }
+
+        /**
+         * Discards the recorded outcomes.
+         *
+         * @param size the size of the new ring buffers
+         */
+        private void clear(final int size)
+        {
+            failures = new boolean[size];
+            slows = new boolean[size];
+            recorded = 0;
+            next = 0;
+        }
+
+        /**
+         * Returns the rate of the set flags among the recorded outcomes.
+         *
+         * @param flags a ring buffer of flags
+         * @return the rate, or zero if nothing is recorded
+         */
+        private double rate(final boolean[] flags)
+        {
+            if (recorded == 0) {
+                return 0.0;
+            }
+            int count = 0;
+            for (int i = 0; i < recorded; i++) {
+                if (flags[i]) {
+                    count += 1;
+                }
+            }
+            return (double) count / recorded;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * CircuitBreakerEvent.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.util.EventObject;
+
+/**
+ * Event which is fired when the state of a circuit is changed.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class CircuitBreakerEvent extends EventObject
+{
+    static final long serialVersionUID = 1;
+
+    /**
+     * Endpoint template of the circuit.
+     */
+    private final String endpoint;
+
+    /**
+     * State before the transition.
+     */
+    private final CircuitState oldState;
+
+    /**
+     * State after the transition.
+     */
+    private final CircuitState newState;
+
+    /**
+     * Failure rate that caused the transition.
+     */
+    private final double failureRate;
+
+    /**
+     * Slow call rate that caused the transition.
+     */
+    private final double slowCallRate;
+
+    /**
+     * Initializes the event.
+     *
+     * @param source an event source
+     * @param endpoint the endpoint template of the circuit
+     * @param oldState the state before the transition
+     * @param newState the state after the transition
+     * @param failureRate the failure rate that caused the transition
+     * @param slowCallRate the slow call rate that caused the transition
+     */
+    public CircuitBreakerEvent(final Object source, final String endpoint,
+        final CircuitState oldState, final CircuitState newState,
+        final double failureRate, final double slowCallRate)
+    {
+        super(source);
+        this.endpoint = endpoint;
+        this.oldState = oldState;
+        this.newState = newState;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+    }
+
+    /**
+     * Returns the endpoint template of the circuit.
+     *
+     * @return the endpoint template
+     */
+    public final String getEndpoint()
+    {
+        return endpoint;
+    }
+
+    /**
+     * Returns the state before the transition.
+     *
+     * @return the old state
+     */
+    public final CircuitState getOldState()
+    {
+        return oldState;
+    }
+
+    /**
+     * Returns the state after the transition.
+     *
+     * @return the new state
+     */
+    public final CircuitState getNewState()
+    {
+        return newState;
+    }
+
+    /**
+     * Returns the failure rate that caused the transition.
+     * It is zero for a transition from {@link CircuitState#OPEN} to
+     * {@link CircuitState#HALF_OPEN}.
+     *
+     * @return the failure rate between zero and one
+     */
+    public final double getFailureRate()
+    {
+        return failureRate;
+    }
+
+    /**
+     * Returns the slow call rate that caused the transition.
+     * It is zero for a transition from {@link CircuitState#OPEN} to
+     * {@link CircuitState#HALF_OPEN}.
+     *
+     * @return the slow call rate between zero and one
+     */
+    public final double getSlowCallRate()
+    {
+        return slowCallRate;
+    }
+}
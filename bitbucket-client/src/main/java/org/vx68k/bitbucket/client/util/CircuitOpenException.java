@@ -0,0 +1,84 @@
+/*
+ * CircuitOpenException.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.time.Duration;
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Thrown when an exchange is rejected without being sent because the
+ * circuit of its endpoint is open.
+ * <p>This exception is never retried by a {@link RetryPolicy} object.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class CircuitOpenException extends ProcessingException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Endpoint template of the rejected exchange.
+     */
+    private final String endpoint;
+
+    /**
+     * Remaining time until the circuit lets a probe through.
+     */
+    private final Duration retryAfter;
+
+    /**
+     * Constructs an exception.
+     *
+     * @param endpoint the endpoint template of the rejected exchange
+     * @param retryAfter the remaining time until the circuit lets a probe
+     * through
+     */
+    public CircuitOpenException(final String endpoint,
+        final Duration retryAfter)
+    {
+        super("Circuit open: " + endpoint);
+        this.endpoint = endpoint;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns the endpoint template of the rejected exchange.
+     *
+     * @return the endpoint template
+     */
+    public final String getEndpoint()
+    {
+        return endpoint;
+    }
+
+    /**
+     * Returns the remaining time until the circuit lets a probe through.
+     * It is zero if the circuit is half-open and all its probes are in
+     * progress.
+     *
+     * @return the remaining time
+     */
+    public final Duration getRetryAfter()
+    {
+        return retryAfter;
+    }
+}
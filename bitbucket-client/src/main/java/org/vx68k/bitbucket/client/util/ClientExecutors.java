@@ -0,0 +1,151 @@
+/*
+ * ClientExecutors.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of executor services for client work.
+ * <p>On Java SE 21 or later, {@link #newExecutor} returns an executor
+ * service that runs each task on a new virtual thread, so that tens of
+ * thousands of blocking calls can wait for their exchanges without
+ * occupying platform threads.  It can be set to
+ * {@link ClientTransport#setExecutorService} to run asynchronous exchanges
+ * and page fetches, and be used by the caller to run blocking calls of
+ * {@link org.vx68k.bitbucket.client.BitbucketClient}.  On older versions,
+ * it falls back to a cached pool of daemon platform threads.</p>
+ * <p>The blocking sections of this library use {@link
+ * java.util.concurrent.locks.Lock} objects rather than {@code synchronized}
+ * blocks where they may wait for exchanges, so that they do not pin the
+ * carrier threads of virtual threads.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public final class ClientExecutors
+{
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor} method, or
+     * {@code null} if not supported.
+     */
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR =
+        findVirtualThreadExecutor();
+
+    /**
+     * Number of the platform threads created so far.
+     */
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * Does nothing.
+     */
+    private ClientExecutors()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Returns {@code true} if virtual threads are supported on the running
+     * platform.
+     *
+     * @return {@code true} if supported; {@code false} otherwise
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Returns a new executor service that runs each task on a new virtual
+     * thread.
+     *
+     * @return a new executor service
+     * @throws UnsupportedOperationException if virtual threads are not
+     * supported
+     */
+    public static ExecutorService newVirtualThreadExecutor()
+    {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR == null) {
+            throw new UnsupportedOperationException(
+                "Java SE 21 or later is required");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        }
+        catch (final InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a new executor service for client work.
+     * It runs each task on a new virtual thread if supported, or on a
+     * cached pool of daemon platform threads otherwise.
+     *
+     * @return a new executor service
+     */
+    public static ExecutorService newExecutor()
+    {
+        if (isVirtualThreadSupported()) {
+            return newVirtualThreadExecutor();
+        }
+        return Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable,
+                "bitbucket-client-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Finds the factory method of virtual thread executors.
+     * It is a preview API before Java SE 21, which is not used.
+     *
+     * @return the method, or {@code null} if not supported
+     */
+    private static Method findVirtualThreadExecutor()
+    {
+        String version = System.getProperty("java.specification.version",
+            "");
+        try {
+            if (version.startsWith("1.")
+                || Integer.parseInt(version) < 21) {
+                return null;
+            }
+            return Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor");
+        }
+        catch (final NumberFormatException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * ClientMetricsListener.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+/**
+ * Listener for {@link ExchangeEvent}.
+ * <p>Listeners are called synchronously on the thread that starts or
+ * completes an exchange, so they should return quickly.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public interface ClientMetricsListener
+{
+    /**
+     * Notifies that an exchange was started.
+     *
+     * @param event a fired event
+     */
+    void exchangeStarted(ExchangeEvent event);
+
+    /**
+     * Notifies that an exchange was completed.
+     *
+     * @param event a fired event
+     */
+    void exchangeCompleted(ExchangeEvent event);
+}
@@ -0,0 +1,1286 @@
+/*
+ * ClientTransport.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+
+/**
+ * Long-lived HTTP transport for the JAX-RS Client API.
+ * <p>A transport owns a single JAX-RS {@link Client} object which is shared
+ * by every exchange so that connections can be kept alive and reused by the
+ * underlying connector.  The number of concurrent exchanges is limited both
+ * in total and per route, where a route is the scheme, host and port of a
+ * request URI.  The shared client is closed and rebuilt if it has been idle
+ * for longer than the idle timeout.  Once the transport is closed, it can
+ * no longer be used.</p>
+ * <p>Asynchronous exchanges wait for the limits without occupying threads.
+ * They are run on the executor service of the shared client if one is
+ * set.</p>
+ * <p>Every exchange takes a token from the {@link RateLimiter} object of the
+ * transport before it is sent, and exchanges rejected with {@code 429 Too
+ * Many Requests} are requeued rather than failed.  Exchanges made by
+ * {@link #invoke} and {@link #invokeAsync} are also retried by the
+ * {@link RetryPolicy} object of the transport, so their calls must be
+ * idempotent; use {@link #invokeOnce} for the others.</p>
+ * <p>Every attempt is also checked by the {@link CircuitBreaker} object of
+ * the transport, which rejects it with a {@link CircuitOpenException}
+ * without waiting for the limits if the circuit of its endpoint is
+ * open.</p>
+ * <p>An exchange may also be made within a {@link Bulkhead} object, which
+ * limits the concurrency of a class of traffic before it reaches the rate
+ * and connection limits shared by all the exchanges.</p>
+ * <p>The transport registers its own filters, including a
+ * {@link ResponseCache} object, a {@link RateLimiter} object and a
+ * {@link ResponseCompression} object, on each shared client it builds
+ * rather than on the {@link ClientBuilder} object given to the constructor,
+ * so that the builder can be shared by transports, each with its own
+ * filters.</p>
+ * <p>Requests are sent by the connector of the JAX-RS implementation unless
+ * another {@link TransportBackend} is given to the constructor.  With
+ * {@link TransportBackend#HTTP_CLIENT}, they are sent by a shared
+ * {@code java.net.http.HttpClient} object after every other request filter
+ * including the authenticators, and asynchronous exchanges wait for the
+ * responses without occupying threads.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class ClientTransport implements Closeable
+{
+    /**
+     * Default maximum number of concurrent exchanges in total.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    /**
+     * Default maximum number of concurrent exchanges per route.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 16;
+
+    /**
+     * Default idle timeout.
+     */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    /**
+     * {@link ClientBuilder} object given to the constructor.
+     */
+    private final ClientBuilder clientBuilder;
+
+    /**
+     * Backend that sends the requests.
+     */
+    private final TransportBackend backend;
+
+    /**
+     * Response cache registered on the shared client.
+     */
+    private final ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * Rate limiter registered on the shared client.
+     */
+    private final RateLimiter rateLimiter = new RateLimiter();
+
+    /**
+     * Retry policy for idempotent exchanges, or {@code null} if disabled.
+     */
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+
+    /**
+     * Circuit breaker for the endpoints.
+     */
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Compressed content negotiation registered on the shared client.
+     */
+    private final ResponseCompression responseCompression =
+        new ResponseCompression();
+
+    /**
+     * Exchange metrics registered on the shared client.
+     */
+    private final ExchangeMetrics exchangeMetrics = new ExchangeMetrics();
+
+    /**
+     * Connector registered on the shared client, or {@code null} if the
+     * requests are sent by the connector of the JAX-RS implementation.
+     */
+    private final HttpClientConnector connector;
+
+    /**
+     * Components registered by {@link #register} with their priorities.
+     */
+    private final Map<Object, Integer> components = new LinkedHashMap<>();
+
+    /**
+     * Shared JAX-RS client, or {@code null} if not built yet.
+     */
+    private volatile Client client = null;
+
+    /**
+     * Indicates whether this transport has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Lock for building and closing the shared client.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Time in nanoseconds when the shared client was used last.
+     */
+    private volatile long lastUsed = System.nanoTime();
+
+    /**
+     * Number of exchanges in progress.
+     */
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    /**
+     * Maximum number of concurrent exchanges in total.
+     */
+    private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * Maximum number of concurrent exchanges per route.
+     */
+    private volatile int maxConnectionsPerRoute =
+        DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    /**
+     * Idle timeout, or {@code null} if the client shall never be recycled.
+     */
+    private volatile Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * Executor service for asynchronous exchanges, or {@code null} for the
+     * default one of the JAX-RS implementation.
+     */
+    private volatile ExecutorService executorService = null;
+
+    /**
+     * Limiter for the total number of concurrent exchanges.
+     */
+    private volatile ExchangeLimiter connections =
+        new ExchangeLimiter(DEFAULT_MAX_CONNECTIONS);
+
+    /**
+     * Limiters for the number of concurrent exchanges per route.
+     */
+    private final ConcurrentMap<String, ExchangeLimiter> routeConnections =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Metrics listeners.
+     */
+    private final List<ClientMetricsListener> metricsListeners =
+        new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a transport.
+     *
+     * @param clientBuilder a {@link ClientBuilder} object that is to be used
+     * to build the shared client
+     */
+    public ClientTransport(final ClientBuilder clientBuilder)
+    {
+        this(clientBuilder, TransportBackend.JAX_RS);
+    }
+
+    /**
+     * Constructs a transport with a backend.
+     *
+     * @param clientBuilder a {@link ClientBuilder} object that is to be used
+     * to build the shared client
+     * @param backend a backend that sends the requests
+     * @throws IllegalArgumentException if the backend is not available
+     */
+    public ClientTransport(final ClientBuilder clientBuilder,
+        final TransportBackend backend)
+    {
+        if (clientBuilder == null) {
+            throw new IllegalArgumentException("Client builder is null");
+        }
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend is null");
+        }
+        if (!backend.isAvailable()) {
+            throw new IllegalArgumentException(
+                "Backend is not available: " + backend);
+        }
+        this.clientBuilder = clientBuilder;
+        this.backend = backend;
+        if (backend == TransportBackend.HTTP_CLIENT) {
+            this.connector = new HttpClientConnector();
+        }
+        else {
+            this.connector = null;
+        }
+    }
+
+    /**
+     * Registers a component on the shared client with a priority.
+     * The component is registered on every shared client this transport
+     * builds, but not on the client builder.  The shared client is closed so
+     * that it will be rebuilt with the component, so this method should be
+     * called before exchanges are made.
+     * <p>This method is used to plug in a {@link TrafficRecorder} or
+     * {@link TrafficReplayer} object.</p>
+     *
+     * @param component a component instance
+     * @param priority the priority of the component
+     */
+    public final void register(final Object component, final int priority)
+    {
+        if (component == null) {
+            throw new IllegalArgumentException("Component is null");
+        }
+        lock.lock();
+        try {
+            components.put(component, priority);
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the backend that sends the requests.
+     *
+     * @return the backend
+     */
+    public final TransportBackend getBackend()
+    {
+        return backend;
+    }
+
+    /**
+     * Returns the {@link ClientBuilder} object given to the constructor.
+     *
+     * @return the {@link ClientBuilder} object
+     */
+    public final ClientBuilder getClientBuilder()
+    {
+        return clientBuilder;
+    }
+
+    /**
+     * Returns the response cache of this transport.
+     * It is disabled until a store is set.
+     *
+     * @return the response cache
+     */
+    public final ResponseCache getResponseCache()
+    {
+        return responseCache;
+    }
+
+    /**
+     * Returns the rate limiter of this transport.
+     * Its rate is unlimited until a refill rate is set.
+     *
+     * @return the rate limiter
+     */
+    public final RateLimiter getRateLimiter()
+    {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the compressed content negotiation of this transport.
+     * It is enabled by default.
+     *
+     * @return the compressed content negotiation
+     */
+    public final ResponseCompression getResponseCompression()
+    {
+        return responseCompression;
+    }
+
+    /**
+     * Returns the retry policy for idempotent exchanges.
+     *
+     * @return the retry policy, or {@code null} if disabled
+     */
+    public final RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the retry policy for idempotent exchanges.
+     *
+     * @param newValue a new value of the retry policy, or {@code null} to
+     * disable retries
+     */
+    public final void setRetryPolicy(final RetryPolicy newValue)
+    {
+        retryPolicy = newValue;
+    }
+
+    /**
+     * Returns the {@link CircuitBreaker} object of this transport.
+     *
+     * @return the {@link CircuitBreaker} object
+     */
+    public final CircuitBreaker getCircuitBreaker()
+    {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the maximum number of concurrent exchanges in total.
+     *
+     * @return the maximum number of concurrent exchanges
+     */
+    public final int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of concurrent exchanges in total.
+     * The new value takes effect on exchanges that start after this call.
+     *
+     * @param newValue a new value of the maximum number
+     */
+    public final void setMaxConnections(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Maximum is not positive");
+        }
+        maxConnections = newValue;
+        connections = new ExchangeLimiter(newValue);
+    }
+
+    /**
+     * Returns the maximum number of concurrent exchanges per route.
+     *
+     * @return the maximum number of concurrent exchanges per route
+     */
+    public final int getMaxConnectionsPerRoute()
+    {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Sets the maximum number of concurrent exchanges per route.
+     * The new value takes effect on exchanges that start after this call.
+     *
+     * @param newValue a new value of the maximum number
+     */
+    public final void setMaxConnectionsPerRoute(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Maximum is not positive");
+        }
+        maxConnectionsPerRoute = newValue;
+        routeConnections.clear();
+    }
+
+    /**
+     * Returns the idle timeout.
+     *
+     * @return the idle timeout, or {@code null} if none
+     */
+    public final Duration getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the idle timeout.
+     * If the shared client has not been used for this duration, it will be
+     * closed together with its kept-alive connections and rebuilt on the next
+     * use.
+     *
+     * @param newValue a new value of the idle timeout, or {@code null} for
+     * none
+     */
+    public final void setIdleTimeout(final Duration newValue)
+    {
+        if (newValue != null && newValue.isNegative()) {
+            throw new IllegalArgumentException("Idle timeout is negative");
+        }
+        idleTimeout = newValue;
+    }
+
+    /**
+     * Returns the executor service for asynchronous exchanges.
+     *
+     * @return the executor service, or {@code null} if not set
+     */
+    public final ExecutorService getExecutorService()
+    {
+        return executorService;
+    }
+
+    /**
+     * Sets the executor service for asynchronous exchanges.
+     * This method should be called before the shared client is built,
+     * otherwise the new value will take effect when the client is rebuilt.
+     *
+     * @param newValue a new value of the executor service, or {@code null}
+     * for the default one of the JAX-RS implementation
+     */
+    public final void setExecutorService(final ExecutorService newValue)
+    {
+        executorService = newValue;
+    }
+
+    /**
+     * Returns the number of exchanges in progress.
+     *
+     * @return the number of exchanges in progress
+     */
+    public final int getActiveCount()
+    {
+        return activeCount.get();
+    }
+
+    /**
+     * Returns the shared JAX-RS client.
+     * It will be built on the first call.
+     *
+     * @return the shared JAX-RS client
+     * @throws IllegalStateException if this transport has been closed
+     */
+    public final Client getClient()
+    {
+        long now = System.nanoTime();
+        Client current = client;
+        if (current == null || isIdle(now)) {
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Transport is closed");
+                }
+                if (client != null && isIdle(now)) {
+                    client.close();
+                    client = null;
+                }
+                if (client == null) {
+                    ExecutorService executor = executorService;
+                    if (executor != null) {
+                        clientBuilder.executorService(executor);
+                    }
+                    client = registerComponents(clientBuilder.build());
+                }
+                current = client;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        lastUsed = now;
+        return current;
+    }
+
+    /**
+     * Registers the components of this transport on a client.
+     * The caller must hold the lock.
+     *
+     * @param newClient a client just built
+     * @return the client
+     */
+    private Client registerComponents(final Client newClient)
+    {
+        newClient.register(responseCache);
+        newClient.register(rateLimiter);
+        newClient.register(responseCompression, Priorities.ENTITY_CODER);
+        newClient.register(exchangeMetrics, Priorities.HEADER_DECORATOR);
+        if (connector != null) {
+            newClient.register(connector, Integer.MAX_VALUE);
+        }
+        components.forEach(newClient::register);
+        return newClient;
+    }
+
+    /**
+     * Returns {@code true} if the shared client has been idle for longer than
+     * the idle timeout.
+     *
+     * @param now the current value of {@link System#nanoTime}
+     * @return {@code true} if idle; {@code false} otherwise
+     */
+    private boolean isIdle(final long now)
+    {
+        Duration timeout = idleTimeout;
+        return timeout != null && activeCount.get() == 0
+            && now - lastUsed > timeout.toNanos();
+    }
+
+    /**
+     * Returns a {@link WebTarget} object for a URI on the shared client.
+     *
+     * @param uri a URI
+     * @return a {@link WebTarget} object
+     */
+    public final WebTarget target(final URI uri)
+    {
+        return getClient().target(uri);
+    }
+
+    /**
+     * Performs an idempotent exchange with a URI.
+     * This method blocks while the connection limits are reached.
+     *
+     * @param <T> the return type
+     * @param uri the target URI
+     * @param call a function that performs an idempotent request on a
+     * {@link WebTarget} object for the URI
+     * @return the value returned by the function
+     */
+    public final <T> T invoke(final URI uri,
+        final Function<? super WebTarget, ? extends T> call)
+    {
+        return invoke(target(uri), call);
+    }
+
+    /**
+     * Performs an idempotent exchange with a target retrying it by the retry
+     * policy.
+     * This method blocks while the connection limits are reached.
+     *
+     * @param <T> the return type
+     * @param target the target, which should be obtained from {@link #target}
+     * @param call a function that performs an idempotent request on the
+     * target
+     * @return the value returned by the function
+     */
+    public final <T> T invoke(final WebTarget target,
+        final Function<? super WebTarget, ? extends T> call)
+    {
+        return invoke(target, call, (Bulkhead) null);
+    }
+
+    /**
+     * Performs an idempotent exchange with a target within a bulkhead
+     * retrying it by the retry policy.
+     * This method blocks while the bulkhead or the connection limits are
+     * reached.  The permit of the bulkhead is held for all the attempts of
+     * the exchange.
+     *
+     * @param <T> the return type
+     * @param target the target, which should be obtained from {@link #target}
+     * @param call a function that performs an idempotent request on the
+     * target
+     * @param bulkhead a bulkhead, or {@code null}
+     * @return the value returned by the function
+     * @throws BulkheadFullException if the queue of the bulkhead is full
+     */
+    public final <T> T invoke(final WebTarget target,
+        final Function<? super WebTarget, ? extends T> call,
+        final Bulkhead bulkhead)
+    {
+        if (bulkhead == null) {
+            return invoke(target, call, retryPolicy, true);
+        }
+
+        try {
+            bulkhead.acquire();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(e);
+        }
+        try {
+            return invoke(target, call, retryPolicy, true);
+        }
+        finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Performs an exchange with a URI without retrying it on failures.
+     * It is still requeued if throttled.
+     *
+     * @param <T> the return type
+     * @param uri the target URI
+     * @param call a function that performs a request on a {@link WebTarget}
+     * object for the URI
+     * @return the value returned by the function
+     */
+    public final <T> T invokeOnce(final URI uri,
+        final Function<? super WebTarget, ? extends T> call)
+    {
+        return invoke(target(uri), call, null, true);
+    }
+
+    /**
+     * Performs an exchange with a target bypassing the rate and connection
+     * limits.
+     * This method is intended for requests that may be made from inside
+     * another exchange, such as token requests, which could otherwise wait
+     * for the permits held by the outer exchange.  The exchange is retried
+     * by the retry policy.
+     *
+     * @param <T> the return type
+     * @param target the target, which should be obtained from {@link #target}
+     * @param call a function that performs a request on the target
+     * @return the value returned by the function
+     */
+    public final <T> T invokeDirect(final WebTarget target,
+        final Function<? super WebTarget, ? extends T> call)
+    {
+        return invoke(target, call, retryPolicy, false);
+    }
+
+    /**
+     * Performs an exchange with a target.
+     *
+     * @param <T> the return type
+     * @param target the target
+     * @param call a function that performs a request on the target
+     * @param policy a retry policy, or {@code null} for no retries
+     * @param limited {@code true} if the exchange shall wait for the limits
+     * @return the value returned by the function
+     */
+    private <T> T invoke(final WebTarget target,
+        final Function<? super WebTarget, ? extends T> call,
+        final RetryPolicy policy, final boolean limited)
+    {
+        ExchangeRecord record = startRecord(target);
+        WebTarget recordedTarget = target;
+        if (record != null) {
+            recordedTarget = new ExchangeTarget(target, record);
+        }
+
+        T value;
+        try {
+            value = attempt(recordedTarget, call, policy, limited, record);
+        }
+        catch (final RuntimeException e) {
+            completeRecord(record, e);
+            throw e;
+        }
+        completeRecord(record, null);
+        return value;
+    }
+
+    /**
+     * Attempts an exchange until it succeeds or shall not be retried.
+     *
+     * @param <T> the return type
+     * @param target the target
+     * @param call a function that performs a request on the target
+     * @param policy a retry policy, or {@code null} for no retries
+     * @param limited {@code true} if the exchange shall wait for the limits
+     * @param record the record of the exchange, or {@code null}
+     * @return the value returned by the function
+     */
+    private <T> T attempt(final WebTarget target,
+        final Function<? super WebTarget, ? extends T> call,
+        final RetryPolicy policy, final boolean limited,
+        final ExchangeRecord record)
+    {
+        long start = System.nanoTime();
+        int requeues = 0;
+        int attempts = 0;
+        while (true) {
+            CircuitBreaker.Circuit circuit =
+                circuitBreaker.acquire(target.getUri());
+            long waitStart = System.nanoTime();
+            if (limited) {
+                try {
+                    rateLimiter.acquire();
+                }
+                catch (final InterruptedException e) {
+                    circuit.cancel();
+                    Thread.currentThread().interrupt();
+                    throw new ProcessingException(e);
+                }
+            }
+
+            try {
+                if (limited) {
+                    return exchange(target, call, record, waitStart,
+                        circuit);
+                }
+                return call(target, call, circuit);
+            }
+            catch (final RuntimeException e) {
+                if (limited && isThrottled(e)
+                    && requeues < rateLimiter.getMaxRequeues()) {
+                    requeues += 1;
+                    continue;
+                }
+                attempts += 1;
+                long delay = -1;
+                if (policy != null) {
+                    delay = policy.retryDelay(attempts, start, e);
+                }
+                if (delay < 0) {
+                    throw e;
+                }
+                if (record != null) {
+                    record.setRetries(attempts);
+                }
+                RetryPolicy.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Performs a single exchange within the connection limits.
+     *
+     * @param <T> the return type
+     * @param target the target
+     * @param call a function that performs a request on the target
+     * @param record the record of the exchange, or {@code null}
+     * @param waitStart the value of {@link System#nanoTime} when the
+     * exchange started waiting for the limits
+     * @param circuit the circuit of the endpoint
+     * @return the value returned by the function
+     */
+    private <T> T exchange(final WebTarget target,
+        final Function<? super WebTarget, ? extends T> call,
+        final ExchangeRecord record, final long waitStart,
+        final CircuitBreaker.Circuit circuit)
+    {
+        ExchangeLimiter total = connections;
+        ExchangeLimiter route = routeLimiter(target.getUri());
+        try {
+            total.acquire();
+            try {
+                route.acquire();
+            }
+            catch (final InterruptedException e) {
+                total.release();
+                throw e;
+            }
+        }
+        catch (final InterruptedException e) {
+            circuit.cancel();
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(e);
+        }
+        if (record != null) {
+            record.addQueueWait(System.nanoTime() - waitStart);
+        }
+
+        activeCount.incrementAndGet();
+        try {
+            return call(target, call, circuit);
+        }
+        finally {
+            finish(total, route);
+        }
+    }
+
+    /**
+     * Calls a function on a target recording the outcome on a circuit.
+     *
+     * @param <T> the return type
+     * @param target the target
+     * @param call a function that performs a request on the target
+     * @param circuit the circuit of the endpoint
+     * @return the value returned by the function
+     */
+    private static <T> T call(final WebTarget target,
+        final Function<? super WebTarget, ? extends T> call,
+        final CircuitBreaker.Circuit circuit)
+    {
+        long callStart = System.nanoTime();
+        T value;
+        try {
+            value = call.apply(target);
+        }
+        catch (final RuntimeException e) {
+            circuit.complete(e, System.nanoTime() - callStart);
+            throw e;
+        }
+        circuit.complete(null, System.nanoTime() - callStart);
+        return value;
+    }
+
+    /**
+     * Performs an idempotent exchange with a URI asynchronously.
+     * The returned future waits for the connection limits without blocking
+     * the current thread.
+     *
+     * @param <T> the type of the result
+     * @param uri the target URI
+     * @param call a function that starts an idempotent asynchronous request
+     * on a {@link WebTarget} object for the URI, typically by an
+     * {@link javax.ws.rs.client.RxInvoker} object
+     * @return a future of the result
+     */
+    public final <T> CompletableFuture<T> invokeAsync(final URI uri,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call)
+    {
+        return invokeAsync(target(uri), call);
+    }
+
+    /**
+     * Performs an idempotent exchange with a target asynchronously retrying
+     * it by the retry policy.
+     * The returned future waits for the connection limits without blocking
+     * the current thread.
+     *
+     * @param <T> the type of the result
+     * @param target the target, which should be obtained from {@link #target}
+     * @param call a function that starts an idempotent asynchronous request
+     * on the target
+     * @return a future of the result
+     */
+    public final <T> CompletableFuture<T> invokeAsync(final WebTarget target,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call)
+    {
+        return invokeAsync(target, call, (Bulkhead) null);
+    }
+
+    /**
+     * Performs an idempotent exchange with a target asynchronously within a
+     * bulkhead retrying it by the retry policy.
+     * The returned future waits for the bulkhead and the connection limits
+     * without blocking the current thread.  The permit of the bulkhead is
+     * held for all the attempts of the exchange.
+     *
+     * @param <T> the type of the result
+     * @param target the target, which should be obtained from {@link #target}
+     * @param call a function that starts an idempotent asynchronous request
+     * on the target
+     * @param bulkhead a bulkhead, or {@code null}
+     * @return a future of the result, which is completed exceptionally with
+     * a {@link BulkheadFullException} if the queue of the bulkhead is full
+     */
+    public final <T> CompletableFuture<T> invokeAsync(final WebTarget target,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call,
+        final Bulkhead bulkhead)
+    {
+        if (bulkhead == null) {
+            return startAsync(target, call);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        bulkhead.acquireAsync().whenComplete((v, rejected) -> {
+            if (rejected != null) {
+                result.completeExceptionally(rejected);
+                return;
+            }
+
+            CompletableFuture<T> future;
+            try {
+                future = startAsync(target, call);
+            }
+            catch (final RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((value, exception) -> {
+                bulkhead.release();
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                }
+                else {
+                    result.complete(value);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Starts an idempotent exchange with a target asynchronously.
+     *
+     * @param <T> the type of the result
+     * @param target the target
+     * @param call a function that starts an idempotent asynchronous request
+     * on the target
+     * @return a future of the result
+     */
+    private <T> CompletableFuture<T> startAsync(final WebTarget target,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call)
+    {
+        ExchangeRecord record = startRecord(target);
+        WebTarget recordedTarget = target;
+        if (record != null) {
+            recordedTarget = new ExchangeTarget(target, record);
+        }
+
+        CompletableFuture<T> future = invokeAsync(recordedTarget, call,
+            retryPolicy, record, System.nanoTime(), 0, 0);
+        if (record != null) {
+            future = future.whenComplete(
+                (value, exception) -> completeRecord(record, exception));
+        }
+        return future;
+    }
+
+    /**
+     * Performs an exchange asynchronously requeuing it if throttled and
+     * retrying it by a retry policy.
+     *
+     * @param <T> the type of the result
+     * @param target the target
+     * @param call a function that starts an asynchronous request on the
+     * target
+     * @param policy a retry policy, or {@code null} for no retries
+     * @param record the record of the exchange, or {@code null}
+     * @param start the value of {@link System#nanoTime} when the first
+     * attempt started
+     * @param requeues the number of requeues so far
+     * @param attempts the number of failed attempts so far
+     * @return a future of the result
+     */
+    private <T> CompletableFuture<T> invokeAsync(final WebTarget target,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call,
+        final RetryPolicy policy, final ExchangeRecord record,
+        final long start, final int requeues, final int attempts)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CircuitBreaker.Circuit circuit;
+        try {
+            circuit = circuitBreaker.acquire(target.getUri());
+        }
+        catch (final CircuitOpenException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        long waitStart = System.nanoTime();
+        rateLimiter.acquireAsync()
+            .thenCompose((v) -> exchangeAsync(target, call, record,
+                waitStart, circuit))
+            .whenComplete((value, exception) -> {
+                if (exception == null) {
+                    result.complete(value);
+                    return;
+                }
+
+                CompletableFuture<T> next = null;
+                if (isThrottled(exception)
+                    && requeues < rateLimiter.getMaxRequeues()) {
+                    next = invokeAsync(target, call, policy, record, start,
+                        requeues + 1, attempts);
+                }
+                else if (policy != null) {
+                    long delay = policy.retryDelay(attempts + 1, start,
+                        exception);
+                    if (delay >= 0) {
+                        if (record != null) {
+                            record.setRetries(attempts + 1);
+                        }
+                        next = DelayScheduler.delay(delay)
+                            .thenCompose((v) -> invokeAsync(target, call,
+                                policy, record, start, requeues,
+                                attempts + 1));
+                    }
+                }
+                if (next == null) {
+                    result.completeExceptionally(exception);
+                    return;
+                }
+                next.whenComplete((retried, retryException) -> {
+                    if (retryException != null) {
+                        result.completeExceptionally(retryException);
+                    }
+                    else {
+                        result.complete(retried);
+                    }
+                });
+            });
+        return result;
+    }
+
+    /**
+     * Performs a single exchange asynchronously within the connection
+     * limits.
+     *
+     * @param <T> the type of the result
+     * @param target the target
+     * @param call a function that starts an asynchronous request on the
+     * target
+     * @param record the record of the exchange, or {@code null}
+     * @param waitStart the value of {@link System#nanoTime} when the
+     * exchange started waiting for the limits
+     * @param circuit the circuit of the endpoint
+     * @return a future of the result
+     */
+    private <T> CompletableFuture<T> exchangeAsync(final WebTarget target,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call,
+        final ExchangeRecord record, final long waitStart,
+        final CircuitBreaker.Circuit circuit)
+    {
+        ExchangeLimiter total = connections;
+        ExchangeLimiter route = routeLimiter(target.getUri());
+        return total.acquireAsync()
+            .thenCompose((v) -> route.acquireAsync())
+            .thenCompose((v) -> {
+                if (record != null) {
+                    record.addQueueWait(System.nanoTime() - waitStart);
+                }
+                activeCount.incrementAndGet();
+                long callStart = System.nanoTime();
+                CompletionStage<? extends T> stage;
+                try {
+                    if (connector != null) {
+                        stage = connector.invokeAsync(target, call);
+                    }
+                    else {
+                        stage = call.apply(target);
+                    }
+                }
+                catch (final RuntimeException e) {
+                    finish(total, route);
+                    circuit.complete(e, System.nanoTime() - callStart);
+                    throw e;
+                }
+                CompletableFuture<T> result = new CompletableFuture<>();
+                stage.whenComplete((value, exception) -> {
+                    finish(total, route);
+                    circuit.complete(exception,
+                        System.nanoTime() - callStart);
+                    if (exception != null) {
+                        result.completeExceptionally(exception);
+                    }
+                    else {
+                        result.complete(value);
+                    }
+                });
+                return result;
+            });
+    }
+
+    /**
+     * Returns {@code true} if an exception of an exchange means it was
+     * throttled.
+     *
+     * @param exception an exception, possibly wrapped in a
+     * {@link CompletionException} object
+     * @return {@code true} if throttled; {@code false} otherwise
+     */
+    static boolean isThrottled(final Throwable exception)
+    {
+        Throwable cause = exception;
+        while (cause instanceof CompletionException
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof WebApplicationException
+            && RateLimiter.isThrottled(
+                ((WebApplicationException) cause).getResponse().getStatus());
+    }
+
+    /**
+     * Adds a metrics listener.
+     *
+     * @param listener a metrics listener
+     */
+    public final void addClientMetricsListener(
+        final ClientMetricsListener listener)
+    {
+        metricsListeners.add(listener);
+    }
+
+    /**
+     * Removes a metrics listener.
+     *
+     * @param listener a metrics listener
+     */
+    public final void removeClientMetricsListener(
+        final ClientMetricsListener listener)
+    {
+        metricsListeners.remove(listener);
+    }
+
+    /**
+     * Starts a record of an exchange if there are metrics listeners.
+     *
+     * @param target the target of the exchange
+     * @return a new record, or {@code null} if there are no listeners
+     */
+    private ExchangeRecord startRecord(final WebTarget target)
+    {
+        if (metricsListeners.isEmpty()) {
+            return null;
+        }
+
+        URI uri = target.getUri();
+        ExchangeRecord record = new ExchangeRecord(endpointOf(uri), uri);
+        ExchangeEvent event = new ExchangeEvent(this, record, null);
+        metricsListeners.forEach((l) -> l.exchangeStarted(event));
+        return record;
+    }
+
+    /**
+     * Completes a record of an exchange.
+     *
+     * @param record a record, or {@code null}
+     * @param failure the failure of the exchange, or {@code null}
+     */
+    private void completeRecord(final ExchangeRecord record,
+        final Throwable failure)
+    {
+        if (record != null) {
+            Throwable cause = failure;
+            while (cause instanceof CompletionException
+                && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            ExchangeEvent event = new ExchangeEvent(this, record, cause);
+            metricsListeners.forEach((l) -> l.exchangeCompleted(event));
+        }
+    }
+
+    /**
+     * Returns the limiter for the route of a URI.
+     *
+     * @param uri a URI
+     * @return the limiter for the route
+     */
+    private ExchangeLimiter routeLimiter(final URI uri)
+    {
+        return routeConnections.computeIfAbsent(routeOf(uri),
+            (key) -> new ExchangeLimiter(maxConnectionsPerRoute));
+    }
+
+    /**
+     * Finishes an exchange releasing its permits.
+     *
+     * @param total the limiter for the total number of exchanges
+     * @param route the limiter for the route
+     */
+    private void finish(final ExchangeLimiter total,
+        final ExchangeLimiter route)
+    {
+        lastUsed = System.nanoTime();
+        activeCount.decrementAndGet();
+        route.release();
+        total.release();
+    }
+
+    /**
+     * Returns the route key of a URI.
+     *
+     * @param uri a URI
+     * @return the route key
+     */
+    protected static String routeOf(final URI uri)
+    {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * Returns the endpoint template of a URI.
+     * The variable path segments of the Bitbucket Cloud REST API, such as
+     * user names, workspaces, repository slugs and numeric identifiers, are
+     * replaced with their template names so that exchanges can be grouped
+     * by endpoint.
+     *
+     * @param uri a URI
+     * @return the endpoint template
+     */
+    protected static String endpointOf(final URI uri)
+    {
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+
+        String[] segments = path.split("/", -1);
+        for (int i = 1; i < segments.length; i++) {
+            if (segments[i].matches("[0-9]+")) {
+                segments[i] = "{id}";
+            }
+        }
+        if (segments.length > 3 && segments[1].equals("2.0")) {
+            switch (segments[2]) {
+            case "users":
+            case "teams":
+                segments[3] = "{username}";
+                break;
+            case "workspaces":
+                segments[3] = "{workspace}";
+                break;
+            case "repositories":
+                segments[3] = "{workspace}";
+                if (segments.length > 4) {
+                    segments[4] = "{repo_slug}";
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    /**
+     * Closes the shared client if it has been built.
+     * After this method is called, exchanges with this transport fail with
+     * an {@link IllegalStateException}.  Closing a closed transport has no
+     * effect.
+     */
+    @Override
+    public void close()
+    {
+        lock.lock();
+        try {
+            closed = true;
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * DelayScheduler.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared scheduler for delays of asynchronous exchanges.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class DelayScheduler
+{
+    /**
+     * Shared scheduled executor, or {@code null} if not created yet.
+     */
+    private static ScheduledExecutorService executor = null;
+
+    /**
+     * Does nothing.
+     */
+    private DelayScheduler()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Returns a future that is completed after a delay.
+     * The future is completed on the scheduler thread, so dependent actions
+     * should be short or run asynchronously.
+     *
+     * @param nanos the delay in nanoseconds
+     * @return a future that is completed after the delay
+     */
+    static CompletableFuture<Void> delay(final long nanos)
+    {
+        if (nanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        getExecutor().schedule(() -> future.complete(null), nanos,
+            TimeUnit.NANOSECONDS);
+        return future;
+    }
+
+    /**
+     * Returns the shared scheduled executor.
+     *
+     * @return the shared scheduled executor
+     */
+    private static synchronized ScheduledExecutorService getExecutor()
+    {
+        if (executor == null) {
+            ScheduledThreadPoolExecutor newExecutor =
+                new ScheduledThreadPoolExecutor(1, (runnable) -> {
+                    Thread thread = new Thread(runnable,
+                        "bitbucket-client-delay");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            newExecutor.setRemoveOnCancelPolicy(true);
+            executor = newExecutor;
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * ExchangeEvent.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.EventObject;
+
+/**
+ * Event which is fired when an exchange is started or completed.
+ * <p>An exchange covers all the attempts of a call, including requeues of
+ * throttled attempts and retries.  The measurements are final when the
+ * exchange is completed; an event for a started exchange only has its
+ * endpoint and URI.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class ExchangeEvent extends EventObject
+{
+    static final long serialVersionUID = 1;
+
+    /**
+     * Endpoint template.
+     */
+    private final String endpoint;
+
+    /**
+     * Request URI.
+     */
+    private final URI uri;
+
+    /**
+     * Request method.
+     */
+    private final String method;
+
+    /**
+     * Status code of the last response.
+     */
+    private final int status;
+
+    /**
+     * Number of bytes of response entities as received.
+     */
+    private final long responseBytes;
+
+    /**
+     * Number of retries.
+     */
+    private final int retries;
+
+    /**
+     * Time in nanoseconds spent waiting for the limits.
+     */
+    private final long queueWait;
+
+    /**
+     * Time in nanoseconds spent reading response entities.
+     */
+    private final long deserializationTime;
+
+    /**
+     * Time in nanoseconds from the start of the exchange.
+     */
+    private final long elapsed;
+
+    /**
+     * Failure of the exchange.
+     */
+    private final transient Throwable failure;
+
+    /**
+     * Initializes the event from a record.
+     *
+     * @param source an event source
+     * @param record a record of the exchange
+     * @param failure the failure of the exchange, or {@code null}
+     */
+    ExchangeEvent(final Object source, final ExchangeRecord record,
+        final Throwable failure)
+    {
+        super(source);
+        this.endpoint = record.getEndpoint();
+        this.uri = record.getUri();
+        this.method = record.getMethod();
+        this.status = record.getStatus();
+        this.responseBytes = record.getResponseBytes();
+        this.retries = record.getRetries();
+        this.queueWait = record.getQueueWait();
+        this.deserializationTime = record.getDeserializationTime();
+        this.elapsed = System.nanoTime() - record.getStart();
+        this.failure = failure;
+    }
+
+    /**
+     * Returns the endpoint template of the exchange, such as
+     * {@code "/2.0/repositories/{workspace}/{repo_slug}/issues"}.
+     *
+     * @return the endpoint template
+     */
+    public final String getEndpoint()
+    {
+        return endpoint;
+    }
+
+    /**
+     * Returns the request URI of the exchange.
+     *
+     * @return the request URI
+     */
+    public final URI getUri()
+    {
+        return uri;
+    }
+
+    /**
+     * Returns the request method of the exchange.
+     *
+     * @return the request method, or {@code null} if no request was sent
+     */
+    public final String getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * Returns the status code of the last response.
+     *
+     * @return the status code, or zero if no response was received
+     */
+    public final int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Returns the number of bytes of the response entities as received.
+     *
+     * @return the number of bytes
+     */
+    public final long getResponseBytes()
+    {
+        return responseBytes;
+    }
+
+    /**
+     * Returns the number of retries.
+     *
+     * @return the number of retries
+     */
+    public final int getRetries()
+    {
+        return retries;
+    }
+
+    /**
+     * Returns the time spent waiting for the rate and connection limits.
+     *
+     * @return the queue wait time
+     */
+    public final Duration getQueueWait()
+    {
+        return Duration.ofNanos(queueWait);
+    }
+
+    /**
+     * Returns the time spent reading and deserializing response entities.
+     *
+     * @return the deserialization time
+     */
+    public final Duration getDeserializationTime()
+    {
+        return Duration.ofNanos(deserializationTime);
+    }
+
+    /**
+     * Returns the time from the start of the exchange to this event.
+     *
+     * @return the elapsed time
+     */
+    public final Duration getElapsed()
+    {
+        return Duration.ofNanos(elapsed);
+    }
+
+    /**
+     * Returns the failure of the exchange.
+     *
+     * @return the failure, or {@code null} if the exchange is in progress or
+     * succeeded
+     */
+    public final Throwable getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Returns {@code true} if the exchange failed.
+     * An exchange fails if it threw an exception or its last response had an
+     * error status.
+     *
+     * @return {@code true} if failed; {@code false} otherwise
+     */
+    public final boolean isFailed()
+    {
+        return failure != null || status >= 400;
+    }
+}
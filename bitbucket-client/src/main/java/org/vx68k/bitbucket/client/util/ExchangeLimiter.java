@@ -0,0 +1,116 @@
+/*
+ * ExchangeLimiter.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limiter of concurrent exchanges.
+ * Permits can be acquired either by blocking the current thread or by
+ * waiting for a {@link CompletableFuture} object, so that asynchronous
+ * callers do not occupy threads while the limit is reached.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class ExchangeLimiter
+{
+    /**
+     * Completed future for permits acquired immediately.
+     */
+    private static final CompletableFuture<Void> ACQUIRED =
+        CompletableFuture.completedFuture(null);
+
+    /**
+     * Semaphore for the permits.
+     */
+    private final Semaphore semaphore;
+
+    /**
+     * Asynchronous waiters for permits.
+     */
+    private final Queue<CompletableFuture<Void>> waiters =
+        new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a limiter.
+     *
+     * @param permits the number of permits
+     */
+    ExchangeLimiter(final int permits)
+    {
+        semaphore = new Semaphore(permits, true);
+    }
+
+    /**
+     * Acquires a permit blocking the current thread.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    void acquire() throws InterruptedException
+    {
+        semaphore.acquire();
+    }
+
+    /**
+     * Acquires a permit asynchronously.
+     *
+     * @return a future that will be completed when a permit is acquired
+     */
+    CompletableFuture<Void> acquireAsync()
+    {
+        if (waiters.isEmpty() && semaphore.tryAcquire()) {
+            return ACQUIRED;
+        }
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        dispatch();
+        return waiter;
+    }
+
+    /**
+     * Releases a permit.
+     */
+    void release()
+    {
+        semaphore.release();
+        dispatch();
+    }
+
+    /**
+     * Hands available permits over to asynchronous waiters.
+     */
+    private void dispatch()
+    {
+        while (!waiters.isEmpty() && semaphore.tryAcquire()) {
+            CompletableFuture<Void> waiter = waiters.poll();
+            if (waiter == null) {
+                semaphore.release();
+                break;
+            }
+            waiter.complete(null);
+        }
+    }
+}
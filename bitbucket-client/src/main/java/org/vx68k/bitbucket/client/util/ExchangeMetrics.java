@@ -0,0 +1,130 @@
+/*
+ * ExchangeMetrics.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+/**
+ * Filter and reader interceptor that collect the measurements of exchanges
+ * into their {@link ExchangeRecord} objects.
+ * The record of an exchange is passed as a request property by
+ * {@link ExchangeTarget}.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class ExchangeMetrics implements ClientRequestFilter,
+    ClientResponseFilter, ReaderInterceptor
+{
+    /**
+     * Name of the request property for the record.
+     */
+    static final String RECORD_PROPERTY =
+        ExchangeMetrics.class.getName() + ".record";
+
+    /**
+     * Records the request method.
+     *
+     * @param requestContext a request context
+     */
+    @Override
+    public void filter(final ClientRequestContext requestContext)
+    {
+        Object record = requestContext.getProperty(RECORD_PROPERTY);
+        if (record instanceof ExchangeRecord) {
+            ((ExchangeRecord) record).setMethod(requestContext.getMethod());
+        }
+    }
+
+    /**
+     * Records the response status.
+     *
+     * @param requestContext a request context
+     * @param responseContext a response context
+     */
+    @Override
+    public void filter(final ClientRequestContext requestContext,
+        final ClientResponseContext responseContext)
+    {
+        Object record = requestContext.getProperty(RECORD_PROPERTY);
+        if (record instanceof ExchangeRecord) {
+            ((ExchangeRecord) record).setStatus(responseContext.getStatus());
+        }
+    }
+
+    /**
+     * Records the bytes and the time of reading a response entity.
+     *
+     * @param context a reader interceptor context
+     * @return the entity read by the next interceptor or reader
+     * @throws IOException if an I/O error occurred
+     */
+    @Override
+    public Object aroundReadFrom(final ReaderInterceptorContext context)
+        throws IOException
+    {
+        Object property = context.getProperty(RECORD_PROPERTY);
+        if (!(property instanceof ExchangeRecord)) {
+            return context.proceed();
+        }
+
+        ExchangeRecord record = (ExchangeRecord) property;
+        context.setInputStream(
+            new FilterInputStream(context.getInputStream()) {
+                @Override
+                public int read() throws IOException
+                {
+                    int b = super.read();
+                    if (b >= 0) {
+                        record.addResponseBytes(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len)
+                    throws IOException
+                {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        record.addResponseBytes(n);
+                    }
+                    return n;
+                }
+            });
+
+        long start = System.nanoTime();
+        try {
+            return context.proceed();
+        }
+        finally {
+            record.addDeserializationTime(System.nanoTime() - start);
+        }
+    }
+}
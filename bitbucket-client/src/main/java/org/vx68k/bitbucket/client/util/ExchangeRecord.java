@@ -0,0 +1,165 @@
+/*
+ * ExchangeRecord.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measurements of an exchange, which are collected while it is in progress.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class ExchangeRecord
+{
+    /**
+     * Endpoint template.
+     */
+    private final String endpoint;
+
+    /**
+     * Request URI.
+     */
+    private final URI uri;
+
+    /**
+     * Value of {@link System#nanoTime} when the exchange started.
+     */
+    private final long start = System.nanoTime();
+
+    /**
+     * Request method, or {@code null} if no request was sent.
+     */
+    private volatile String method = null;
+
+    /**
+     * Status code of the last response, or zero if none.
+     */
+    private volatile int status = 0;
+
+    /**
+     * Number of retries.
+     */
+    private volatile int retries = 0;
+
+    /**
+     * Number of bytes of response entities as received.
+     */
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    /**
+     * Time in nanoseconds spent waiting for the limits.
+     */
+    private final AtomicLong queueWait = new AtomicLong();
+
+    /**
+     * Time in nanoseconds spent reading response entities.
+     */
+    private final AtomicLong deserializationTime = new AtomicLong();
+
+    /**
+     * Constructs a record.
+     *
+     * @param endpoint an endpoint template
+     * @param uri a request URI
+     */
+    ExchangeRecord(final String endpoint, final URI uri)
+    {
+        this.endpoint = endpoint;
+        this.uri = uri;
+    }
+
+    String getEndpoint()
+    {
+        return endpoint;
+    }
+
+    URI getUri()
+    {
+        return uri;
+    }
+
+    long getStart()
+    {
+        return start;
+    }
+
+    String getMethod()
+    {
+        return method;
+    }
+
+    void setMethod(final String newValue)
+    {
+        method = newValue;
+    }
+
+    int getStatus()
+    {
+        return status;
+    }
+
+    void setStatus(final int newValue)
+    {
+        status = newValue;
+    }
+
+    int getRetries()
+    {
+        return retries;
+    }
+
+    void setRetries(final int newValue)
+    {
+        retries = newValue;
+    }
+
+    long getResponseBytes()
+    {
+        return responseBytes.get();
+    }
+
+    void addResponseBytes(final long bytes)
+    {
+        responseBytes.addAndGet(bytes);
+    }
+
+    long getQueueWait()
+    {
+        return queueWait.get();
+    }
+
+    void addQueueWait(final long nanos)
+    {
+        queueWait.addAndGet(nanos);
+    }
+
+    long getDeserializationTime()
+    {
+        return deserializationTime.get();
+    }
+
+    void addDeserializationTime(final long nanos)
+    {
+        deserializationTime.addAndGet(nanos);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * ExchangeTarget.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.net.URI;
+import java.util.Map;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriBuilder;
+
+/**
+ * {@link WebTarget} decorator that passes an object of an exchange, such as
+ * its record, to the requests built from it as a request property.
+ * Request properties are set on {@link Invocation.Builder} objects, which
+ * does not affect the configuration of the target.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class ExchangeTarget implements WebTarget
+{
+    /**
+     * Decorated target.
+     */
+    private final WebTarget target;
+
+    /**
+     * Name of the request property.
+     */
+    private final String propertyName;
+
+    /**
+     * Value of the request property.
+     */
+    private final Object propertyValue;
+
+    /**
+     * Constructs a decorator that passes the record of an exchange.
+     *
+     * @param target a target to be decorated
+     * @param record a record of the exchange
+     */
+    ExchangeTarget(final WebTarget target, final ExchangeRecord record)
+    {
+        this(target, ExchangeMetrics.RECORD_PROPERTY, record);
+    }
+
+    /**
+     * Constructs a decorator.
+     *
+     * @param target a target to be decorated
+     * @param name the name of the request property
+     * @param value the value of the request property
+     */
+    ExchangeTarget(final WebTarget target, final String name,
+        final Object value)
+    {
+        this.target = target;
+        propertyName = name;
+        propertyValue = value;
+    }
+
+    /**
+     * Decorates a derived target.
+     *
+     * @param derived a target derived from the decorated one
+     * @return a decorator of the derived target
+     */
+    private WebTarget wrap(final WebTarget derived)
+    {
+        return new ExchangeTarget(derived, propertyName, propertyValue);
+    }
+
+    @Override
+    public URI getUri()
+    {
+        return target.getUri();
+    }
+
+    @Override
+    public UriBuilder getUriBuilder()
+    {
+        return target.getUriBuilder();
+    }
+
+    @Override
+    public WebTarget path(final String path)
+    {
+        return wrap(target.path(path));
+    }
+
+    @Override
+    public WebTarget resolveTemplate(final String name, final Object value)
+    {
+        return wrap(target.resolveTemplate(name, value));
+    }
+
+    @Override
+    public WebTarget resolveTemplate(final String name, final Object value,
+        final boolean encodeSlashInPath)
+    {
+        return wrap(target.resolveTemplate(name, value, encodeSlashInPath));
+    }
+
+    @Override
+    public WebTarget resolveTemplateFromEncoded(final String name,
+        final Object value)
+    {
+        return wrap(target.resolveTemplateFromEncoded(name, value));
+    }
+
+    @Override
+    public WebTarget resolveTemplates(final Map<String, Object> values)
+    {
+        return wrap(target.resolveTemplates(values));
+    }
+
+    @Override
+    public WebTarget resolveTemplates(final Map<String, Object> values,
+        final boolean encodeSlashInPath)
+    {
+        return wrap(target.resolveTemplates(values, encodeSlashInPath));
+    }
+
+    @Override
+    public WebTarget resolveTemplatesFromEncoded(
+        final Map<String, Object> values)
+    {
+        return wrap(target.resolveTemplatesFromEncoded(values));
+    }
+
+    @Override
+    public WebTarget matrixParam(final String name, final Object... values)
+    {
+        return wrap(target.matrixParam(name, values));
+    }
+
+    @Override
+    public WebTarget queryParam(final String name, final Object... values)
+    {
+        return wrap(target.queryParam(name, values));
+    }
+
+    @Override
+    public Invocation.Builder request()
+    {
+        return target.request().property(propertyName, propertyValue);
+    }
+
+    @Override
+    public Invocation.Builder request(final String... acceptedResponseTypes)
+    {
+        return target.request(acceptedResponseTypes)
+            .property(propertyName, propertyValue);
+    }
+
+    @Override
+    public Invocation.Builder request(
+        final MediaType... acceptedResponseTypes)
+    {
+        return target.request(acceptedResponseTypes)
+            .property(propertyName, propertyValue);
+    }
+
+    @Override
+    public Configuration getConfiguration()
+    {
+        return target.getConfiguration();
+    }
+
+    @Override
+    public WebTarget property(final String name, final Object value)
+    {
+        target.property(name, value);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Class<?> componentClass)
+    {
+        target.register(componentClass);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Class<?> componentClass,
+        final int priority)
+    {
+        target.register(componentClass, priority);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Class<?> componentClass,
+        final Class<?>... contracts)
+    {
+        target.register(componentClass, contracts);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Class<?> componentClass,
+        final Map<Class<?>, Integer> contracts)
+    {
+        target.register(componentClass, contracts);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Object component)
+    {
+        target.register(component);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Object component, final int priority)
+    {
+        target.register(component, priority);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Object component,
+        final Class<?>... contracts)
+    {
+        target.register(component, contracts);
+        return this;
+    }
+
+    @Override
+    public WebTarget register(final Object component,
+        final Map<Class<?>, Integer> contracts)
+    {
+        target.register(component, contracts);
+        return this;
+    }
+}
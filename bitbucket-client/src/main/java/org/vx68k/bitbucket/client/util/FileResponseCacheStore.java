@@ -0,0 +1,269 @@
+/*
+ * FileResponseCacheStore.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk implementation of {@link ResponseCacheStore}.
+ * Each response is stored in a file in a directory, named after the SHA-256
+ * digest of its key.  Responses are evicted in least-recently-used order
+ * when the total size of the files exceeds its bound.  Files left by a
+ * previous instance are reused.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class FileResponseCacheStore implements ResponseCacheStore
+{
+    /**
+     * File name suffix of the stored responses.
+     */
+    private static final String SUFFIX = ".cache";
+
+    /**
+     * Magic number of the stored responses.
+     */
+    private static final int MAGIC = 0x42424331;
+
+    /**
+     * Directory of the files.
+     */
+    private final Path directory;
+
+    /**
+     * Maximum total size of the files in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * File sizes in access order keyed by the file names.
+     */
+    private final LinkedHashMap<String, Long> sizes =
+        new LinkedHashMap<>(16, 0.75F, true);
+
+    /**
+     * Total size of the files in bytes.
+     */
+    private long totalBytes = 0;
+
+    /**
+     * Constructs an on-disk store.
+     *
+     * @param directory a directory of the files, which will be created if
+     * it does not exist
+     * @param maxBytes the maximum total size of the files in bytes
+     * @throws IOException if an I/O error occurred
+     */
+    public FileResponseCacheStore(final Path directory, final long maxBytes)
+        throws IOException
+    {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum bytes not positive");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+
+        try (DirectoryStream<Path> files =
+            Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                long size = Files.size(file);
+                sizes.put(file.getFileName().toString(), size);
+                totalBytes += size;
+            }
+        }
+    }
+
+    /**
+     * Returns the total size of the files.
+     *
+     * @return the total size of the files in bytes
+     */
+    public final synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    @Override
+    public final synchronized CachedResponse get(final String key)
+    {
+        String name = fileName(key);
+        if (sizes.get(name) == null) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+            Files.newInputStream(directory.resolve(name)))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(key)) {
+                return null;
+            }
+            String entityTag = readString(in);
+            String lastModified = readString(in);
+            String contentType = readString(in);
+            String contentEncoding = readString(in);
+            byte[] entity = new byte[in.readInt()];
+            in.readFully(entity);
+            return new CachedResponse(entityTag, lastModified, contentType,
+                contentEncoding, entity);
+        }
+        catch (final IOException e) {
+            delete(name);
+            return null;
+        }
+    }
+
+    @Override
+    public final synchronized void put(final String key,
+        final CachedResponse response)
+    {
+        String name = fileName(key);
+        Path file = directory.resolve(name);
+        try {
+            Path temporary = Files.createTempFile(directory, null, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(temporary))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(key);
+                writeString(out, response.getEntityTag());
+                writeString(out, response.getLastModified());
+                writeString(out, response.getContentType());
+                writeString(out, response.getContentEncoding());
+                out.writeInt(response.getLength());
+                out.write(response.getEntity());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+
+            Long old = sizes.put(name, Files.size(file));
+            if (old != null) {
+                totalBytes -= old;
+            }
+            totalBytes += sizes.get(name);
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Iterator<Map.Entry<String, Long>> i = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && i.hasNext()) {
+            Map.Entry<String, Long> entry = i.next();
+            i.remove();
+            totalBytes -= entry.getValue();
+            deleteFile(entry.getKey());
+        }
+    }
+
+    @Override
+    public final synchronized void remove(final String key)
+    {
+        delete(fileName(key));
+    }
+
+    @Override
+    public final synchronized void clear()
+    {
+        for (String name : sizes.keySet()) {
+            deleteFile(name);
+        }
+        sizes.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Deletes a file and its entry.
+     *
+     * @param name a file name
+     */
+    private void delete(final String name)
+    {
+        Long old = sizes.remove(name);
+        if (old != null) {
+            totalBytes -= old;
+        }
+        deleteFile(name);
+    }
+
+    /**
+     * Deletes a file ignoring errors.
+     *
+     * @param name a file name
+     */
+    private void deleteFile(final String name)
+    {
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        }
+        catch (final IOException e) {
+            // The file will be overwritten or deleted later.
+        }
+    }
+
+    /**
+     * Returns the file name for a key.
+     *
+     * @param key a cache key
+     * @return the file name
+     */
+    private static String fileName(final String key)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest(key.getBytes(StandardCharsets.UTF_8))) {
+                name.append(String.format("%02x", b & 0xff));
+            }
+            return name.append(SUFFIX).toString();
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(final DataOutputStream out,
+        final String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream in)
+        throws IOException
+    {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+}
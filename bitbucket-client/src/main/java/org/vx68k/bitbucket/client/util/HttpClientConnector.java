@@ -0,0 +1,88 @@
+/*
+ * HttpClientConnector.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.WebTarget;
+
+/**
+ * Terminal request filter that sends requests by
+ * {@code java.net.http.HttpClient}.
+ * <p>This class is replaced by the implementation for Java SE 11 in the
+ * multi-release JAR file.  This version is used on Java SE 8, where the
+ * backend is not supported.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class HttpClientConnector implements ClientRequestFilter
+{
+    /**
+     * Constructs a connector.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    HttpClientConnector()
+    {
+        throw new UnsupportedOperationException(
+            "Java SE 11 or later is required");
+    }
+
+    /**
+     * Returns {@code true} if this class is supported.
+     *
+     * @return {@code false}
+     */
+    static boolean isSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Performs an exchange with a target asynchronously.
+     *
+     * @param <T> the type of the result
+     * @param target the target
+     * @param call a function that starts an asynchronous request on the
+     * target
+     * @return never returns
+     * @throws UnsupportedOperationException always
+     */
+    <T> CompletableFuture<T> invokeAsync(final WebTarget target,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void filter(final ClientRequestContext requestContext)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
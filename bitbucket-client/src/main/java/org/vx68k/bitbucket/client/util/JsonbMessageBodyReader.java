@@ -26,6 +26,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
@@ -33,6 +34,8 @@ import javax.ws.rs.ext.MessageBodyReader;
 /**
  * Implementation class of {@link MessageBodyReader} that uses JSON-B
  * for deserialization of an object.
+ * <p>The {@link Jsonb} object is built on the first use and shared by the
+ * following calls.</p>
  *
  * @param <T> a type of objects that are to be read
  */
@@ -40,6 +43,11 @@ public class JsonbMessageBodyReader<T> implements MessageBodyReader<T>
 {
     private final JsonbBuilder jsonbBuilder;
 
+    /**
+     * Shared JSON-B object, or {@code null} if not built yet.
+     */
+    private volatile Jsonb jsonb = null;
+
     /**
      * Constructs a {@link JsonbMessageBodyReader} instance.
      *
@@ -63,12 +71,28 @@ public class JsonbMessageBodyReader<T> implements MessageBodyReader<T>
         MultivaluedMap<String, String> headers, InputStream stream)
         throws IOException
     {
-        try (Jsonb jsonb = jsonbBuilder.build()) {
-            return jsonb.fromJson(stream, type);
+        try {
+            return getJsonb().fromJson(stream, genericType);
         }
-        catch (final Exception e) {
+        catch (final JsonbException e) {
             throw new IOException(e);
         }
     }
 
+    /**
+     * Returns the shared JSON-B object, building it if necessary.
+     *
+     * @return the shared JSON-B object
+     */
+    private Jsonb getJsonb()
+    {
+        Jsonb value = jsonb;
+        if (value == null) {
+            // A race may build another one, which is harmless.
+            value = jsonbBuilder.build();
+            jsonb = value;
+        }
+        return value;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+/*
+ * LatencyHistogram.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets.
+ * <p>Like HDR histograms, each power-of-two range of values is divided into
+ * {@value #SUB_BUCKET_COUNT} linear sub-buckets, so that recorded values are
+ * kept with a relative error of about 3 percent from one nanosecond up to
+ * about nine hours.  Longer values are recorded as the maximum trackable
+ * value.  Recording only increments atomic counters.</p>
+ * <p>Instances of this class are thread-safe.  Percentiles read while
+ * values are being recorded reflect some of those values.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class LatencyHistogram
+{
+    /**
+     * Number of sub-buckets in each power-of-two range.
+     */
+    public static final int SUB_BUCKET_COUNT = 32;
+
+    /**
+     * Number of bits of the sub-bucket index.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of bits of the largest trackable value in nanoseconds.
+     */
+    private static final int VALUE_BITS = 45;
+
+    /**
+     * Largest trackable value in nanoseconds.
+     */
+    private static final long MAX_TRACKABLE = (1L << VALUE_BITS) - 1;
+
+    /**
+     * Number of buckets.
+     */
+    private static final int BUCKET_COUNT =
+        SUB_BUCKET_COUNT * (VALUE_BITS - SUB_BUCKET_BITS + 1);
+
+    /**
+     * Counts of the buckets.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Total count of the recorded values.
+     */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * Sum of the recorded values in nanoseconds.
+     */
+    private final AtomicLong totalValue = new AtomicLong();
+
+    /**
+     * Largest recorded value in nanoseconds.
+     */
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param latency a latency
+     */
+    public final void record(final Duration latency)
+    {
+        recordNanos(latency.toNanos());
+    }
+
+    /**
+     * Records a latency in nanoseconds.
+     * A negative value is recorded as zero.
+     *
+     * @param nanos a latency in nanoseconds
+     */
+    public final void recordNanos(final long nanos)
+    {
+        long value = Math.min(Math.max(nanos, 0), MAX_TRACKABLE);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        maxValue.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public final long getCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the largest recorded latency.
+     *
+     * @return the largest latency
+     */
+    public final Duration getMax()
+    {
+        return Duration.ofNanos(maxValue.get());
+    }
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return the mean latency, or zero if none was recorded
+     */
+    public final Duration getMean()
+    {
+        long count = totalCount.get();
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(totalValue.get() / count);
+    }
+
+    /**
+     * Returns a percentile of the recorded latencies.
+     * The result is the highest value equivalent to the bucket that contains
+     * the percentile.
+     *
+     * @param percentile a percentile between 0 and 100, such as 99.0
+     * @return the latency at the percentile, or zero if none was recorded
+     */
+    public final Duration getPercentile(final double percentile)
+    {
+        if (!(percentile >= 0.0 && percentile <= 100.0)) {
+            throw new IllegalArgumentException("Invalid percentile");
+        }
+
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= rank) {
+                return Duration.ofNanos(
+                    Math.min(highestEquivalent(i), maxValue.get()));
+            }
+        }
+        return Duration.ofNanos(maxValue.get());
+    }
+
+    /**
+     * Clears the recorded values.
+     * Values recorded concurrently may be partially cleared.
+     */
+    public final void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    /**
+     * Returns the bucket index of a value.
+     *
+     * @param value a value between zero and the largest trackable value
+     * @return the bucket index
+     */
+    static int indexOf(final long value)
+    {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT * (shift + 1) + sub;
+    }
+
+    /**
+     * Returns the highest value that is recorded in a bucket.
+     *
+     * @param index a bucket index
+     * @return the highest value of the bucket
+     */
+    static long highestEquivalent(final int index)
+    {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long sub = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
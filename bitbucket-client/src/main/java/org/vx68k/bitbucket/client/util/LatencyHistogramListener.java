@@ -0,0 +1,137 @@
+/*
+ * LatencyHistogramListener.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics listener that keeps a {@link LatencyHistogram} object and an
+ * error count per endpoint template.
+ * <p>Completed exchanges are recorded by their total elapsed time.
+ * Percentiles can be read at any time, for example:</p>
+ * <pre>
+ * LatencyHistogramListener metrics = new LatencyHistogramListener();
+ * client.addClientMetricsListener(metrics);
+ * ...
+ * LatencyHistogram histogram =
+ *     metrics.getHistogram("/2.0/repositories/{workspace}/{repo_slug}");
+ * Duration p99 = histogram.getPercentile(99.0);
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class LatencyHistogramListener implements ClientMetricsListener
+{
+    /**
+     * Histograms by endpoint template.
+     */
+    private final ConcurrentMap<String, LatencyHistogram> histograms =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Error counts by endpoint template.
+     */
+    private final ConcurrentMap<String, LongAdder> errorCounts =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Returns the endpoint templates that have been recorded.
+     *
+     * @return an unmodifiable set of the endpoint templates
+     */
+    public final Set<String> getEndpoints()
+    {
+        return Collections.unmodifiableSet(histograms.keySet());
+    }
+
+    /**
+     * Returns the histogram of an endpoint template.
+     *
+     * @param endpoint an endpoint template
+     * @return the histogram, or {@code null} if nothing has been recorded
+     * for the endpoint
+     */
+    public final LatencyHistogram getHistogram(final String endpoint)
+    {
+        return histograms.get(endpoint);
+    }
+
+    /**
+     * Returns the number of failed exchanges of an endpoint template.
+     *
+     * @param endpoint an endpoint template
+     * @return the number of failed exchanges
+     */
+    public final long getErrorCount(final String endpoint)
+    {
+        LongAdder count = errorCounts.get(endpoint);
+        if (count == null) {
+            return 0;
+        }
+        return count.sum();
+    }
+
+    /**
+     * Clears all the recorded values.
+     */
+    public final void reset()
+    {
+        histograms.clear();
+        errorCounts.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation does nothing.</p>
+     */
+    @Override
+    public void exchangeStarted(final ExchangeEvent event)
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation records the elapsed time of the exchange.</p>
+     */
+    @Override
+    public void exchangeCompleted(final ExchangeEvent event)
+    {
+        String endpoint = event.getEndpoint();
+        LatencyHistogram histogram = histograms.get(endpoint);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(endpoint,
+                (key) -> new LatencyHistogram());
+        }
+        histogram.record(event.getElapsed());
+
+        if (event.isFailed()) {
+            errorCounts.computeIfAbsent(endpoint, (key) -> new LongAdder())
+                .increment();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * MemoryResponseCacheStore.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory implementation of {@link ResponseCacheStore}.
+ * Responses are evicted in least-recently-used order when either the
+ * number of entries or the total length of the entities exceeds its bound.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class MemoryResponseCacheStore implements ResponseCacheStore
+{
+    /**
+     * Maximum number of entries.
+     */
+    private final int maxEntries;
+
+    /**
+     * Maximum total length of the entities in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Entries in access order.
+     */
+    private final LinkedHashMap<String, CachedResponse> entries =
+        new LinkedHashMap<>(16, 0.75F, true);
+
+    /**
+     * Total length of the entities in bytes.
+     */
+    private long totalBytes = 0;
+
+    /**
+     * Constructs an in-memory store.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param maxBytes the maximum total length of the entities in bytes
+     */
+    public MemoryResponseCacheStore(final int maxEntries, final long maxBytes)
+    {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum entries not positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum bytes not positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public final synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total length of the entities.
+     *
+     * @return the total length of the entities in bytes
+     */
+    public final synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    @Override
+    public final synchronized CachedResponse get(final String key)
+    {
+        return entries.get(key);
+    }
+
+    @Override
+    public final synchronized void put(final String key,
+        final CachedResponse response)
+    {
+        if (response.getLength() > maxBytes) {
+            remove(key);
+            return;
+        }
+
+        CachedResponse old = entries.put(key, response);
+        if (old != null) {
+            totalBytes -= old.getLength();
+        }
+        totalBytes += response.getLength();
+
+        Iterator<Map.Entry<String, CachedResponse>> i =
+            entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes)
+            && i.hasNext()) {
+            totalBytes -= i.next().getValue().getLength();
+            i.remove();
+        }
+    }
+
+    @Override
+    public final synchronized void remove(final String key)
+    {
+        CachedResponse old = entries.remove(key);
+        if (old != null) {
+            totalBytes -= old.getLength();
+        }
+    }
+
+    @Override
+    public final synchronized void clear()
+    {
+        entries.clear();
+        totalBytes = 0;
+    }
+}
@@ -20,13 +20,16 @@
 
 package org.vx68k.bitbucket.client.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.net.URI;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.json.JsonObject;
-import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Form;
@@ -90,6 +93,18 @@ public class OAuth2Authenticator extends BearerAuthenticator
     private final transient Set<TokenRefreshListener> tokenRefreshListeners =
         new LinkedHashSet<>();
 
+    /**
+     * Transport for token requests, or {@code null} if not set yet.
+     */
+    private transient ClientTransport transport = null;
+
+    /**
+     * Lock for the transport and token refreshes.
+     * It is not a monitor so that virtual threads waiting for a token
+     * refresh do not pin their carrier threads.
+     */
+    private transient Lock lock = new ReentrantLock();
+
     /**
      * Initializes the object.
      *
@@ -187,6 +202,46 @@ public class OAuth2Authenticator extends BearerAuthenticator
         this.refreshToken = refreshToken;
     }
 
+    /**
+     * Returns the transport for token requests.
+     * If no transport has been set, a new one will be created.
+     *
+     * @return the transport for token requests
+     */
+    public final ClientTransport getTransport()
+    {
+        lock.lock();
+        try {
+            if (transport == null) {
+                transport = new ClientTransport(ClientBuilder.newBuilder()
+                    .register(JsonStructureMessageBodyReader.class));
+            }
+            return transport;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the transport for token requests.
+     * The transport should be shared with the other requests so that token
+     * requests can reuse its connections.  Its client must be able to read
+     * {@link JsonObject} entities.
+     *
+     * @param newValue a new value of the transport
+     */
+    public final void setTransport(final ClientTransport newValue)
+    {
+        lock.lock();
+        try {
+            transport = newValue;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Fires a token refreshed event.
      */
@@ -232,28 +287,26 @@ public class OAuth2Authenticator extends BearerAuthenticator
      */
     public final void requestAccessToken(final Entity<Form> entity)
     {
-        // Client is not {@link AutoCloseable}.
-        Client client = ClientBuilder.newClient()
-            .register(new JsonStructureMessageBodyReader())
-            .register(clientAuthenticator);
-        try {
-            JsonObject object = client.target(tokenEndpoint)
-                .request(MediaType.APPLICATION_JSON)
-                .post(entity, JsonObject.class);
-
-            setAccessToken(object.getString(ACCESS_TOKEN));
-            setRefreshToken(object.getString(REFRESH_TOKEN, null));
-
-            if (object.containsKey(EXPIRES_IN)) {
-                setExpiration(Instant.now()
-                    .plusSeconds(object.getInt(EXPIRES_IN)));
-            }
-            else {
-                setExpiration(null);
-            }
+        // Token requests may be made from inside an exchange, so they shall
+        // not wait for the limits of the transport.  The client relies on
+        // nothing from a failed token request, so it is retried as if it
+        // were idempotent.
+        ClientTransport currentTransport = getTransport();
+        JsonObject object = currentTransport.invokeDirect(
+            currentTransport.target(tokenEndpoint)
+                .register(clientAuthenticator),
+            (target) -> target.request(MediaType.APPLICATION_JSON)
+                .post(entity, JsonObject.class));
+
+        setAccessToken(object.getString(ACCESS_TOKEN));
+        setRefreshToken(object.getString(REFRESH_TOKEN, null));
+
+        if (object.containsKey(EXPIRES_IN)) {
+            setExpiration(Instant.now()
+                .plusSeconds(object.getInt(EXPIRES_IN)));
         }
-        finally {
-            client.close();
+        else {
+            setExpiration(null);
         }
     }
 
@@ -273,7 +326,8 @@ public class OAuth2Authenticator extends BearerAuthenticator
     {
         super.validateAccessToken();
 
-        synchronized (this) {
+        lock.lock();
+        try {
             if (accessTokenRefresh.isBefore(Instant.now()) && refreshToken != null) {
                 Form form = new Form()
                     .param(GRANT_TYPE, REFRESH_TOKEN_GRANT)
@@ -283,5 +337,22 @@ public class OAuth2Authenticator extends BearerAuthenticator
                 fireTokenRefreshed();
             }
         }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads this object from a stream creating a new lock.
+     *
+     * @param in an object input stream
+     * @throws IOException if an I/O error occurred
+     * @throws ClassNotFoundException if a class was not found
+     */
+    private void readObject(final ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        lock = new ReentrantLock();
     }
 }
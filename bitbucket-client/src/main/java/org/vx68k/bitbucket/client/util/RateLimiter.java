@@ -0,0 +1,492 @@
+/*
+ * RateLimiter.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * Rate limiter of exchanges using a token bucket.
+ * <p>Each exchange takes a token from the bucket before it is sent, and
+ * waits while the bucket is empty.  The bucket holds at most
+ * {@link #getCapacity} tokens and is refilled at {@link #getRefillRate}
+ * tokens per second.  The rate is unlimited if the refill rate is zero,
+ * which is the default.</p>
+ * <p>As a response filter, this object also observes throttling by the
+ * server.  A {@code 429 Too Many Requests} or {@code 503 Service
+ * Unavailable} response with a {@code Retry-After} header, or a response
+ * whose {@code X-RateLimit-Remaining} header is zero, pauses all exchanges
+ * until the server allows them again.  Exchanges that were rejected with
+ * {@code 429 Too Many Requests} are requeued by {@link ClientTransport} up
+ * to {@link #getMaxRequeues} times.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class RateLimiter implements ClientResponseFilter
+{
+    /**
+     * HTTP status code for too many requests.
+     */
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Default pause after a throttled response without a
+     * {@code Retry-After} header.
+     */
+    public static final Duration DEFAULT_PAUSE = Duration.ofSeconds(1);
+
+    /**
+     * Default maximum number of requeues of a throttled exchange.
+     */
+    public static final int DEFAULT_MAX_REQUEUES = 10;
+
+    /**
+     * Name of the header for the remaining requests.
+     */
+    private static final String RATE_LIMIT_REMAINING =
+        "X-RateLimit-Remaining";
+
+    /**
+     * Name of the header for the time when the rate limit is reset.
+     */
+    private static final String RATE_LIMIT_RESET = "X-RateLimit-Reset";
+
+    /**
+     * Threshold to distinguish epoch seconds from delta seconds.
+     */
+    private static final long EPOCH_THRESHOLD = 1000000000L;
+
+    /**
+     * Maximum number of tokens in the bucket.
+     */
+    private int capacity = 1;
+
+    /**
+     * Tokens refilled per second, or zero if unlimited.
+     */
+    private double refillRate = 0.0;
+
+    /**
+     * Number of tokens in the bucket.
+     */
+    private double tokens = 1.0;
+
+    /**
+     * Time in nanoseconds when the bucket was refilled last.
+     */
+    private long refilled = System.nanoTime();
+
+    /**
+     * Time in nanoseconds until which exchanges are paused.
+     */
+    private long pausedUntil = refilled;
+
+    /**
+     * Maximum number of requeues of a throttled exchange.
+     */
+    private volatile int maxRequeues = DEFAULT_MAX_REQUEUES;
+
+    /**
+     * Total time in nanoseconds spent waiting for tokens.
+     */
+    private final AtomicLong waitTime = new AtomicLong();
+
+    /**
+     * Number of exchanges that had to wait.
+     */
+    private final AtomicLong waitCount = new AtomicLong();
+
+    /**
+     * Number of throttled responses.
+     */
+    private final AtomicLong throttleCount = new AtomicLong();
+
+    /**
+     * Constructs a rate limiter with an unlimited rate.
+     */
+    public RateLimiter()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Constructs a rate limiter with a capacity and a refill rate.
+     *
+     * @param capacity the maximum number of tokens in the bucket
+     * @param refillRate tokens refilled per second, or zero if unlimited
+     */
+    public RateLimiter(final int capacity, final double refillRate)
+    {
+        setCapacity(capacity);
+        setRefillRate(refillRate);
+    }
+
+    /**
+     * Returns the maximum number of tokens in the bucket.
+     *
+     * @return the capacity
+     */
+    public final synchronized int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum number of tokens in the bucket, which is the number of
+     * exchanges that may be sent in a burst.
+     *
+     * @param newValue a new value of the capacity
+     */
+    public final synchronized void setCapacity(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Capacity is not positive");
+        }
+        capacity = newValue;
+        tokens = Math.min(tokens, newValue);
+    }
+
+    /**
+     * Returns the number of tokens refilled per second.
+     *
+     * @return the refill rate, or zero if unlimited
+     */
+    public final synchronized double getRefillRate()
+    {
+        return refillRate;
+    }
+
+    /**
+     * Sets the number of tokens refilled per second.
+     *
+     * @param newValue a new value of the refill rate, or zero for unlimited
+     */
+    public final synchronized void setRefillRate(final double newValue)
+    {
+        if (!(newValue >= 0.0) || Double.isInfinite(newValue)) {
+            throw new IllegalArgumentException("Invalid refill rate");
+        }
+        refill(System.nanoTime());
+        refillRate = newValue;
+    }
+
+    /**
+     * Returns the maximum number of requeues of a throttled exchange.
+     *
+     * @return the maximum number of requeues
+     */
+    public final int getMaxRequeues()
+    {
+        return maxRequeues;
+    }
+
+    /**
+     * Sets the maximum number of requeues of a throttled exchange.
+     *
+     * @param newValue a new value of the maximum number of requeues
+     */
+    public final void setMaxRequeues(final int newValue)
+    {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Maximum is negative");
+        }
+        maxRequeues = newValue;
+    }
+
+    /**
+     * Returns the total time spent waiting for tokens or pauses.
+     *
+     * @return the total wait time
+     */
+    public final Duration getWaitTime()
+    {
+        return Duration.ofNanos(waitTime.get());
+    }
+
+    /**
+     * Returns the number of exchanges that had to wait.
+     *
+     * @return the number of waiting exchanges
+     */
+    public final long getWaitCount()
+    {
+        return waitCount.get();
+    }
+
+    /**
+     * Returns the number of throttled responses.
+     *
+     * @return the number of throttled responses
+     */
+    public final long getThrottleCount()
+    {
+        return throttleCount.get();
+    }
+
+    /**
+     * Resets the counters to zero.
+     */
+    public final void resetCounters()
+    {
+        waitTime.set(0);
+        waitCount.set(0);
+        throttleCount.set(0);
+    }
+
+    /**
+     * Pauses all exchanges for a duration.
+     * A shorter pause than the current one has no effect.
+     *
+     * @param duration a duration
+     */
+    public final synchronized void pause(final Duration duration)
+    {
+        long until = System.nanoTime() + duration.toNanos();
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+    }
+
+    /**
+     * Returns {@code true} if a response status means the exchange was
+     * throttled and should be requeued.
+     *
+     * @param status an HTTP status code
+     * @return {@code true} if throttled; {@code false} otherwise
+     */
+    public static boolean isThrottled(final int status)
+    {
+        return status == TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Takes a token waiting while none is available or exchanges are paused.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public final void acquire() throws InterruptedException
+    {
+        long start = System.nanoTime();
+        long wait = reserve(start);
+        if (wait > 0) {
+            do {
+                TimeUnit.NANOSECONDS.sleep(wait);
+                wait = reserve(System.nanoTime());
+            }
+            while (wait > 0);
+            record(start);
+        }
+    }
+
+    /**
+     * Takes a token asynchronously.
+     *
+     * @return a future that is completed when a token is taken
+     */
+    public final CompletableFuture<Void> acquireAsync()
+    {
+        long start = System.nanoTime();
+        long wait = reserve(start);
+        if (wait <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return acquireAsync(start, wait);
+    }
+
+    /**
+     * Takes a token asynchronously after a delay.
+     *
+     * @param start the time in nanoseconds when the exchange started waiting
+     * @param wait the delay in nanoseconds
+     * @return a future that is completed when a token is taken
+     */
+    private CompletableFuture<Void> acquireAsync(final long start,
+        final long wait)
+    {
+        return DelayScheduler.delay(wait).thenCompose((v) -> {
+            long next = reserve(System.nanoTime());
+            if (next > 0) {
+                return acquireAsync(start, next);
+            }
+            record(start);
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Takes a token if available.
+     *
+     * @param now the current value of {@link System#nanoTime}
+     * @return zero if a token was taken, or the time in nanoseconds to wait
+     * before trying again
+     */
+    private synchronized long reserve(final long now)
+    {
+        if (pausedUntil - now > 0) {
+            return pausedUntil - now;
+        }
+        if (refillRate == 0.0) {
+            return 0;
+        }
+
+        refill(now);
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1.0 - tokens) / refillRate
+            * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * Refills the bucket for the elapsed time.
+     *
+     * @param now the current value of {@link System#nanoTime}
+     */
+    private void refill(final long now)
+    {
+        long elapsed = now - refilled;
+        if (elapsed > 0) {
+            if (refillRate == 0.0) {
+                tokens = capacity;
+            }
+            else {
+                tokens = Math.min(capacity, tokens + elapsed * refillRate
+                    / TimeUnit.SECONDS.toNanos(1));
+            }
+            refilled = now;
+        }
+    }
+
+    /**
+     * Records a wait.
+     *
+     * @param start the time in nanoseconds when the wait started
+     */
+    private void record(final long start)
+    {
+        waitTime.addAndGet(System.nanoTime() - start);
+        waitCount.incrementAndGet();
+    }
+
+    /**
+     * Observes the throttling headers of a response.
+     *
+     * @param requestContext a request context
+     * @param responseContext a response context
+     */
+    @Override
+    public final void filter(final ClientRequestContext requestContext,
+        final ClientResponseContext responseContext)
+    {
+        int status = responseContext.getStatus();
+        if (status == TOO_MANY_REQUESTS
+            || status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+            Duration retryAfter = parseRetryAfter(
+                responseContext.getHeaderString(HttpHeaders.RETRY_AFTER));
+            if (retryAfter != null) {
+                pause(retryAfter);
+            }
+            else if (status == TOO_MANY_REQUESTS) {
+                pause(DEFAULT_PAUSE);
+            }
+            if (status == TOO_MANY_REQUESTS) {
+                throttleCount.incrementAndGet();
+            }
+        }
+        else if ("0".equals(
+            responseContext.getHeaderString(RATE_LIMIT_REMAINING))) {
+            Duration reset = parseReset(
+                responseContext.getHeaderString(RATE_LIMIT_RESET));
+            if (reset != null) {
+                pause(reset);
+            }
+        }
+    }
+
+    /**
+     * Parses the value of a {@code Retry-After} header.
+     *
+     * @param value a header value, or {@code null}
+     * @return the duration to wait, or {@code null} if not parsable
+     */
+    protected static Duration parseRetryAfter(final String value)
+    {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0,
+                Long.parseLong(value.trim())));
+        }
+        catch (final NumberFormatException e) {
+            // Falls through to try an HTTP date.
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value.trim(),
+                DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration duration = Duration.between(ZonedDateTime.now(), date);
+            if (duration.isNegative()) {
+                return Duration.ZERO;
+            }
+            return duration;
+        }
+        catch (final DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the value of an {@code X-RateLimit-Reset} header, which is
+     * either seconds since the epoch or seconds to wait.
+     *
+     * @param value a header value, or {@code null}
+     * @return the duration to wait, or {@code null} if not parsable
+     */
+    protected static Duration parseReset(final String value)
+    {
+        if (value == null) {
+            return null;
+        }
+        try {
+            long seconds = Long.parseLong(value.trim());
+            if (seconds >= EPOCH_THRESHOLD) {
+                seconds -= System.currentTimeMillis() / 1000;
+            }
+            return Duration.ofSeconds(Math.max(0, seconds));
+        }
+        catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+}
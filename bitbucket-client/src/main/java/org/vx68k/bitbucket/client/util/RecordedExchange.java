@@ -0,0 +1,174 @@
+/*
+ * RecordedExchange.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request-response pair recorded by a {@link TrafficRecorder} object.
+ * <p>The response entity is kept as received, so it may be compressed as
+ * indicated by its {@code Content-Encoding} header.</p>
+ * <p>Instances of this class are immutable.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public final class RecordedExchange
+{
+    private final String method;
+
+    private final URI uri;
+
+    private final int status;
+
+    private final Map<String, List<String>> headers;
+
+    private final byte[] entity;
+
+    private final Duration elapsed;
+
+    /**
+     * Constructs a recorded exchange.
+     *
+     * @param method the request method
+     * @param uri the request URI
+     * @param status the response status code
+     * @param headers the response headers
+     * @param entity the bytes of the response entity, which may be empty
+     * @param elapsed the elapsed time of the exchange
+     */
+    public RecordedExchange(final String method, final URI uri,
+        final int status, final Map<String, List<String>> headers,
+        final byte[] entity, final Duration elapsed)
+    {
+        if (method == null) {
+            throw new IllegalArgumentException("Method is null");
+        }
+        if (uri == null) {
+            throw new IllegalArgumentException("URI is null");
+        }
+        if (headers == null) {
+            throw new IllegalArgumentException("Headers are null");
+        }
+        if (entity == null) {
+            throw new IllegalArgumentException("Entity is null");
+        }
+        if (elapsed == null || elapsed.isNegative()) {
+            throw new IllegalArgumentException("Elapsed time is not valid");
+        }
+        this.method = method;
+        this.uri = uri;
+        this.status = status;
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        headers.forEach((name, values) -> copy.put(name,
+            Collections.unmodifiableList(new ArrayList<>(values))));
+        this.headers = Collections.unmodifiableMap(copy);
+        this.entity = entity.clone();
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Returns the request method.
+     *
+     * @return the request method
+     */
+    public String getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * Returns the request URI.
+     *
+     * @return the request URI
+     */
+    public URI getUri()
+    {
+        return uri;
+    }
+
+    /**
+     * Returns the response status code.
+     *
+     * @return the response status code
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Returns the response headers.
+     *
+     * @return an unmodifiable map of the response headers
+     */
+    public Map<String, List<String>> getHeaders()
+    {
+        return headers;
+    }
+
+    /**
+     * Returns the bytes of the response entity.
+     *
+     * @return a copy of the bytes of the response entity
+     */
+    public byte[] getEntity()
+    {
+        return entity.clone();
+    }
+
+    /**
+     * Returns the length of the response entity.
+     *
+     * @return the length in bytes
+     */
+    public int getEntityLength()
+    {
+        return entity.length;
+    }
+
+    /**
+     * Returns the elapsed time of the exchange from the request to the
+     * response headers.
+     *
+     * @return the elapsed time
+     */
+    public Duration getElapsed()
+    {
+        return elapsed;
+    }
+
+    /**
+     * Returns the key of this exchange in an archive.
+     *
+     * @return the key
+     */
+    String getKey()
+    {
+        return TrafficArchive.keyOf(method, uri);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * ResponseCache.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+/**
+ * HTTP response cache for the JAX-RS Client API using conditional requests.
+ * <p>Successful responses to {@code GET} requests that carry an
+ * {@code ETag} or {@code Last-Modified} header are stored in a
+ * {@link ResponseCacheStore} object keyed by the request URI and the
+ * acceptable media types.  Later requests for the same key are sent with
+ * {@code If-None-Match} or {@code If-Modified-Since} headers, and
+ * {@code 304 Not Modified} responses to them are replaced by the stored
+ * entity before the entity is read.</p>
+ * <p>This cache does nothing until a store is set.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class ResponseCache implements ClientRequestFilter, ClientResponseFilter
+{
+    /**
+     * Name of the request property for the cache key.
+     */
+    private static final String KEY_PROPERTY =
+        ResponseCache.class.getName() + ".key";
+
+    /**
+     * Name of the request property for the stored response.
+     */
+    private static final String RESPONSE_PROPERTY =
+        ResponseCache.class.getName() + ".response";
+
+    /**
+     * Store of the responses, or {@code null} if disabled.
+     */
+    private volatile ResponseCacheStore store = null;
+
+    /**
+     * Number of requests that were served from the store.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Number of requests that had no stored response.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Number of conditional requests.
+     */
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    /**
+     * Returns the store of the responses.
+     *
+     * @return the store, or {@code null} if disabled
+     */
+    public final ResponseCacheStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Sets the store of the responses.
+     *
+     * @param newValue a new value of the store, or {@code null} to disable
+     * this cache
+     */
+    public final void setStore(final ResponseCacheStore newValue)
+    {
+        store = newValue;
+    }
+
+    /**
+     * Returns the number of requests that were served from the store after
+     * revalidation.
+     *
+     * @return the number of cache hits
+     */
+    public final long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of requests that had no stored response.
+     *
+     * @return the number of cache misses
+     */
+    public final long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of conditional requests.
+     *
+     * @return the number of revalidations
+     */
+    public final long getRevalidationCount()
+    {
+        return revalidationCount.get();
+    }
+
+    /**
+     * Resets all the counters to zero.
+     */
+    public final void resetCounters()
+    {
+        hitCount.set(0);
+        missCount.set(0);
+        revalidationCount.set(0);
+    }
+
+    /**
+     * Returns the cache key for a request.
+     *
+     * @param context a client request context
+     * @return the cache key
+     */
+    protected String keyOf(final ClientRequestContext context)
+    {
+        String accept = context.getAcceptableMediaTypes().stream()
+            .map(MediaType::toString)
+            .collect(Collectors.joining(","));
+        return context.getUri().toString() + " " + accept;
+    }
+
+    @Override
+    public final void filter(final ClientRequestContext requestContext)
+    {
+        ResponseCacheStore current = store;
+        if (current == null
+            || !requestContext.getMethod().equals(HttpMethod.GET)) {
+            return;
+        }
+
+        String key = keyOf(requestContext);
+        requestContext.setProperty(KEY_PROPERTY, key);
+
+        CachedResponse response = current.get(key);
+        if (response == null) {
+            missCount.incrementAndGet();
+            return;
+        }
+        requestContext.setProperty(RESPONSE_PROPERTY, response);
+
+        MultivaluedMap<String, Object> headers = requestContext.getHeaders();
+        if (response.getEntityTag() != null) {
+            headers.putSingle(HttpHeaders.IF_NONE_MATCH,
+                response.getEntityTag());
+        }
+        if (response.getLastModified() != null) {
+            headers.putSingle(HttpHeaders.IF_MODIFIED_SINCE,
+                response.getLastModified());
+        }
+        revalidationCount.incrementAndGet();
+    }
+
+    @Override
+    public final void filter(final ClientRequestContext requestContext,
+        final ClientResponseContext responseContext) throws IOException
+    {
+        ResponseCacheStore current = store;
+        Object key = requestContext.getProperty(KEY_PROPERTY);
+        if (current == null || key == null) {
+            return;
+        }
+
+        int status = responseContext.getStatus();
+        if (status == Response.Status.NOT_MODIFIED.getStatusCode()) {
+            CachedResponse response = (CachedResponse)
+                requestContext.getProperty(RESPONSE_PROPERTY);
+            if (response != null) {
+                restore(responseContext, response);
+                hitCount.incrementAndGet();
+            }
+        }
+        else if (status == Response.Status.OK.getStatusCode()) {
+            MultivaluedMap<String, String> headers =
+                responseContext.getHeaders();
+            String entityTag = headers.getFirst(HttpHeaders.ETAG);
+            String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+            if ((entityTag != null || lastModified != null)
+                && responseContext.hasEntity()) {
+                byte[] entity = readAll(responseContext.getEntityStream());
+                responseContext.setEntityStream(
+                    new ByteArrayInputStream(entity));
+                current.put((String) key, new CachedResponse(entityTag,
+                    lastModified, headers.getFirst(HttpHeaders.CONTENT_TYPE),
+                    headers.getFirst(HttpHeaders.CONTENT_ENCODING), entity));
+            }
+            else {
+                current.remove((String) key);
+            }
+        }
+    }
+
+    /**
+     * Replaces a {@code 304 Not Modified} response with a stored one.
+     *
+     * @param context a client response context
+     * @param response a stored response
+     */
+    private static void restore(final ClientResponseContext context,
+        final CachedResponse response)
+    {
+        context.setStatus(Response.Status.OK.getStatusCode());
+
+        MultivaluedMap<String, String> headers = context.getHeaders();
+        headers.putSingle(HttpHeaders.CONTENT_LENGTH,
+            Integer.toString(response.getLength()));
+        headers.remove(HttpHeaders.CONTENT_TYPE);
+        if (response.getContentType() != null) {
+            headers.putSingle(HttpHeaders.CONTENT_TYPE,
+                response.getContentType());
+        }
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        if (response.getContentEncoding() != null) {
+            headers.putSingle(HttpHeaders.CONTENT_ENCODING,
+                response.getContentEncoding());
+        }
+        context.setEntityStream(new ByteArrayInputStream(response.getEntity()));
+    }
+
+    /**
+     * Reads all the bytes from a stream and closes it.
+     *
+     * @param stream an input stream
+     * @return the bytes read
+     * @throws IOException if an I/O error occurred
+     */
+    private static byte[] readAll(final InputStream stream) throws IOException
+    {
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        }
+    }
+}
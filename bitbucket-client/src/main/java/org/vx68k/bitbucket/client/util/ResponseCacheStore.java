@@ -0,0 +1,61 @@
+/*
+ * ResponseCacheStore.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+/**
+ * Storage backend of a response cache.
+ * Implementations must be thread-safe.
+ *
+ * @author Kaz Nishimura
+ * @see ResponseCache
+ * @since 6.0
+ */
+public interface ResponseCacheStore
+{
+    /**
+     * Returns the response stored for a key.
+     *
+     * @param key a cache key
+     * @return the stored response, or {@code null} if none
+     */
+    CachedResponse get(String key);
+
+    /**
+     * Stores a response for a key.
+     * The store may evict other responses to keep its size bounds.
+     *
+     * @param key a cache key
+     * @param response a response
+     */
+    void put(String key, CachedResponse response);
+
+    /**
+     * Removes the response stored for a key if any.
+     *
+     * @param key a cache key
+     */
+    void remove(String key);
+
+    /**
+     * Removes all the stored responses.
+     */
+    void clear();
+}
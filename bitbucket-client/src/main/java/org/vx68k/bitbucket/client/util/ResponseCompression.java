@@ -0,0 +1,289 @@
+/*
+ * ResponseCompression.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+/**
+ * Compressed content negotiation for the JAX-RS Client API.
+ * <p>As a request filter, this object asks for {@code gzip} or
+ * {@code deflate} content coding by the {@code Accept-Encoding} header
+ * unless the request has one already.  As a reader interceptor, it
+ * decompresses response entities while they are read, so that any message
+ * body reader receives the uncompressed content.</p>
+ * <p>It also counts the bytes of compressed entities as received and after
+ * decompression.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class ResponseCompression implements ClientRequestFilter,
+    ReaderInterceptor
+{
+    /**
+     * Value of the {@code Accept-Encoding} header.
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /**
+     * Name of the {@code gzip} content coding.
+     */
+    private static final String GZIP = "gzip";
+
+    /**
+     * Alias of the {@code gzip} content coding.
+     */
+    private static final String X_GZIP = "x-gzip";
+
+    /**
+     * Name of the {@code deflate} content coding.
+     */
+    private static final String DEFLATE = "deflate";
+
+    /**
+     * Indicates whether compressed content is requested.
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Number of responses that were decompressed.
+     */
+    private final AtomicLong compressedCount = new AtomicLong();
+
+    /**
+     * Number of bytes of compressed entities as received.
+     */
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    /**
+     * Number of bytes of compressed entities after decompression.
+     */
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+
+    /**
+     * Returns {@code true} if compressed content is requested.
+     *
+     * @return {@code true} if enabled; {@code false} otherwise
+     */
+    public final boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Sets whether compressed content is requested.
+     * Compressed responses are decompressed even if disabled.
+     * The default value is {@code true}.
+     *
+     * @param newValue {@code true} to enable; {@code false} to disable
+     */
+    public final void setEnabled(final boolean newValue)
+    {
+        enabled = newValue;
+    }
+
+    /**
+     * Returns the number of responses that were decompressed.
+     *
+     * @return the number of compressed responses
+     */
+    public final long getCompressedCount()
+    {
+        return compressedCount.get();
+    }
+
+    /**
+     * Returns the number of bytes of compressed entities as received.
+     *
+     * @return the number of compressed bytes
+     */
+    public final long getCompressedBytes()
+    {
+        return compressedBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes of compressed entities after
+     * decompression.
+     *
+     * @return the number of uncompressed bytes
+     */
+    public final long getUncompressedBytes()
+    {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * Resets the counters to zero.
+     */
+    public final void resetCounters()
+    {
+        compressedCount.set(0);
+        compressedBytes.set(0);
+        uncompressedBytes.set(0);
+    }
+
+    /**
+     * Adds the {@code Accept-Encoding} header to a request if enabled.
+     *
+     * @param requestContext a request context
+     */
+    @Override
+    public final void filter(final ClientRequestContext requestContext)
+    {
+        MultivaluedMap<String, Object> headers = requestContext.getHeaders();
+        if (enabled && !headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            headers.putSingle(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Decompresses a response entity if it is compressed.
+     *
+     * @param context a reader interceptor context
+     * @return the entity read by the next interceptor or reader
+     * @throws IOException if an I/O error occurred
+     */
+    @Override
+    public final Object aroundReadFrom(final ReaderInterceptorContext context)
+        throws IOException
+    {
+        MultivaluedMap<String, String> headers = context.getHeaders();
+        String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null) {
+            return context.proceed();
+        }
+
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
+        InputStream in = new CountingInputStream(context.getInputStream(),
+            compressedBytes);
+        if (encoding.equals(GZIP) || encoding.equals(X_GZIP)) {
+            in = new GZIPInputStream(in);
+        }
+        else if (encoding.equals(DEFLATE)) {
+            in = inflate(in);
+        }
+        else {
+            return context.proceed();
+        }
+        compressedCount.incrementAndGet();
+
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        context.setInputStream(new CountingInputStream(in, uncompressedBytes));
+        return context.proceed();
+    }
+
+    /**
+     * Returns an input stream that inflates {@code deflate} content, which
+     * may or may not have the zlib header.
+     *
+     * @param in an input stream of {@code deflate} content
+     * @return an inflating input stream
+     * @throws IOException if an I/O error occurred
+     */
+    private static InputStream inflate(final InputStream in)
+        throws IOException
+    {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int length = 0;
+        while (length < 2) {
+            int n = pushback.read(header, length, 2 - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        pushback.unread(header, 0, length);
+
+        boolean zlib = length == 2 && (header[0] & 0x0f) == 8
+            && ((header[0] & 0xff) << 8 | header[1] & 0xff) % 31 == 0;
+        return new InflaterInputStream(pushback, new Inflater(!zlib));
+    }
+
+    /**
+     * Input stream that counts the bytes read.
+     */
+    private static final class CountingInputStream extends FilterInputStream
+    {
+        /**
+         * Counter of the bytes.
+         */
+        private final AtomicLong counter;
+
+        /**
+         * Constructs a counting input stream.
+         *
+         * @param in an underlying input stream
+         * @param counter a counter of the bytes
+         */
+        CountingInputStream(final InputStream in, final AtomicLong counter)
+        {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+            throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            counter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * RetryPolicy.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+
+/**
+ * Retry policy for idempotent exchanges.
+ * <p>An exchange is retried if it fails with a {@code 502 Bad Gateway},
+ * {@code 503 Service Unavailable} or {@code 504 Gateway Timeout} response,
+ * or with a {@link ProcessingException} caused by an {@link IOException}
+ * such as a connection reset.  It is attempted at most
+ * {@link #getMaxAttempts} times in total, waiting a random delay between
+ * zero and an exponentially growing limit before each retry, and no retry
+ * is started after the time budget has run out.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class RetryPolicy
+{
+    /**
+     * Default maximum number of attempts.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    /**
+     * Default delay limit of the first retry.
+     */
+    public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(200);
+
+    /**
+     * Default upper bound of the delay limit.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(10);
+
+    /**
+     * Default time budget of all the attempts of an exchange.
+     */
+    public static final Duration DEFAULT_TIME_BUDGET = Duration.ofMinutes(1);
+
+    /**
+     * Maximum number of attempts.
+     */
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Delay limit of the first retry.
+     */
+    private volatile Duration baseDelay = DEFAULT_BASE_DELAY;
+
+    /**
+     * Upper bound of the delay limit.
+     */
+    private volatile Duration maxDelay = DEFAULT_MAX_DELAY;
+
+    /**
+     * Time budget of all the attempts of an exchange.
+     */
+    private volatile Duration timeBudget = DEFAULT_TIME_BUDGET;
+
+    /**
+     * Number of retries.
+     */
+    private final AtomicLong retryCount = new AtomicLong();
+
+    /**
+     * Number of exchanges that failed after all the allowed attempts.
+     */
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    /**
+     * Constructs a retry policy with the default values.
+     */
+    public RetryPolicy()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Returns the maximum number of attempts.
+     *
+     * @return the maximum number of attempts
+     */
+    public final int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of attempts including the first one.
+     *
+     * @param newValue a new value of the maximum number of attempts
+     */
+    public final void setMaxAttempts(final int newValue)
+    {
+        if (newValue <= 0) {
+            throw new IllegalArgumentException("Maximum is not positive");
+        }
+        maxAttempts = newValue;
+    }
+
+    /**
+     * Returns the delay limit of the first retry.
+     *
+     * @return the base delay
+     */
+    public final Duration getBaseDelay()
+    {
+        return baseDelay;
+    }
+
+    /**
+     * Sets the delay limit of the first retry.
+     * The limit is doubled for each following retry.
+     *
+     * @param newValue a new value of the base delay
+     */
+    public final void setBaseDelay(final Duration newValue)
+    {
+        checkDuration(newValue);
+        baseDelay = newValue;
+    }
+
+    /**
+     * Returns the upper bound of the delay limit.
+     *
+     * @return the maximum delay
+     */
+    public final Duration getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the upper bound of the delay limit.
+     *
+     * @param newValue a new value of the maximum delay
+     */
+    public final void setMaxDelay(final Duration newValue)
+    {
+        checkDuration(newValue);
+        maxDelay = newValue;
+    }
+
+    /**
+     * Returns the time budget of all the attempts of an exchange.
+     *
+     * @return the time budget
+     */
+    public final Duration getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    /**
+     * Sets the time budget of all the attempts of an exchange.
+     *
+     * @param newValue a new value of the time budget
+     */
+    public final void setTimeBudget(final Duration newValue)
+    {
+        checkDuration(newValue);
+        timeBudget = newValue;
+    }
+
+    /**
+     * Returns the number of retries.
+     *
+     * @return the number of retries
+     */
+    public final long getRetryCount()
+    {
+        return retryCount.get();
+    }
+
+    /**
+     * Returns the number of exchanges that failed with a retryable failure
+     * after all the allowed attempts.
+     *
+     * @return the number of exhausted exchanges
+     */
+    public final long getExhaustedCount()
+    {
+        return exhaustedCount.get();
+    }
+
+    /**
+     * Resets the counters to zero.
+     */
+    public final void resetCounters()
+    {
+        retryCount.set(0);
+        exhaustedCount.set(0);
+    }
+
+    /**
+     * Returns {@code true} if a failure is retryable.
+     *
+     * @param exception an exception, possibly wrapped in a
+     * {@link CompletionException} object
+     * @return {@code true} if retryable; {@code false} otherwise
+     */
+    public boolean isRetryable(final Throwable exception)
+    {
+        Throwable cause = exception;
+        while (cause instanceof CompletionException
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof WebApplicationException) {
+            int status =
+                ((WebApplicationException) cause).getResponse().getStatus();
+            return status == 502 || status == 503 || status == 504;
+        }
+        if (cause instanceof ProcessingException) {
+            for (Throwable t = cause.getCause(); t != null;
+                t = t.getCause()) {
+                if (t instanceof IOException) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the delay before retrying a failed attempt.
+     *
+     * @param attempts the number of attempts made so far
+     * @param start the value of {@link System#nanoTime} when the first
+     * attempt started
+     * @param exception the failure of the last attempt
+     * @return the delay in nanoseconds, or a negative value if it shall not
+     * be retried
+     */
+    public final long retryDelay(final int attempts, final long start,
+        final Throwable exception)
+    {
+        if (!isRetryable(exception)) {
+            return -1;
+        }
+
+        long limit = Math.min(maxDelay.toNanos(),
+            baseDelay.toNanos() << Math.min(attempts - 1, 30));
+        long delay = ThreadLocalRandom.current().nextLong(limit + 1);
+        long elapsed = System.nanoTime() - start;
+        if (attempts >= maxAttempts
+            || elapsed + delay > timeBudget.toNanos()) {
+            exhaustedCount.incrementAndGet();
+            return -1;
+        }
+        retryCount.incrementAndGet();
+        return delay;
+    }
+
+    /**
+     * Performs an action retrying it by this policy.
+     *
+     * @param <T> the type of the result
+     * @param action an idempotent action
+     * @return the result of the action
+     */
+    public final <T> T execute(final Supplier<? extends T> action)
+    {
+        long start = System.nanoTime();
+        for (int attempts = 1; ; attempts++) {
+            try {
+                return action.get();
+            }
+            catch (final RuntimeException e) {
+                long delay = retryDelay(attempts, start, e);
+                if (delay < 0) {
+                    throw e;
+                }
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Sleeps for a delay.
+     *
+     * @param nanos the delay in nanoseconds
+     * @throws ProcessingException if interrupted
+     */
+    static void sleep(final long nanos)
+    {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(e);
+        }
+    }
+
+    /**
+     * Checks a duration.
+     *
+     * @param duration a duration
+     * @throws IllegalArgumentException if the duration is {@code null} or
+     * negative
+     */
+    private static void checkDuration(final Duration duration)
+    {
+        if (duration == null || duration.isNegative()) {
+            throw new IllegalArgumentException("Invalid duration");
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * TrafficArchive.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive of recorded exchanges.
+ * <p>Exchanges are keyed by their request methods and URIs.  Request
+ * entities are not part of the key.  An archive is stored as a
+ * gzip-compressed sequence of binary records.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ * @see TrafficRecorder
+ * @see TrafficReplayer
+ */
+public class TrafficArchive
+{
+    /**
+     * Magic number at the start of a stored archive.
+     */
+    private static final int MAGIC = 0x42425441;
+
+    /**
+     * Format version of a stored archive.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Exchanges in the order they were added.
+     */
+    private final List<RecordedExchange> exchanges =
+        new CopyOnWriteArrayList<>();
+
+    /**
+     * Map from keys to the exchanges recorded for them.
+     */
+    private final ConcurrentMap<String, List<RecordedExchange>> index =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty archive.
+     */
+    public TrafficArchive()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Adds an exchange.
+     *
+     * @param exchange a recorded exchange
+     */
+    public final void add(final RecordedExchange exchange)
+    {
+        if (exchange == null) {
+            throw new IllegalArgumentException("Exchange is null");
+        }
+        exchanges.add(exchange);
+        index.computeIfAbsent(exchange.getKey(),
+            (key) -> new CopyOnWriteArrayList<>()).add(exchange);
+    }
+
+    /**
+     * Returns all the exchanges in the order they were added.
+     *
+     * @return an unmodifiable list of the exchanges
+     */
+    public final List<RecordedExchange> getExchanges()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(exchanges));
+    }
+
+    /**
+     * Returns the exchanges recorded for a request.
+     *
+     * @param method a request method
+     * @param uri a request URI
+     * @return an unmodifiable list of the exchanges, which is empty if none
+     * was recorded
+     */
+    public final List<RecordedExchange> getExchanges(final String method,
+        final URI uri)
+    {
+        List<RecordedExchange> list = index.get(keyOf(method, uri));
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the number of the exchanges.
+     *
+     * @return the number of the exchanges
+     */
+    public final int size()
+    {
+        return exchanges.size();
+    }
+
+    /**
+     * Removes all the exchanges.
+     */
+    public final void clear()
+    {
+        exchanges.clear();
+        index.clear();
+    }
+
+    /**
+     * Writes this archive to a stream.
+     * The stream is not closed.
+     *
+     * @param stream an output stream
+     * @throws IOException if an I/O error occurred
+     */
+    public final void writeTo(final OutputStream stream) throws IOException
+    {
+        GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(gzip));
+        List<RecordedExchange> list = getExchanges();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(list.size());
+        for (RecordedExchange exchange : list) {
+            out.writeUTF(exchange.getMethod());
+            out.writeUTF(exchange.getUri().toString());
+            out.writeShort(exchange.getStatus());
+            out.writeLong(exchange.getElapsed().toNanos());
+            Map<String, List<String>> headers = exchange.getHeaders();
+            out.writeShort(headers.size());
+            for (Map.Entry<String, List<String>> header
+                : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeShort(header.getValue().size());
+                for (String value : header.getValue()) {
+                    out.writeUTF(value);
+                }
+            }
+            out.writeInt(exchange.getEntityLength());
+            out.write(exchange.getEntity());
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Reads an archive from a stream.
+     * The stream is not closed.
+     *
+     * @param stream an input stream
+     * @return an archive
+     * @throws IOException if an I/O error occurred or the stream does not
+     * contain an archive
+     */
+    public static TrafficArchive readFrom(final InputStream stream)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(stream)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a traffic archive");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+
+        TrafficArchive archive = new TrafficArchive();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String method = in.readUTF();
+            URI uri = URI.create(in.readUTF());
+            int status = in.readUnsignedShort();
+            Duration elapsed = Duration.ofNanos(in.readLong());
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            int headerCount = in.readUnsignedShort();
+            for (int j = 0; j < headerCount; j++) {
+                String name = in.readUTF();
+                int valueCount = in.readUnsignedShort();
+                List<String> values = new ArrayList<>(valueCount);
+                for (int k = 0; k < valueCount; k++) {
+                    values.add(in.readUTF());
+                }
+                headers.put(name, values);
+            }
+            byte[] entity = new byte[in.readInt()];
+            in.readFully(entity);
+            archive.add(new RecordedExchange(method, uri, status, headers,
+                entity, elapsed));
+        }
+        return archive;
+    }
+
+    /**
+     * Saves this archive to a file.
+     *
+     * @param file a file path
+     * @throws IOException if an I/O error occurred
+     */
+    public final void save(final Path file) throws IOException
+    {
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            writeTo(stream);
+        }
+    }
+
+    /**
+     * Loads an archive from a file.
+     *
+     * @param file a file path
+     * @return an archive
+     * @throws IOException if an I/O error occurred or the file does not
+     * contain an archive
+     */
+    public static TrafficArchive load(final Path file) throws IOException
+    {
+        try (InputStream stream = Files.newInputStream(file)) {
+            return readFrom(stream);
+        }
+    }
+
+    /**
+     * Returns the key of a request.
+     *
+     * @param method a request method
+     * @param uri a request URI
+     * @return the key
+     */
+    static String keyOf(final String method, final URI uri)
+    {
+        return method + " " + uri;
+    }
+}
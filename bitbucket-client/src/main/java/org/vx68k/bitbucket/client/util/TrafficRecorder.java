@@ -0,0 +1,159 @@
+/*
+ * TrafficRecorder.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+
+/**
+ * Filter that records exchanges into a {@link TrafficArchive} object.
+ * <p>It shall be registered with {@link #PRIORITY} by
+ * {@link ClientTransport#register} so that it measures the exchanges after
+ * every other request filter and records the responses before any other
+ * response filter.  Responses served by a {@link ResponseCache} object
+ * without requests are not recorded.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class TrafficRecorder implements ClientRequestFilter,
+    ClientResponseFilter
+{
+    /**
+     * Priority to register this filter with.
+     */
+    public static final int PRIORITY = Integer.MAX_VALUE - 2;
+
+    /**
+     * Name of the request property for the start time.
+     */
+    private static final String START_PROPERTY =
+        TrafficRecorder.class.getName() + ".start";
+
+    /**
+     * Archive to which exchanges are recorded.
+     */
+    private final TrafficArchive archive;
+
+    /**
+     * Indicates whether exchanges are recorded.
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Constructs a recorder.
+     *
+     * @param archive an archive to which exchanges are recorded
+     */
+    public TrafficRecorder(final TrafficArchive archive)
+    {
+        if (archive == null) {
+            throw new IllegalArgumentException("Archive is null");
+        }
+        this.archive = archive;
+    }
+
+    /**
+     * Returns the archive to which exchanges are recorded.
+     *
+     * @return the archive
+     */
+    public final TrafficArchive getArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * Returns {@code true} if exchanges are recorded.
+     *
+     * @return {@code true} if enabled; {@code false} otherwise
+     */
+    public final boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Sets whether exchanges are recorded.
+     *
+     * @param newValue {@code true} to record exchanges
+     */
+    public final void setEnabled(final boolean newValue)
+    {
+        enabled = newValue;
+    }
+
+    /**
+     * Records the start time of a request.
+     *
+     * @param requestContext a request context
+     */
+    @Override
+    public void filter(final ClientRequestContext requestContext)
+    {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    /**
+     * Records an exchange.
+     * The response entity is buffered and put back to the response.
+     *
+     * @param requestContext a request context
+     * @param responseContext a response context
+     * @throws IOException if the response entity could not be read
+     */
+    @Override
+    public void filter(final ClientRequestContext requestContext,
+        final ClientResponseContext responseContext) throws IOException
+    {
+        long now = System.nanoTime();
+        Object start = requestContext.getProperty(START_PROPERTY);
+        if (!enabled || !(start instanceof Long)) {
+            return;
+        }
+
+        byte[] entity = new byte[0];
+        if (responseContext.hasEntity()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream stream = responseContext.getEntityStream()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = stream.read(buffer)) >= 0) {
+                    bytes.write(buffer, 0, n);
+                }
+            }
+            entity = bytes.toByteArray();
+            responseContext.setEntityStream(new ByteArrayInputStream(entity));
+        }
+        archive.add(new RecordedExchange(requestContext.getMethod(),
+            requestContext.getUri(), responseContext.getStatus(),
+            responseContext.getHeaders(), entity,
+            Duration.ofNanos(now - (Long) start)));
+    }
+}
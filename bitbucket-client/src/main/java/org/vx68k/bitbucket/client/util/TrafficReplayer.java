@@ -0,0 +1,237 @@
+/*
+ * TrafficReplayer.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.Response;
+
+/**
+ * Terminal request filter that serves requests from a
+ * {@link TrafficArchive} object without sending them.
+ * <p>It shall be registered with {@link #PRIORITY} by
+ * {@link ClientTransport#register} so that every other request filter
+ * applies before it, and the response filters, reader interceptors and
+ * message body readers apply to the replayed responses as usual.  If
+ * several exchanges were recorded for a request, they are replayed in turn
+ * and then again from the first, so that a throttled or failed exchange
+ * followed by a successful one is replayed as recorded.  A request for
+ * which no exchange was recorded fails with a
+ * {@link ProcessingException}.</p>
+ * <p>Each response may be delayed by its recorded latency and by a
+ * synthetic latency.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class TrafficReplayer implements ClientRequestFilter
+{
+    /**
+     * Priority to register this filter with.
+     */
+    public static final int PRIORITY = Integer.MAX_VALUE - 1;
+
+    /**
+     * Archive from which exchanges are replayed.
+     */
+    private final TrafficArchive archive;
+
+    /**
+     * Map from keys to the number of times they were replayed.
+     */
+    private final ConcurrentMap<String, AtomicInteger> cursors =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Indicates whether responses are delayed by their recorded latencies.
+     */
+    private volatile boolean recordedLatency = false;
+
+    /**
+     * Synthetic latency added to every response.
+     */
+    private volatile Duration latency = Duration.ZERO;
+
+    /**
+     * Number of replayed exchanges.
+     */
+    private final AtomicLong replayCount = new AtomicLong();
+
+    /**
+     * Number of requests for which no exchange was recorded.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructs a replayer.
+     *
+     * @param archive an archive from which exchanges are replayed
+     */
+    public TrafficReplayer(final TrafficArchive archive)
+    {
+        if (archive == null) {
+            throw new IllegalArgumentException("Archive is null");
+        }
+        this.archive = archive;
+    }
+
+    /**
+     * Returns the archive from which exchanges are replayed.
+     *
+     * @return the archive
+     */
+    public final TrafficArchive getArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * Returns {@code true} if responses are delayed by their recorded
+     * latencies.
+     *
+     * @return {@code true} if delayed; {@code false} otherwise
+     */
+    public final boolean isRecordedLatency()
+    {
+        return recordedLatency;
+    }
+
+    /**
+     * Sets whether responses are delayed by their recorded latencies.
+     * The default value is {@code false}.
+     *
+     * @param newValue {@code true} to delay responses
+     */
+    public final void setRecordedLatency(final boolean newValue)
+    {
+        recordedLatency = newValue;
+    }
+
+    /**
+     * Returns the synthetic latency added to every response.
+     *
+     * @return the synthetic latency
+     */
+    public final Duration getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Sets the synthetic latency added to every response.
+     * The default value is zero.
+     *
+     * @param newValue a new value of the synthetic latency
+     */
+    public final void setLatency(final Duration newValue)
+    {
+        if (newValue == null || newValue.isNegative()) {
+            throw new IllegalArgumentException("Latency is not valid");
+        }
+        latency = newValue;
+    }
+
+    /**
+     * Returns the number of replayed exchanges.
+     *
+     * @return the number of replayed exchanges
+     */
+    public final long getReplayCount()
+    {
+        return replayCount.get();
+    }
+
+    /**
+     * Returns the number of requests for which no exchange was recorded.
+     *
+     * @return the number of requests
+     */
+    public final long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Replays every request from the first exchange recorded for it again.
+     */
+    public final void reset()
+    {
+        cursors.clear();
+    }
+
+    /**
+     * Aborts a request with a recorded response.
+     *
+     * @param requestContext a request context
+     * @throws ProcessingException if no exchange was recorded for the
+     * request
+     */
+    @Override
+    public void filter(final ClientRequestContext requestContext)
+    {
+        String method = requestContext.getMethod();
+        List<RecordedExchange> exchanges =
+            archive.getExchanges(method, requestContext.getUri());
+        if (exchanges.isEmpty()) {
+            missCount.incrementAndGet();
+            throw new ProcessingException("No recorded exchange for "
+                + method + " " + requestContext.getUri());
+        }
+
+        String key = TrafficArchive.keyOf(method, requestContext.getUri());
+        int turn = cursors.computeIfAbsent(key, (k) -> new AtomicInteger())
+            .getAndIncrement();
+        RecordedExchange exchange =
+            exchanges.get(Math.floorMod(turn, exchanges.size()));
+
+        long delay = latency.toNanos();
+        if (recordedLatency) {
+            delay += exchange.getElapsed().toNanos();
+        }
+        if (delay > 0) {
+            RetryPolicy.sleep(delay);
+        }
+
+        Response.ResponseBuilder builder =
+            Response.status(exchange.getStatus());
+        for (Map.Entry<String, List<String>> header
+            : exchange.getHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        if (exchange.getEntityLength() > 0) {
+            builder.entity(new ByteArrayInputStream(exchange.getEntity()));
+        }
+        replayCount.incrementAndGet();
+        requestContext.abortWith(builder.build());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * TransportBackend.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+/**
+ * Backends that send the requests of a {@link ClientTransport} object.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public enum TransportBackend
+{
+    /**
+     * Connector of the JAX-RS implementation.
+     */
+    JAX_RS,
+
+    /**
+     * {@code java.net.http.HttpClient} of Java SE 11 or later, which
+     * multiplexes requests over HTTP/2 connections.
+     * The filters and message body readers of the JAX-RS client still
+     * apply to the requests and responses.
+     */
+    HTTP_CLIENT;
+
+    /**
+     * Returns {@code true} if this backend is available on the running
+     * platform.
+     *
+     * @return {@code true} if available; {@code false} otherwise
+     */
+    public boolean isAvailable()
+    {
+        return this != HTTP_CLIENT || HttpClientConnector.isSupported();
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * PaginatedPublisher.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive publisher of the values of a paginated endpoint.
+ * <p>Each subscription traverses the pages from the first one by its own
+ * cursor.  Pages are fetched asynchronously one at a time when the
+ * demand of the subscriber exceeds the values already fetched, and up to
+ * {@link #getPrefetch} pages are fetched ahead of the demand, so that the
+ * memory used by a subscription is bounded by the demand and the number of
+ * prefetched pages.  Cancelling a subscription stops further page
+ * fetches.</p>
+ * <p>A failed page fetch is signalled to the subscriber by
+ * {@code onError} after the values fetched before it.</p>
+ * <p>This class is available only on Java SE 11 or later.</p>
+ *
+ * @author Kaz Nishimura
+ * @param <T> the type of the values
+ * @since 6.0
+ */
+public class PaginatedPublisher<T> implements Flow.Publisher<T>
+{
+    /**
+     * Default number of prefetched pages.
+     */
+    public static final int DEFAULT_PREFETCH = 1;
+
+    /**
+     * Cursor at the first page.
+     */
+    private final PageCursor<? extends T> cursor;
+
+    /**
+     * Number of pages to fetch ahead of the demand.
+     */
+    private final int prefetch;
+
+    /**
+     * Constructs a publisher with the default number of prefetched pages.
+     *
+     * @param cursor a cursor at the first page
+     */
+    public PaginatedPublisher(final PageCursor<? extends T> cursor)
+    {
+        this(cursor, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Constructs a publisher.
+     *
+     * @param cursor a cursor at the first page
+     * @param prefetch the number of pages to fetch ahead of the demand,
+     * which may be zero to fetch pages only on demand
+     */
+    public PaginatedPublisher(final PageCursor<? extends T> cursor,
+        final int prefetch)
+    {
+        if (cursor == null) {
+            throw new IllegalArgumentException("Cursor is null");
+        }
+        if (prefetch < 0) {
+            throw new IllegalArgumentException("Prefetch is negative");
+        }
+        this.cursor = cursor;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Returns the number of pages to fetch ahead of the demand.
+     *
+     * @return the number of prefetched pages
+     */
+    public final int getPrefetch()
+    {
+        return prefetch;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void subscribe(final Flow.Subscriber<? super T> subscriber)
+    {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber is null");
+        }
+        subscriber.onSubscribe(
+            new PageSubscription<>(cursor.restart(), prefetch, subscriber));
+    }
+
+    /**
+     * Subscription that fetches pages by a cursor.
+     * The signals to the subscriber are serialized by a work-in-progress
+     * counter, so they may be sent from any thread that requests values or
+     * completes a page fetch.
+     *
+     * @param <T> the type of the values
+     */
+    private static final class PageSubscription<T>
+        implements Flow.Subscription
+    {
+        /**
+         * Cursor of this subscription.
+         */
+        private final PageCursor<? extends T> cursor;
+
+        /**
+         * Number of pages to fetch ahead of the demand.
+         */
+        private final int prefetch;
+
+        /**
+         * Subscriber.
+         */
+        private final Flow.Subscriber<? super T> subscriber;
+
+        /**
+         * Fetched pages that have not been started.
+         */
+        private final Queue<List<? extends T>> pages =
+            new ConcurrentLinkedQueue<>();
+
+        /**
+         * Number of the fetched values that have not been sent.
+         */
+        private final AtomicLong buffered = new AtomicLong();
+
+        /**
+         * Outstanding demand.
+         */
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * Work-in-progress counter of {@link #drain}.
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+
+        /**
+         * Iterator over the current page, or {@code null}.
+         * This field is accessed only in {@link #drain}.
+         */
+        private Iterator<? extends T> current = null;
+
+        /**
+         * Indicates whether a page fetch is in progress.
+         */
+        private volatile boolean fetching = false;
+
+        /**
+         * Indicates whether this subscription is cancelled or terminated.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Failure of a page fetch, or {@code null}.
+         */
+        private volatile Throwable failure = null;
+
+        /**
+         * Failure for a non-positive request, or {@code null}.
+         */
+        private volatile Throwable invalidRequest = null;
+
+        /**
+         * Constructs a subscription.
+         *
+         * @param cursor a cursor at the first page
+         * @param prefetch the number of pages to fetch ahead of the demand
+         * @param subscriber a subscriber
+         */
+        PageSubscription(final PageCursor<? extends T> cursor,
+            final int prefetch, final Flow.Subscriber<? super T> subscriber)
+        {
+            this.cursor = cursor;
+            this.prefetch = prefetch;
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void request(final long n)
+        {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException(
+                    "Non-positive request: " + n);
+            }
+            else {
+                requested.getAndUpdate((r) -> {
+                    long sum = r + n;
+                    if (sum < 0) {
+                        return Long.MAX_VALUE;
+                    }
+                    return sum;
+                });
+            }
+            drain();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Sends the fetched values for the demand, terminates the
+         * subscriber if finished, and starts a page fetch if needed.
+         */
+        private void drain()
+        {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                if (cancelled) {
+                    pages.clear();
+                    current = null;
+                    return;
+                }
+                if (invalidRequest != null) {
+                    terminate(invalidRequest);
+                    return;
+                }
+
+                long demand = requested.get();
+                long sent = 0;
+                while (sent != demand && !cancelled) {
+                    T value = poll();
+                    if (value == null) {
+                        break;
+                    }
+                    subscriber.onNext(value);
+                    sent += 1;
+                }
+                if (sent != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-sent);
+                }
+                if (cancelled) {
+                    continue;
+                }
+
+                if (buffered.get() == 0 && !fetching) {
+                    if (failure != null) {
+                        terminate(failure);
+                        return;
+                    }
+                    if (!cursor.hasNext()) {
+                        terminate(null);
+                        return;
+                    }
+                }
+                if (!fetching && failure == null && cursor.hasNext()
+                    && (buffered.get() < requested.get()
+                        || bufferedPages() < prefetch)) {
+                    fetch();
+                }
+                missed = wip.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+        /**
+         * Takes the next fetched value.
+         *
+         * @return the next value, or {@code null} if none
+         */
+        private T poll()
+        {
+            while (current == null || !current.hasNext()) {
+                List<? extends T> page = pages.poll();
+                if (page == null) {
+                    current = null;
+                    return null;
+                }
+                current = page.iterator();
+            }
+            buffered.decrementAndGet();
+            return current.next();
+        }
+
+        /**
+         * Returns the number of the fetched pages that have values left.
+         *
+         * @return the number of the buffered pages
+         */
+        private int bufferedPages()
+        {
+            int count = pages.size();
+            if (current != null && current.hasNext()) {
+                count += 1;
+            }
+            return count;
+        }
+
+        /**
+         * Starts a page fetch.
+         */
+        private void fetch()
+        {
+            fetching = true;
+            CompletableFuture<? extends List<? extends T>> future;
+            try {
+                future = cursor.nextAsync();
+            }
+            catch (final RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((page, exception) -> {
+                if (exception != null) {
+                    Throwable cause = exception;
+                    if (cause instanceof CompletionException
+                        && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    failure = cause;
+                }
+                else if (!page.isEmpty()) {
+                    buffered.addAndGet(page.size());
+                    pages.add(page);
+                }
+                fetching = false;
+                drain();
+            });
+        }
+
+        /**
+         * Terminates the subscriber.
+         *
+         * @param exception a failure, or {@code null} for completion
+         */
+        private void terminate(final Throwable exception)
+        {
+            cancelled = true;
+            pages.clear();
+            current = null;
+            if (exception != null) {
+                subscriber.onError(exception);
+            }
+            else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
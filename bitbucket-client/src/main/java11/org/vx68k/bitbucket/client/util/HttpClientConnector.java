@@ -0,0 +1,344 @@
+/*
+ * HttpClientConnector.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import javax.json.Json;
+import javax.json.JsonStructure;
+import javax.json.JsonWriter;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Terminal request filter that sends requests by
+ * {@code java.net.http.HttpClient}.
+ * <p>This filter is registered last in the filter chain.  It sends the
+ * request with the headers set by the preceding filters, including those of
+ * the authenticators, and aborts the chain with the response, so that the
+ * response filters, reader interceptors and message body readers of the
+ * JAX-RS client apply to it as usual.  A single {@link HttpClient} object
+ * is shared by every request so that requests to the same host are
+ * multiplexed over HTTP/2 connections.</p>
+ * <p>Asynchronous exchanges started by {@link #invokeAsync} do not block
+ * threads while the response is awaited.  Each of them runs the request
+ * filters once to build the request, sends it by
+ * {@link HttpClient#sendAsync}, and runs the request again when the
+ * response is received, this time aborting it with the received response
+ * and the request properties set in the first run.</p>
+ * <p>Request entities of types other than {@link Form}, {@link String},
+ * {@code byte[]} and {@link JsonStructure} are left to the connector of the
+ * JAX-RS implementation.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class HttpClientConnector implements ClientRequestFilter
+{
+    /**
+     * Lower-case names of the headers set by {@link HttpClient} itself.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+        "connection", "content-length", "expect", "host", "upgrade");
+
+    /**
+     * Name of the request property for the deferred exchange.
+     */
+    private static final String EXCHANGE_PROPERTY =
+        HttpClientConnector.class.getName() + ".exchange";
+
+    /**
+     * Shared HTTP client.
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * Constructs a connector.
+     */
+    HttpClientConnector()
+    {
+        httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Returns {@code true} if this class is supported.
+     *
+     * @return {@code true}
+     */
+    static boolean isSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Performs an exchange with a target asynchronously by
+     * {@link HttpClient#sendAsync}.
+     *
+     * @param <T> the type of the result
+     * @param target the target
+     * @param call a function that starts an asynchronous request on the
+     * target, which is called twice if the request is sent by the HTTP
+     * client
+     * @return a future of the result
+     */
+    <T> CompletableFuture<T> invokeAsync(final WebTarget target,
+        final Function<? super WebTarget,
+            ? extends CompletionStage<? extends T>> call)
+    {
+        DeferredExchange exchange = new DeferredExchange();
+        WebTarget deferredTarget =
+            new ExchangeTarget(target, EXCHANGE_PROPERTY, exchange);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        call.apply(deferredTarget).whenComplete((value, exception) -> {
+            HttpRequest request = exchange.request;
+            if (request == null) {
+                complete(result, value, exception);
+                return;
+            }
+
+            httpClient.sendAsync(request, BodyHandlers.ofByteArray())
+                .whenComplete((response, sendException) -> {
+                    if (sendException != null) {
+                        result.completeExceptionally(
+                            new ProcessingException(sendException));
+                        return;
+                    }
+                    exchange.response = response;
+                    try {
+                        call.apply(deferredTarget).whenComplete(
+                            (received, receiveException) -> complete(
+                                result, received, receiveException));
+                    }
+                    catch (final RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+        });
+        return result;
+    }
+
+    /**
+     * Completes a future with a value or an exception.
+     *
+     * @param <T> the type of the value
+     * @param future a future to be completed
+     * @param value a value
+     * @param exception an exception, or {@code null} to complete the future
+     * with the value
+     */
+    private static <T> void complete(final CompletableFuture<T> future,
+        final T value, final Throwable exception)
+    {
+        if (exception != null) {
+            future.completeExceptionally(exception);
+        }
+        else {
+            future.complete(value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void filter(final ClientRequestContext requestContext)
+        throws IOException
+    {
+        DeferredExchange exchange = null;
+        Object property = requestContext.getProperty(EXCHANGE_PROPERTY);
+        if (property instanceof DeferredExchange) {
+            exchange = (DeferredExchange) property;
+            HttpResponse<byte[]> response = exchange.response;
+            if (response != null) {
+                exchange.properties.forEach(requestContext::setProperty);
+                requestContext.abortWith(responseOf(response,
+                    new ByteArrayInputStream(response.body())));
+                return;
+            }
+        }
+
+        BodyPublisher body = bodyOf(requestContext);
+        if (body == null) {
+            return;
+        }
+
+        HttpRequest.Builder builder =
+            HttpRequest.newBuilder(requestContext.getUri())
+                .method(requestContext.getMethod(), body);
+        for (Map.Entry<String, List<String>> header
+            : requestContext.getStringHeaders().entrySet()) {
+            String name = header.getKey();
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                for (String value : header.getValue()) {
+                    builder.header(name, value);
+                }
+            }
+        }
+        MediaType mediaType = requestContext.getMediaType();
+        if (mediaType != null && requestContext.getHeaderString(
+            HttpHeaders.CONTENT_TYPE) == null) {
+            builder.header(HttpHeaders.CONTENT_TYPE, mediaType.toString());
+        }
+
+        if (exchange != null) {
+            for (String name : requestContext.getPropertyNames()) {
+                if (!name.equals(EXCHANGE_PROPERTY)) {
+                    exchange.properties.put(name,
+                        requestContext.getProperty(name));
+                }
+            }
+            exchange.request = builder.build();
+            throw new ProcessingException("Exchange is deferred");
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(builder.build(),
+                BodyHandlers.ofInputStream());
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception =
+                new InterruptedIOException("Interrupted");
+            exception.initCause(e);
+            throw exception;
+        }
+
+        requestContext.abortWith(responseOf(response, response.body()));
+    }
+
+    /**
+     * Returns a JAX-RS response for a response of the HTTP client.
+     *
+     * @param response a response of the HTTP client
+     * @param entity the entity stream of the response
+     * @return a JAX-RS response
+     */
+    private static Response responseOf(final HttpResponse<?> response,
+        final InputStream entity)
+    {
+        Response.ResponseBuilder responseBuilder =
+            Response.status(response.statusCode());
+        for (Map.Entry<String, List<String>> header
+            : response.headers().map().entrySet()) {
+            if (!header.getKey().startsWith(":")) {
+                for (String value : header.getValue()) {
+                    responseBuilder.header(header.getKey(), value);
+                }
+            }
+        }
+        return responseBuilder.entity(entity).build();
+    }
+
+    /**
+     * Returns a body publisher for the entity of a request.
+     *
+     * @param requestContext a request context
+     * @return a body publisher, or {@code null} if the entity is of an
+     * unsupported type
+     */
+    private static BodyPublisher bodyOf(
+        final ClientRequestContext requestContext)
+    {
+        if (!requestContext.hasEntity()) {
+            return BodyPublishers.noBody();
+        }
+
+        Object entity = requestContext.getEntity();
+        if (entity instanceof Form) {
+            StringJoiner joiner = new StringJoiner("&");
+            for (Map.Entry<String, List<String>> parameter
+                : ((Form) entity).asMap().entrySet()) {
+                String name = URLEncoder.encode(parameter.getKey(),
+                    StandardCharsets.UTF_8);
+                for (String value : parameter.getValue()) {
+                    joiner.add(name + "=" + URLEncoder.encode(value,
+                        StandardCharsets.UTF_8));
+                }
+            }
+            return BodyPublishers.ofString(joiner.toString());
+        }
+        if (entity instanceof String) {
+            return BodyPublishers.ofString((String) entity);
+        }
+        if (entity instanceof byte[]) {
+            return BodyPublishers.ofByteArray((byte[]) entity);
+        }
+        if (entity instanceof JsonStructure) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (JsonWriter writer = Json.createWriter(bytes)) {
+                writer.write((JsonStructure) entity);
+            }
+            return BodyPublishers.ofByteArray(bytes.toByteArray());
+        }
+        return null;
+    }
+
+    /**
+     * Exchange deferred until its response is received.
+     */
+    private static final class DeferredExchange
+    {
+        /**
+         * Request properties set by the request filters.
+         */
+        final Map<String, Object> properties = new HashMap<>();
+
+        /**
+         * Request to be sent, or {@code null} if not built yet.
+         */
+        volatile HttpRequest request = null;
+
+        /**
+         * Received response, or {@code null} if not received yet.
+         */
+        volatile HttpResponse<byte[]> response = null;
+    }
+}
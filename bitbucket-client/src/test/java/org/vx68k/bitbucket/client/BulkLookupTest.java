@@ -0,0 +1,197 @@
+/*
+ * BulkLookupTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.BitbucketRepository;
+
+/**
+ * Unit tests for the bulk lookups of {@link BitbucketClient}.
+ * Requests to Bitbucket Cloud are redirected to a local server, which
+ * answers {@code 404} for repositories named {@code missing} and
+ * {@code 500} for repositories named {@code broken}.
+ *
+ * @author Kaz Nishimura
+ */
+final class BulkLookupTest
+{
+    private HttpServer server;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private BitbucketClient client;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", (exchange) -> {
+            int count = active.incrementAndGet();
+            maxActive.accumulateAndGet(count, Math::max);
+            try {
+                Thread.sleep(50);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String fullName = path.substring(
+                path.indexOf("/repositories/") + "/repositories/".length());
+            int status = 200;
+            if (fullName.endsWith("/missing")) {
+                status = 404;
+            }
+            else if (fullName.endsWith("/broken")) {
+                status = 500;
+            }
+            byte[] body = ("{\"type\":\"repository\",\"full_name\":\""
+                + fullName + "\"}").getBytes(StandardCharsets.UTF_8);
+            active.decrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        URI base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        client = new BitbucketClient();
+        client.getTransport().register((ClientRequestFilter) (context) ->
+            context.setUri(base.resolve(context.getUri().getRawPath())),
+            Priorities.USER);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        client.close();
+        client = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    private static List<String> fullNames(final int count)
+    {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add("example/repository" + i);
+        }
+        return names;
+    }
+
+    /**
+     * Tests that lookups are limited by the bulk concurrency.
+     */
+    @Test
+    void testConcurrency()
+    {
+        client.setBulkConcurrency(2);
+
+        BulkResult<BitbucketRepository> repositories =
+            client.getRepositories(fullNames(8));
+        assertEquals(8, repositories.size());
+        assertFalse(repositories.hasFailures());
+        assertEquals("example/repository7",
+            repositories.get("example/repository7").getFullName());
+        assertEquals(2, maxActive.get());
+    }
+
+    /**
+     * Tests that repositories not found are missing from the result.
+     */
+    @Test
+    void testNotFound()
+    {
+        List<String> names = fullNames(3);
+        names.add("example/missing");
+
+        BulkResult<BitbucketRepository> repositories =
+            client.getRepositories(names);
+        assertEquals(3, repositories.size());
+        assertFalse(repositories.containsKey("example/missing"));
+        assertFalse(repositories.hasFailures());
+    }
+
+    /**
+     * Tests that failed lookups are reported without losing the others.
+     */
+    @Test
+    void testFailures()
+    {
+        List<String> names = fullNames(3);
+        names.add("example/broken");
+
+        BulkResult<BitbucketRepository> repositories =
+            client.getRepositories(names);
+        assertEquals(3, repositories.size());
+        assertFalse(repositories.containsKey("example/broken"));
+        assertTrue(repositories.hasFailures());
+        assertEquals(1, repositories.getFailures().size());
+        assertTrue(repositories.getFailures().containsKey("example/broken"));
+    }
+
+    /**
+     * Tests that {@code null} names are rejected before any lookup.
+     */
+    @Test
+    void testNullNames()
+    {
+        assertThrows(IllegalArgumentException.class,
+            () -> client.getRepositories(null));
+        assertThrows(IllegalArgumentException.class,
+            () -> client.getRepositories(
+                Arrays.asList("example/repository0", null)));
+        assertThrows(IllegalArgumentException.class,
+            () -> client.getUserAccounts(Arrays.asList((String) null)));
+        assertEquals(0, maxActive.get());
+    }
+}
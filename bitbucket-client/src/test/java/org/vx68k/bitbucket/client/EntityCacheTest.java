@@ -0,0 +1,100 @@
+/*
+ * EntityCacheTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link EntityCache}.
+ *
+ * @author Kaz Nishimura
+ */
+final class EntityCacheTest
+{
+    /**
+     * Tests lookups by primary and secondary keys.
+     */
+    @Test
+    void testGet1()
+    {
+        EntityCache cache = new EntityCache();
+        Object value = new Object();
+        cache.put(Object.class, value, "{1}", "alice");
+
+        assertSame(value, cache.get(Object.class, "{1}"));
+        assertSame(value, cache.get(Object.class, "alice"));
+        assertNull(cache.get(String.class, "alice"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Tests expiration.
+     */
+    @Test
+    void testGet2()
+    {
+        EntityCache cache = new EntityCache();
+        cache.setTimeToLive(Object.class, Duration.ZERO);
+        cache.put(Object.class, new Object(), "{1}");
+
+        assertNull(cache.get(Object.class, "{1}"));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests eviction of the least recently used entity.
+     */
+    @Test
+    void testPut1()
+    {
+        EntityCache cache = new EntityCache(2);
+        cache.put(Object.class, "a", "{1}", "a");
+        cache.put(Object.class, "b", "{2}", "b");
+        cache.get(Object.class, "a");
+        cache.put(Object.class, "c", "{3}", "c");
+
+        assertEquals("a", cache.get(Object.class, "{1}"));
+        assertNull(cache.get(Object.class, "b"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    /**
+     * Tests replacement of an entity by a secondary key.
+     */
+    @Test
+    void testPut2()
+    {
+        EntityCache cache = new EntityCache();
+        cache.put(Object.class, "old", "{1}", "alice");
+        cache.put(Object.class, "new", "{2}", "alice");
+
+        assertNull(cache.get(Object.class, "{1}"));
+        assertEquals("new", cache.get(Object.class, "alice"));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * PageCursorTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.BitbucketIssue;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+import org.vx68k.bitbucket.client.util.ClientTransport;
+import org.vx68k.bitbucket.client.util.JsonStructureMessageBodyReader;
+
+/**
+ * Unit tests for {@link PageCursor}.
+ *
+ * @author Kaz Nishimura
+ */
+final class PageCursorTest
+{
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            requestCount.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            int page = 1;
+            if (query != null && query.startsWith("page=")) {
+                page = Integer.parseInt(query.substring(5));
+            }
+            String body = "{\"size\":3,\"values\":[{\"type\":\"issue\","
+                + "\"id\":" + page + "}]";
+            if (page < 3) {
+                body += ",\"next\":\"" + base + "?page=" + (page + 1) + "\"";
+            }
+            body += "}";
+
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/issues");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests traversing pages.
+     */
+    @Test
+    void testNext()
+    {
+        PageCursor<BitbucketIssue> cursor = new PageCursor<>(transport, base,
+            ClientIssue.class, null, null);
+        assertEquals(-1, cursor.getSize());
+
+        List<BitbucketIssue> page = cursor.next();
+        assertEquals(1, page.get(0).getId());
+        assertEquals(3, cursor.getSize());
+        assertEquals(2, cursor.nextAsync().join().get(0).getId());
+        assertTrue(cursor.hasNext());
+        assertEquals(3, cursor.next().get(0).getId());
+        assertFalse(cursor.hasNext());
+        assertThrows(NoSuchElementException.class, cursor::next);
+        assertEquals(3, requestCount.get());
+
+        PageCursor<BitbucketIssue> restarted = cursor.restart();
+        assertTrue(restarted.hasNext());
+        assertEquals(1, restarted.next().get(0).getId());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * PageDecoderTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import javax.json.JsonException;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+
+/**
+ * Unit tests for {@link PageDecoder}.
+ *
+ * @author Kaz Nishimura
+ */
+final class PageDecoderTest
+{
+    /**
+     * JSON text of a page.
+     */
+    private static final String PAGE = "{"
+        + "\"pagelen\":2,\"page\":3,\"size\":5,"
+        + "\"values\":[{\"type\":\"issue\",\"id\":5,"
+        + "\"title\":\"{[\\\"}\",\"links\":{\"self\":{\"href\":\"x\"}}},"
+        + "{\"type\":\"issue\",\"id\":6,\"title\":\"caf\u00e9\"}],"
+        + "\"previous\":\"https://example.org/?page=2\","
+        + "\"next\":\"https://example.org/?page=4\"}";
+
+    /**
+     * Tests decoding a page.
+     */
+    @Test
+    void testDecode()
+    {
+        PageDecoder<ClientIssue> decoder =
+            new PageDecoder<>(ClientIssue.class, null);
+        // Yasson is available to the tests.
+        assertTrue(decoder.isParserBinding());
+        assertPage(decoder.decode(PAGE));
+    }
+
+    /**
+     * Tests decoding a page from the slices of its characters.
+     */
+    @Test
+    void testDecodeSlices()
+    {
+        PageDecoder<ClientIssue> decoder =
+            new PageDecoder<>(ClientIssue.class, null, false);
+        assertFalse(decoder.isParserBinding());
+        assertPage(decoder.decode(PAGE));
+    }
+
+    /**
+     * Asserts a page decoded from {@link #PAGE}.
+     *
+     * @param page a decoded page
+     */
+    private static void assertPage(final PageDecoder.Page<ClientIssue> page)
+    {
+        assertEquals(2, page.getValues().size());
+        assertEquals(5, page.getValues().get(0).getId());
+        assertEquals("{[\"}", page.getValues().get(0).getTitle());
+        assertEquals("caf\u00e9", page.getValues().get(1).getTitle());
+        assertEquals(5, page.getSize());
+        assertEquals(3, page.getPage());
+        assertEquals(2, page.getPageLength());
+        assertEquals(URI.create("https://example.org/?page=4"),
+            page.getNext());
+    }
+
+    /**
+     * Tests decoding the last page of a list with a projection.
+     */
+    @Test
+    void testDecodeProjection()
+    {
+        for (boolean parserBinding : new boolean[] {true, false}) {
+            PageDecoder<ClientIssue> decoder = new PageDecoder<>(
+                ClientIssue.class, Projection.of("id"), parserBinding);
+            PageDecoder.Page<ClientIssue> page = decoder.decode(
+                "{\"next\":null,\"values\":[{\"id\":1},{\"id\":2}]}");
+
+            assertEquals(2, page.getValues().size());
+            assertEquals(1, page.getValues().get(0).getId());
+            assertEquals(2, page.getValues().get(1).getId());
+            assertTrue(page.getValues().get(0).isLoaded("id"));
+            assertFalse(page.getValues().get(0).isLoaded("title"));
+            assertEquals(-1, page.getSize());
+            assertEquals(0, page.getPageLength());
+            assertNull(page.getNext());
+
+            assertThrows(JsonException.class, () -> decoder.decode("[]"));
+        }
+    }
+}
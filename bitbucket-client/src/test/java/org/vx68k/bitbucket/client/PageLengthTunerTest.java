@@ -0,0 +1,146 @@
+/*
+ * PageLengthTunerTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PageLengthTuner}.
+ *
+ * @author Kaz Nishimura
+ */
+final class PageLengthTunerTest
+{
+    private static final URI ISSUES = URI.create(
+        "https://api.bitbucket.org/2.0/repositories/vx68k/test/issues");
+
+    /**
+     * Tests tuning by the latency.
+     */
+    @Test
+    void testLatency()
+    {
+        PageLengthTuner tuner = new PageLengthTuner();
+        tuner.setTargetLatency(Duration.ofSeconds(1));
+        assertEquals(PageLengthTuner.DEFAULT_INITIAL_PAGE_LENGTH,
+            tuner.getPageLength(ISSUES, null));
+
+        // 50 values in 100 ms.
+        tuner.record(ISSUES, null, 50, 1000,
+            TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(RequestOptions.MAX_PAGE_LENGTH,
+            tuner.getPageLength(ISSUES, null));
+
+        // 50 values in 2 s, repeatedly.
+        for (int i = 0; i < 20; i++) {
+            tuner.record(ISSUES, null, 50, 1000,
+                TimeUnit.SECONDS.toNanos(2));
+        }
+        int pageLength = tuner.getPageLength(ISSUES, null);
+        assertTrue(pageLength >= PageLengthTuner.MIN_PAGE_LENGTH);
+        assertTrue(pageLength <= 26);
+
+        tuner.reset();
+        assertEquals(PageLengthTuner.DEFAULT_INITIAL_PAGE_LENGTH,
+            tuner.getPageLength(ISSUES, null));
+    }
+
+    /**
+     * Tests tuning by the latency dominated by the round trip, with short
+     * last pages.
+     */
+    @Test
+    void testRoundTrip()
+    {
+        PageLengthTuner tuner = new PageLengthTuner();
+        tuner.setTargetLatency(Duration.ofSeconds(1));
+
+        // 400 ms per request plus 0.1 ms per value, 203 values in total.
+        int pageLength = tuner.getPageLength(ISSUES, null);
+        for (int i = 0; i < 5; i++) {
+            for (int remaining = 203; remaining > 0;
+                remaining -= pageLength) {
+                int values = Math.min(remaining, pageLength);
+                tuner.record(ISSUES, null, values, 1000L * values,
+                    TimeUnit.MICROSECONDS.toNanos(400000 + 100 * values));
+            }
+            int next = tuner.getPageLength(ISSUES, null);
+            assertTrue(next >= pageLength);
+            pageLength = next;
+        }
+        assertEquals(RequestOptions.MAX_PAGE_LENGTH, pageLength);
+
+        // 1.5 s per request, which no page length can meet.
+        tuner.reset();
+        tuner.record(ISSUES, null, 50, 1000,
+            TimeUnit.MILLISECONDS.toNanos(1505));
+        tuner.record(ISSUES, null, 5, 1000,
+            TimeUnit.MICROSECONDS.toNanos(1500500));
+        assertEquals(RequestOptions.MAX_PAGE_LENGTH,
+            tuner.getPageLength(ISSUES, null));
+    }
+
+    /**
+     * Tests tuning by the payload size with projections.
+     */
+    @Test
+    void testPayload()
+    {
+        PageLengthTuner tuner = new PageLengthTuner();
+        tuner.setMaxPageChars(100000);
+
+        // 4,000 characters per value for all the properties.
+        tuner.record(ISSUES, null, 10, 40000, 0L);
+        assertEquals(25, tuner.getPageLength(ISSUES, null));
+
+        // 100 characters per value for a projection.
+        Projection projection = Projection.of("id", "title");
+        tuner.record(ISSUES, projection, 10, 1000, 0L);
+        assertEquals(RequestOptions.MAX_PAGE_LENGTH,
+            tuner.getPageLength(ISSUES, projection));
+        assertEquals(25, tuner.getPageLength(ISSUES, null));
+    }
+
+    /**
+     * Tests the setters with invalid values.
+     */
+    @Test
+    void testInvalid()
+    {
+        PageLengthTuner tuner = new PageLengthTuner();
+        assertThrows(IllegalArgumentException.class,
+            () -> tuner.setInitialPageLength(
+                RequestOptions.MAX_PAGE_LENGTH + 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> tuner.setTargetLatency(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+            () -> tuner.setMaxPageChars(0));
+        assertThrows(IllegalArgumentException.class,
+            () -> new RequestOptions().setPageLength(-2));
+    }
+}
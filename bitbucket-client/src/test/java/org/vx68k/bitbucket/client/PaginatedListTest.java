@@ -20,16 +20,38 @@
 
 package org.vx68k.bitbucket.client;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.MediaType;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.vx68k.bitbucket.BitbucketIssue;
 import org.vx68k.bitbucket.client.internal.ClientIssue;
+import org.vx68k.bitbucket.client.util.ClientTransport;
 import org.vx68k.bitbucket.client.util.JsonStructureMessageBodyReader;
 
 /**
@@ -46,18 +68,139 @@ class PaginatedListTest
         URI.create("https://api.bitbucket.org/"
             + "2.0/repositories/vx68k/bitbucket-api-client.java/issues");
 
+    /**
+     * Number of the values served by the local server.
+     */
+    private static final int SIZE = 300;
+
+    /**
+     * Page length of the local server.
+     */
+    private static final int PAGELEN = 10;
+
     private ClientBuilder clientBuilder;
 
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /**
+     * Number of the values removed from the end of the list.
+     */
+    private final AtomicInteger removed = new AtomicInteger();
+
+    /**
+     * Indicates whether a request to {@code /throttled} has been throttled.
+     */
+    private final AtomicBoolean throttled = new AtomicBoolean();
+
     @BeforeEach
-    void setUp()
+    void setUp() throws IOException
     {
         clientBuilder = ClientBuilder.newBuilder()
             .register(JsonStructureMessageBodyReader.class);
+
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            requestCount.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            int page = 1;
+            int pagelen = PAGELEN;
+            String fields = null;
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    if (param.startsWith("page=")) {
+                        page = Integer.parseInt(param.substring(5));
+                    }
+                    else if (param.startsWith("pagelen=")) {
+                        pagelen = Integer.parseInt(param.substring(8));
+                    }
+                    else if (param.startsWith("fields=")) {
+                        fields = "," + param.substring(7) + ",";
+                    }
+                }
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/throttled") && throttled.compareAndSet(
+                false, true)) {
+                // Only the first request is throttled.
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+                exchange.close();
+                return;
+            }
+            boolean addressable = path.equals("/issues")
+                || path.equals("/fixed") || path.equals("/throttled");
+            if (path.equals("/fixed")) {
+                // Ignores the page parameter.
+                page = 1;
+            }
+            int size = SIZE - removed.get();
+
+            StringBuilder body = new StringBuilder("{\"values\":[");
+            int start = (page - 1) * pagelen;
+            for (int i = start; i < Math.min(start + pagelen, size); i++) {
+                if (i > start) {
+                    body.append(",");
+                }
+                body.append("{\"type\":\"issue\",\"id\":")
+                    .append(i + 1).append("}");
+            }
+            body.append("]");
+            if (addressable) {
+                if (selected(fields, "size")) {
+                    body.append(",\"size\":").append(size);
+                }
+                if (selected(fields, "page")) {
+                    body.append(",\"page\":").append(page);
+                }
+                if (selected(fields, "pagelen")) {
+                    body.append(",\"pagelen\":").append(pagelen);
+                }
+            }
+            if (page * pagelen < size && selected(fields, "next")) {
+                body.append(",\"next\":\"").append(base)
+                    .append(exchange.getRequestURI().getPath())
+                    .append("?pagelen=").append(pagelen)
+                    .append("&page=").append(page + 1).append("\"");
+            }
+            body.append("}");
+
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort());
+    }
+
+    /**
+     * Returns {@code true} if a field of a page is selected by the
+     * {@code fields} query parameter.
+     *
+     * @param fields the parameter value enclosed in commas, or {@code null}
+     * @param name the name of a field
+     * @return {@code true} if selected; {@code false} otherwise
+     */
+    private static boolean selected(final String fields, final String name)
+    {
+        return fields == null || fields.contains("," + name + ",");
     }
 
     @AfterEach
     void tearDown()
     {
+        server.stop(0);
+        server = null;
+
         clientBuilder = null;
     }
 
@@ -85,4 +228,381 @@ class PaginatedListTest
 
         assertTrue(issues.size() > 0);
     }
+
+    /**
+     * Tests a list that fetches its pages with a transport of its own.
+     */
+    @Test
+    void testClientBuilder()
+    {
+        PaginatedList<ClientIssue> issues = new PaginatedList<>(
+            clientBuilder, base.resolve("/issues"), ClientIssue.class);
+        assertNull(issues.getOwnedTransport());
+
+        assertEquals(SIZE, issues.get(SIZE - 1).getId());
+        assertEquals(1, issues.get(0).getId());
+        assertEquals(SIZE, issues.size());
+        assertEquals(2, requestCount.get());
+        ClientTransport owned = issues.getOwnedTransport();
+        assertNotNull(owned);
+
+        // The transport is kept for the list and closed when it is done.
+        assertEquals(PAGELEN + 1, issues.get(PAGELEN).getId());
+        assertSame(owned, issues.getOwnedTransport());
+        issues.fetchAll();
+        assertNull(issues.getOwnedTransport());
+        assertThrows(IllegalStateException.class, owned::getClient);
+        assertEquals(SIZE / PAGELEN, requestCount.get());
+    }
+
+    /**
+     * Tests direct page addressing of a list that shrinks after its first
+     * page was fetched.
+     */
+    @Test
+    void testGetDirectShortPage()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            List<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/issues"), ClientIssue.class);
+            assertEquals(1, issues.get(0).getId());
+
+            removed.set(PAGELEN / 2);
+            ProcessingException e = assertThrows(ProcessingException.class,
+                () -> issues.get(SIZE - 1));
+            assertTrue(e.getMessage().contains("may have changed"));
+            assertEquals(SIZE - PAGELEN,
+                issues.get(SIZE - PAGELEN - 1).getId());
+        }
+    }
+
+    /**
+     * Tests direct page addressing with a server that ignores the page
+     * parameter.
+     */
+    @Test
+    void testGetDirectWrongPage()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            List<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/fixed"), ClientIssue.class);
+
+            ProcessingException e = assertThrows(ProcessingException.class,
+                () -> issues.get(SIZE - 1));
+            assertEquals("Requested page 30 but received page 1",
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Tests direct page addressing of a list with a projection.
+     */
+    @Test
+    void testGetDirectProjected()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            List<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/issues"), ClientIssue.class,
+                Projection.of("id"));
+
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(2, requestCount.get());
+            assertEquals(SIZE, issues.size());
+            assertEquals(2, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests direct page addressing.
+     */
+    @Test
+    void testGetDirect()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            List<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/issues"), ClientIssue.class);
+
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(2, requestCount.get());
+            assertEquals(SIZE / 2 + 1, issues.get(SIZE / 2).getId());
+            assertEquals(SIZE / 2 + 2, issues.get(SIZE / 2 + 1).getId());
+            assertEquals(3, requestCount.get());
+            assertEquals(SIZE, issues.size());
+            assertEquals(3, requestCount.get());
+            assertThrows(IndexOutOfBoundsException.class,
+                () -> issues.get(SIZE));
+        }
+    }
+
+    /**
+     * Tests following the {@code next} links when pages are not directly
+     * addressable.
+     */
+    @Test
+    void testGetSequential()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            List<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/sequential"), ClientIssue.class);
+
+            assertEquals(3 * PAGELEN, issues.get(3 * PAGELEN - 1).getId());
+            assertEquals(3, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests {@link PaginatedList#prefetchingIterator()}.
+     */
+    @Test
+    void testPrefetchingIterator()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            PaginatedList<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/issues"), ClientIssue.class);
+            assertThrows(IllegalArgumentException.class,
+                () -> issues.setPrefetchDepth(0));
+            issues.setPrefetchDepth(3);
+
+            Iterator<ClientIssue> iterator = issues.prefetchingIterator();
+            int expected = 1;
+            while (iterator.hasNext()) {
+                assertEquals(expected++, iterator.next().getId());
+            }
+            assertEquals(SIZE + 1, expected);
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests {@link PaginatedList#prefetchingStream()} when pages are not
+     * directly addressable.
+     */
+    @Test
+    void testPrefetchingStream()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            PaginatedList<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/sequential"), ClientIssue.class);
+
+            assertEquals((long) SIZE * (SIZE + 1) / 2,
+                issues.prefetchingStream().mapToLong(ClientIssue::getId)
+                    .sum());
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(SIZE, issues.size());
+            assertEquals((long) SIZE * (SIZE + 1) / 2,
+                issues.prefetchingStream().mapToLong(ClientIssue::getId)
+                    .sum());
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests {@link PaginatedList#fetchAll()}.
+     */
+    @Test
+    void testFetchAll()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            PaginatedList<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/issues"), ClientIssue.class);
+            assertEquals(SIZE / 2 + 1, issues.get(SIZE / 2).getId());
+            issues.fetchAll();
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(i + 1, issues.get(i).getId());
+            }
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests {@link PaginatedList#fetchAllAsync()} when pages are not
+     * directly addressable.
+     */
+    @Test
+    void testFetchAllAsync()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            PaginatedList<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/sequential"), ClientIssue.class);
+            issues.fetchAllAsync().join();
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+            assertEquals(SIZE, issues.size());
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests {@link PaginatedList#spliterator()}.
+     */
+    @Test
+    void testSpliterator()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            PaginatedList<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/issues"), ClientIssue.class);
+
+            Spliterator<ClientIssue> spliterator = issues.spliterator();
+            assertEquals(1, requestCount.get());
+            assertTrue(spliterator.hasCharacteristics(
+                Spliterator.SIZED | Spliterator.SUBSIZED));
+            assertEquals(SIZE, spliterator.getExactSizeIfKnown());
+
+            Spliterator<ClientIssue> prefix = spliterator.trySplit();
+            assertNotNull(prefix);
+            assertEquals(0, prefix.estimateSize() % PAGELEN);
+            assertEquals(SIZE, prefix.estimateSize()
+                + spliterator.estimateSize());
+            assertEquals(1, requestCount.get());
+
+            assertEquals((long) SIZE * (SIZE + 1) / 2,
+                issues.stream().parallel().mapToLong(ClientIssue::getId)
+                    .sum());
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests {@link PaginatedList#spliterator()} when pages are not directly
+     * addressable.
+     */
+    @Test
+    void testSpliteratorSequential()
+    {
+        try (ClientTransport transport = new ClientTransport(clientBuilder)) {
+            PaginatedList<ClientIssue> issues = new PaginatedList<>(transport,
+                base.resolve("/sequential"), ClientIssue.class);
+
+            assertEquals(PAGELEN, issues.stream().limit(PAGELEN).count());
+            assertEquals(1, requestCount.get());
+            assertEquals((long) SIZE * (SIZE + 1) / 2,
+                issues.stream().parallel().mapToLong(ClientIssue::getId)
+                    .sum());
+            assertEquals(SIZE / PAGELEN, requestCount.get());
+        }
+    }
+
+    /**
+     * Tests the page length of {@link BitbucketClient#getList}.
+     */
+    @Test
+    void testPageLength()
+    {
+        try (BitbucketClient client = new BitbucketClient()) {
+            RequestOptions options = new RequestOptions();
+            options.setPageLength(RequestOptions.MAX_PAGE_LENGTH);
+            PaginatedList<ClientIssue> issues =
+                (PaginatedList<ClientIssue>) client.<ClientIssue>getList(
+                    base, (target) -> target.path("/sequential"),
+                    ClientIssue.class, options);
+
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(SIZE / RequestOptions.MAX_PAGE_LENGTH,
+                issues.getRequestCount());
+            assertEquals(SIZE / RequestOptions.MAX_PAGE_LENGTH,
+                requestCount.get());
+        }
+    }
+
+    /**
+     * Tests the tuned page length of {@link BitbucketClient#getList}.
+     */
+    @Test
+    void testTunedPageLength()
+    {
+        try (BitbucketClient client = new BitbucketClient()) {
+            RequestOptions options = new RequestOptions();
+            options.setPageLength(RequestOptions.TUNED_PAGE_LENGTH);
+            client.getPageLengthTuner().setTargetLatency(
+                Duration.ofMinutes(1));
+            PaginatedList<ClientIssue> issues =
+                (PaginatedList<ClientIssue>) client.<ClientIssue>getList(
+                    base, (target) -> target.path("/issues"),
+                    ClientIssue.class, options);
+
+            assertEquals(SIZE, issues.size());
+            assertEquals(PageLengthTuner.DEFAULT_INITIAL_PAGE_LENGTH,
+                issues.getPageLength());
+            assertEquals(1, issues.getRequestCount());
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(2, issues.getRequestCount());
+
+            URI first = base.resolve("/issues");
+            assertEquals(RequestOptions.MAX_PAGE_LENGTH,
+                client.getPageLengthTuner().getPageLength(first, null));
+        }
+    }
+
+    /**
+     * Tests the tuned page length of pages that wait for the rate limiter
+     * and are throttled.
+     */
+    @Test
+    void testTunedPageLengthThrottled()
+    {
+        try (BitbucketClient client = new BitbucketClient()) {
+            // Each page after the first waits for about 250 ms.
+            client.getRateLimiter().setCapacity(1);
+            client.getRateLimiter().setRefillRate(4.0);
+            client.getPageLengthTuner().setTargetLatency(
+                Duration.ofMillis(500));
+            RequestOptions options = new RequestOptions();
+            options.setPageLength(RequestOptions.TUNED_PAGE_LENGTH);
+            PaginatedList<ClientIssue> issues =
+                (PaginatedList<ClientIssue>) client.<ClientIssue>getList(
+                    base, (target) -> target.path("/throttled"),
+                    ClientIssue.class, options);
+
+            issues.fetchAll();
+            assertEquals(SIZE, issues.size());
+            assertEquals(SIZE / PageLengthTuner.DEFAULT_INITIAL_PAGE_LENGTH,
+                issues.getRequestCount());
+            assertEquals(1, client.getRateLimiter().getThrottleCount());
+
+            URI first = base.resolve("/throttled");
+            assertTrue(client.getPageLengthTuner().getPageLength(first, null)
+                >= PageLengthTuner.DEFAULT_INITIAL_PAGE_LENGTH);
+        }
+    }
+
+    /**
+     * Tests the tuned page length of
+     * {@link BitbucketClient#getIssuesAsync(String, String, Projection, int)}.
+     */
+    @Test
+    void testTunedPageLengthAsync() throws Exception
+    {
+        AtomicReference<URI> first = new AtomicReference<>();
+        try (BitbucketClient client = new BitbucketClient()) {
+            client.getTransport().register((ClientRequestFilter) (context) -> {
+                first.compareAndSet(null, context.getUri());
+                context.setUri(base.resolve("/issues?"
+                    + context.getUri().getRawQuery()));
+            }, Priorities.USER);
+            client.getPageLengthTuner().setTargetLatency(
+                Duration.ofMinutes(1));
+            PaginatedList<BitbucketIssue> issues =
+                (PaginatedList<BitbucketIssue>) client.getIssuesAsync(
+                    "vx68k/test", null, null,
+                    RequestOptions.TUNED_PAGE_LENGTH).get();
+
+            assertEquals(SIZE, issues.size());
+            assertEquals(PageLengthTuner.DEFAULT_INITIAL_PAGE_LENGTH,
+                issues.getPageLength());
+            assertEquals(1, issues.getRequestCount());
+            assertEquals(SIZE, issues.get(SIZE - 1).getId());
+            assertEquals(2, issues.getRequestCount());
+
+            assertEquals("api.bitbucket.org", first.get().getHost());
+            assertEquals(RequestOptions.MAX_PAGE_LENGTH,
+                client.getPageLengthTuner().getPageLength(first.get(), null));
+        }
+    }
 }
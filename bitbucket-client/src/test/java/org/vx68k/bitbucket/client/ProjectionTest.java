@@ -0,0 +1,215 @@
+/*
+ * ProjectionTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+import org.vx68k.bitbucket.client.internal.ClientRepository;
+import org.vx68k.bitbucket.client.internal.ClientUserAccount;
+import org.vx68k.bitbucket.client.util.ClientTransport;
+import org.vx68k.bitbucket.client.util.JsonStructureMessageBodyReader;
+
+/**
+ * Unit tests for {@link Projection}.
+ *
+ * @author Kaz Nishimura
+ */
+final class ProjectionTest
+{
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicReference<String> query = new AtomicReference<>();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            query.set(exchange.getRequestURI().getQuery());
+
+            byte[] body = ("{\"size\":1,\"values\":[{\"id\":1,"
+                + "\"state\":\"new\"}]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/issues");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests the query parameter values.
+     */
+    @Test
+    void testQueryValues()
+    {
+        Projection projection =
+            Projection.of("id", "state", "repository.full_name");
+        assertEquals("id,state,repository.full_name",
+            projection.toQueryValue());
+        assertEquals("values.id,values.state,values.repository.full_name,"
+            + "next,size,page,pagelen", projection.toPageQueryValue());
+        assertEquals(new HashSet<>(Arrays.asList("id", "state", "repository")),
+            projection.getProperties());
+        assertEquals(projection, Projection.of("id", "state",
+            "repository.full_name"));
+    }
+
+    /**
+     * Tests invalid field names.
+     */
+    @Test
+    void testInvalidFields()
+    {
+        assertThrows(IllegalArgumentException.class, () -> Projection.of());
+        assertThrows(IllegalArgumentException.class,
+            () -> Projection.of("id,state"));
+        assertThrows(IllegalArgumentException.class,
+            () -> Projection.of("id."));
+    }
+
+    /**
+     * Tests getters of an entity loaded partially.
+     */
+    @Test
+    void testNotLoaded()
+    {
+        ClientIssue issue = new ClientIssue();
+        issue.setId(1);
+        issue.setLoadedProperties(Projection.of("id").getProperties());
+        assertEquals(1, issue.getId());
+        assertFalse(issue.isLoaded("state"));
+        PropertyNotLoadedException e = assertThrows(
+            PropertyNotLoadedException.class, issue::getState);
+        assertEquals("state", e.getProperty());
+
+        ClientIssue copy = new ClientIssue(issue);
+        assertThrows(PropertyNotLoadedException.class, copy::getTitle);
+
+        issue.setLoadedProperties(Projection.of("*").getProperties());
+        assertTrue(issue.isLoaded("state"));
+    }
+
+    /**
+     * Tests nested objects loaded partially by dotted names.
+     */
+    @Test
+    void testNestedNotLoaded()
+    {
+        Projection projection =
+            Projection.of("id", "repository.full_name", "reporter");
+        assertEquals(new HashSet<>(Arrays.asList("full_name")),
+            Projection.nestedProperties(projection.getFields(),
+                "repository"));
+        assertEquals(null, Projection.nestedProperties(
+            projection.getFields(), "reporter"));
+
+        ClientRepository repository = new ClientRepository();
+        repository.setFullName("example/test");
+        ClientUserAccount reporter = new ClientUserAccount();
+        reporter.setUsername("example");
+        ClientIssue issue = new ClientIssue();
+        issue.setRepository(repository);
+        issue.setReporter(reporter);
+        issue.setAssignee(reporter);
+        issue.setLoadedProperties(projection.getFields());
+
+        assertEquals(new HashSet<>(Arrays.asList("id", "repository",
+            "reporter")), issue.getLoadedProperties());
+        assertEquals("example/test", issue.getRepository().getFullName());
+        assertThrows(PropertyNotLoadedException.class,
+            issue.getRepository()::getName);
+        assertThrows(PropertyNotLoadedException.class,
+            issue.getRepository()::getOwner);
+        assertEquals("example", issue.getReporter().getUsername());
+        assertThrows(PropertyNotLoadedException.class, issue::getAssignee);
+
+        ClientIssue copy = new ClientIssue(issue);
+        assertThrows(PropertyNotLoadedException.class,
+            copy.getRepository()::getName);
+
+        ClientUserAccount account = new ClientUserAccount();
+        account.setLoadedProperties(
+            Projection.of("username", "links.html").getFields());
+        assertEquals(null, account.getUsername());
+        assertThrows(PropertyNotLoadedException.class,
+            account::getDisplayName);
+        assertTrue(account.isLoaded("links"));
+    }
+
+    /**
+     * Tests a paginated list with a projection.
+     */
+    @Test
+    void testPaginatedList()
+    {
+        List<ClientIssue> issues = new PaginatedList<>(transport, base,
+            ClientIssue.class, Projection.of("id", "state"));
+        ClientIssue issue = issues.get(0);
+        assertEquals("fields=values.id,values.state,next,size,page,pagelen",
+            query.get());
+        assertEquals(1, issue.getId());
+        assertEquals("new", issue.getState());
+        assertThrows(PropertyNotLoadedException.class, issue::getUpdated);
+    }
+}
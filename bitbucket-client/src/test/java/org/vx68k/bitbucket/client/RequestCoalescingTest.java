@@ -0,0 +1,192 @@
+/*
+ * RequestCoalescingTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.client.internal.ClientRepository;
+
+/**
+ * Unit tests for request coalescing of {@link BitbucketClient}.
+ *
+ * @author Kaz Nishimura
+ */
+final class RequestCoalescingTest
+{
+    private static final String BODY =
+        "{\"type\":\"repository\",\"full_name\":\"example/test\"}";
+
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private CountDownLatch received;
+
+    private CountDownLatch release;
+
+    private BitbucketClient client;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        received = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", (exchange) -> {
+            requestCount.incrementAndGet();
+            received.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/repository");
+
+        client = new BitbucketClient();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        client.close();
+        client = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests identical concurrent synchronous requests.
+     */
+    @Test
+    void testGet() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<Future<ClientRepository>> futures = new ArrayList<>();
+            futures.add(executor.submit(() ->
+                client.get(base, null, ClientRepository.class)));
+            assertEquals(true, received.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() ->
+                    client.get(base, null, ClientRepository.class)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            List<ClientRepository> values = new ArrayList<>();
+            for (Future<ClientRepository> future : futures) {
+                values.add(future.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, requestCount.get());
+            for (ClientRepository value : values) {
+                assertEquals("example/test", value.getFullName());
+            }
+            assertNotSame(values.get(0), values.get(1));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests identical concurrent asynchronous requests.
+     */
+    @Test
+    void testGetAsync() throws Exception
+    {
+        List<CompletableFuture<ClientRepository>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(client.getAsync(base, null, ClientRepository.class));
+        }
+        release.countDown();
+
+        ClientRepository first = futures.get(0).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<ClientRepository> future : futures) {
+            ClientRepository value = future.get(10, TimeUnit.SECONDS);
+            assertEquals("example/test", value.getFullName());
+            if (future != futures.get(0)) {
+                assertNotSame(first, value);
+            }
+        }
+        assertEquals(1, requestCount.get());
+    }
+
+    /**
+     * Tests requests that opt out of coalescing.
+     */
+    @Test
+    void testGetWithoutCoalescing() throws Exception
+    {
+        RequestOptions options = new RequestOptions();
+        options.setCoalescing(false);
+
+        List<CompletableFuture<ClientRepository>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(client.getAsync(base, null, ClientRepository.class,
+                options));
+        }
+        release.countDown();
+
+        for (CompletableFuture<ClientRepository> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(2, requestCount.get());
+    }
+}
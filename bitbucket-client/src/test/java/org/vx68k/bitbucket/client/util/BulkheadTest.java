@@ -0,0 +1,178 @@
+/*
+ * BulkheadTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.client.BitbucketClient;
+import org.vx68k.bitbucket.client.RequestOptions;
+import org.vx68k.bitbucket.client.internal.ClientRepository;
+
+/**
+ * Unit tests for {@link Bulkhead}.
+ *
+ * @author Kaz Nishimura
+ */
+final class BulkheadTest
+{
+    private static final String BODY =
+        "{\"type\":\"repository\",\"full_name\":\"example/test\"}";
+
+    private HttpServer server;
+
+    private URI base;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private BitbucketClient client;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", (exchange) -> {
+            if (exchange.getRequestURI().getPath().startsWith("/slow")) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        client = new BitbucketClient();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        release.countDown();
+        client.close();
+        client = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests permits and the queue.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    void testPermits() throws InterruptedException
+    {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1);
+        bulkhead.acquire();
+        assertEquals(1, bulkhead.getActiveCount());
+
+        CompletableFuture<Void> waiter = bulkhead.acquireAsync();
+        assertFalse(waiter.isDone());
+        assertEquals(1, bulkhead.getQueuedCount());
+
+        CompletableFuture<Void> rejected = bulkhead.acquireAsync();
+        assertTrue(rejected.isCompletedExceptionally());
+        assertThrows(BulkheadFullException.class, bulkhead::acquire);
+        assertEquals(2, bulkhead.getRejectedCount());
+
+        bulkhead.release();
+        assertTrue(waiter.isDone());
+        assertEquals(1, bulkhead.getActiveCount());
+        assertEquals(0, bulkhead.getQueuedCount());
+
+        bulkhead.release();
+        assertEquals(0, bulkhead.getActiveCount());
+    }
+
+    /**
+     * Tests that a full bulkhead does not block requests outside it.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    void testIsolation() throws InterruptedException
+    {
+        client.addBulkhead(new Bulkhead("background", 1, 0));
+        BitbucketClient background = client.withBulkhead("background");
+
+        CompletableFuture<ClientRepository> slow = background.getAsync(
+            base, (target) -> target.path("slow"), ClientRepository.class);
+        Bulkhead bulkhead = client.getBulkhead("background");
+        while (bulkhead.getActiveCount() == 0) {
+            Thread.sleep(10);
+        }
+
+        CompletionException e = assertThrows(CompletionException.class,
+            () -> background.getAsync(base, (target) -> target.path("slow2"),
+                ClientRepository.class).join());
+        assertTrue(e.getCause() instanceof BulkheadFullException);
+
+        RequestOptions options = new RequestOptions();
+        options.setBulkhead("background");
+        assertThrows(BulkheadFullException.class, () -> client.get(base,
+            (target) -> target.path("fast"), ClientRepository.class,
+            options));
+
+        ClientRepository fast = client.get(base,
+            (target) -> target.path("fast"), ClientRepository.class);
+        assertEquals("example/test", fast.getFullName());
+        assertFalse(slow.isDone());
+
+        release.countDown();
+        assertEquals("example/test", slow.join().getFullName());
+        assertEquals(0, bulkhead.getActiveCount());
+        assertThrows(IllegalArgumentException.class,
+            () -> client.withBulkhead("unknown"));
+    }
+}
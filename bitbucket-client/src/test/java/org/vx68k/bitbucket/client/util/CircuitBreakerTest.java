@@ -0,0 +1,225 @@
+/*
+ * CircuitBreakerTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.JsonObject;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CircuitBreaker}.
+ *
+ * @author Kaz Nishimura
+ */
+final class CircuitBreakerTest
+{
+    private static final String ISSUES =
+        "/2.0/repositories/{workspace}/{repo_slug}/issues/{id}";
+
+    private HttpServer server;
+
+    private URI base;
+
+    private volatile int status = 200;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private final List<CircuitBreakerEvent> events =
+        new CopyOnWriteArrayList<>();
+
+    private ClientTransport transport;
+
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            requestCount.incrementAndGet();
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] bytes = "{\"type\":\"issue\",\"id\":1}"
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/2.0/repositories/a/b/");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+        transport.setRetryPolicy(null);
+        breaker = transport.getCircuitBreaker();
+        breaker.setWindowSize(4);
+        breaker.setMinimumCalls(4);
+        breaker.setHalfOpenCalls(2);
+        breaker.setOpenDuration(Duration.ofMillis(200));
+        breaker.addCircuitBreakerListener(events::add);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    private JsonObject get(final String path)
+    {
+        return transport.invoke(base.resolve(path), (target) ->
+            target.request(MediaType.APPLICATION_JSON_TYPE)
+                .get(JsonObject.class));
+    }
+
+    /**
+     * Tests {@link CircuitBreaker#isFailure}.
+     */
+    @Test
+    void testIsFailure()
+    {
+        assertTrue(CircuitBreaker.isFailure(new ServerErrorException(500)));
+        assertTrue(CircuitBreaker.isFailure(
+            new CompletionException(new ProcessingException("test"))));
+        assertFalse(CircuitBreaker.isFailure(new NotFoundException()));
+        assertFalse(CircuitBreaker.isFailure(
+            new CircuitOpenException(ISSUES, Duration.ZERO)));
+        assertFalse(CircuitBreaker.isFailure(new IllegalStateException()));
+    }
+
+    /**
+     * Tests the transitions of a circuit.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    void testTransitions() throws InterruptedException
+    {
+        get("issues/1");
+        status = 500;
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ServerErrorException.class, () -> get("issues/1"));
+        }
+        assertEquals(CircuitState.OPEN, breaker.getState(ISSUES));
+        assertEquals(1, events.size());
+        assertEquals(CircuitState.CLOSED, events.get(0).getOldState());
+        assertEquals(0.75, events.get(0).getFailureRate(), 1e-9);
+
+        int sent = requestCount.get();
+        CircuitOpenException e = assertThrows(CircuitOpenException.class,
+            () -> get("issues/2"));
+        assertEquals(ISSUES, e.getEndpoint());
+        assertThrows(CompletionException.class, () -> transport
+            .<JsonObject>invokeAsync(base.resolve("issues/3"), (target) ->
+                target.request().rx().get(JsonObject.class))
+            .join());
+        assertEquals(sent, requestCount.get());
+        assertEquals(2, breaker.getRejectedCount());
+
+        // Other endpoints are not affected.
+        status = 404;
+        assertThrows(NotFoundException.class, () -> get(""));
+        assertEquals(CircuitState.CLOSED,
+            breaker.getState("/2.0/repositories/{workspace}/{repo_slug}/"));
+
+        Thread.sleep(250);
+        status = 500;
+        assertThrows(ServerErrorException.class, () -> get("issues/1"));
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState(ISSUES));
+        assertThrows(ServerErrorException.class, () -> get("issues/1"));
+        assertEquals(CircuitState.OPEN, breaker.getState(ISSUES));
+
+        Thread.sleep(250);
+        status = 200;
+        get("issues/1");
+        get("issues/1");
+        assertEquals(CircuitState.CLOSED, breaker.getState(ISSUES));
+        assertEquals(2, breaker.getOpenedCount());
+        assertEquals(5, events.size());
+        assertEquals(CircuitState.HALF_OPEN, events.get(4).getOldState());
+    }
+
+    /**
+     * Tests the slow call rate threshold.
+     */
+    @Test
+    void testSlowCalls()
+    {
+        breaker.setSlowCallDuration(Duration.ZERO);
+        breaker.setSlowCallRateThreshold(1.0);
+        for (int i = 0; i < 4; i++) {
+            get("issues/1");
+        }
+        assertEquals(CircuitState.OPEN, breaker.getState(ISSUES));
+        assertEquals(1.0, events.get(0).getSlowCallRate(), 1e-9);
+    }
+
+    /**
+     * Tests {@link CircuitBreaker#setEnabled}.
+     */
+    @Test
+    void testDisabled()
+    {
+        breaker.setEnabled(false);
+        status = 500;
+        for (int i = 0; i < 8; i++) {
+            assertThrows(ServerErrorException.class, () -> get("issues/1"));
+        }
+        assertEquals(CircuitState.CLOSED, breaker.getState(ISSUES));
+        assertTrue(events.isEmpty());
+    }
+}
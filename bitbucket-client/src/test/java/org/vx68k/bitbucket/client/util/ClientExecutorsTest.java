@@ -0,0 +1,129 @@
+/*
+ * ClientExecutorsTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.client.BitbucketClient;
+
+/**
+ * Unit tests for {@link ClientExecutors}.
+ *
+ * @author Kaz Nishimura
+ */
+final class ClientExecutorsTest
+{
+    /**
+     * Tests {@link ClientExecutors#newExecutor}.
+     *
+     * @throws Exception if a task failed
+     */
+    @Test
+    void testNewExecutor() throws Exception
+    {
+        ExecutorService executor = ClientExecutors.newExecutor();
+        try {
+            Future<Boolean> daemonOrVirtual = executor.submit(() ->
+                Thread.currentThread().isDaemon() || isVirtual());
+            assertEquals(true, daemonOrVirtual.get());
+            assertEquals(ClientExecutors.isVirtualThreadSupported(),
+                executor.submit(ClientExecutorsTest::isVirtual).get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests {@link ClientExecutors#newVirtualThreadExecutor}.
+     */
+    @Test
+    void testNewVirtualThreadExecutor()
+    {
+        if (!ClientExecutors.isVirtualThreadSupported()) {
+            assertThrows(UnsupportedOperationException.class,
+                ClientExecutors::newVirtualThreadExecutor);
+        }
+        else {
+            ClientExecutors.newVirtualThreadExecutor().shutdown();
+        }
+    }
+
+    /**
+     * Tests that a deserialized client gets a new lock.
+     *
+     * @throws IOException if an I/O error occurred
+     * @throws ClassNotFoundException if a class was not found
+     */
+    @Test
+    void testDeserializedClient() throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new BitbucketClient());
+        }
+
+        BitbucketClient client;
+        try (ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()))) {
+            client = (BitbucketClient) in.readObject();
+        }
+        try {
+            assertNotNull(client.getTransport());
+            assertNotNull(client.getOAuth2Authenticator().getTransport());
+        }
+        finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the current thread is virtual.
+     *
+     * @return {@code true} if virtual; {@code false} otherwise
+     * @throws ExecutionException if the method failed
+     */
+    private static boolean isVirtual() throws ExecutionException
+    {
+        try {
+            Method method = Thread.class.getMethod("isVirtual");
+            return (Boolean) method.invoke(Thread.currentThread());
+        }
+        catch (final NoSuchMethodException e) {
+            return false;
+        }
+        catch (final ReflectiveOperationException e) {
+            throw new ExecutionException(e);
+        }
+    }
+}
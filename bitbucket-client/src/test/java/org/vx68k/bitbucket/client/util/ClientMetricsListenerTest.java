@@ -0,0 +1,203 @@
+/*
+ * ClientMetricsListenerTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.json.JsonObject;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ClientMetricsListener} and
+ * {@link LatencyHistogramListener}.
+ *
+ * @author Kaz Nishimura
+ */
+final class ClientMetricsListenerTest
+{
+    private static final String ISSUE_ENDPOINT =
+        "/2.0/repositories/{workspace}/{repo_slug}/issues/{id}";
+
+    private static final byte[] BODY =
+        "{\"id\":5}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+
+    private URI base;
+
+    private ClientTransport transport;
+
+    private final List<ExchangeEvent> started = new CopyOnWriteArrayList<>();
+
+    private final List<ExchangeEvent> completed =
+        new CopyOnWriteArrayList<>();
+
+    private final LatencyHistogramListener histograms =
+        new LatencyHistogramListener();
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            if (exchange.getRequestURI().getPath().endsWith("/0")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+        transport.setRetryPolicy(null);
+        transport.addClientMetricsListener(new ClientMetricsListener() {
+            @Override
+            public void exchangeStarted(final ExchangeEvent event)
+            {
+                started.add(event);
+            }
+
+            @Override
+            public void exchangeCompleted(final ExchangeEvent event)
+            {
+                completed.add(event);
+            }
+        });
+        transport.addClientMetricsListener(histograms);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests {@link ClientTransport#endpointOf}.
+     */
+    @Test
+    void testEndpointOf()
+    {
+        assertEquals("/2.0/users/{username}", ClientTransport.endpointOf(
+            URI.create("https://api.bitbucket.org/2.0/users/kazssym")));
+        assertEquals("/2.0/repositories/{workspace}/{repo_slug}/issues",
+            ClientTransport.endpointOf(URI.create("https://api.bitbucket.org"
+                + "/2.0/repositories/vx68k/bitbucket/issues?q=x")));
+        assertEquals("/site/oauth2/access_token", ClientTransport.endpointOf(
+            URI.create("https://bitbucket.org/site/oauth2/access_token")));
+    }
+
+    /**
+     * Tests events of a synchronous exchange.
+     */
+    @Test
+    void testInvoke()
+    {
+        JsonObject value = transport.invoke(
+            base.resolve("2.0/repositories/example/test/issues/5"),
+            (target) -> target.request().get(JsonObject.class));
+        assertEquals(5, value.getInt("id"));
+
+        assertEquals(1, started.size());
+        assertEquals(ISSUE_ENDPOINT, started.get(0).getEndpoint());
+        assertNull(started.get(0).getMethod());
+
+        assertEquals(1, completed.size());
+        ExchangeEvent event = completed.get(0);
+        assertEquals(ISSUE_ENDPOINT, event.getEndpoint());
+        assertEquals("GET", event.getMethod());
+        assertEquals(200, event.getStatus());
+        assertEquals(BODY.length, event.getResponseBytes());
+        assertEquals(0, event.getRetries());
+        assertTrue(event.getDeserializationTime().toNanos() > 0);
+        assertNull(event.getFailure());
+
+        assertEquals(1, histograms.getHistogram(ISSUE_ENDPOINT).getCount());
+        assertEquals(0, histograms.getErrorCount(ISSUE_ENDPOINT));
+    }
+
+    /**
+     * Tests events of a failed exchange.
+     */
+    @Test
+    void testInvokeFailed()
+    {
+        assertThrows(NotFoundException.class, () -> transport.invoke(
+            base.resolve("2.0/repositories/example/test/issues/0"),
+            (target) -> target.request().get(JsonObject.class)));
+
+        ExchangeEvent event = completed.get(0);
+        assertEquals(404, event.getStatus());
+        assertTrue(event.getFailure() instanceof NotFoundException);
+        assertEquals(1, histograms.getErrorCount(ISSUE_ENDPOINT));
+    }
+
+    /**
+     * Tests events of an asynchronous exchange.
+     */
+    @Test
+    void testInvokeAsync() throws Exception
+    {
+        transport.<JsonObject>invokeAsync(
+            base.resolve("2.0/repositories/example/test/issues/5"),
+            (target) -> target.request().rx().get(JsonObject.class))
+            .get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, started.size());
+        assertEquals(1, completed.size());
+        ExchangeEvent event = completed.get(0);
+        assertEquals("GET", event.getMethod());
+        assertEquals(200, event.getStatus());
+        assertEquals(BODY.length, event.getResponseBytes());
+    }
+}
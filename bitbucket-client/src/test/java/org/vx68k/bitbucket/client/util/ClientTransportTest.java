@@ -0,0 +1,188 @@
+/*
+ * ClientTransportTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.JsonObject;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ClientTransport}.
+ *
+ * @author Kaz Nishimura
+ */
+final class ClientTransportTest
+{
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", (exchange) -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests {@link ClientTransport#getClient()}.
+     */
+    @Test
+    void testGetClient1()
+    {
+        Client client1 = transport.getClient();
+        assertSame(client1, transport.getClient());
+
+        transport.close();
+        assertThrows(IllegalStateException.class, transport::getClient);
+        assertThrows(IllegalStateException.class,
+            () -> transport.target(URI.create("http://127.0.0.1/")));
+        // Closing again has no effect.
+        transport.close();
+    }
+
+    /**
+     * Tests {@link ClientTransport#getClient()} with an idle timeout.
+     */
+    @Test
+    void testGetClient2() throws InterruptedException
+    {
+        transport.setIdleTimeout(Duration.ofMillis(1));
+        Client client1 = transport.getClient();
+        Thread.sleep(10);
+        assertNotSame(client1, transport.getClient());
+    }
+
+    /**
+     * Tests {@link ClientTransport#invoke} with the limit per route.
+     */
+    @Test
+    void testInvoke1() throws Exception
+    {
+        transport.setMaxConnectionsPerRoute(2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<JsonObject>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() ->
+                    transport.invoke(base, (target) ->
+                        target.request(MediaType.APPLICATION_JSON_TYPE)
+                            .get(JsonObject.class))));
+            }
+            for (Future<JsonObject> future : futures) {
+                assertTrue(future.get().isEmpty());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertTrue(maxActive.get() <= 2);
+        assertEquals(0, transport.getActiveCount());
+    }
+
+    /**
+     * Tests {@link ClientTransport#invokeAsync} with the total limit.
+     */
+    @Test
+    void testInvokeAsync1()
+    {
+        transport.setMaxConnections(2);
+
+        List<CompletableFuture<JsonObject>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(transport.invokeAsync(base, (target) ->
+                target.request(MediaType.APPLICATION_JSON_TYPE).rx()
+                    .get(JsonObject.class)));
+        }
+        for (CompletableFuture<JsonObject> future : futures) {
+            assertTrue(future.join().isEmpty());
+        }
+        assertTrue(maxActive.get() <= 2);
+        assertEquals(0, transport.getActiveCount());
+    }
+}
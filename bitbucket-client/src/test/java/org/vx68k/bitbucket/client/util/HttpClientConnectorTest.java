@@ -0,0 +1,237 @@
+/*
+ * HttpClientConnectorTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import javax.json.JsonObject;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link HttpClientConnector}.
+ * They are skipped unless the tests run on Java SE 11 or later with the
+ * classes for it.
+ *
+ * @author Kaz Nishimura
+ */
+final class HttpClientConnectorTest
+{
+    private HttpServer server;
+
+    private URI base;
+
+    private ClientTransport transport;
+
+    private ExecutorService serverExecutor;
+
+    private CountDownLatch slowRequests;
+
+    private CountDownLatch slowResponses;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        assumeTrue(TransportBackend.HTTP_CLIENT.isAvailable());
+
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        slowRequests = new CountDownLatch(2);
+        slowResponses = new CountDownLatch(1);
+        server.createContext("/", (exchange) -> {
+            if (exchange.getRequestURI().getPath().equals("/slow")) {
+                slowRequests.countDown();
+                try {
+                    slowResponses.await(10, TimeUnit.SECONDS);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[1024];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    request.write(buffer, 0, n);
+                }
+            }
+            if (exchange.getRequestURI().getPath().equals("/missing")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+
+            String body = "{\"method\":\"" + exchange.getRequestMethod()
+                + "\",\"agent\":\""
+                + exchange.getRequestHeaders().getFirst("User-Agent")
+                + "\",\"authorization\":\""
+                + exchange.getRequestHeaders().getFirst("Authorization")
+                + "\",\"type\":\""
+                + exchange.getRequestHeaders().getFirst("Content-Type")
+                + "\",\"body\":\""
+                + request.toString(StandardCharsets.UTF_8.name()) + "\"}";
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(buffer)) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, buffer.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                buffer.writeTo(out);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        BasicAuthenticator authenticator = new BasicAuthenticator(base);
+        authenticator.setUsername("user");
+        authenticator.setPassword("secret");
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class)
+            .register(authenticator), TransportBackend.HTTP_CLIENT);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        if (transport != null) {
+            transport.close();
+            transport = null;
+        }
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests a request is sent by the HTTP client with the headers of the
+     * authenticator and its compressed response is read.
+     */
+    @Test
+    void testGet()
+    {
+        assertEquals(TransportBackend.HTTP_CLIENT, transport.getBackend());
+        JsonObject json = transport.invoke(base.resolve("get"), (target) ->
+            target.request().get(JsonObject.class));
+        assertEquals("GET", json.getString("method"));
+        assertTrue(json.getString("agent").startsWith("Java-http-client"));
+        assertTrue(json.getString("authorization").startsWith("Basic "));
+    }
+
+    /**
+     * Tests asynchronous exchanges do not occupy threads while their
+     * responses are awaited.
+     *
+     * @throws Exception if failed
+     */
+    @Test
+    void testGetAsync() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            transport.setExecutorService(executor);
+            CompletableFuture<JsonObject> first = transport.invokeAsync(
+                base.resolve("slow"), (target) ->
+                    target.request().rx().get(JsonObject.class));
+            CompletableFuture<JsonObject> second = transport.invokeAsync(
+                base.resolve("slow"), (target) ->
+                    target.request().rx().get(JsonObject.class));
+            assertTrue(slowRequests.await(10, TimeUnit.SECONDS));
+            slowResponses.countDown();
+
+            for (JsonObject json : new JsonObject[] {
+                first.get(10, TimeUnit.SECONDS),
+                second.get(10, TimeUnit.SECONDS)}) {
+                assertEquals("GET", json.getString("method"));
+                assertTrue(json.getString("agent")
+                    .startsWith("Java-http-client"));
+                assertTrue(json.getString("authorization")
+                    .startsWith("Basic "));
+            }
+            assertEquals(0, transport.getActiveCount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests a form is sent by the HTTP client.
+     */
+    @Test
+    void testPostForm()
+    {
+        Form form = new Form("grant_type", "refresh_token")
+            .param("refresh_token", "a b");
+        JsonObject json = transport.invokeOnce(base.resolve("post"),
+            (target) -> target.request()
+                .post(Entity.form(form), JsonObject.class));
+        assertEquals("POST", json.getString("method"));
+        assertEquals(MediaType.APPLICATION_FORM_URLENCODED,
+            json.getString("type"));
+        assertEquals("grant_type=refresh_token&refresh_token=a+b",
+            json.getString("body"));
+    }
+
+    /**
+     * Tests an error status is reported as usual.
+     */
+    @Test
+    void testNotFound()
+    {
+        assertThrows(NotFoundException.class, () ->
+            transport.invoke(base.resolve("missing"), (target) ->
+                target.request().get(JsonObject.class)));
+    }
+}
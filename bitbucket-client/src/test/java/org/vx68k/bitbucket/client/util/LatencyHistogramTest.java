@@ -0,0 +1,77 @@
+/*
+ * LatencyHistogramTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @author Kaz Nishimura
+ */
+final class LatencyHistogramTest
+{
+    /**
+     * Tests the bucket indices.
+     */
+    @Test
+    void testIndexOf()
+    {
+        for (long value : new long[] {0, 1, 31, 32, 33, 63, 64, 65, 1000,
+            123456789L, (1L << 45) - 1}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestEquivalent(index) >= value);
+            if (index > 0) {
+                assertTrue(
+                    LatencyHistogram.highestEquivalent(index - 1) < value);
+            }
+        }
+    }
+
+    /**
+     * Tests percentiles.
+     */
+    @Test
+    void testGetPercentile()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(Duration.ZERO, histogram.getPercentile(50.0));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(Duration.ofMillis(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(Duration.ofMillis(1000), histogram.getMax());
+
+        long p50 = histogram.getPercentile(50.0).toNanos();
+        long p99 = histogram.getPercentile(99.0).toNanos();
+        assertTrue(Math.abs(p50 - 500_000_000L) < 500_000_000L / 16);
+        assertTrue(Math.abs(p99 - 990_000_000L) < 990_000_000L / 16);
+        assertEquals(Duration.ofMillis(1000), histogram.getPercentile(100.0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * RateLimiterTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.JsonObject;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RateLimiter}.
+ *
+ * @author Kaz Nishimura
+ */
+final class RateLimiterTest
+{
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            if (requestCount.incrementAndGet() % 2 == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests the token bucket.
+     */
+    @Test
+    void testAcquire() throws InterruptedException
+    {
+        RateLimiter limiter = new RateLimiter(2, 20.0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertEquals(2, limiter.getWaitCount());
+        assertTrue(limiter.getWaitTime().toNanos() > 0);
+    }
+
+    /**
+     * Tests the asynchronous acquisition with a pause.
+     */
+    @Test
+    void testAcquireAsync() throws Exception
+    {
+        RateLimiter limiter = new RateLimiter();
+        limiter.pause(Duration.ofMillis(100));
+
+        long start = System.nanoTime();
+        limiter.acquireAsync().get(10, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertEquals(1, limiter.getWaitCount());
+    }
+
+    /**
+     * Tests parsing {@code Retry-After} values.
+     */
+    @Test
+    void testParseRetryAfter()
+    {
+        assertEquals(Duration.ofSeconds(120),
+            RateLimiter.parseRetryAfter("120"));
+        assertEquals(Duration.ZERO,
+            RateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertNull(RateLimiter.parseRetryAfter("soon"));
+        assertNull(RateLimiter.parseRetryAfter(null));
+    }
+
+    /**
+     * Tests requeuing a throttled exchange.
+     */
+    @Test
+    void testRequeue()
+    {
+        long start = System.nanoTime();
+        JsonObject value = transport.invoke(base,
+            (target) -> target.request().get(JsonObject.class));
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(0, value.size());
+        assertEquals(2, requestCount.get());
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(1, transport.getRateLimiter().getThrottleCount());
+    }
+
+    /**
+     * Tests requeuing a throttled asynchronous exchange.
+     */
+    @Test
+    void testRequeueAsync() throws Exception
+    {
+        JsonObject value = transport.<JsonObject>invokeAsync(base,
+            (target) -> target.request().rx().get(JsonObject.class))
+            .get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, value.size());
+        assertEquals(2, requestCount.get());
+        assertEquals(1, transport.getRateLimiter().getThrottleCount());
+    }
+
+    /**
+     * Tests requeuing a throttled exchange on a transport built on the
+     * client builder of a closed one.
+     */
+    @Test
+    void testRequeueSharedBuilder()
+    {
+        ClientBuilder builder = ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class);
+        try (ClientTransport first = new ClientTransport(builder)) {
+            first.invoke(base,
+                (target) -> target.request().get(JsonObject.class));
+            assertEquals(1, first.getRateLimiter().getThrottleCount());
+            first.close();
+
+            try (ClientTransport second = new ClientTransport(builder)) {
+                second.invoke(base,
+                    (target) -> target.request().get(JsonObject.class));
+                assertEquals(4, requestCount.get());
+                assertEquals(1, second.getRateLimiter().getThrottleCount());
+                assertEquals(1, first.getRateLimiter().getThrottleCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * ResponseCacheTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.JsonObject;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link ResponseCache}.
+ *
+ * @author Kaz Nishimura
+ */
+final class ResponseCacheTest
+{
+    private static final String ETAG = "\"1\"";
+
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger fullCount = new AtomicInteger();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            if (ETAG.equals(exchange.getRequestHeaders()
+                .getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fullCount.incrementAndGet();
+
+            byte[] body = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    private JsonObject get()
+    {
+        return transport.invoke(base, (target) ->
+            target.request(MediaType.APPLICATION_JSON_TYPE)
+                .get(JsonObject.class));
+    }
+
+    /**
+     * Tests revalidation with {@link MemoryResponseCacheStore}.
+     */
+    @Test
+    void testRevalidation1()
+    {
+        ResponseCache cache = transport.getResponseCache();
+        cache.setStore(new MemoryResponseCacheStore(10, 1024));
+
+        assertEquals(1, get().getInt("id"));
+        assertEquals(1, get().getInt("id"));
+        assertEquals(1, get().getInt("id"));
+        assertEquals(1, fullCount.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getRevalidationCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    /**
+     * Tests that a disabled cache sends no conditional requests.
+     */
+    @Test
+    void testDisabled1()
+    {
+        get();
+        get();
+        assertEquals(2, fullCount.get());
+        assertEquals(0, transport.getResponseCache().getMissCount());
+    }
+
+    /**
+     * Tests the size bound of {@link MemoryResponseCacheStore}.
+     */
+    @Test
+    void testMemoryStore1()
+    {
+        MemoryResponseCacheStore store = new MemoryResponseCacheStore(2, 10);
+        byte[] entity = new byte[4];
+        store.put("a", new CachedResponse(ETAG, null, null, null, entity));
+        store.put("b", new CachedResponse(ETAG, null, null, null, entity));
+        store.get("a");
+        store.put("c", new CachedResponse(ETAG, null, null, null, entity));
+        assertNull(store.get("b"));
+        assertEquals(2, store.size());
+        assertEquals(8, store.getTotalBytes());
+    }
+
+    /**
+     * Tests {@link FileResponseCacheStore}.
+     */
+    @Test
+    void testFileStore1(@TempDir final Path directory) throws IOException
+    {
+        byte[] entity = "{}".getBytes(StandardCharsets.UTF_8);
+        FileResponseCacheStore store =
+            new FileResponseCacheStore(directory, 1024);
+        store.put("a", new CachedResponse(ETAG, null,
+            MediaType.APPLICATION_JSON, null, entity));
+
+        CachedResponse response =
+            new FileResponseCacheStore(directory, 1024).get("a");
+        assertEquals(ETAG, response.getEntityTag());
+        assertNull(response.getLastModified());
+        assertEquals(MediaType.APPLICATION_JSON, response.getContentType());
+        assertArrayEquals(entity, response.getEntity());
+        assertNull(store.get("b"));
+    }
+}
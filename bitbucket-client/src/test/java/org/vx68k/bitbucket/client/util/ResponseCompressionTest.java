@@ -0,0 +1,181 @@
+/*
+ * ResponseCompressionTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.json.JsonObject;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ResponseCompression}.
+ *
+ * @author Kaz Nishimura
+ */
+final class ResponseCompressionTest
+{
+    private static final String BODY;
+
+    static {
+        StringBuilder builder = new StringBuilder("{\"values\":[");
+        for (int i = 0; i < 100; i++) {
+            if (i != 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(i)
+                .append(",\"title\":\"Compressible title\"}");
+        }
+        BODY = builder.append("]}").toString();
+    }
+
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicReference<String> acceptEncoding =
+        new AtomicReference<>();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            String accepted =
+                exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            acceptEncoding.set(accepted);
+
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            String path = exchange.getRequestURI().getPath();
+            if (accepted != null && path.equals("/gzip")) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (OutputStream out = new GZIPOutputStream(buffer)) {
+                    out.write(body);
+                }
+                body = buffer.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            else if (accepted != null && path.equals("/deflate")) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (OutputStream out = new DeflaterOutputStream(buffer,
+                    new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+                    out.write(body);
+                }
+                body = buffer.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding",
+                    "deflate");
+            }
+
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    private JsonObject get(final String path)
+    {
+        return transport.invoke(base.resolve(path), (target) ->
+            target.request().get(JsonObject.class));
+    }
+
+    /**
+     * Tests a {@code gzip} response.
+     */
+    @Test
+    void testGzip()
+    {
+        JsonObject value = get("gzip");
+        assertEquals(100, value.getJsonArray("values").size());
+        assertEquals(ResponseCompression.ACCEPT_ENCODING,
+            acceptEncoding.get());
+
+        ResponseCompression compression = transport.getResponseCompression();
+        assertEquals(1, compression.getCompressedCount());
+        assertEquals(BODY.length(), compression.getUncompressedBytes());
+        assertTrue(compression.getCompressedBytes() < BODY.length());
+    }
+
+    /**
+     * Tests a raw {@code deflate} response.
+     */
+    @Test
+    void testDeflate()
+    {
+        JsonObject value = get("deflate");
+        assertEquals(100, value.getJsonArray("values").size());
+        assertEquals(1,
+            transport.getResponseCompression().getCompressedCount());
+    }
+
+    /**
+     * Tests disabled negotiation.
+     */
+    @Test
+    void testDisabled()
+    {
+        transport.getResponseCompression().setEnabled(false);
+
+        JsonObject value = get("gzip");
+        assertEquals(100, value.getJsonArray("values").size());
+        assertNull(acceptEncoding.get());
+        assertEquals(0,
+            transport.getResponseCompression().getCompressedCount());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * RetryPolicyTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.JsonObject;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.client.PaginatedList;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+
+/**
+ * Unit tests for {@link RetryPolicy}.
+ *
+ * @author Kaz Nishimura
+ */
+final class RetryPolicyTest
+{
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicInteger firstPageCount = new AtomicInteger();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            String body;
+            if (exchange.getRequestURI().getPath().equals("/2")) {
+                if (failures.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(502, -1);
+                    exchange.close();
+                    return;
+                }
+                body = "{\"size\":2,\"values\":[{\"type\":\"issue\","
+                    + "\"id\":2}]}";
+            }
+            else {
+                firstPageCount.incrementAndGet();
+                body = "{\"size\":2,\"values\":[{\"type\":\"issue\","
+                    + "\"id\":1}],\"next\":\"" + base + "2\"}";
+            }
+
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+        transport.getRetryPolicy().setBaseDelay(Duration.ofMillis(10));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Tests {@link RetryPolicy#isRetryable}.
+     */
+    @Test
+    void testIsRetryable()
+    {
+        RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.isRetryable(new ServiceUnavailableException()));
+        assertTrue(policy.isRetryable(new ServerErrorException(504)));
+        assertTrue(policy.isRetryable(
+            new ProcessingException(new ConnectException())));
+        assertFalse(policy.isRetryable(new ServerErrorException(500)));
+        assertFalse(policy.isRetryable(new NotFoundException()));
+        assertFalse(policy.isRetryable(new ProcessingException("test")));
+    }
+
+    /**
+     * Tests {@link RetryPolicy#retryDelay}.
+     */
+    @Test
+    void testRetryDelay()
+    {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(3);
+        policy.setBaseDelay(Duration.ofMillis(100));
+
+        long start = System.nanoTime();
+        RuntimeException e = new ServiceUnavailableException();
+        long delay = policy.retryDelay(1, start, e);
+        assertTrue(delay >= 0);
+        assertTrue(delay <= TimeUnit.MILLISECONDS.toNanos(100));
+        delay = policy.retryDelay(2, start, e);
+        assertTrue(delay >= 0);
+        assertTrue(delay <= TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(policy.retryDelay(3, start, e) < 0);
+        assertTrue(policy.retryDelay(1, start, new NotFoundException()) < 0);
+
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(1, policy.getExhaustedCount());
+    }
+
+    /**
+     * Tests retrying an exchange.
+     */
+    @Test
+    void testInvoke()
+    {
+        failures.set(2);
+        JsonObject value = transport.invoke(base.resolve("2"), (target) ->
+            target.request().get(JsonObject.class));
+        assertEquals(2, value.getInt("size"));
+        assertEquals(2, transport.getRetryPolicy().getRetryCount());
+    }
+
+    /**
+     * Tests retrying an asynchronous exchange.
+     */
+    @Test
+    void testInvokeAsync() throws Exception
+    {
+        failures.set(2);
+        JsonObject value = transport.<JsonObject>invokeAsync(base.resolve("2"),
+            (target) -> target.request().rx().get(JsonObject.class))
+            .get(10, TimeUnit.SECONDS);
+        assertEquals(2, value.getInt("size"));
+        assertEquals(2, transport.getRetryPolicy().getRetryCount());
+    }
+
+    /**
+     * Tests an exchange that is not retried.
+     */
+    @Test
+    void testInvokeOnce()
+    {
+        failures.set(1);
+        assertThrows(ServerErrorException.class, () ->
+            transport.invokeOnce(base.resolve("2"), (target) ->
+                target.request().get(JsonObject.class)));
+        assertEquals(0, transport.getRetryPolicy().getRetryCount());
+    }
+
+    /**
+     * Tests resuming a paginated list from a failing page.
+     */
+    @Test
+    void testPaginatedList()
+    {
+        transport.getRetryPolicy().setMaxAttempts(2);
+        failures.set(3);
+
+        List<ClientIssue> issues =
+            new PaginatedList<>(transport, base.resolve("1"),
+                ClientIssue.class);
+        assertEquals(1, issues.get(0).getId());
+        assertThrows(ServerErrorException.class, () -> issues.get(1));
+        assertEquals(2, issues.get(1).getId());
+        assertEquals(1, firstPageCount.get());
+    }
+}
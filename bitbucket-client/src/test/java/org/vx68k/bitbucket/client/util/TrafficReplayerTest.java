@@ -0,0 +1,184 @@
+/*
+ * TrafficReplayerTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.json.JsonObject;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.client.PaginatedList;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+
+/**
+ * Unit tests for {@link TrafficRecorder} and {@link TrafficReplayer}.
+ *
+ * @author Kaz Nishimura
+ */
+final class TrafficReplayerTest
+{
+    private HttpServer server;
+
+    private URI base;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            String query = exchange.getRequestURI().getQuery();
+            int page = 1;
+            if (query != null && query.startsWith("page=")) {
+                page = Integer.parseInt(query.substring(5));
+            }
+            StringBuilder body = new StringBuilder("{\"size\":4,");
+            if (page == 1) {
+                body.append("\"next\":\"").append(base)
+                    .append("issues?page=2\",");
+            }
+            body.append("\"values\":[");
+            for (int i = 0; i < 2; i++) {
+                int id = (page - 1) * 2 + i + 1;
+                if (i != 0) {
+                    body.append(',');
+                }
+                body.append("{\"type\":\"issue\",\"id\":").append(id)
+                    .append('}');
+            }
+            body.append("]}");
+
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/");
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private static ClientTransport newTransport()
+    {
+        return new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+    }
+
+    private static List<Integer> ids(final ClientTransport transport,
+        final URI uri)
+    {
+        return new PaginatedList<ClientIssue>(transport, uri,
+            ClientIssue.class).stream().map(ClientIssue::getId)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Tests a paginated list is replayed from a stored archive without the
+     * server.
+     */
+    @Test
+    void testReplay() throws IOException
+    {
+        URI first = base.resolve("issues");
+        TrafficArchive archive = new TrafficArchive();
+        List<Integer> recorded;
+        try (ClientTransport transport = newTransport()) {
+            transport.register(new TrafficRecorder(archive),
+                TrafficRecorder.PRIORITY);
+            recorded = ids(transport, first);
+        }
+        assertEquals(2, archive.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        archive.writeTo(bytes);
+        TrafficArchive loaded = TrafficArchive.readFrom(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(2, loaded.size());
+        RecordedExchange exchange = loaded.getExchanges("GET", first).get(0);
+        assertEquals(200, exchange.getStatus());
+        assertArrayEquals(archive.getExchanges().get(0).getEntity(),
+            exchange.getEntity());
+
+        server.stop(0);
+        server = null;
+
+        TrafficReplayer replayer = new TrafficReplayer(loaded);
+        try (ClientTransport transport = newTransport()) {
+            transport.register(replayer, TrafficReplayer.PRIORITY);
+            assertEquals(recorded, ids(transport, first));
+            assertEquals(2, replayer.getReplayCount());
+
+            replayer.setLatency(Duration.ofMillis(50));
+            long start = System.nanoTime();
+            transport.invoke(first, (target) ->
+                target.request().get(JsonObject.class));
+            assertTrue(System.nanoTime() - start
+                >= Duration.ofMillis(50).toNanos());
+        }
+    }
+
+    /**
+     * Tests a request that was not recorded.
+     */
+    @Test
+    void testMiss()
+    {
+        TrafficReplayer replayer = new TrafficReplayer(new TrafficArchive());
+        try (ClientTransport transport = newTransport()) {
+            transport.register(replayer, TrafficReplayer.PRIORITY);
+            assertThrows(ProcessingException.class, () ->
+                transport.invoke(base.resolve("missing"), (target) ->
+                    target.request().get(JsonObject.class)));
+        }
+        assertEquals(1, replayer.getMissCount());
+    }
+}
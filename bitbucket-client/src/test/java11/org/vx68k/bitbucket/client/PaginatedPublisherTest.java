@@ -0,0 +1,264 @@
+/*
+ * PaginatedPublisherTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vx68k.bitbucket.BitbucketIssue;
+import org.vx68k.bitbucket.client.internal.ClientIssue;
+import org.vx68k.bitbucket.client.util.ClientTransport;
+import org.vx68k.bitbucket.client.util.JsonStructureMessageBodyReader;
+
+/**
+ * Unit tests for {@code PaginatedPublisher}.
+ * They are compiled against the base classes, which do not have the
+ * publisher, so it is constructed reflectively and used through the Flow
+ * API.
+ *
+ * @author Kaz Nishimura
+ */
+final class PaginatedPublisherTest
+{
+    private static final int PAGES = 5;
+
+    private HttpServer server;
+
+    private URI base;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private ClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            requestCount.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            int page = 1;
+            if (query != null && query.startsWith("page=")) {
+                page = Integer.parseInt(query.substring(5));
+            }
+            if (page > PAGES) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            String body = "{\"size\":" + 2 * PAGES + ",\"values\":["
+                + "{\"type\":\"issue\",\"id\":" + (2 * page - 1) + "},"
+                + "{\"type\":\"issue\",\"id\":" + 2 * page + "}],"
+                + "\"next\":\"" + base + "?page=" + (page + 1) + "\"}";
+            if (page == PAGES) {
+                body = body.substring(0, body.lastIndexOf(",\"next\""))
+                    + "}";
+            }
+
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        base = URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + "/issues");
+
+        transport = new ClientTransport(ClientBuilder.newBuilder()
+            .register(JsonStructureMessageBodyReader.class));
+        transport.setRetryPolicy(null);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        transport.close();
+        transport = null;
+
+        server.stop(0);
+        server = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Flow.Publisher<BitbucketIssue> publisher(final URI first,
+        final int prefetch) throws ReflectiveOperationException
+    {
+        Class<?> publisherClass =
+            Class.forName("org.vx68k.bitbucket.client.PaginatedPublisher");
+        Object publisher = publisherClass
+            .getConstructor(PageCursor.class, int.class)
+            .newInstance(
+                new PageCursor<>(transport, first, ClientIssue.class, null,
+                    null),
+                prefetch);
+        return (Flow.Publisher<BitbucketIssue>) publisher;
+    }
+
+    /**
+     * Tests fetching pages on demand without prefetch.
+     *
+     * @throws Exception if failed
+     */
+    @Test
+    void testRequest() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher(base, 0).subscribe(subscriber);
+        Flow.Subscription subscription = subscriber.subscription.get();
+
+        subscription.request(1);
+        subscriber.awaitValues(1);
+        assertEquals(1, requestCount.get());
+        subscription.request(2);
+        subscriber.awaitValues(3);
+        assertEquals(2, requestCount.get());
+
+        subscription.request(Long.MAX_VALUE);
+        subscriber.completion.get(10, TimeUnit.SECONDS);
+        assertEquals(2 * PAGES, subscriber.values.size());
+        assertEquals(10, subscriber.values.get(9).getId());
+        assertEquals(PAGES, requestCount.get());
+    }
+
+    /**
+     * Tests prefetching pages and cancellation.
+     *
+     * @throws Exception if failed
+     */
+    @Test
+    void testPrefetchAndCancel() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher(base, 1).subscribe(subscriber);
+        Flow.Subscription subscription = subscriber.subscription.get();
+
+        subscription.request(2);
+        subscriber.awaitValues(2);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (requestCount.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(2, requestCount.get());
+
+        subscription.cancel();
+        subscription.request(10);
+        Thread.sleep(100);
+        assertEquals(2, subscriber.values.size());
+        assertEquals(2, requestCount.get());
+    }
+
+    /**
+     * Tests a failed page fetch and an invalid request.
+     *
+     * @throws Exception if failed
+     */
+    @Test
+    void testErrors() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher(base.resolve("?page=" + (PAGES + 1)), 0)
+            .subscribe(subscriber);
+        subscriber.subscription.get().request(1);
+        Throwable e = assertThrows(Exception.class,
+            () -> subscriber.completion.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof ServerErrorException);
+
+        TestSubscriber invalid = new TestSubscriber();
+        publisher(base, 0).subscribe(invalid);
+        invalid.subscription.get().request(0);
+        e = assertThrows(Exception.class,
+            () -> invalid.completion.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        assertEquals(1, requestCount.get());
+    }
+
+    /**
+     * Subscriber that records the values.
+     */
+    private static final class TestSubscriber
+        implements Flow.Subscriber<BitbucketIssue>
+    {
+        final CompletableFuture<Flow.Subscription> subscription =
+            new CompletableFuture<>();
+
+        final List<BitbucketIssue> values = new CopyOnWriteArrayList<>();
+
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(final Flow.Subscription newSubscription)
+        {
+            subscription.complete(newSubscription);
+        }
+
+        @Override
+        public void onNext(final BitbucketIssue item)
+        {
+            values.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable)
+        {
+            completion.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completion.complete(null);
+        }
+
+        void awaitValues(final int count) throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (values.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, values.size());
+        }
+    }
+}
@@ -0,0 +1,1061 @@
+/*
+ * FakeBitbucketServer.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.stub;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Embedded fake server of the Bitbucket Cloud REST API 2.0.
+ * <p>It serves users, teams, repositories and issues under
+ * {@link #getBaseUri}.  Issues are generated on demand from templates, so a
+ * repository may have millions of them at little cost.  The generated
+ * objects conform to the unofficial schema {@code api-schema.json}.</p>
+ * <p>The following features of the API are supported:</p>
+ * <ul>
+ * <li>paginated lists with the {@code page} and {@code pagelen}
+ * parameters,</li>
+ * <li>filtering by the {@code q} parameter (see {@link FakeQuery}),</li>
+ * <li>partial responses by the {@code fields} parameter,</li>
+ * <li>entity tags and {@code If-None-Match} requests, and</li>
+ * <li>rate limiting with {@code 429 Too Many Requests}.</li>
+ * </ul>
+ * <p>Latency and errors may also be injected into responses.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+public class FakeBitbucketServer implements Closeable
+{
+    /**
+     * Default number of values in a page.
+     */
+    public static final int DEFAULT_PAGELEN = 10;
+
+    /**
+     * Maximum number of values in a page.
+     */
+    public static final int MAX_PAGELEN = 100;
+
+    /**
+     * Path of the API.
+     */
+    private static final String API_PATH = "/2.0/";
+
+    private static final String APPLICATION_JSON = "application/json";
+
+    private static final String[] KINDS = {
+        "bug", "enhancement", "proposal", "task",
+    };
+
+    private static final String[] PRIORITIES = {
+        "trivial", "minor", "major", "critical", "blocker",
+    };
+
+    private static final String[] STATES = {
+        "new", "open", "resolved", "on hold", "invalid", "duplicate",
+        "wontfix", "closed",
+    };
+
+    /**
+     * Time on which generated times are based.
+     */
+    private static final OffsetDateTime EPOCH =
+        OffsetDateTime.of(2015, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private static final DateTimeFormatter DATE_TIME =
+        DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSSSSSxxx");
+
+    /**
+     * Map from usernames to accounts.
+     */
+    private final ConcurrentMap<String, Map<String, Object>> accounts =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Map from full names to repositories.
+     */
+    private final ConcurrentMap<String, FakeRepository> repositories =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Map from the paths and queries of filtered lists to the indices of
+     * their values.
+     */
+    private final ConcurrentMap<String, int[]> filteredLists =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Map from usernames to the users generated for issues.
+     */
+    private final ConcurrentMap<String, Map<String, Object>> issueUsers =
+        new ConcurrentHashMap<>();
+
+    private final Random random = new Random();
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private volatile Duration latencyJitter = Duration.ZERO;
+
+    private volatile double errorRate = 0.0;
+
+    private volatile int errorStatus = 503;
+
+    private volatile int rateLimit = 0;
+
+    private volatile Duration rateLimitWindow = Duration.ofHours(1);
+
+    /**
+     * Lock for the rate limit window.
+     */
+    private final Object rateLock = new Object();
+
+    private long windowStart = System.nanoTime();
+
+    private int windowCount = 0;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private HttpServer server = null;
+
+    private ExecutorService executor = null;
+
+    /**
+     * Constructs a server.
+     * It must be started by {@link #start}.
+     */
+    public FakeBitbucketServer()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Starts this server on an ephemeral port of the loopback interface.
+     *
+     * @throws IOException if the server could not be started
+     */
+    public final synchronized void start() throws IOException
+    {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(API_PATH, this::handle);
+        executor = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "fake-bitbucket-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stops this server.
+     */
+    @Override
+    public final synchronized void close()
+    {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Returns the base URI of the API, which ends with {@code "/2.0/"}.
+     *
+     * @return the base URI
+     * @throws IllegalStateException if this server is not started
+     */
+    public final synchronized URI getBaseUri()
+    {
+        if (server == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return URI.create("http://127.0.0.1:"
+            + server.getAddress().getPort() + API_PATH);
+    }
+
+    /**
+     * Adds a user.
+     *
+     * @param username the username
+     */
+    public final void addUser(final String username)
+    {
+        checkName(username);
+        accounts.put(username, user(username));
+    }
+
+    /**
+     * Adds a team.
+     *
+     * @param username the username of the team
+     */
+    public final void addTeam(final String username)
+    {
+        checkName(username);
+        accounts.put(username, team(username));
+    }
+
+    /**
+     * Adds a repository with generated issues.
+     * If the owner does not exist, it is added as a team.
+     *
+     * @param fullName the full name of the repository
+     * @param issueCount the number of the issues
+     */
+    public final void addRepository(final String fullName,
+        final int issueCount)
+    {
+        String[] names = fullName == null ? new String[0]
+            : fullName.split("/", -1);
+        if (names.length != 2) {
+            throw new IllegalArgumentException("Invalid full name");
+        }
+        checkName(names[0]);
+        checkName(names[1]);
+        if (issueCount < 0) {
+            throw new IllegalArgumentException("Issue count is negative");
+        }
+        accounts.computeIfAbsent(names[0], FakeBitbucketServer::team);
+        repositories.put(fullName,
+            new FakeRepository(names[0], names[1], issueCount));
+        filteredLists.keySet().removeIf((key) ->
+            key.startsWith("repositories/" + names[0] + "?"));
+    }
+
+    private static void checkName(final String name)
+    {
+        if (name == null || name.isEmpty() || name.contains("/")) {
+            throw new IllegalArgumentException("Invalid name: " + name);
+        }
+    }
+
+    /**
+     * Returns the fixed latency of every response.
+     *
+     * @return the fixed latency
+     */
+    public final Duration getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Sets the fixed latency of every response.
+     * The default value is zero.
+     *
+     * @param newValue a new value of the fixed latency
+     */
+    public final void setLatency(final Duration newValue)
+    {
+        checkDuration(newValue);
+        latency = newValue;
+    }
+
+    /**
+     * Returns the maximum random latency added to every response.
+     *
+     * @return the maximum random latency
+     */
+    public final Duration getLatencyJitter()
+    {
+        return latencyJitter;
+    }
+
+    /**
+     * Sets the maximum random latency added to every response.
+     * The default value is zero.
+     *
+     * @param newValue a new value of the maximum random latency
+     */
+    public final void setLatencyJitter(final Duration newValue)
+    {
+        checkDuration(newValue);
+        latencyJitter = newValue;
+    }
+
+    private static void checkDuration(final Duration duration)
+    {
+        if (duration == null || duration.isNegative()) {
+            throw new IllegalArgumentException("Duration is not valid");
+        }
+    }
+
+    /**
+     * Returns the rate of injected errors.
+     *
+     * @return the rate of injected errors
+     */
+    public final double getErrorRate()
+    {
+        return errorRate;
+    }
+
+    /**
+     * Sets the rate of injected errors.
+     * The default value is zero.
+     *
+     * @param newValue a new value of the rate between 0 and 1
+     */
+    public final void setErrorRate(final double newValue)
+    {
+        if (!(newValue >= 0.0 && newValue <= 1.0)) {
+            throw new IllegalArgumentException("Rate is out of range");
+        }
+        errorRate = newValue;
+    }
+
+    /**
+     * Returns the status code of injected errors.
+     *
+     * @return the status code
+     */
+    public final int getErrorStatus()
+    {
+        return errorStatus;
+    }
+
+    /**
+     * Sets the status code of injected errors.
+     * The default value is 503.
+     *
+     * @param newValue a new value of the status code
+     */
+    public final void setErrorStatus(final int newValue)
+    {
+        if (newValue < 400 || newValue > 599) {
+            throw new IllegalArgumentException("Not an error status");
+        }
+        errorStatus = newValue;
+    }
+
+    /**
+     * Sets the seed of the random latency and error injection.
+     *
+     * @param seed a seed
+     */
+    public final void setSeed(final long seed)
+    {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Returns the maximum number of requests in a rate limit window.
+     *
+     * @return the maximum number of requests, or zero if unlimited
+     */
+    public final int getRateLimit()
+    {
+        return rateLimit;
+    }
+
+    /**
+     * Sets the maximum number of requests in a rate limit window.
+     * Requests over the limit are rejected with {@code 429 Too Many
+     * Requests} until the window ends.  The default value is zero.
+     *
+     * @param newValue a new value of the maximum number, or zero for
+     * unlimited
+     */
+    public final void setRateLimit(final int newValue)
+    {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Rate limit is negative");
+        }
+        rateLimit = newValue;
+    }
+
+    /**
+     * Returns the length of a rate limit window.
+     *
+     * @return the length of a rate limit window
+     */
+    public final Duration getRateLimitWindow()
+    {
+        return rateLimitWindow;
+    }
+
+    /**
+     * Sets the length of a rate limit window.
+     * The default value is one hour.
+     *
+     * @param newValue a new value of the length
+     */
+    public final void setRateLimitWindow(final Duration newValue)
+    {
+        if (newValue == null || newValue.isNegative() || newValue.isZero()) {
+            throw new IllegalArgumentException("Window is not positive");
+        }
+        rateLimitWindow = newValue;
+    }
+
+    /**
+     * Returns the number of requests this server received.
+     *
+     * @return the number of requests
+     */
+    public final long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests rejected by the rate limit.
+     *
+     * @return the number of requests
+     */
+    public final long getThrottledCount()
+    {
+        return throttledCount.get();
+    }
+
+    /**
+     * Returns the number of injected errors.
+     *
+     * @return the number of injected errors
+     */
+    public final long getErrorCount()
+    {
+        return errorCount.get();
+    }
+
+    /**
+     * Handles an exchange.
+     *
+     * @param exchange an HTTP exchange
+     * @throws IOException if an I/O error occurred
+     */
+    private void handle(final HttpExchange exchange) throws IOException
+    {
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() >= 0) {
+                // Discards the request entity.
+            }
+        }
+        requestCount.incrementAndGet();
+        delay();
+
+        Headers responseHeaders = exchange.getResponseHeaders();
+        if (!acquire(responseHeaders)) {
+            throttledCount.incrementAndGet();
+            send(exchange, 429, error("Rate limit exceeded"));
+            return;
+        }
+        if (errorRate > 0.0 && random.nextDouble() < errorRate) {
+            errorCount.incrementAndGet();
+            send(exchange, errorStatus, error("Injected error"));
+            return;
+        }
+        String method = exchange.getRequestMethod();
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            responseHeaders.add("Allow", "GET, HEAD");
+            send(exchange, 405, error("Method not allowed"));
+            return;
+        }
+
+        String path = exchange.getRequestURI().getRawPath()
+            .substring(API_PATH.length());
+        Map<String, String> parameters =
+            parseQuery(exchange.getRequestURI().getRawQuery());
+        Object value;
+        try {
+            value = route(path, parameters);
+        }
+        catch (final IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+            return;
+        }
+        if (value == null) {
+            send(exchange, 404, error("Resource not found"));
+            return;
+        }
+        String fields = parameters.get("fields");
+        if (fields != null) {
+            value = FakeJson.project(value, fields);
+        }
+
+        byte[] body = FakeJson.toJson(value)
+            .getBytes(StandardCharsets.UTF_8);
+        String entityTag = entityTag(body);
+        responseHeaders.add("ETag", entityTag);
+        String ifNoneMatch =
+            exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*")
+            || Arrays.asList(ifNoneMatch.split("\\s*,\\s*"))
+                .contains(entityTag))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        send(exchange, 200, body, method.equals("HEAD"));
+    }
+
+    /**
+     * Sleeps for the latency of a response.
+     */
+    private void delay()
+    {
+        long nanos = latency.toNanos();
+        long jitter = latencyJitter.toNanos();
+        if (jitter > 0) {
+            nanos += (long) (random.nextDouble() * jitter);
+        }
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Counts a request against the rate limit.
+     *
+     * @param responseHeaders the response headers to which the rate limit
+     * headers are added
+     * @return {@code true} if the request is allowed; {@code false}
+     * otherwise
+     */
+    private boolean acquire(final Headers responseHeaders)
+    {
+        int limit = rateLimit;
+        if (limit == 0) {
+            return true;
+        }
+        long window = rateLimitWindow.toNanos();
+        long remainingNanos;
+        int remaining;
+        boolean allowed;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            if (now - windowStart >= window) {
+                windowStart = now;
+                windowCount = 0;
+            }
+            allowed = windowCount < limit;
+            if (allowed) {
+                windowCount += 1;
+            }
+            remaining = limit - windowCount;
+            remainingNanos = window - (now - windowStart);
+        }
+        long seconds = Math.max(1,
+            TimeUnit.NANOSECONDS.toSeconds(remainingNanos + 999999999L));
+        responseHeaders.add("X-RateLimit-Limit", Integer.toString(limit));
+        responseHeaders.add("X-RateLimit-Remaining",
+            Integer.toString(remaining));
+        responseHeaders.add("X-RateLimit-Reset", Long.toString(
+            System.currentTimeMillis() / 1000 + seconds));
+        if (!allowed) {
+            responseHeaders.add("Retry-After", Long.toString(seconds));
+        }
+        return allowed;
+    }
+
+    /**
+     * Returns the value of a resource.
+     *
+     * @param path the path relative to the API
+     * @param parameters the query parameters
+     * @return the value, or {@code null} if not found
+     * @throws IllegalArgumentException if a parameter is not valid
+     */
+    private Object route(final String path,
+        final Map<String, String> parameters)
+    {
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = decode(segments[i]);
+        }
+        switch (segments[0]) {
+        case "users":
+        case "teams":
+            if (segments.length == 2) {
+                Map<String, Object> account = accounts.get(segments[1]);
+                String type = segments[0].equals("users") ? "user" : "team";
+                if (account != null && type.equals(account.get("type"))) {
+                    return account;
+                }
+            }
+            return null;
+        case "repositories":
+            return routeRepositories(path, segments, parameters);
+        default:
+            return null;
+        }
+    }
+
+    private Object routeRepositories(final String path,
+        final String[] segments, final Map<String, String> parameters)
+    {
+        if (segments.length == 2 && accounts.containsKey(segments[1])) {
+            List<FakeRepository> list = new ArrayList<>();
+            for (FakeRepository repository : repositories.values()) {
+                if (repository.owner.equals(segments[1])) {
+                    list.add(repository);
+                }
+            }
+            list.sort((a, b) -> a.slug.compareTo(b.slug));
+            return page(path, parameters, list.size(),
+                (i) -> repository(list.get(i)));
+        }
+        if (segments.length < 3) {
+            return null;
+        }
+        FakeRepository repository =
+            repositories.get(segments[1] + "/" + segments[2]);
+        if (repository == null) {
+            return null;
+        }
+        if (segments.length == 3) {
+            return repository(repository);
+        }
+        if (!segments[3].equals("issues")) {
+            return null;
+        }
+        if (segments.length == 4) {
+            return page(path, parameters, repository.issueCount,
+                (i) -> issue(repository, i + 1));
+        }
+        if (segments.length == 5) {
+            try {
+                int id = Integer.parseInt(segments[4]);
+                if (id >= 1 && id <= repository.issueCount) {
+                    return issue(repository, id);
+                }
+            }
+            catch (final NumberFormatException e) {
+                // Not found.
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a page of a paginated list.
+     *
+     * @param path the path of the list
+     * @param parameters the query parameters
+     * @param size the number of the values without filtering
+     * @param values a function that generates the value at an index
+     * @return the page, or {@code null} if not found
+     */
+    private Map<String, Object> page(final String path,
+        final Map<String, String> parameters, final int size,
+        final IntFunction<Map<String, Object>> values)
+    {
+        int pagelen = intParameter(parameters, "pagelen", DEFAULT_PAGELEN);
+        if (pagelen < 1 || pagelen > MAX_PAGELEN) {
+            throw new IllegalArgumentException("Invalid pagelen");
+        }
+        int page = intParameter(parameters, "page", 1);
+        if (page < 1) {
+            throw new IllegalArgumentException("Invalid page");
+        }
+
+        String q = parameters.get("q");
+        int[] indices = null;
+        int total = size;
+        if (q != null) {
+            FakeQuery query = new FakeQuery(q);
+            indices = filteredLists.computeIfAbsent(path + "?" + q,
+                (key) -> filter(size, values, query));
+            total = indices.length;
+        }
+
+        long from = (long) (page - 1) * pagelen;
+        if (from > 0 && from >= total) {
+            return null;
+        }
+        int to = (int) Math.min(total, from + pagelen);
+        List<Object> list = new ArrayList<>(to - (int) from);
+        for (int i = (int) from; i < to; i++) {
+            list.add(values.apply(indices != null ? indices[i] : i));
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("pagelen", pagelen);
+        json.put("size", total);
+        json.put("page", page);
+        if (to < total) {
+            json.put("next", pageUri(path, parameters, page + 1));
+        }
+        if (page > 1) {
+            json.put("previous", pageUri(path, parameters, page - 1));
+        }
+        json.put("values", list);
+        return json;
+    }
+
+    private static int[] filter(final int size,
+        final IntFunction<Map<String, Object>> values, final FakeQuery query)
+    {
+        int[] indices = new int[Math.min(size, 1024)];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (query.matches(values.apply(i))) {
+                if (count == indices.length) {
+                    indices = Arrays.copyOf(indices,
+                        (int) Math.min(size, 2L * count));
+                }
+                indices[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    private static int intParameter(final Map<String, String> parameters,
+        final String name, final int defaultValue)
+    {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name, e);
+        }
+    }
+
+    private String pageUri(final String path,
+        final Map<String, String> parameters, final int page)
+    {
+        Map<String, String> next = new LinkedHashMap<>(parameters);
+        next.put("page", Integer.toString(page));
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> parameter : next.entrySet()) {
+            builder.append(builder.length() == 0 ? '?' : '&')
+                .append(encode(parameter.getKey())).append('=')
+                .append(encode(parameter.getValue()));
+        }
+        return getBaseUri() + path + builder;
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery)
+    {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals >= 0) {
+                    parameters.put(decode(parameter.substring(0, equals)),
+                        decode(parameter.substring(equals + 1)));
+                }
+                else {
+                    parameters.put(decode(parameter), "");
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(final String string)
+    {
+        try {
+            return URLDecoder.decode(string, "UTF-8");
+        }
+        catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(final String string)
+    {
+        try {
+            return URLEncoder.encode(string, "UTF-8");
+        }
+        catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String entityTag(final byte[] body)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            StringBuilder builder = new StringBuilder("\"");
+            for (int i = 0; i < 8; i++) {
+                builder.append(String.format("%02x", digest[i] & 0xff));
+            }
+            return builder.append('"').toString();
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(final HttpExchange exchange, final int status,
+        final Object value) throws IOException
+    {
+        send(exchange, status,
+            FakeJson.toJson(value).getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    private static void send(final HttpExchange exchange, final int status,
+        final byte[] body, final boolean head) throws IOException
+    {
+        exchange.getResponseHeaders().add("Content-Type", APPLICATION_JSON);
+        if (head) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, Object> error(final String message)
+    {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("message", message);
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", "error");
+        json.put("error", error);
+        return json;
+    }
+
+    private static String uuid(final String name)
+    {
+        return "{" + UUID.nameUUIDFromBytes(
+            name.getBytes(StandardCharsets.UTF_8)) + "}";
+    }
+
+    private static String time(final long minutes)
+    {
+        return EPOCH.plusMinutes(minutes).format(DATE_TIME);
+    }
+
+    private static Map<String, Object> links(final String self,
+        final String html)
+    {
+        Map<String, Object> links = new LinkedHashMap<>();
+        links.put("self", Collections.singletonMap("href",
+            "https://api.bitbucket.org/2.0/" + self));
+        links.put("html", Collections.singletonMap("href",
+            "https://bitbucket.org/" + html));
+        return links;
+    }
+
+    private static Map<String, Object> user(final String username)
+    {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", "user");
+        json.put("uuid", uuid("user:" + username));
+        json.put("username", username);
+        json.put("nickname", username);
+        json.put("display_name", "User " + username);
+        json.put("website", null);
+        json.put("location", null);
+        json.put("created_on", time(username.hashCode() & 0xffff));
+        json.put("is_staff", false);
+        json.put("account_id", "557058:" + UUID.nameUUIDFromBytes(
+            username.getBytes(StandardCharsets.UTF_8)));
+        json.put("account_status", "active");
+        json.put("links", links("users/" + username, username + "/"));
+        return json;
+    }
+
+    /**
+     * Returns a generated user for a reporter or an assignee of issues.
+     *
+     * @param username the username
+     * @return the user, which is shared by every issue
+     */
+    private Map<String, Object> reporter(final String username)
+    {
+        return issueUsers.computeIfAbsent(username,
+            (key) -> Collections.unmodifiableMap(user(key)));
+    }
+
+    private static Map<String, Object> team(final String username)
+    {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", "team");
+        json.put("uuid", uuid("team:" + username));
+        json.put("username", username);
+        json.put("display_name", "Team " + username);
+        json.put("website", null);
+        json.put("location", null);
+        json.put("created_on", time(username.hashCode() & 0xffff));
+        json.put("links", links("teams/" + username, username + "/"));
+        return json;
+    }
+
+    private Map<String, Object> repository(final FakeRepository repository)
+    {
+        String fullName = repository.fullName;
+        Map<String, Object> project = new LinkedHashMap<>();
+        project.put("type", "project");
+        project.put("key", "PROJ");
+        project.put("name", "Project");
+        Map<String, Object> mainBranch = new LinkedHashMap<>();
+        mainBranch.put("type", "branch");
+        mainBranch.put("name", "master");
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", "repository");
+        json.put("uuid", uuid("repository:" + fullName));
+        json.put("name", repository.slug);
+        json.put("full_name", fullName);
+        json.put("slug", repository.slug);
+        json.put("description", "Repository " + fullName);
+        json.put("is_private", false);
+        json.put("fork_policy", "allow_forks");
+        json.put("website", "");
+        json.put("language", "java");
+        json.put("scm", "git");
+        json.put("created_on", time(fullName.hashCode() & 0xffff));
+        json.put("updated_on", time(repository.issueCount));
+        json.put("size", 1024L * (repository.issueCount + 1));
+        json.put("has_issues", true);
+        json.put("has_wiki", false);
+        json.put("owner", accounts.get(repository.owner));
+        json.put("project", project);
+        json.put("mainbranch", mainBranch);
+        json.put("links",
+            links("repositories/" + fullName, fullName));
+        return json;
+    }
+
+    private Map<String, Object> issue(final FakeRepository repository,
+        final int id)
+    {
+        String fullName = repository.fullName;
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("type", "rendered");
+        content.put("raw", "Description of issue " + id + ".");
+        content.put("markup", "markdown");
+        content.put("html", "<p>Description of issue " + id + ".</p>");
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", "issue");
+        json.put("id", id);
+        json.put("title", "Issue " + id + " of " + fullName);
+        json.put("kind", KINDS[id % KINDS.length]);
+        json.put("priority", PRIORITIES[id % PRIORITIES.length]);
+        json.put("state", STATES[id % STATES.length]);
+        json.put("repository", repository.summary);
+        json.put("content", content);
+        json.put("reporter", reporter("user" + (id % 10)));
+        Object assignee = null;
+        if (id % 3 != 0) {
+            assignee = reporter("user" + (id * 7 % 10));
+        }
+        json.put("assignee", assignee);
+        json.put("created_on", time(id * 7L));
+        json.put("updated_on", time(id * 7L + id % 48 * 60));
+        json.put("edited_on", null);
+        json.put("votes", id % 5);
+        json.put("watches", 1 + id % 3);
+        json.put("component", null);
+        json.put("milestone", null);
+        json.put("version", null);
+        json.put("links", links(
+            "repositories/" + fullName + "/issues/" + id,
+            fullName + "/issues/" + id));
+        return json;
+    }
+
+    /**
+     * Repository on the server.
+     */
+    private static final class FakeRepository
+    {
+        final String owner;
+
+        final String slug;
+
+        final int issueCount;
+
+        final String fullName;
+
+        /**
+         * Summary of this repository embedded in the issues.
+         */
+        final Map<String, Object> summary;
+
+        FakeRepository(final String owner, final String slug,
+            final int issueCount)
+        {
+            this.owner = owner;
+            this.slug = slug;
+            this.issueCount = issueCount;
+            this.fullName = owner + "/" + slug;
+
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("type", "repository");
+            json.put("name", slug);
+            json.put("full_name", fullName);
+            json.put("uuid", uuid("repository:" + fullName));
+            this.summary = Collections.unmodifiableMap(json);
+        }
+    }
+}
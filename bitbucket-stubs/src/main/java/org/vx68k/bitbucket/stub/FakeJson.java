@@ -0,0 +1,256 @@
+/*
+ * FakeJson.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.stub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON utilities for {@link FakeBitbucketServer}.
+ * JSON values are represented by {@link Map}, {@link List}, {@link String},
+ * {@link Number} and {@link Boolean} objects and {@code null}.
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class FakeJson
+{
+    /**
+     * Does nothing.
+     */
+    private FakeJson()
+    {
+    }
+
+    /**
+     * Serializes a value.
+     *
+     * @param value a JSON value
+     * @return the JSON text
+     */
+    static String toJson(final Object value)
+    {
+        StringBuilder builder = new StringBuilder();
+        write(builder, value);
+        return builder.toString();
+    }
+
+    private static void write(final StringBuilder builder, final Object value)
+    {
+        if (value == null) {
+            builder.append("null");
+        }
+        else if (value instanceof Map) {
+            builder.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    builder.append(',');
+                }
+                writeString(builder, member.getKey().toString());
+                builder.append(':');
+                write(builder, member.getValue());
+                first = false;
+            }
+            builder.append('}');
+        }
+        else if (value instanceof Collection) {
+            builder.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    builder.append(',');
+                }
+                write(builder, element);
+                first = false;
+            }
+            builder.append(']');
+        }
+        else if (value instanceof Number || value instanceof Boolean) {
+            builder.append(value);
+        }
+        else {
+            writeString(builder, value.toString());
+        }
+    }
+
+    private static void writeString(final StringBuilder builder,
+        final String string)
+    {
+        builder.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+            case '"':
+                builder.append("\\\"");
+                break;
+            case '\\':
+                builder.append("\\\\");
+                break;
+            case '\n':
+                builder.append("\\n");
+                break;
+            case '\r':
+                builder.append("\\r");
+                break;
+            case '\t':
+                builder.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    builder.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    builder.append(c);
+                }
+                break;
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * Returns the value at a dotted path.
+     *
+     * @param value a JSON value
+     * @param path a dotted path such as {@code "reporter.username"}
+     * @return the value, or {@code null} if not found
+     */
+    static Object get(final Object value, final String path)
+    {
+        Object current = value;
+        for (String name : path.split("\\.")) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map<?, ?>) current).get(name);
+        }
+        return current;
+    }
+
+    /**
+     * Applies a {@code fields} parameter to a value.
+     * Plain paths select the members to include, and paths prefixed with
+     * {@code "-"} remove members.  Paths prefixed with {@code "+"} are
+     * accepted but have no effect since every member is included by
+     * default.  The path {@code "*"} selects every member at its level.
+     *
+     * @param value a JSON value
+     * @param fields the value of a {@code fields} parameter
+     * @return the projected value
+     */
+    static Object project(final Object value, final String fields)
+    {
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String path = field.trim();
+            if (path.startsWith("-")) {
+                excludes.add(path.substring(1));
+            }
+            else if (path.startsWith("+")) {
+                // Every member is included by default.
+                continue;
+            }
+            else if (!path.isEmpty()) {
+                includes.add(path);
+            }
+        }
+
+        Object result = value;
+        if (!includes.isEmpty()) {
+            result = include(result, includes);
+        }
+        for (String path : excludes) {
+            result = exclude(result, path);
+        }
+        return result;
+    }
+
+    private static Object include(final Object value,
+        final List<String> paths)
+    {
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                list.add(include(element, paths));
+            }
+            return list;
+        }
+        if (!(value instanceof Map) || paths.contains("*")) {
+            return value;
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+            String name = member.getKey().toString();
+            List<String> rest = new ArrayList<>();
+            boolean whole = false;
+            for (String path : paths) {
+                if (path.equals(name)) {
+                    whole = true;
+                }
+                else if (path.startsWith(name + ".")) {
+                    rest.add(path.substring(name.length() + 1));
+                }
+            }
+            if (whole) {
+                map.put(name, member.getValue());
+            }
+            else if (!rest.isEmpty()) {
+                map.put(name, include(member.getValue(), rest));
+            }
+        }
+        return map;
+    }
+
+    private static Object exclude(final Object value, final String path)
+    {
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                list.add(exclude(element, path));
+            }
+            return list;
+        }
+        if (!(value instanceof Map)) {
+            return value;
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        int dot = path.indexOf('.');
+        String name = dot >= 0 ? path.substring(0, dot) : path;
+        for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+            String key = member.getKey().toString();
+            if (!key.equals(name)) {
+                map.put(key, member.getValue());
+            }
+            else if (dot >= 0) {
+                map.put(key, exclude(member.getValue(),
+                    path.substring(dot + 1)));
+            }
+        }
+        return map;
+    }
+}
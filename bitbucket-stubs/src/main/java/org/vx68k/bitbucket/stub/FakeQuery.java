@@ -0,0 +1,185 @@
+/*
+ * FakeQuery.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.stub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filter for the {@code q} parameter of {@link FakeBitbucketServer}.
+ * <p>It supports conjunctions of comparisons such as
+ * {@code state = "open" AND votes > 1}.  The operators are {@code =},
+ * {@code !=}, {@code <}, {@code <=}, {@code >}, {@code >=}, {@code ~} for
+ * containment and {@code !~} for its negation.  Operands are string
+ * literals, numbers, {@code true}, {@code false} or {@code null}.</p>
+ *
+ * @author Kaz Nishimura
+ * @since 6.0
+ */
+final class FakeQuery
+{
+    /**
+     * Pattern of a comparison.
+     */
+    private static final Pattern COMPARISON = Pattern.compile(
+        "\\s*([A-Za-z_][A-Za-z0-9_.]*)\\s*(!=|!~|<=|>=|=|<|>|~)\\s*"
+        + "(\"(?:[^\"\\\\]|\\\\.)*\"|[-+0-9.]+|true|false|null)\\s*");
+
+    /**
+     * Pattern of a conjunction.
+     */
+    private static final Pattern AND = Pattern.compile("(?i)AND\\b");
+
+    private final List<String> paths = new ArrayList<>();
+
+    private final List<String> operators = new ArrayList<>();
+
+    private final List<Object> operands = new ArrayList<>();
+
+    /**
+     * Parses a query.
+     *
+     * @param query the value of a {@code q} parameter
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    FakeQuery(final String query)
+    {
+        Matcher matcher = COMPARISON.matcher(query);
+        Matcher and = AND.matcher(query);
+        int position = 0;
+        while (true) {
+            matcher.region(position, query.length());
+            if (!matcher.lookingAt()) {
+                throw new IllegalArgumentException(
+                    "Invalid query at " + position + ": " + query);
+            }
+            paths.add(matcher.group(1));
+            operators.add(matcher.group(2));
+            operands.add(literal(matcher.group(3)));
+            position = matcher.end();
+            if (position == query.length()) {
+                break;
+            }
+            and.region(position, query.length());
+            if (!and.lookingAt()) {
+                throw new IllegalArgumentException(
+                    "Invalid query at " + position + ": " + query);
+            }
+            position = and.end();
+        }
+    }
+
+    private static Object literal(final String token)
+    {
+        if (token.startsWith("\"")) {
+            return token.substring(1, token.length() - 1)
+                .replaceAll("\\\\(.)", "$1");
+        }
+        switch (token) {
+        case "true":
+            return Boolean.TRUE;
+        case "false":
+            return Boolean.FALSE;
+        case "null":
+            return null;
+        default:
+            try {
+                return Double.valueOf(token);
+            }
+            catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number: "
+                    + token, e);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if a value matches this query.
+     *
+     * @param value a JSON value
+     * @return {@code true} if matched; {@code false} otherwise
+     */
+    boolean matches(final Object value)
+    {
+        for (int i = 0; i < paths.size(); i++) {
+            if (!compare(FakeJson.get(value, paths.get(i)),
+                operators.get(i), operands.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean compare(final Object actual, final String operator,
+        final Object operand)
+    {
+        switch (operator) {
+        case "=":
+            return equal(actual, operand);
+        case "!=":
+            return !equal(actual, operand);
+        case "~":
+            return actual != null && operand != null
+                && actual.toString().contains(operand.toString());
+        case "!~":
+            return actual == null || operand == null
+                || !actual.toString().contains(operand.toString());
+        default:
+            break;
+        }
+
+        if (actual == null || operand == null) {
+            return false;
+        }
+        int result;
+        if (actual instanceof Number && operand instanceof Number) {
+            result = Double.compare(((Number) actual).doubleValue(),
+                ((Number) operand).doubleValue());
+        }
+        else {
+            result = actual.toString().compareTo(operand.toString());
+        }
+        switch (operator) {
+        case "<":
+            return result < 0;
+        case "<=":
+            return result <= 0;
+        case ">":
+            return result > 0;
+        default:
+            return result >= 0;
+        }
+    }
+
+    private static boolean equal(final Object actual, final Object operand)
+    {
+        if (actual instanceof Number && operand instanceof Number) {
+            return ((Number) actual).doubleValue()
+                == ((Number) operand).doubleValue();
+        }
+        if (actual == null || operand == null) {
+            return actual == operand;
+        }
+        return actual.toString().equals(operand.toString());
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * FakeBitbucketServerTest.java
+ * Copyright (C) 2020 Kaz Nishimura
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+
+package org.vx68k.bitbucket.stub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.time.Duration;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link FakeBitbucketServer}.
+ *
+ * @author Kaz Nishimura
+ */
+final class FakeBitbucketServerTest
+{
+    private FakeBitbucketServer server;
+
+    private int status;
+
+    private String entityTag;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        server = new FakeBitbucketServer();
+        server.addUser("alice");
+        server.addRepository("example/large", 1000000);
+        server.addRepository("example/small", 1000);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        server.close();
+        server = null;
+    }
+
+    private JsonObject get(final String path, final String ifNoneMatch)
+        throws IOException
+    {
+        URI uri = path.startsWith("http") ? URI.create(path)
+            : server.getBaseUri().resolve(path);
+        HttpURLConnection connection =
+            (HttpURLConnection) uri.toURL().openConnection();
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        status = connection.getResponseCode();
+        entityTag = connection.getHeaderField("ETag");
+        InputStream stream = status < 400 ? connection.getInputStream()
+            : connection.getErrorStream();
+        if (status == 304) {
+            connection.disconnect();
+            return null;
+        }
+        try (JsonReader reader = Json.createReader(stream)) {
+            return reader.readObject();
+        }
+    }
+
+    private JsonObject get(final String path) throws IOException
+    {
+        return get(path, null);
+    }
+
+    /**
+     * Tests accounts and repositories.
+     */
+    @Test
+    void testEntities() throws IOException
+    {
+        JsonObject user = get("users/alice");
+        assertEquals(200, status);
+        assertEquals("user", user.getString("type"));
+        assertEquals(JsonValue.NULL, user.get("website"));
+
+        JsonObject team = get("teams/example");
+        assertEquals("team", team.getString("type"));
+
+        get("teams/alice");
+        assertEquals(404, status);
+
+        JsonObject repository = get("repositories/example/large");
+        assertEquals("example/large", repository.getString("full_name"));
+        assertEquals("team",
+            repository.getJsonObject("owner").getString("type"));
+
+        JsonObject repositories = get("repositories/example");
+        assertEquals(2, repositories.getInt("size"));
+    }
+
+    /**
+     * Tests paginated issues.
+     */
+    @Test
+    void testPages() throws IOException
+    {
+        JsonObject page1 = get("repositories/example/large/issues");
+        assertEquals(1000000, page1.getInt("size"));
+        assertEquals(FakeBitbucketServer.DEFAULT_PAGELEN,
+            page1.getJsonArray("values").size());
+        assertNull(page1.get("previous"));
+
+        JsonObject page2 = get(page1.getString("next"));
+        assertEquals(2, page2.getInt("page"));
+        assertEquals(11, page2.getJsonArray("values").getJsonObject(0)
+            .getInt("id"));
+
+        JsonObject last = get(
+            "repositories/example/large/issues?pagelen=100&page=10000");
+        assertEquals(1000000, last.getJsonArray("values")
+            .getJsonObject(99).getInt("id"));
+        assertFalse(last.containsKey("next"));
+
+        get("repositories/example/large/issues?page=10001&pagelen=100");
+        assertEquals(404, status);
+        get("repositories/example/large/issues?pagelen=101");
+        assertEquals(400, status);
+
+        JsonObject issue = get("repositories/example/large/issues/42");
+        assertEquals(42, issue.getInt("id"));
+    }
+
+    /**
+     * Tests the {@code q} and {@code fields} parameters.
+     */
+    @Test
+    void testQueryAndFields() throws IOException
+    {
+        String q = URLEncoder.encode("state = \"open\" AND id <= 100",
+            "UTF-8");
+        JsonObject page = get("repositories/example/small/issues?q=" + q
+            + "&fields=values.id,values.state,size");
+        assertEquals(200, status);
+        assertEquals(13, page.getInt("size"));
+        JsonObject first = page.getJsonArray("values").getJsonObject(0);
+        assertEquals(1, first.getInt("id"));
+        assertEquals("open", first.getString("state"));
+        assertFalse(first.containsKey("title"));
+        assertFalse(page.containsKey("pagelen"));
+
+        get("repositories/example/small/issues?q=state");
+        assertEquals(400, status);
+    }
+
+    /**
+     * Tests entity tags.
+     */
+    @Test
+    void testEntityTags() throws IOException
+    {
+        assertNotNull(get("repositories/example/large"));
+        String tag = entityTag;
+        assertNotNull(tag);
+        assertNull(get("repositories/example/large", tag));
+        assertEquals(304, status);
+    }
+
+    /**
+     * Tests the rate limit and error injection.
+     */
+    @Test
+    void testThrottlingAndErrors() throws IOException
+    {
+        server.setRateLimit(2);
+        server.setRateLimitWindow(Duration.ofMinutes(1));
+        get("users/alice");
+        get("users/alice");
+        assertEquals(200, status);
+        get("users/alice");
+        assertEquals(429, status);
+        assertEquals(1, server.getThrottledCount());
+
+        server.setRateLimit(0);
+        server.setErrorRate(1.0);
+        JsonObject error = get("users/alice");
+        assertEquals(503, status);
+        assertEquals("error", error.getString("type"));
+        assertTrue(server.getErrorCount() > 0);
+    }
+}